@@ -0,0 +1,256 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntSupplier;
+
+/**
+ * Decides whether requests are admitted, before any work is spent on them. Requests are turned away when too many
+ * are in flight, when too many wait for a worker, or when responses have recently been too slow. The concurrency
+ * limit is either fixed, or adjusted using additive increase and multiplicative decrease: it grows while responses
+ * are faster than {@link CoreConfig.Admission#targetLatency}, and shrinks when they're slower, or when the workers
+ * turn requests away.
+ */
+final class AdmissionController {
+
+    /**
+     * Weight of a new latency sample in the moving average
+     */
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    private final IntSupplier queueDepth;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final Meter rejected;
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int maxQueued;
+    private final long maxLatency;
+    private final long targetLatency;
+    private final double backoffRatio;
+    /**
+     * Head of the response that rejected requests are answered with, up to the value of the {@code Date} header
+     */
+    private final byte[] serviceUnavailable;
+
+    private double adaptiveLimit;
+    private volatile int limit;
+    private volatile long latency;
+
+    /**
+     * @param metrics    Metrics that the admission statistics are registered to
+     * @param queueDepth Supplies the number of requests that wait for a worker
+     */
+    AdmissionController(final Metrics metrics, final IntSupplier queueDepth) {
+        this.queueDepth = queueDepth;
+        this.adaptive = CoreConfig.Admission.adaptive;
+        this.minLimit = Math.max(1, CoreConfig.Admission.minInFlight);
+        this.maxQueued = CoreConfig.Admission.maxQueued;
+        this.maxLatency = TimeUnit.MILLISECONDS.toNanos(CoreConfig.Admission.maxLatency);
+        this.targetLatency = TimeUnit.MILLISECONDS.toNanos(CoreConfig.Admission.targetLatency);
+        this.backoffRatio = CoreConfig.Admission.backoffRatio;
+        this.serviceUnavailable = AsciiString.of(
+            "HTTP/1.1 " + Header.STATUS_SERVICE_UNAVAILABLE + "\r\nContent-Length: 0\r\n"
+                + "Connection: close\r\nRetry-After: " + CoreConfig.Admission.retryAfter
+                + "\r\nDate: ").getValue();
+        if (this.adaptive) {
+            this.maxLimit = Math.max(this.minLimit, CoreConfig.Admission.maxInFlight > 0 ?
+                CoreConfig.Admission.maxInFlight :
+                CoreConfig.Pools.workerThreads + CoreConfig.Pools.workerQueue);
+            this.adaptiveLimit = this.minLimit;
+            this.limit = this.minLimit;
+        } else {
+            this.maxLimit = CoreConfig.Admission.maxInFlight > 0 ?
+                CoreConfig.Admission.maxInFlight :
+                Integer.MAX_VALUE;
+            this.limit = this.maxLimit;
+        }
+        this.rejected = metrics.getRegistry()
+            .meter(MetricRegistry.name(AdmissionController.class, "rejected"));
+        metrics.registerMetric(MetricRegistry.name(AdmissionController.class, "inFlight"),
+            (Gauge<Integer>) this.inFlight::get);
+        metrics.registerMetric(MetricRegistry.name(AdmissionController.class, "limit"),
+            (Gauge<Integer>) () -> this.limit);
+        metrics.registerMetric(MetricRegistry.name(AdmissionController.class, "latency"),
+            (Gauge<Long>) () -> TimeUnit.NANOSECONDS.toMillis(this.latency));
+    }
+
+    /**
+     * Try to admit a request
+     *
+     * @return Permit that has to be released once the response has been written, or null if the request should be
+     * rejected
+     */
+    Permit tryAcquire() {
+        int limit = this.limit;
+        //
+        // While responses are too slow only a few requests are admitted, which
+        // keeps the latency measurements coming
+        //
+        if (this.maxLatency > 0 && this.latency > this.maxLatency) {
+            limit = Math.min(limit, this.minLimit);
+        }
+        if (this.maxQueued > 0 && this.queueDepth.getAsInt() >= this.maxQueued) {
+            this.rejected.mark();
+            return null; // Nullable
+        }
+        int current;
+        do {
+            current = this.inFlight.get();
+            if (current >= limit) {
+                this.rejected.mark();
+                return null; // Nullable
+            }
+        } while (!this.inFlight.compareAndSet(current, current + 1));
+        return new Permit();
+    }
+
+    /**
+     * Get the head of the {@code 503 Service Unavailable} response that rejected requests are answered with. It ends
+     * with the name of the {@code Date} header, whose value and the end of the head have to be written after it.
+     *
+     * @return Response head. Must not be modified.
+     */
+    byte[] getServiceUnavailable() {
+        return this.serviceUnavailable;
+    }
+
+    /**
+     * Get the number of admitted requests that haven't been completed
+     *
+     * @return Number of requests in flight
+     */
+    int getInFlight() {
+        return this.inFlight.get();
+    }
+
+    /**
+     * Get the current concurrency limit
+     *
+     * @return Limit
+     */
+    int getLimit() {
+        return this.limit;
+    }
+
+    /**
+     * Get the moving average of the response latency
+     *
+     * @return Latency, in nanoseconds
+     */
+    long getLatency() {
+        return this.latency;
+    }
+
+    /**
+     * Record the latency of a completed request
+     *
+     * @param latency Time from the request being dispatched to the response being written, in nanoseconds
+     */
+    synchronized void onSample(final long latency) {
+        final long average = this.latency;
+        this.latency = average == 0 ?
+            latency :
+            (long) (average + LATENCY_SMOOTHING * (latency - average));
+        if (!this.adaptive) {
+            return;
+        }
+        if (latency > this.targetLatency) {
+            this.decrease();
+        } else if (this.inFlight.get() * 2 >= this.limit) {
+            //
+            // The limit is only raised while it's actually being used
+            //
+            this.adaptiveLimit = Math.min(this.maxLimit, this.adaptiveLimit + 1.0 / this.adaptiveLimit);
+            this.limit = (int) this.adaptiveLimit;
+        }
+    }
+
+    /**
+     * Record that an admitted request was turned away by the workers
+     */
+    synchronized void onDrop() {
+        if (this.adaptive) {
+            this.decrease();
+        }
+    }
+
+    private void decrease() {
+        this.adaptiveLimit = Math.max(this.minLimit, this.adaptiveLimit * this.backoffRatio);
+        this.limit = (int) this.adaptiveLimit;
+    }
+
+    /**
+     * Admission of a single request. Releasing a permit more than once has no effect.
+     */
+    final class Permit {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+        private volatile long dispatched;
+
+        private Permit() {
+        }
+
+        /**
+         * Mark the request as complete, and ready to be handled by a worker. The latency is measured from here.
+         */
+        void dispatch() {
+            this.dispatched = System.nanoTime();
+        }
+
+        /**
+         * Release the permit, once the response has been written or the connection has been closed
+         */
+        void release() {
+            if (!this.released.compareAndSet(false, true)) {
+                return;
+            }
+            inFlight.decrementAndGet();
+            final long dispatched = this.dispatched;
+            if (dispatched != 0) {
+                onSample(System.nanoTime() - dispatched);
+            }
+        }
+
+        /**
+         * Release the permit of a request that the workers turned away
+         */
+        void drop() {
+            if (this.released.compareAndSet(false, true)) {
+                inFlight.decrementAndGet();
+                onDrop();
+            }
+        }
+    }
+
+}
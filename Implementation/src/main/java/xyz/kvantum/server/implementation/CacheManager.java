@@ -21,38 +21,155 @@
  */
 package xyz.kvantum.server.implementation;
 
+import com.codahale.metrics.Counter;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
 import com.github.benmanes.caffeine.cache.Cache;
 import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import xyz.kvantum.files.CachedFile;
 import xyz.kvantum.files.Path;
+import xyz.kvantum.server.api.cache.CacheApplicable;
+import xyz.kvantum.server.api.cache.CacheKey;
+import xyz.kvantum.server.api.cache.CacheKeyAttributes;
+import xyz.kvantum.server.api.cache.CacheLookup;
 import xyz.kvantum.server.api.cache.CachedResponse;
 import xyz.kvantum.server.api.cache.ICacheManager;
 import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.ResponseBody;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.Metrics;
 import xyz.kvantum.server.api.views.RequestHandler;
 
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * The utility file that handles all runtime caching
  */
 @SuppressWarnings("ALL") public final class CacheManager implements ICacheManager {
 
+    private static final AsciiString[] NO_HEADERS = new AsciiString[0];
+    private static final AsciiString HEADER_RANGE = AsciiString.of("range");
+    /**
+     * Estimated memory used by a cache entry, apart from its content
+     */
+    private static final int ENTRY_OVERHEAD = 256;
+    private static final int MAX_VARY_ENTRIES = 10_000;
+
     private final Cache<String, String> cachedIncludes;
     private final Cache<String, CachedFile> cachedFiles;
-    private final Cache<String, CachedResponse> cachedBodies;
+    private final Cache<CacheKey, CacheEntry> cachedBodies;
+    /**
+     * The request headers that the cached responses vary on, keyed by the cache key without these headers
+     */
+    private final Cache<CacheKey, AsciiString[]> varyHeaders;
+    /**
+     * Responses that are currently being generated by a request, which other requests for the same key wait for
+     */
+    private final Map<CacheKey, CompletableFuture<Void>> generations = new ConcurrentHashMap<>();
+    private final Counter coalescedRequests;
+    private final Counter coalescingMisses;
+    /**
+     * Regenerates stale responses in the background. This is bounded, so that a burst of stale entries
+     * can't queue up an unbounded amount of work
+     */
+    private final ThreadPoolExecutor refreshExecutor;
+    private final Counter staleHits;
+    private final Counter refreshes;
+    private final Counter refreshFailures;
+    private final Counter refreshRejections;
 
-    public CacheManager() {
+    /**
+     * @param metrics Metrics that the cache statistics are registered to
+     */
+    public CacheManager(final Metrics metrics) {
         cachedIncludes = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedIncludesExpiry, TimeUnit.SECONDS)
             .maximumSize(CoreConfig.Cache.cachedIncludesMaxItems).build();
         cachedFiles = Caffeine.newBuilder()
             .expireAfterWrite(CoreConfig.Cache.cachedFilesExpiry, TimeUnit.SECONDS)
-            .maximumSize(CoreConfig.Cache.cachedFilesMaxItems).build();
-        cachedBodies = Caffeine.newBuilder()
-            .expireAfterWrite(CoreConfig.Cache.cachedBodiesExpiry, TimeUnit.SECONDS)
-            .maximumSize(CoreConfig.Cache.cachedBodiesMaxItems).build();
+            .maximumWeight(CoreConfig.Cache.cachedFilesMaxBytes)
+            .weigher((String path, CachedFile file) -> weigh(file.getWeight())).recordStats()
+            .build();
+        cachedBodies = Caffeine.newBuilder().expireAfter(new CacheEntryExpiry())
+            .maximumWeight(CoreConfig.Cache.cachedBodiesMaxBytes)
+            .weigher((CacheKey key, CacheEntry entry) -> weigh(entry.response.getWeight()))
+            .recordStats().build();
+        varyHeaders = Caffeine.newBuilder().expireAfterWrite(
+            CoreConfig.Cache.cachedBodiesExpiry + CoreConfig.Cache.cachedBodiesStaleTime,
+            TimeUnit.SECONDS).maximumSize(MAX_VARY_ENTRIES).build();
+        refreshExecutor = new ThreadPoolExecutor(CoreConfig.Cache.cachedBodiesRefreshThreads,
+            CoreConfig.Cache.cachedBodiesRefreshThreads, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(Math.max(1, CoreConfig.Cache.cachedBodiesRefreshQueue)),
+            new DefaultThreadFactory("cache-refresh", true));
+        refreshExecutor.allowCoreThreadTimeOut(true);
+        registerStatistics(metrics, "files", cachedFiles);
+        registerStatistics(metrics, "bodies", cachedBodies);
+        coalescedRequests = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "coalesced"));
+        coalescingMisses = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "coalescingMisses"));
+        staleHits = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "staleHits"));
+        refreshes = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "refreshes"));
+        refreshFailures = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "refreshFailures"));
+        refreshRejections = metrics.getRegistry()
+            .counter(MetricRegistry.name(CacheManager.class, "bodies", "refreshRejections"));
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, "bodies", "refreshQueue"),
+            (Gauge<Integer>) () -> refreshExecutor.getQueue().size());
+    }
+
+    /**
+     * Get the weight of a cache entry, which is its size in bytes, including an estimate of the entry overhead
+     *
+     * @param length Content length
+     * @return Entry weight
+     */
+    private static int weigh(final int length) {
+        return (int) Math.min(Integer.MAX_VALUE, (long) length + ENTRY_OVERHEAD);
+    }
+
+    /**
+     * Register gauges for the hit, miss and eviction counts, and the total size (in bytes) of a byte weighted cache
+     *
+     * @param metrics Metrics instance
+     * @param name    Cache name
+     * @param cache   Cache, which has to record statistics
+     */
+    private static void registerStatistics(final Metrics metrics, final String name,
+        final Cache<?, ?> cache) {
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, name, "hits"),
+            (Gauge<Long>) () -> cache.stats().hitCount());
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, name, "misses"),
+            (Gauge<Long>) () -> cache.stats().missCount());
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, name, "evictions"),
+            (Gauge<Long>) () -> cache.stats().evictionCount());
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, name, "evictedBytes"),
+            (Gauge<Long>) () -> cache.stats().evictionWeight());
+        metrics.registerMetric(MetricRegistry.name(CacheManager.class, name, "bytes"),
+            (Gauge<Long>) () -> cache.policy().eviction()
+                .map(eviction -> eviction.weightedSize().orElse(0L)).orElse(0L));
     }
 
     @Override public String getCachedInclude(final String group) {
@@ -75,16 +192,260 @@ import java.util.concurrent.TimeUnit;
         this.cachedFiles.invalidate(path.toString());
     }
 
-    @Override public boolean hasCache(final RequestHandler view) {
-        return this.cachedBodies.getIfPresent(view.toString()) != null;
+    /**
+     * Get the names of the request headers that a response varies on
+     *
+     * @param responseBody Response
+     * @return Lower case header names, or null if the response varies on everything ({@code Vary: *})
+     */
+    private static AsciiString[] getVaryHeaders(final ResponseBody responseBody) {
+        final Collection<AsciiString> values =
+            responseBody.getHeader().getMultiple(Header.HEADER_VARY);
+        if (values.isEmpty()) {
+            return NO_HEADERS;
+        }
+        final Set<AsciiString> names = new LinkedHashSet<>();
+        for (final AsciiString value : values) {
+            for (final String name : value.toString().split(",")) {
+                final String trimmed = name.trim();
+                if (trimmed.equals("*")) {
+                    return null; // Nullable
+                }
+                if (!trimmed.isEmpty()) {
+                    names.add(AsciiString.of(trimmed.toLowerCase(Locale.ENGLISH), false));
+                }
+            }
+        }
+        return names.toArray(new AsciiString[0]);
+    }
+
+    /**
+     * Check whether a response may be stored. Only complete {@code 200 OK} responses to requests without a {@code
+     * Range} header are cached, as the cache key ignores the requested range. Partial and unsatisfiable responses to
+     * range requests would otherwise be served to every client.
+     *
+     * @param request      Request that the response was generated for
+     * @param responseBody Response
+     * @return True if the response may be cached
+     */
+    private static boolean isCacheable(final AbstractRequest request,
+        final ResponseBody responseBody) {
+        return responseBody.getHeader().getStatus().startsWith("200") && request
+            .getHeader(HEADER_RANGE).isEmpty();
+    }
+
+    private static CacheKeyAttributes getCacheKeyAttributes(final RequestHandler view) {
+        if (view instanceof CacheApplicable) {
+            return ((CacheApplicable) view).getCacheKeyAttributes();
+        }
+        return CacheKeyAttributes.DEFAULT;
+    }
+
+    private static CacheEntry createEntry(final RequestHandler view,
+        final ResponseBody responseBody) {
+        final int softTtl;
+        final int hardTtl;
+        if (view instanceof CacheApplicable) {
+            softTtl = ((CacheApplicable) view).getCacheSoftTtl();
+            hardTtl = ((CacheApplicable) view).getCacheHardTtl();
+        } else {
+            softTtl = CoreConfig.Cache.cachedBodiesExpiry;
+            hardTtl = softTtl + CoreConfig.Cache.cachedBodiesStaleTime;
+        }
+        return new CacheEntry(new CachedResponse(responseBody),
+            TimeUnit.SECONDS.toNanos(Math.max(0, softTtl)),
+            TimeUnit.SECONDS.toNanos(Math.max(softTtl, hardTtl)));
+    }
+
+    @Override public CacheKey getCacheKey(final AbstractRequest request,
+        final RequestHandler view) {
+        final CacheKey key = CacheKey.of(request, view, getCacheKeyAttributes(view));
+        final AsciiString[] varyHeaders = this.varyHeaders.getIfPresent(key);
+        if (varyHeaders == null) {
+            return key;
+        }
+        return key.withHeaders(request, varyHeaders);
+    }
+
+    @Override public boolean hasCache(final AbstractRequest request, final RequestHandler view) {
+        return this.getCache(request, view) != null;
+    }
+
+    @Override public void setCache(final AbstractRequest request, final RequestHandler view,
+        final ResponseBody responseBody) {
+        if (!isCacheable(request, responseBody)) {
+            return;
+        }
+        final AsciiString[] varyHeaders = getVaryHeaders(responseBody);
+        if (varyHeaders == null) {
+            return;
+        }
+        final CacheKey key = CacheKey.of(request, view, getCacheKeyAttributes(view));
+        if (varyHeaders.length == 0) {
+            this.varyHeaders.invalidate(key);
+        } else {
+            this.varyHeaders.put(key, varyHeaders);
+        }
+        this.cachedBodies
+            .put(key.withHeaders(request, varyHeaders), createEntry(view, responseBody));
     }
 
-    @Override public void setCache(final RequestHandler view, final ResponseBody responseBody) {
-        this.cachedBodies.put(view.toString(), new CachedResponse(responseBody));
+    @Override public CachedResponse getCache(final AbstractRequest request,
+        final RequestHandler view) {
+        final CacheEntry entry = this.cachedBodies.getIfPresent(this.getCacheKey(request, view));
+        return entry == null ? null : entry.response;
     }
 
-    @Override public CachedResponse getCache(final RequestHandler view) {
-        return this.cachedBodies.getIfPresent(view.toString());
+    /**
+     * Schedule a stale entry to be regenerated, unless it's already being regenerated
+     *
+     * @param entry   Stale entry
+     * @param request Request that found the stale entry
+     * @param view    Handler that generated the entry
+     */
+    private void refresh(final CacheEntry entry, final AbstractRequest request,
+        final RequestHandler view) {
+        this.staleHits.inc();
+        if (!entry.refreshing.compareAndSet(false, true)) {
+            return;
+        }
+        //
+        // The original request is still being served, so the response is generated from a copy
+        //
+        final AbstractRequest copy = request.copy();
+        try {
+            this.refreshExecutor.execute(() -> {
+                try {
+                    final ResponseBody body = view.handle(copy);
+                    if (body != null && body.getResponseStream() instanceof KnownLengthStream
+                        && isCacheable(copy, body)) {
+                        this.setCache(copy, view, body);
+                        this.refreshes.inc();
+                    } else {
+                        this.refreshFailures.inc();
+                    }
+                } catch (final Throwable throwable) {
+                    this.refreshFailures.inc();
+                    Logger.warn("Failed to refresh cached response for {}: {}", view.getName(),
+                        throwable.getMessage());
+                } finally {
+                    entry.refreshing.set(false);
+                }
+            });
+        } catch (final RejectedExecutionException e) {
+            entry.refreshing.set(false);
+            this.refreshRejections.inc();
+            if (CoreConfig.debug) {
+                Logger.debug("Refresh queue is full, serving stale response for {}",
+                    view.getName());
+            }
+        }
+    }
+
+    @Override public CacheLookup lookup(final AbstractRequest request, final RequestHandler view) {
+        final CacheKey key = this.getCacheKey(request, view);
+        final CacheEntry entry = this.cachedBodies.getIfPresent(key);
+        if (entry != null) {
+            if (entry.isStale()) {
+                this.refresh(entry, request, view);
+            }
+            return CacheLookup.hit(entry.response, false);
+        }
+        CachedResponse cachedResponse;
+        if (!CoreConfig.Cache.coalesceRequests) {
+            return CacheLookup.miss(null);
+        }
+
+        final CompletableFuture<Void> generation = new CompletableFuture<>();
+        final CompletableFuture<Void> existing = this.generations.putIfAbsent(key, generation);
+        if (existing == null) {
+            final Runnable completion = () -> {
+                this.generations.remove(key, generation);
+                generation.complete(null);
+            };
+            //
+            // The response may have been cached between the lookup and the registration
+            //
+            final CacheEntry cachedEntry = this.cachedBodies.asMap().get(key);
+            if (cachedEntry != null) {
+                completion.run();
+                return CacheLookup.hit(cachedEntry.response, false);
+            }
+            return CacheLookup.miss(completion);
+        }
+
+        try {
+            existing.get(CoreConfig.Cache.coalescingTimeout, TimeUnit.MILLISECONDS);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final ExecutionException | TimeoutException e) {
+            if (CoreConfig.debug) {
+                Logger.debug("Gave up waiting for {} to be generated", key);
+            }
+        }
+
+        //
+        // The key is computed again, as the generated response may vary on request headers
+        //
+        cachedResponse = this.getCache(request, view);
+        if (cachedResponse == null) {
+            // The response wasn't cacheable, or took too long to generate
+            this.coalescingMisses.inc();
+            return CacheLookup.miss(null);
+        }
+        this.coalescedRequests.inc();
+        return CacheLookup.hit(cachedResponse, true);
+    }
+
+    /**
+     * A cached response, which is served as is until it's stale, and served while it's regenerated
+     * until it expires
+     */
+    private static final class CacheEntry {
+
+        private final CachedResponse response;
+        private final long staleAt;
+        private final long expiry;
+        private final AtomicBoolean refreshing = new AtomicBoolean();
+
+        /**
+         * @param response Cached response
+         * @param softTtl  Nanoseconds until the response is stale
+         * @param hardTtl  Nanoseconds until the response is discarded
+         */
+        private CacheEntry(final CachedResponse response, final long softTtl,
+            final long hardTtl) {
+            this.response = response;
+            this.staleAt = System.nanoTime() + softTtl;
+            this.expiry = hardTtl;
+        }
+
+        private boolean isStale() {
+            return System.nanoTime() - this.staleAt >= 0;
+        }
+
+    }
+
+    /**
+     * Expires entries once their hard time to live has passed. Reading an entry doesn't extend it
+     */
+    private static final class CacheEntryExpiry implements Expiry<CacheKey, CacheEntry> {
+
+        @Override public long expireAfterCreate(final CacheKey key, final CacheEntry entry,
+            final long currentTime) {
+            return entry.expiry;
+        }
+
+        @Override public long expireAfterUpdate(final CacheKey key, final CacheEntry entry,
+            final long currentTime, final long currentDuration) {
+            return entry.expiry;
+        }
+
+        @Override public long expireAfterRead(final CacheKey key, final CacheEntry entry,
+            final long currentTime, final long currentDuration) {
+            return currentDuration;
+        }
+
     }
 
 }
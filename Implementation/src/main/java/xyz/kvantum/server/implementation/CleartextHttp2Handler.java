@@ -0,0 +1,58 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.util.List;
+
+/**
+ * Detects HTTP/2 connections on the plain port, by the connection preface that clients with prior knowledge of
+ * HTTP/2 support start with. Anything else is read as HTTP/1.1. The handler removes itself once it has decided, and
+ * nothing is consumed, so the preface is read by the HTTP/2 codec.
+ */
+@RequiredArgsConstructor final class CleartextHttp2Handler extends ByteToMessageDecoder {
+
+    private static final ByteBuf PREFACE = Http2CodecUtil.connectionPrefaceBuf();
+
+    private final ProtocolType protocolType;
+    private final AdmissionController admission;
+
+    @Override
+    protected void decode(final ChannelHandlerContext context, final ByteBuf in, final List<Object> out) {
+        final int length = Math.min(in.readableBytes(), PREFACE.readableBytes());
+        if (!ByteBufUtil.equals(PREFACE, PREFACE.readerIndex(), in, in.readerIndex(), length)) {
+            context.pipeline().remove(this);
+        } else if (length == PREFACE.readableBytes()) {
+            HttpPipeline.switchToHttp2(context.pipeline(), context.name(), this.protocolType,
+                this.admission);
+            context.pipeline().remove(this);
+        }
+    }
+
+}
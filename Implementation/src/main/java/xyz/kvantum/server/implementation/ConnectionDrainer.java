@@ -0,0 +1,105 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import io.netty.channel.Channel;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.ChannelGroupFuture;
+import io.netty.channel.group.DefaultChannelGroup;
+import io.netty.util.concurrent.GlobalEventExecutor;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps track of the open connections, so that they can be drained when the server is stopped. Draining lets every
+ * connection finish the responses to the requests it has read, and closes it afterwards, rather than cutting off
+ * responses that are being written.
+ */
+final class ConnectionDrainer {
+
+    /**
+     * User event that tells the {@link KvantumServerHandler} of a connection to close it once it is idle
+     */
+    static final Object DRAIN = new Object();
+
+    private final ChannelGroup channels =
+        new DefaultChannelGroup("kvantum-connections", GlobalEventExecutor.INSTANCE);
+    private volatile boolean draining;
+
+    ConnectionDrainer(final Metrics metrics) {
+        metrics.registerMetric(MetricRegistry.name(ConnectionDrainer.class, "open"),
+            (Gauge<Integer>) this.channels::size);
+    }
+
+    /**
+     * Track a connection until it is closed. Connections that are accepted while draining are closed right away.
+     *
+     * @param channel Channel of the connection
+     */
+    void register(final Channel channel) {
+        this.channels.add(channel);
+        if (this.draining) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Drain all open connections, and wait for them to close. HTTP/1.1 connections are closed once they have
+     * answered the requests they have read, and HTTP/2 connections once their open streams are done. Connections
+     * that are still open when the grace period ends are closed.
+     *
+     * @param gracePeriod Time to wait for the connections to close
+     * @param unit        Unit of the grace period
+     * @return Number of connections that were closed gracefully
+     * @throws InterruptedException If the thread is interrupted while waiting
+     */
+    int drain(final long gracePeriod, final TimeUnit unit) throws InterruptedException {
+        this.draining = true;
+        final int open = this.channels.size();
+        final ChannelGroupFuture closed = this.channels.newCloseFuture();
+        for (final Channel channel : this.channels) {
+            if (channel.pipeline().get(KvantumServerHandler.class) == null) {
+                //
+                // Closing an HTTP/2 connection sends GOAWAY, and waits
+                // for the active streams to finish
+                //
+                channel.close();
+            } else {
+                channel.pipeline().fireUserEventTriggered(DRAIN);
+            }
+        }
+        int forced = 0;
+        if (!closed.await(gracePeriod, unit)) {
+            forced = this.channels.size();
+            this.channels.close().awaitUninterruptibly();
+        }
+        final int drained = Math.max(open - forced, 0);
+        Logger.info("Drained {} connection(s), closed {} connection(s) that didn't finish in time",
+            drained, forced);
+        return drained;
+    }
+
+}
@@ -21,118 +21,145 @@
  */
 package xyz.kvantum.server.implementation;
 
-import lombok.Data;
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
 import xyz.kvantum.server.api.config.CoreConfig;
-import xyz.kvantum.server.api.core.ServerImplementation;
-import xyz.kvantum.server.api.event.Listener;
-import xyz.kvantum.server.api.events.ConnectionEstablishedEvent;
 import xyz.kvantum.server.api.logging.Logger;
-import xyz.kvantum.server.api.memguard.LeakageProne;
-import xyz.kvantum.server.api.memguard.MemoryGuard;
-import xyz.kvantum.server.api.util.Assert;
-
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.UnknownHostException;
+import java.util.Arrays;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
-
-final class ConnectionThrottle implements LeakageProne {
 
-    private static ConnectionThrottle instance;
-    private static long timeLimit = -1;
-    private final Map<String, AttemptMapping> attemptMapping;
-
-    private ConnectionThrottle() {
-        //
-        // Make sure that the instance is set!
-        //
-        setInstance(this);
-        //
-        // Initialize the map
-        //
-        attemptMapping = new ConcurrentHashMap<>();
-        //
-        // Register in the memory guard
-        //
-        MemoryGuard.getInstance().register(this);
-        //
-        // Register event listener
-        //
-        ServerImplementation.getImplementation().getEventBus().registerListeners(this);
+/**
+ * Limits the rate at which each address may open connections. Every address has a token bucket that holds up to
+ * {@link CoreConfig.Throttle#limit} tokens, and is refilled by that many tokens per {@link
+ * CoreConfig.Throttle#timeSpan}. Each connection takes a token, and connections that find the bucket empty are
+ * closed as soon as they become active, before anything is read from them.
+ * <p>
+ * The buckets are kept in a cache of bounded size. Buckets that haven't been used for long enough to have been
+ * refilled completely are dropped, as they would let the address connect anyway.
+ */
+@ChannelHandler.Sharable final class ConnectionThrottle extends ChannelInboundHandlerAdapter {
+
+    /**
+     * Number of leading bytes of IPv6 addresses that identify a client, as clients usually control a whole /64
+     */
+    private static final int IPV6_PREFIX_LENGTH = 8;
+
+    private final Cache<InetAddress, Bucket> buckets;
+    private final Meter rejected;
+    private final boolean enabled;
+    private final double capacity;
+    private final double tokensPerNano;
+
+    ConnectionThrottle(final Metrics metrics) {
+        this.enabled = CoreConfig.Throttle.limit > 0;
+        this.capacity = Math.max(CoreConfig.Throttle.limit, 1);
+        final long period = Math.max(TimeUnit.valueOf(CoreConfig.Throttle.timeUnit)
+            .toNanos(CoreConfig.Throttle.timeSpan), 1L);
+        this.tokensPerNano = this.capacity / period;
+        this.buckets = Caffeine.newBuilder().maximumSize(CoreConfig.Throttle.maxAddresses)
+            .expireAfterAccess(period, TimeUnit.NANOSECONDS).build();
+        this.rejected = metrics.getRegistry()
+            .meter(MetricRegistry.name(ConnectionThrottle.class, "rejected"));
+        metrics.registerMetric(MetricRegistry.name(ConnectionThrottle.class, "addresses"),
+            (Gauge<Long>) this.buckets::estimatedSize);
     }
 
-    static void initialize() {
-        setInstance(new ConnectionThrottle());
+    /**
+     * Check whether connections are throttled at all
+     *
+     * @return true if {@link CoreConfig.Throttle#limit} is positive
+     */
+    boolean isEnabled() {
+        return this.enabled;
     }
 
-    private static void setInstance(final ConnectionThrottle instance) {
-        ConnectionThrottle.instance = instance;
+    /**
+     * Take a token from the bucket of an address
+     *
+     * @param address Address of the client
+     * @param now     Current value of {@link System#nanoTime()}
+     * @return true if the client may connect, false if it is throttled
+     */
+    boolean tryAcquire(final InetAddress address, final long now) {
+        if (!this.enabled) {
+            return true;
+        }
+        final Bucket bucket =
+            this.buckets.get(getClientKey(address), key -> new Bucket(this.capacity, now));
+        if (bucket.tryTake(now, this.capacity, this.tokensPerNano)) {
+            return true;
+        }
+        this.rejected.mark();
+        return false;
     }
 
-    private static long getTimeLimit() {
-        if (timeLimit == -1) {
-            timeLimit = TimeUnit.valueOf(CoreConfig.Throttle.timeUnit)
-                .toMillis(CoreConfig.Throttle.timeSpan);
+    private static InetAddress getClientKey(final InetAddress address) {
+        if (!(address instanceof Inet6Address)) {
+            return address;
+        }
+        final byte[] prefix = Arrays.copyOf(address.getAddress(), 16);
+        Arrays.fill(prefix, IPV6_PREFIX_LENGTH, prefix.length, (byte) 0);
+        try {
+            return InetAddress.getByAddress(prefix);
+        } catch (final UnknownHostException e) {
+            return address;
         }
-        return timeLimit;
     }
 
-    private static boolean shouldThrottle(final String address) {
-        Assert.notNull(instance);
+    @Override public void channelActive(final ChannelHandlerContext context) throws Exception {
+        final SocketAddress remoteAddress = context.channel().remoteAddress();
+        if (remoteAddress instanceof InetSocketAddress && !this
+            .tryAcquire(((InetSocketAddress) remoteAddress).getAddress(), System.nanoTime())) {
+            if (CoreConfig.debug) {
+                Logger.debug("Throttling connection from {}", remoteAddress);
+            }
+            context.close();
+            return;
+        }
         //
-        // Make sure that throttling is enabled
+        // The connection is only checked once
         //
-        if (CoreConfig.Throttle.limit <= 0) {
-            return false;
-        }
-        final AttemptMapping attemptMapping;
-        if (!instance.attemptMapping.containsKey(address)) {
-            attemptMapping = new AttemptMapping();
-            attemptMapping.setFirstAttempt(new AtomicLong(System.currentTimeMillis()));
-            attemptMapping.setIp(address);
-            instance.attemptMapping.put(address, attemptMapping);
-        } else {
-            attemptMapping = instance.attemptMapping.get(address);
-        }
+        context.pipeline().remove(this);
+        super.channelActive(context);
+    }
 
-        if (instance.shouldReset(attemptMapping)) {
-            attemptMapping.getTotalAttempts().set(0);
-            attemptMapping.getFirstAttempt().set(System.currentTimeMillis());
-        }
+    private static final class Bucket {
 
-        final int totalAttempts = attemptMapping.getTotalAttempts().incrementAndGet();
-        return totalAttempts > CoreConfig.Throttle.limit;
-    }
+        private double tokens;
+        private long updated;
 
-    @Listener @SuppressWarnings("unused")
-    private void listenForConnections(final ConnectionEstablishedEvent establishedEvent) {
-        if (CoreConfig.debug) {
-            Logger.debug("Checking for throttle for {}", establishedEvent.getIp());
+        private Bucket(final double tokens, final long now) {
+            this.tokens = tokens;
+            this.updated = now;
         }
-        establishedEvent.setCancelled(shouldThrottle(establishedEvent.getIp()));
-    }
-
-    private boolean shouldReset(final AttemptMapping attemptMapping) {
-        final long timeDifference =
-            System.currentTimeMillis() - attemptMapping.getFirstAttempt().get();
-        return getTimeLimit() <= timeDifference;
-    }
 
-    @Override public void cleanUp() {
-        final List<AttemptMapping> shouldReset =
-            this.attemptMapping.values().stream().filter(this::shouldReset)
-                .collect(Collectors.toList());
-        shouldReset.forEach(a -> attemptMapping.remove(a.getIp()));
-        Logger.info("Cleaned up {} stored connection attempts!", shouldReset.size());
-    }
+        private synchronized boolean tryTake(final long now, final double capacity,
+            final double tokensPerNano) {
+            if (now > this.updated) {
+                this.tokens =
+                    Math.min(capacity, this.tokens + (now - this.updated) * tokensPerNano);
+                this.updated = now;
+            }
+            if (this.tokens < 1D) {
+                return false;
+            }
+            this.tokens -= 1D;
+            return true;
+        }
 
-    @Data private static final class AttemptMapping {
-        private String ip;
-        private AtomicLong firstAttempt;
-        private AtomicInteger totalAttempts = new AtomicInteger(0);
     }
 
 }
@@ -21,10 +21,13 @@
  */
 package xyz.kvantum.server.implementation;
 
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.MultithreadEventLoopGroup;
 import io.netty.channel.ServerChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
 
 /**
  * Class resolver that returns standard Netty NIO classes
@@ -39,4 +42,10 @@ final class DefaultClassResolver implements NioClassResolver.ClassProvider {
         return NioServerSocketChannel.class;
     }
 
+    @Override public void applyOptions(final ServerBootstrap bootstrap) {
+        if (CoreConfig.Sockets.tcpFastOpen > 0 || CoreConfig.Sockets.deferAccept > 0) {
+            Logger.warn("TCP Fast Open and deferred accepts require epoll, and are not used");
+        }
+    }
+
 }
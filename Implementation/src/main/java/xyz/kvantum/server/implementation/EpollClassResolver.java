@@ -21,10 +21,13 @@
  */
 package xyz.kvantum.server.implementation;
 
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.MultithreadEventLoopGroup;
 import io.netty.channel.ServerChannel;
+import io.netty.channel.epoll.EpollChannelOption;
 import io.netty.channel.epoll.EpollEventLoopGroup;
 import io.netty.channel.epoll.EpollServerSocketChannel;
+import xyz.kvantum.server.api.config.CoreConfig;
 
 /**
  * Class resolver that returns native Epoll implementations
@@ -39,4 +42,20 @@ final class EpollClassResolver implements NioClassResolver.ClassProvider {
         return EpollServerSocketChannel.class;
     }
 
+    @Override public boolean isReusePortSupported() {
+        return true;
+    }
+
+    @Override public void applyOptions(final ServerBootstrap bootstrap) {
+        if (CoreConfig.Sockets.acceptors > 1) {
+            bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+        }
+        if (CoreConfig.Sockets.tcpFastOpen > 0) {
+            bootstrap.option(EpollChannelOption.TCP_FASTOPEN, CoreConfig.Sockets.tcpFastOpen);
+        }
+        if (CoreConfig.Sockets.deferAccept > 0) {
+            bootstrap.option(EpollChannelOption.TCP_DEFER_ACCEPT, CoreConfig.Sockets.deferAccept);
+        }
+    }
+
 }
@@ -22,75 +22,125 @@
 package xyz.kvantum.server.implementation;
 
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.Unpooled;
-import lombok.SneakyThrows;
-import xyz.kvantum.server.api.util.Assert;
-import xyz.kvantum.server.api.util.AutoCloseable;
-import xyz.kvantum.server.implementation.cache.ThreadCache;
-import xyz.kvantum.server.implementation.compression.ParallelGZIPOutputStream;
-import xyz.kvantum.server.implementation.compression.ReusableByteArrayOutputStream;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.response.ContentEncoding;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.GZIPOutputStream;
 
 /**
- * Handler for Gzip compression
+ * Gzip compression of a single response body. The body is compressed as one gzip member, and every chunk is flushed
+ * so that it can be sent as soon as it has been compressed. Handlers are not shared, and the deflater is released
+ * once the handler is closed.
  */
-final class GzipHandler extends AutoCloseable {
+final class GzipHandler {
 
-    private final ParallelGZIPOutputStream reusableGzipOutputStream;
-    private final ReusableByteArrayOutputStream buffer;
+    private static final int BUFFER_SIZE = 8192;
 
-    @SneakyThrows GzipHandler() {
-        this.buffer = new ReusableByteArrayOutputStream(ThreadCache.COMPRESS_BUFFER.get());
-        this.reusableGzipOutputStream = new ParallelGZIPOutputStream(buffer);
+    private final TargetStream target = new TargetStream();
+    private final GZIPOutputStream gzipOutputStream;
+
+    GzipHandler() throws IOException {
+        this.gzipOutputStream = createStream(this.target);
     }
 
-    @Override protected void handleClose() {
-        try {
-            this.reusableGzipOutputStream.close();
-        } catch (final Exception e) {
-            e.printStackTrace();
-        }
+    private static GZIPOutputStream createStream(final OutputStream outputStream)
+        throws IOException {
+        return new GZIPOutputStream(outputStream, BUFFER_SIZE, true) {
+            {
+                this.def.setLevel(CoreConfig.Compression.level);
+            }
+        };
     }
 
     /**
-     * Compress bytes using gzip
-     * <p>
-     * TODO optimize (though not super important since it's only used for fixed getCount)
+     * Compress a complete body
      *
      * @param data Bytes to compress
      * @return GZIP compressed data
      * @throws IOException If compression fails
      */
-    byte[] compress(final byte[] data) throws IOException {
-        Assert.notNull(data);
+    static byte[] compress(final byte[] data) throws IOException {
+        return ContentEncoding.GZIP.encode(data, CoreConfig.Compression.level);
+    }
 
-        buffer.reset();
-        reusableGzipOutputStream.reset();
-        reusableGzipOutputStream.write(data);
-        reusableGzipOutputStream.close();
+    /**
+     * Compress a chunk of the body, and write everything that has been compressed so far to a buffer
+     *
+     * @param input  Input data
+     * @param length Length of input to compress
+     * @param output Buffer to write the compressed data to
+     * @throws IOException If compression fails
+     */
+    void compress(final byte[] input, final int length, final ByteBuf output) throws IOException {
+        this.target.attach(output);
+        try {
+            this.gzipOutputStream.write(input, 0, length);
+            this.gzipOutputStream.flush();
+        } finally {
+            this.target.attach(null);
+        }
+    }
 
-        final byte[] compressed = buffer.toByteArray();
-        Assert.equals(compressed.length > 0, true, "Failed to compress data");
+    /**
+     * Finish the body, writing the remaining compressed data and the gzip trailer to a buffer
+     *
+     * @param output Buffer to write the compressed data to
+     * @throws IOException If compression fails
+     */
+    void finish(final ByteBuf output) throws IOException {
+        this.target.attach(output);
+        try {
+            this.gzipOutputStream.finish();
+        } finally {
+            this.target.attach(null);
+        }
+    }
 
-        return compressed;
+    /**
+     * Release the deflater
+     */
+    void close() {
+        try {
+            this.gzipOutputStream.close();
+        } catch (final IOException ignored) {
+        }
     }
 
     /**
-     * Compresses the input bytes into the buffer and returns the new length
-     *
-     * @param input       Input data
-     * @param inputLength length of input to compress
-     * @return compressed length (in buffer)
+     * Stream that writes to the buffer of the chunk that is being compressed. Anything written while there is no
+     * such buffer (the gzip header) is held back until there is.
      */
-    ByteBuf compress(final byte[] input, final int inputLength) throws IOException {
-        Assert.notNull(input);
+    private static final class TargetStream extends OutputStream {
+
+        private final ByteArrayOutputStream pending = new ByteArrayOutputStream(16);
+        private ByteBuf output;
 
-        buffer.reset();
-        reusableGzipOutputStream.reset();
-        reusableGzipOutputStream.write(input, 0, inputLength);
-        reusableGzipOutputStream.close();
+        private void attach(final ByteBuf output) {
+            this.output = output;
+            if (output != null && this.pending.size() > 0) {
+                output.writeBytes(this.pending.toByteArray());
+                this.pending.reset();
+            }
+        }
 
-        return Unpooled.wrappedBuffer(buffer.getBuffer(), 0, buffer.getCount());
+        @Override public void write(final int b) {
+            if (this.output == null) {
+                this.pending.write(b);
+            } else {
+                this.output.writeByte(b);
+            }
+        }
+
+        @Override public void write(final byte[] b, final int off, final int len) {
+            if (this.output == null) {
+                this.pending.write(b, off, len);
+            } else {
+                this.output.writeBytes(b, off, len);
+            }
+        }
     }
+
 }
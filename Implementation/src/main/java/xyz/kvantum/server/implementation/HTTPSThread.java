@@ -21,36 +21,41 @@
  */
 package xyz.kvantum.server.implementation;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.bytes.ByteArrayEncoder;
+import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslHandler;
 import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.ProtocolType;
 import xyz.kvantum.server.implementation.error.KvantumInitializationException;
 
-import javax.net.ssl.KeyManagerFactory;
-import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
-import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.security.KeyManagementException;
-import java.security.KeyStore;
-import java.security.KeyStoreException;
-import java.security.NoSuchAlgorithmException;
-import java.security.UnrecoverableKeyException;
-import java.security.cert.CertificateException;
+import java.security.GeneralSecurityException;
+import java.util.List;
 
 /**
  * SSL implementation of the ordinary runner
  */
 final class HTTPSThread extends Thread {
 
+    //
+    // Metrics
+    //
+    private static final Timer TIMER_HANDSHAKE =
+        ServerImplementation.getImplementation().getMetrics().getRegistry()
+            .timer(MetricRegistry.name(HTTPSThread.class, "handshake"));
+    private static final Meter METER_HANDSHAKE_FAILURES =
+        ServerImplementation.getImplementation().getMetrics().getRegistry()
+            .meter(MetricRegistry.name(HTTPSThread.class, "handshakeFailures"));
+
     //
     // Netty
     //
@@ -58,49 +63,63 @@ final class HTTPSThread extends Thread {
     private final EventLoopGroup workerGroup;
     private final ServerBootstrap serverBootstrap;
 
-    private ChannelFuture future;
+    private final int acceptors;
+    private List<ChannelFuture> futures;
 
-    HTTPSThread(final NioClassResolver classResolver)
+    HTTPSThread(final NioClassResolver classResolver, final ConnectionThrottle throttle,
+        final ConnectionDrainer connections, final AdmissionController admission)
         throws KvantumInitializationException {
         super("https");
         this.setPriority(Thread.MAX_PRIORITY);
 
+        this.acceptors = SocketOptions.acceptors(classResolver.getClassProvider());
         this.workerGroup = classResolver.getClassProvider()
             .getEventLoopGroup(CoreConfig.Pools.httpsWorkerGroupThreads);
-        this.bossGroup = classResolver.getClassProvider()
-            .getEventLoopGroup(CoreConfig.Pools.httpsBossGroupThreads);
+        this.bossGroup = classResolver.getClassProvider().getEventLoopGroup(
+            SocketOptions.bossThreads(CoreConfig.Pools.httpsBossGroupThreads, this.acceptors));
 
         try {
-            final KeyStore keyStore = KeyStore.getInstance("JKS");
-            keyStore.load(new FileInputStream(new File(CoreConfig.SSL.keyStore)),
-                CoreConfig.SSL.keyStorePassword.toCharArray());
-            final KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance("SunX509");
-            keyManagerFactory.init(keyStore, CoreConfig.SSL.keyStorePassword.toCharArray());
-            final SSLContext sslContext = SSLContext.getInstance("TLS");
-            sslContext.init(keyManagerFactory.getKeyManagers(), null, null);
+            final SslContext sslContext = SslContextFactory.create();
 
             this.serverBootstrap = new ServerBootstrap();
+            SocketOptions.apply(this.serverBootstrap, classResolver.getClassProvider());
             serverBootstrap.group(bossGroup, workerGroup)
                 .channel(classResolver.getClassProvider().getServerSocketChannelClass())
                 .childHandler(new ChannelInitializer<SocketChannel>() {
                     @Override protected void initChannel(final SocketChannel ch) throws Exception {
-                        final SSLEngine sslEngine = sslContext.createSSLEngine();
-                        sslEngine.setUseClientMode(false);
-                        sslEngine.setNeedClientAuth(false);
-                        ch.pipeline().addLast(new SslHandler(sslEngine));
-                        ch.pipeline().addLast(new KvantumReadTimeoutHandler());
-                        ch.pipeline().addLast(new ByteArrayEncoder());
-                        ch.pipeline().addLast(new KvantumServerHandler(ProtocolType.HTTPS));
+                        final SslHandler sslHandler = sslContext.newHandler(ch.alloc());
+                        final Timer.Context handshakeTimer = TIMER_HANDSHAKE.time();
+                        sslHandler.handshakeFuture().addListener(future -> {
+                            if (future.isSuccess()) {
+                                handshakeTimer.stop();
+                            } else {
+                                METER_HANDSHAKE_FAILURES.mark();
+                            }
+                        });
+                        ch.pipeline().addLast(sslHandler);
+                        HttpPipeline.addConnectionHandlers(ch, throttle, connections);
+                        if (CoreConfig.Http2.enable) {
+                            ch.pipeline().addLast(new Http2NegotiationHandler(admission));
+                        }
+                        HttpPipeline
+                            .addHttp1Handlers(ch.pipeline(), ProtocolType.HTTPS, admission);
                     }
                 });
-        } catch (final NoSuchAlgorithmException | KeyStoreException | IOException | CertificateException | UnrecoverableKeyException | KeyManagementException e) {
+        } catch (final IOException | GeneralSecurityException e) {
             throw new KvantumInitializationException("Failed to create SSL socket", e);
         }
     }
 
+    /**
+     * Stop accepting new connections. Open connections are left alone.
+     */
+    void stopAccepting() {
+        SocketOptions.unbind(this.futures);
+    }
+
     void close() {
         try {
-            if (this.future != null) {
+            if (this.futures != null) {
                 Logger.info("Closing ssl boss group...");
                 this.bossGroup.shutdownGracefully().sync();
                 Logger.info("Closing ssl worker group...");
@@ -114,7 +133,8 @@ final class HTTPSThread extends Thread {
 
     @Override public void run() {
         try {
-            this.future = serverBootstrap.bind(CoreConfig.SSL.port).sync();
+            this.futures =
+                SocketOptions.bind(serverBootstrap, CoreConfig.SSL.port, this.acceptors);
         } catch (final InterruptedException e) {
             e.printStackTrace();
         }
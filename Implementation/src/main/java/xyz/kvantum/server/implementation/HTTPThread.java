@@ -24,15 +24,15 @@ package xyz.kvantum.server.implementation;
 import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelInitializer;
-import io.netty.channel.ChannelOption;
 import io.netty.channel.EventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.handler.codec.bytes.ByteArrayEncoder;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.ProtocolType;
 import xyz.kvantum.server.implementation.error.KvantumInitializationException;
 
+import java.util.List;
+
 @SuppressWarnings("unused") final class HTTPThread extends Thread {
 
     //
@@ -45,17 +45,20 @@ import xyz.kvantum.server.implementation.error.KvantumInitializationException;
     // Kvantum
     //
     private final int port;
-    private ChannelFuture future;
+    private final int acceptors;
+    private List<ChannelFuture> futures;
 
-    HTTPThread(final ServerSocketFactory serverSocketFactory, final NioClassResolver classResolver)
-        throws KvantumInitializationException {
+    HTTPThread(final ServerSocketFactory serverSocketFactory, final NioClassResolver classResolver,
+        final ConnectionThrottle throttle, final ConnectionDrainer connections,
+        final AdmissionController admission) throws KvantumInitializationException {
         super("http");
         this.setPriority(Thread.MAX_PRIORITY);
 
+        this.acceptors = SocketOptions.acceptors(classResolver.getClassProvider());
         this.workerGroup = classResolver.getClassProvider()
             .getEventLoopGroup(CoreConfig.Pools.httpWorkerGroupThreads);
-        this.bossGroup = classResolver.getClassProvider()
-            .getEventLoopGroup(CoreConfig.Pools.httpBossGroupThreads);
+        this.bossGroup = classResolver.getClassProvider().getEventLoopGroup(
+            SocketOptions.bossThreads(CoreConfig.Pools.httpBossGroupThreads, this.acceptors));
 
         if (!serverSocketFactory.createServerSocket()) {
             throw new KvantumInitializationException("Failed to start server...");
@@ -64,21 +67,31 @@ import xyz.kvantum.server.implementation.error.KvantumInitializationException;
         this.port = serverSocketFactory.getServerSocketPort();
 
         this.serverBootstrap = new ServerBootstrap();
-        this.serverBootstrap.option(ChannelOption.SO_BACKLOG, 1024);
+        SocketOptions.apply(this.serverBootstrap, classResolver.getClassProvider());
         serverBootstrap.group(bossGroup, workerGroup)
             .channel(classResolver.getClassProvider().getServerSocketChannelClass())
             .childHandler(new ChannelInitializer<SocketChannel>() {
                 @Override protected void initChannel(final SocketChannel ch) {
-                    ch.pipeline().addLast(new KvantumReadTimeoutHandler())
-                        .addLast(new ByteArrayEncoder())
-                        .addLast(new KvantumServerHandler(ProtocolType.HTTP));
+                    HttpPipeline.addConnectionHandlers(ch, throttle, connections);
+                    if (CoreConfig.Http2.enable) {
+                        ch.pipeline()
+                            .addLast(new CleartextHttp2Handler(ProtocolType.HTTP, admission));
+                    }
+                    HttpPipeline.addHttp1Handlers(ch.pipeline(), ProtocolType.HTTP, admission);
                 }
             });
     }
 
+    /**
+     * Stop accepting new connections. Open connections are left alone.
+     */
+    void stopAccepting() {
+        SocketOptions.unbind(this.futures);
+    }
+
     void close() {
         try {
-            if (this.future != null) {
+            if (this.futures != null) {
                 Logger.info("Closing boss group...");
                 this.bossGroup.shutdownGracefully().sync();
                 Logger.info("Closing worker group...");
@@ -92,7 +105,7 @@ import xyz.kvantum.server.implementation.error.KvantumInitializationException;
 
     @Override public void run() {
         try {
-            this.future = serverBootstrap.bind(this.port).sync();
+            this.futures = SocketOptions.bind(serverBootstrap, this.port, this.acceptors);
         } catch (final InterruptedException e) {
             e.printStackTrace();
         }
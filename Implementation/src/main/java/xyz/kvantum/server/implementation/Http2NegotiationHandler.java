@@ -0,0 +1,52 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+/**
+ * Switches encrypted connections to HTTP/2 when the client picks it using ALPN. The HTTP/1.1 handlers are kept
+ * otherwise.
+ */
+final class Http2NegotiationHandler extends ApplicationProtocolNegotiationHandler {
+
+    private final AdmissionController admission;
+
+    Http2NegotiationHandler(final AdmissionController admission) {
+        super(ApplicationProtocolNames.HTTP_1_1);
+        this.admission = admission;
+    }
+
+    @Override
+    protected void configurePipeline(final ChannelHandlerContext context, final String protocol) {
+        if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+            HttpPipeline.switchToHttp2(context.pipeline(), context.name(), ProtocolType.HTTPS,
+                this.admission);
+        } else if (!ApplicationProtocolNames.HTTP_1_1.equals(protocol)) {
+            throw new IllegalStateException("Unknown protocol: " + protocol);
+        }
+    }
+
+}
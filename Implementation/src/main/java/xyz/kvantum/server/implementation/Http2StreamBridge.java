@@ -0,0 +1,215 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelDuplexHandler;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelPromise;
+import io.netty.handler.codec.ByteToMessageDecoder;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpHeaders;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.util.ReferenceCountUtil;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Connects a HTTP/2 stream to a {@link KvantumServerHandler}. The request of the stream is passed on as a HTTP/1.1
+ * request, with a chunked body if its length isn't known up front. The HTTP/1.1 response that is written is parsed
+ * back into a message that is sent as frames. Headers are compressed and the stream's flow control window is managed
+ * by the HTTP/2 codec of the connection.
+ */
+final class Http2StreamBridge extends ChannelDuplexHandler {
+
+    private static final byte[] HTTP_VERSION = AsciiString.of(" HTTP/1.1\r\n").getValue();
+    private static final byte[] COLON_SPACE = AsciiString.of(": ").getValue();
+    private static final byte[] CRLF = AsciiString.of("\r\n").getValue();
+    private static final byte[] END_CHUNK = AsciiString.of("0\r\n\r\n").getValue();
+    //
+    // The responses are written by Kvantum itself, so the limits only have
+    // to cover what it writes. Chunks are as large as the default frame size.
+    //
+    private static final int MAX_INITIAL_LINE_LENGTH = 4096;
+    private static final int MAX_HEADER_SIZE = 1024 * 1024;
+    private static final int MAX_CHUNK_SIZE = 16_384;
+
+    private final ResponseDecoder responseDecoder = new ResponseDecoder();
+    private boolean chunked;
+    private ByteBuf cumulation;
+    private ChannelFuture lastWrite;
+
+    @Override public void channelRead(final ChannelHandlerContext context, final Object message) {
+        try {
+            if (message instanceof HttpRequest) {
+                context.fireChannelRead(this.encodeHead(context, (HttpRequest) message));
+            }
+            if (message instanceof HttpContent) {
+                this.readContent(context, (HttpContent) message);
+            }
+        } finally {
+            ReferenceCountUtil.release(message);
+        }
+    }
+
+    private ByteBuf encodeHead(final ChannelHandlerContext context, final HttpRequest request) {
+        final HttpHeaders headers = request.headers();
+        //
+        // Every stream carries a single request
+        //
+        headers.remove(HttpHeaderNames.CONNECTION);
+        if (request instanceof FullHttpRequest) {
+            final int length = ((FullHttpRequest) request).content().readableBytes();
+            if (length > 0 && !headers.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+                headers.set(HttpHeaderNames.CONTENT_LENGTH, length);
+            }
+        } else if (!headers.contains(HttpHeaderNames.CONTENT_LENGTH)) {
+            this.chunked = true;
+            headers.set(HttpHeaderNames.TRANSFER_ENCODING, HttpHeaderValues.CHUNKED);
+        }
+        final ByteBuf head = context.alloc().buffer();
+        ByteBufUtil.writeAscii(head, request.method().asciiName());
+        head.writeByte(' ');
+        ByteBufUtil.writeUtf8(head, request.uri());
+        head.writeBytes(HTTP_VERSION);
+        final Iterator<Map.Entry<CharSequence, CharSequence>> iterator =
+            headers.iteratorCharSequence();
+        while (iterator.hasNext()) {
+            final Map.Entry<CharSequence, CharSequence> header = iterator.next();
+            ByteBufUtil.writeAscii(head, header.getKey());
+            head.writeBytes(COLON_SPACE);
+            ByteBufUtil.writeAscii(head, header.getValue());
+            head.writeBytes(CRLF);
+        }
+        return head.writeBytes(CRLF);
+    }
+
+    private void readContent(final ChannelHandlerContext context, final HttpContent content) {
+        final ByteBuf data = content.content();
+        if (!this.chunked) {
+            if (data.isReadable()) {
+                context.fireChannelRead(data.retain());
+            }
+            return;
+        }
+        if (data.isReadable()) {
+            final ByteBuf chunk = context.alloc().buffer(data.readableBytes() + 16);
+            ByteBufUtil.writeAscii(chunk, Integer.toHexString(data.readableBytes()));
+            chunk.writeBytes(CRLF).writeBytes(data, data.readerIndex(), data.readableBytes())
+                .writeBytes(CRLF);
+            context.fireChannelRead(chunk);
+        }
+        if (content instanceof LastHttpContent) {
+            context.fireChannelRead(context.alloc().buffer(END_CHUNK.length).writeBytes(END_CHUNK));
+        }
+    }
+
+    @Override
+    public void write(final ChannelHandlerContext context, final Object message,
+        final ChannelPromise promise) throws Exception {
+        if (!(message instanceof ByteBuf)) {
+            this.lastWrite = context.write(message, promise);
+            return;
+        }
+        this.cumulation = this.cumulation == null ?
+            (ByteBuf) message :
+            ByteToMessageDecoder.MERGE_CUMULATOR
+                .cumulate(context.alloc(), this.cumulation, (ByteBuf) message);
+        final List<Object> messages = new ArrayList<>();
+        try {
+            while (this.cumulation.isReadable()) {
+                final int readable = this.cumulation.readableBytes();
+                final int decoded = messages.size();
+                this.responseDecoder.decodeResponse(context, this.cumulation, messages);
+                if (readable == this.cumulation.readableBytes() && decoded == messages.size()) {
+                    break;
+                }
+            }
+        } finally {
+            if (this.cumulation.isReadable()) {
+                this.cumulation.discardSomeReadBytes();
+            } else {
+                this.cumulation.release();
+                this.cumulation = null;
+            }
+        }
+        if (messages.isEmpty()) {
+            //
+            // The promise completes once everything written before it has been
+            // written, just like the write of an empty buffer would
+            //
+            final ChannelFuture lastWrite = this.lastWrite;
+            if (lastWrite == null) {
+                promise.trySuccess();
+            } else {
+                lastWrite.addListener(future -> {
+                    if (future.isSuccess()) {
+                        promise.trySuccess();
+                    } else {
+                        promise.tryFailure(future.cause());
+                    }
+                });
+            }
+            return;
+        }
+        final int last = messages.size() - 1;
+        for (int i = 0; i < last; i++) {
+            context.write(messages.get(i));
+        }
+        this.lastWrite = context.write(messages.get(last), promise);
+    }
+
+    @Override public void handlerRemoved(final ChannelHandlerContext context) {
+        if (this.cumulation != null) {
+            this.cumulation.release();
+            this.cumulation = null;
+        }
+    }
+
+    /**
+     * Parses the HTTP/1.1 responses that are written to the stream
+     */
+    private static final class ResponseDecoder extends HttpResponseDecoder {
+
+        private ResponseDecoder() {
+            super(MAX_INITIAL_LINE_LENGTH, MAX_HEADER_SIZE, MAX_CHUNK_SIZE);
+        }
+
+        private void decodeResponse(final ChannelHandlerContext context, final ByteBuf in,
+            final List<Object> out) throws Exception {
+            this.decode(context, in, out);
+        }
+
+    }
+
+}
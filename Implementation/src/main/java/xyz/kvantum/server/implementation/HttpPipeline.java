@@ -0,0 +1,122 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelPipeline;
+import io.netty.handler.codec.bytes.ByteArrayEncoder;
+import io.netty.handler.codec.http2.Http2MultiplexCodecBuilder;
+import io.netty.handler.codec.http2.Http2Settings;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.handler.timeout.IdleStateHandler;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets up the handlers of connections. HTTP/1.1 connections are handled by a {@link KvantumServerHandler} directly.
+ * HTTP/2 connections are handled by a multiplexing codec that gives every stream a channel of its own. Each stream
+ * channel translates its frames to HTTP/1.1 messages and back, and has a {@link KvantumServerHandler} of its own.
+ */
+final class HttpPipeline {
+
+    private static final String ENCODER = "kvantumEncoder";
+    private static final String CHUNKED_WRITER = "kvantumChunkedWriter";
+    private static final String HANDLER = "kvantumHandler";
+    private static final String HTTP2_CODEC = "kvantumHttp2Codec";
+
+    private HttpPipeline() {
+    }
+
+    /**
+     * Add the handlers that time out inactive connections to the end of the pipeline of a new connection, and keep
+     * track of the connection until it is closed. The throttle is added to the start of the pipeline, so that
+     * throttled connections are closed before any other handler sees them.
+     *
+     * @param channel     Channel of the connection
+     * @param throttle    Connection throttle
+     * @param connections Open connections
+     */
+    static void addConnectionHandlers(final Channel channel, final ConnectionThrottle throttle,
+        final ConnectionDrainer connections) {
+        if (throttle.isEnabled()) {
+            channel.pipeline().addFirst(throttle);
+        }
+        channel.pipeline().addLast(new KvantumReadTimeoutHandler());
+        if (CoreConfig.Connections.idleTimeout > 0) {
+            channel.pipeline().addLast(
+                new IdleStateHandler(0, 0, CoreConfig.Connections.idleTimeout, TimeUnit.SECONDS));
+        }
+        connections.register(channel);
+    }
+
+    /**
+     * Add the handlers of HTTP/1.1 requests to the end of a pipeline
+     *
+     * @param pipeline     Pipeline of the connection
+     * @param protocolType Protocol of the connection
+     * @param admission    Admission controller of the server
+     */
+    static void addHttp1Handlers(final ChannelPipeline pipeline, final ProtocolType protocolType,
+        final AdmissionController admission) {
+        pipeline.addLast(ENCODER, new ByteArrayEncoder())
+            .addLast(CHUNKED_WRITER, new ChunkedWriteHandler())
+            .addLast(HANDLER, new KvantumServerHandler(protocolType, admission));
+    }
+
+    /**
+     * Replace the HTTP/1.1 handlers of a connection with the HTTP/2 codec, once the connection has turned out to
+     * use HTTP/2
+     *
+     * @param pipeline     Pipeline of the connection
+     * @param baseName     Name of the handler that the codec is added after
+     * @param protocolType Protocol of the connection
+     * @param admission    Admission controller of the server
+     */
+    static void switchToHttp2(final ChannelPipeline pipeline, final String baseName,
+        final ProtocolType protocolType, final AdmissionController admission) {
+        pipeline.remove(HANDLER);
+        pipeline.remove(CHUNKED_WRITER);
+        pipeline.remove(ENCODER);
+        pipeline.addAfter(baseName, HTTP2_CODEC, createHttp2Codec(protocolType, admission));
+    }
+
+    private static ChannelHandler createHttp2Codec(final ProtocolType protocolType,
+        final AdmissionController admission) {
+        final Http2Settings settings = Http2Settings.defaultSettings()
+            .maxConcurrentStreams(CoreConfig.Http2.maxConcurrentStreams)
+            .initialWindowSize(CoreConfig.Http2.initialWindowSize)
+            .maxHeaderListSize(CoreConfig.Http2.maxHeaderListSize);
+        return Http2MultiplexCodecBuilder.forServer(new ChannelInitializer<Channel>() {
+            @Override protected void initChannel(final Channel channel) {
+                channel.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(true))
+                    .addLast(new Http2StreamBridge());
+                addHttp1Handlers(channel.pipeline(), protocolType, admission);
+            }
+        }).initialSettings(settings).build();
+    }
+
+}
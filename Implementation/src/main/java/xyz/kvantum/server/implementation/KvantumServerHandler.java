@@ -21,11 +21,17 @@
  */
 package xyz.kvantum.server.implementation;
 
+import com.codahale.metrics.Meter;
 import com.codahale.metrics.MetricRegistry;
 import com.codahale.metrics.Timer;
 import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.timeout.IdleStateEvent;
 import io.netty.handler.timeout.ReadTimeoutException;
 import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.config.CoreConfig;
@@ -34,11 +40,16 @@ import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.events.ConnectionEstablishedEvent;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.Request;
+import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.socket.SocketContext;
 import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.HttpDate;
 import xyz.kvantum.server.api.util.ProtocolType;
 
 import java.net.SocketAddress;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
 
 /**
@@ -51,9 +62,6 @@ import java.util.function.Supplier;
     // Cached content
     //
     static final String CONTENT_TYPE = "content_type";
-    static final byte[] NEW_LINE = AsciiString.of("\n").getValue();
-    static final byte[] COLON_SPACE = AsciiString.of(": ").getValue();
-    static final byte[] SPACE = AsciiString.of(" ").getValue();
     static final byte[] CRLF = AsciiString.of("\r\n").getValue();
     static final byte[] END_CHUNK = AsciiString.of("0\r\n\r\n").getValue();
     static final AsciiString KEEP_ALIVE = AsciiString.of("keep-alive");
@@ -61,6 +69,9 @@ import java.util.function.Supplier;
     static final AsciiString CONNECTION = AsciiString.of("connection");
     static final int MAX_LENGTH =
         AsciiString.of(Integer.toHexString(Integer.MAX_VALUE)).length() + (2 * CRLF.length);
+    private static final byte[] REQUEST_TIMEOUT = AsciiString.of(
+        "HTTP/1.1 " + Header.STATUS_REQUEST_TIMEOUT + "\r\nContent-Length: 0\r\n"
+            + "Connection: close\r\nDate: ").getValue();
 
     //
     // Metrics
@@ -83,15 +94,46 @@ import java.util.function.Supplier;
     static final Timer TIMER_READ_BYTES =
         ServerImplementation.getImplementation().getMetrics().getRegistry()
             .timer(MetricRegistry.name(KvantumServerHandler.class, "readBytes"));
+    private static final Meter METER_HEAD_TIMEOUTS =
+        ServerImplementation.getImplementation().getMetrics().getRegistry()
+            .meter(MetricRegistry.name(KvantumServerHandler.class, "headTimeouts"));
 
     //
     // Instance variables
     //
     private final ProtocolType protocolType;
+    /**
+     * Admits the requests of the server that the connection belongs to
+     */
+    private final AdmissionController admission;
+    /**
+     * Parses the request heads of this channel, and is reused for every request
+     */
+    private final RequestParser requestParser = new RequestParser();
 
     private WorkerContext workerContext;
     RequestReader requestReader;
     boolean reused = false;
+    /**
+     * Bytes that follow a request whose body is still being written to disk
+     */
+    private ByteBuf leftover;
+    /**
+     * Whether everything that is read from now on is ignored, as the connection is about to be closed
+     */
+    private boolean discard;
+    /**
+     * Whether the connection is closed once the requests that have been read are answered
+     */
+    private boolean draining;
+    /**
+     * Number of requests that have been read from the connection
+     */
+    private int requests;
+    /**
+     * Answers the current request with 408 if its head doesn't arrive in time
+     */
+    private ScheduledFuture<?> headDeadline;
 
     @Override public void handlerAdded(final ChannelHandlerContext context) {
         //
@@ -109,15 +151,29 @@ import java.util.function.Supplier;
     }
 
     void createNew(final SocketContext socketContext) {
+        final WorkerContext previous = this.workerContext;
         this.workerContext = new WorkerContext(ServerImplementation.getImplementation(),
             ServerImplementation.getImplementation().getProcedure().getInstance(), this);
+        //
+        // Pipelined requests are answered in the order that they were sent
+        //
+        if (previous != null) {
+            this.workerContext.setTurn(previous.getWritten());
+        }
         this.workerContext.setSocketContext(socketContext);
         final Request request = new Request(socketContext);
         this.workerContext.setRequest(request);
-        this.requestReader = new RequestReader(request, this.workerContext);
+        this.requestReader = new RequestReader(request, this.workerContext, this.requestParser);
     }
 
     @Override public void channelActive(final ChannelHandlerContext ctx) throws Exception {
+        //
+        // HTTP/2 streams belong to a connection that has been established already
+        //
+        if (ctx.channel() instanceof Http2StreamChannel) {
+            super.channelActive(ctx);
+            return;
+        }
         //
         // It is pushed here, rather than in #handlerAdded, as it would otherwise
         // be impossible to gracefully shutdown the connection.
@@ -147,8 +203,6 @@ import java.util.function.Supplier;
             Logger.debug("Continuing reading data for socket: {}", this.workerContext.getSocketContext().getIP());
         }
 
-        this.workerContext.setLastContext(context);
-
         //
         // Always reset "reused" state
         //
@@ -159,27 +213,243 @@ import java.util.function.Supplier;
         //
         final ByteBuf message = (ByteBuf) messageObject;
 
-        //
-        // Read all available data and try to compile it
-        //
-        Timer.Context readBytesTimer = TIMER_READ_BYTES.time();
+        if (this.discard) {
+            message.release();
+        } else if (this.leftover != null) {
+            //
+            // The previous request isn't ready yet, so everything that
+            // follows it is kept until it is
+            //
+            this.leftover.writeBytes(message);
+            message.release();
+        } else {
+            this.read(context, message);
+        }
+    }
+
+    /**
+     * Read requests from a buffer, until it has been consumed. A buffer may contain any number of pipelined
+     * requests, each of which is handed to a worker as soon as it is complete. The buffer is released.
+     *
+     * @param context Channel context
+     * @param message Buffer to read from
+     */
+    private void read(final ChannelHandlerContext context, final ByteBuf message) {
         try {
-            while (message.readableBytes() > 0) {
-                this.requestReader.readBytes(message);
+            while (true) {
+                //
+                // Handle complete requests
+                //
+                if (this.requestReader.isDone()) {
+                    final WorkerContext completed = this.workerContext;
+                    completed.handleReadCompletion();
+                    if (this.workerContext == completed || this.discard) {
+                        //
+                        // The connection isn't kept alive, or the request
+                        // was answered with an error, so anything following
+                        // the request is ignored. The buffer is released below.
+                        //
+                        this.discard = true;
+                        return;
+                    }
+                    continue;
+                }
+                //
+                // The body of the request is still being written to disk, and
+                // the next request is read once it has been
+                //
+                if (this.requestReader.isWaiting()) {
+                    this.leftover = context.alloc().buffer(message.readableBytes());
+                    this.leftover.writeBytes(message);
+                    return;
+                }
+                if (!message.isReadable() || !this.admit(context)) {
+                    return;
+                }
+                this.workerContext.setLastContext(context);
+                //
+                // Read all available data and try to compile it
+                //
+                try (Timer.Context ignored = TIMER_READ_BYTES.time()) {
+                    this.requestReader.readBytes(message);
+                }
+                if (this.headDeadline != null && !this.requestReader.isReadingHead()) {
+                    this.headDeadline.cancel(false);
+                    this.headDeadline = null;
+                }
             }
         } catch (final Throwable throwable) {
+            this.discard = true;
             new ResponseTask(context, this.workerContext).handleThrowable(throwable, context);
         } finally {
             message.release();
-            readBytesTimer.close();
         }
+    }
 
+    /**
+     * Continue reading once the body of a request has been written to disk
+     *
+     * @param context Channel context
+     */
+    void readLeftover(final ChannelHandlerContext context) {
+        final ByteBuf leftover = this.leftover;
+        this.leftover = null;
+        if (this.discard) {
+            if (leftover != null) {
+                leftover.release();
+            }
+        } else {
+            this.read(context, leftover == null ? Unpooled.EMPTY_BUFFER : leftover);
+        }
+    }
+
+    /**
+     * Stop reading from the channel, after a request that can't be answered with anything but an error. Bytes that
+     * have been kept for later requests are released. Must be called from the event loop.
+     */
+    void discard() {
+        this.discard = true;
+        if (this.leftover != null) {
+            this.leftover.release();
+            this.leftover = null;
+        }
+    }
+
+    /**
+     * Admit the current request, if it hasn't been admitted yet. Requests are admitted when their first bytes
+     * arrive, so that rejected requests are never parsed.
+     *
+     * @param context Channel context
+     * @return true if the request may be read, false if it has been rejected
+     */
+    private boolean admit(final ChannelHandlerContext context) {
+        if (this.workerContext.getPermit() != null) {
+            return true;
+        }
+        final AdmissionController.Permit permit = this.admission.tryAcquire();
+        if (permit != null) {
+            this.workerContext.setPermit(permit);
+            this.startHeadDeadline(context);
+            return true;
+        }
+        if (CoreConfig.debug) {
+            Logger.debug("Rejecting request from {}: too many requests in flight",
+                this.workerContext.getSocketContext().getIP());
+        }
+        this.discard = true;
+        this.workerContext.getTurn().thenRun(() -> writeServiceUnavailable(context));
+        return false;
+    }
+
+    /**
+     * Give the client {@link CoreConfig.Connections#maxHeaderTime} seconds to send the head of the current request,
+     * which has just started to arrive. This stops clients from holding on to a connection by sending the head
+     * slowly, a few bytes at a time.
+     *
+     * @param context Channel context
+     */
+    private void startHeadDeadline(final ChannelHandlerContext context) {
+        if (CoreConfig.Connections.maxHeaderTime <= 0) {
+            return;
+        }
+        final WorkerContext current = this.workerContext;
+        this.headDeadline = context.executor().schedule(() -> {
+            if (this.workerContext != current || this.discard || !this.requestReader
+                .isReadingHead()) {
+                return;
+            }
+            if (CoreConfig.debug) {
+                Logger.debug("Request head from {} took too long to arrive",
+                    current.getSocketContext().getIP());
+            }
+            METER_HEAD_TIMEOUTS.mark();
+            this.headDeadline = null;
+            this.discard = true;
+            current.getTurn().thenRun(() -> writeAndClose(context, REQUEST_TIMEOUT)
+                .addListener(ignored -> current.responseWritten()));
+        }, CoreConfig.Connections.maxHeaderTime, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Count a request that has been read, and decide whether the connection is kept alive after it. Connections are
+     * closed after {@link CoreConfig.Connections#maxRequests} requests, or once they are drained.
+     *
+     * @return true if another request may be read from the connection
+     */
+    boolean nextRequest() {
+        this.requests++;
+        return !this.draining && (CoreConfig.Connections.maxRequests <= 0
+            || this.requests < CoreConfig.Connections.maxRequests);
+    }
+
+    @Override public void userEventTriggered(final ChannelHandlerContext context, final Object event)
+        throws Exception {
+        if (event == ConnectionDrainer.DRAIN) {
+            this.draining = true;
+            this.closeIfIdle(context);
+        } else if (event instanceof IdleStateEvent) {
+            this.closeIfIdle(context);
+        } else {
+            super.userEventTriggered(context, event);
+        }
+    }
+
+    /**
+     * Close the connection if it is waiting for the next request, once every response has been written. Connections
+     * that are reading a request are closed after answering it, as they aren't kept alive while they are drained.
+     *
+     * @param context Channel context
+     */
+    private void closeIfIdle(final ChannelHandlerContext context) {
+        if (this.discard || this.leftover != null || this.workerContext.getPermit() != null) {
+            return;
+        }
+        final CompletableFuture<Void> turn = this.workerContext.getTurn();
+        if (turn.isDone()) {
+            context.close();
+        } else if (this.draining) {
+            turn.thenRun(() -> context.executor().execute(() -> this.closeIfIdle(context)));
+        }
+    }
+
+    @Override public void channelInactive(final ChannelHandlerContext context) throws Exception {
+        if (this.headDeadline != null) {
+            this.headDeadline.cancel(false);
+            this.headDeadline = null;
+        }
         //
-        // Handle complete requests
+        // Delete spilled request bodies of aborted uploads
         //
-        if (this.requestReader.isDone()) {
-            this.workerContext.handleReadCompletion();
+        this.workerContext.releaseRequestBody();
+        this.workerContext.responseWritten();
+        this.discard = true;
+        if (this.leftover != null) {
+            this.leftover.release();
+            this.leftover = null;
         }
+        super.channelInactive(context);
+    }
+
+    /**
+     * Answer a request that can't be handled right now with {@code 503 Service Unavailable}, and close the
+     * connection. The response is written right away, without involving a worker.
+     *
+     * @param context Channel context
+     * @return Future that completes once the response has been written
+     */
+    ChannelFuture writeServiceUnavailable(final ChannelHandlerContext context) {
+        return writeAndClose(context, this.admission.getServiceUnavailable());
+    }
+
+    private static ChannelFuture writeAndClose(final ChannelHandlerContext context,
+        final byte[] head) {
+        final ByteBuf buffer = context.alloc().buffer(head.length + 64);
+        buffer.writeBytes(head);
+        buffer.writeBytes(HttpDate.nowBytes());
+        buffer.writeBytes(CRLF).writeBytes(CRLF);
+        final ChannelFuture future = context.writeAndFlush(buffer);
+        future.addListener(ChannelFutureListener.CLOSE);
+        return future;
     }
 
     @Override
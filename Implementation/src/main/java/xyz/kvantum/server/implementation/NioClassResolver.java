@@ -21,9 +21,11 @@
  */
 package xyz.kvantum.server.implementation;
 
+import io.netty.bootstrap.ServerBootstrap;
 import io.netty.channel.MultithreadEventLoopGroup;
 import io.netty.channel.ServerChannel;
 import lombok.Getter;
+import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 
 import java.util.Locale;
@@ -59,5 +61,20 @@ final class NioClassResolver {
         MultithreadEventLoopGroup getEventLoopGroup(final int threads);
 
         Class<? extends ServerChannel> getServerSocketChannelClass();
+
+        /**
+         * Whether several server sockets can be bound to the same port
+         */
+        default boolean isReusePortSupported() {
+            return false;
+        }
+
+        /**
+         * Apply the transport specific options of {@link CoreConfig.Sockets}
+         *
+         * @param bootstrap Bootstrap to configure
+         */
+        default void applyOptions(final ServerBootstrap bootstrap) {
+        }
     }
 }
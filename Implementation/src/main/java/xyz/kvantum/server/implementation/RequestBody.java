@@ -0,0 +1,365 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.core.ServerImplementation;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.Header;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Optional;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * The entity of a request. The body is kept in memory until it grows past {@link CoreConfig.Buffer#requestBody},
+ * after which it is spilled to a temporary file. Disk writes are performed by the worker pool, rather than by the
+ * event loop, and reading from the channel is suspended while too much data is waiting to be written.
+ */
+final class RequestBody {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final int PENDING_HIGH_WATER_MARK = 1024 * 1024;
+    private static final int PENDING_LOW_WATER_MARK = 256 * 1024;
+
+    private final AbstractRequest request;
+    private final Channel channel;
+
+    // Only accessed by the event loop
+    private byte[] memory = EMPTY;
+    private int memoryLength;
+    private long length;
+
+    // Spilled body, guarded by this
+    private Path file;
+    private FileChannel fileChannel;
+    private InputStream inputStream;
+    private final ArrayDeque<ByteBuf> pending = new ArrayDeque<>();
+    private long pendingBytes;
+    private boolean writing;
+    private boolean suspended;
+    private boolean released;
+    private Runnable completionHandler;
+    private volatile IOException failure;
+
+    /**
+     * @param request Request that the body belongs to
+     * @param channel Channel that the body is read from
+     */
+    RequestBody(final AbstractRequest request, final Channel channel) {
+        this.request = request;
+        this.channel = channel;
+    }
+
+    /**
+     * Append data to the body. Must be called by the event loop.
+     *
+     * @param data Data to append, which will be released by the body
+     * @throws ReturnStatus If the body grows too large, or if it cannot be spilled to disk
+     */
+    void append(final ByteBuf data) throws ReturnStatus {
+        final int dataLength = data.readableBytes();
+        if ((this.length += dataLength) > CoreConfig.Limits.limitPostMaxSize) {
+            data.release();
+            throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
+        }
+        if (this.file == null && this.length <= CoreConfig.Buffer.requestBody) {
+            if (this.memoryLength + dataLength > this.memory.length) {
+                final byte[] memory = new byte[(int) Math.min(CoreConfig.Buffer.requestBody,
+                    Math.max(this.memory.length * 2L, this.memoryLength + dataLength))];
+                System.arraycopy(this.memory, 0, memory, 0, this.memoryLength);
+                this.memory = memory;
+            }
+            data.readBytes(this.memory, this.memoryLength, dataLength);
+            this.memoryLength += dataLength;
+            data.release();
+            return;
+        }
+        if (this.file == null) {
+            try {
+                this.spill();
+            } catch (final IOException e) {
+                data.release();
+                throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, null, e);
+            }
+        }
+        this.write(data);
+    }
+
+    private void spill() throws IOException {
+        final Optional<Path> tempFile = this.request.getTempFileManager().createTempFile("request-body");
+        if (!tempFile.isPresent()) {
+            throw new IOException("Could not create a temporary file for the request body");
+        }
+        if (CoreConfig.debug) {
+            Logger.debug("Spilling request body of {} to disk", this.request);
+        }
+        synchronized (this) {
+            this.file = tempFile.get();
+            this.fileChannel = FileChannel.open(this.file, StandardOpenOption.WRITE);
+        }
+        this.write(Unpooled.wrappedBuffer(this.memory, 0, this.memoryLength));
+        this.memory = null;
+    }
+
+    private void write(final ByteBuf data) {
+        synchronized (this) {
+            if (this.released) {
+                data.release();
+                return;
+            }
+            this.pending.add(data);
+            this.pendingBytes += data.readableBytes();
+            if (this.pendingBytes > PENDING_HIGH_WATER_MARK) {
+                this.suspend();
+            }
+            if (this.writing) {
+                return;
+            }
+            this.writing = true;
+        }
+        try {
+            ServerImplementation.getImplementation().getExecutorService().execute(this::drain);
+        } catch (final RejectedExecutionException e) {
+            //
+            // The body can't be written without a worker, so the request fails
+            //
+            synchronized (this) {
+                this.writing = false;
+            }
+            if (this.failure == null) {
+                this.failure = new IOException("Could not write the request body", e);
+            }
+            this.release();
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            final ByteBuf data;
+            final FileChannel fileChannel;
+            final Runnable completionHandler;
+            synchronized (this) {
+                fileChannel = this.fileChannel;
+                if ((data = this.pending.poll()) == null) {
+                    this.writing = false;
+                    completionHandler = this.completionHandler;
+                    this.completionHandler = null;
+                } else {
+                    completionHandler = null;
+                }
+            }
+            if (data == null) {
+                if (completionHandler != null) {
+                    this.closeFileChannel();
+                    this.channel.eventLoop().execute(completionHandler);
+                }
+                return;
+            }
+            final int dataLength = data.readableBytes();
+            try {
+                if (this.failure == null && fileChannel != null) {
+                    while (data.isReadable()) {
+                        data.readBytes(fileChannel, data.readableBytes());
+                    }
+                }
+            } catch (final IOException e) {
+                this.failure = e;
+            } finally {
+                data.release();
+            }
+            synchronized (this) {
+                if ((this.pendingBytes -= dataLength) <= PENDING_LOW_WATER_MARK
+                    && this.completionHandler == null) {
+                    this.resume();
+                }
+            }
+        }
+    }
+
+    /**
+     * Mark the body as complete. The completion handler is invoked by the event loop once all data has been written
+     * to disk. If the body is kept in memory, or if everything is written already, the handler is not invoked.
+     *
+     * @param completionHandler Handler to run when the body has been written
+     * @return true if the body is readable immediately, false if the completion handler will be invoked later
+     */
+    boolean complete(final Runnable completionHandler) {
+        synchronized (this) {
+            if (this.file == null) {
+                return true;
+            }
+            if (this.writing) {
+                //
+                // The next request shouldn't be read until this one is ready
+                //
+                this.suspend();
+                this.completionHandler = () -> {
+                    this.resume0();
+                    completionHandler.run();
+                };
+                return false;
+            }
+        }
+        this.closeFileChannel();
+        return true;
+    }
+
+    private void suspend() {
+        if (!this.suspended) {
+            this.suspended = true;
+            this.channel.config().setAutoRead(false);
+        }
+    }
+
+    private void resume() {
+        if (this.suspended) {
+            this.suspended = false;
+            this.channel.config().setAutoRead(true);
+        }
+    }
+
+    private synchronized void resume0() {
+        this.resume();
+    }
+
+    private synchronized void closeFileChannel() {
+        if (this.fileChannel == null) {
+            return;
+        }
+        try {
+            this.fileChannel.close();
+        } catch (final IOException e) {
+            if (this.failure == null) {
+                this.failure = e;
+            }
+        }
+        this.fileChannel = null;
+    }
+
+    /**
+     * Get the exception that caused the body to not be written to disk, if any
+     *
+     * @return Failure, or null
+     */
+    IOException getFailure() {
+        return this.failure; // Nullable
+    }
+
+    /**
+     * Get the number of bytes in the body
+     *
+     * @return Body length
+     */
+    long getLength() {
+        return this.length;
+    }
+
+    /**
+     * Check whether the body is kept in memory
+     *
+     * @return true if the body is in memory, false if it has been spilled to disk
+     */
+    boolean isInMemory() {
+        return this.file == null;
+    }
+
+    /**
+     * Decode the complete body as a string
+     *
+     * @param charset Body charset
+     * @return Decoded body
+     * @throws IOException If the spilled body cannot be read
+     */
+    String toString(final Charset charset) throws IOException {
+        if (this.file == null) {
+            return new String(this.memory, 0, this.memoryLength, charset);
+        }
+        return new String(Files.readAllBytes(this.file), charset);
+    }
+
+    /**
+     * Open a stream of the complete body. The stream is closed when the body is released.
+     *
+     * @return Body stream
+     * @throws IOException If the spilled body cannot be opened
+     */
+    synchronized InputStream openStream() throws IOException {
+        if (this.released) {
+            throw new IOException("The request body has been released");
+        }
+        if (this.file == null) {
+            return new ByteArrayInputStream(this.memory, 0, this.memoryLength);
+        }
+        if (this.inputStream != null) {
+            this.inputStream.close();
+        }
+        return this.inputStream = Files.newInputStream(this.file);
+    }
+
+    /**
+     * Release the body and delete its temporary file, if any. Any further data is discarded.
+     */
+    synchronized void release() {
+        if (this.released) {
+            return;
+        }
+        this.released = true;
+        ByteBuf data;
+        while ((data = this.pending.poll()) != null) {
+            data.release();
+        }
+        this.pendingBytes = 0;
+        this.completionHandler = null;
+        if (this.channel != null) {
+            this.resume();
+        }
+        try {
+            if (this.inputStream != null) {
+                this.inputStream.close();
+            }
+        } catch (final IOException ignored) {
+        }
+        this.closeFileChannel();
+        if (this.file != null) {
+            try {
+                Files.deleteIfExists(this.file);
+            } catch (final IOException e) {
+                Logger.error("Failed to delete request body [{}]: {}", this.file.getFileName(),
+                    e.getMessage());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,174 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.response.Header;
+
+/**
+ * Incremental decoder of request bodies, which are either delimited by a Content-Length or use the chunked
+ * transfer coding. The decoder never waits for more data, it consumes whatever is readable and hands the payload
+ * over to a {@link RequestBody}. Chunk extensions and trailer fields are validated but discarded.
+ */
+final class RequestBodyDecoder {
+
+    private State state;
+    private long remaining;
+    private long chunkSize;
+    private int chunkSizeDigits;
+    private int lineLength;
+    private int trailers;
+    private long total;
+
+    private RequestBodyDecoder(final State state, final long remaining) {
+        this.state = state;
+        this.remaining = remaining;
+    }
+
+    /**
+     * Create a decoder for a body of known length
+     *
+     * @param contentLength Body length, as specified by the Content-Length header
+     * @return Decoder
+     */
+    static RequestBodyDecoder fixed(final long contentLength) {
+        return new RequestBodyDecoder(contentLength == 0 ? State.COMPLETE : State.CONTENT,
+            contentLength);
+    }
+
+    /**
+     * Create a decoder for a body using the chunked transfer coding
+     *
+     * @return Decoder
+     */
+    static RequestBodyDecoder chunked() {
+        return new RequestBodyDecoder(State.CHUNK_SIZE, 0);
+    }
+
+    /**
+     * Decode as much of the body as possible. Bytes following the body are left in the buffer.
+     *
+     * @param in   Buffer to read from
+     * @param body Body to write the payload to
+     * @return true if the body has been read completely, false if more data is required
+     * @throws ReturnStatus If the body is malformed, or too large
+     */
+    boolean decode(final ByteBuf in, final RequestBody body) throws ReturnStatus {
+        while (this.state != State.COMPLETE && in.isReadable()) {
+            switch (this.state) {
+                case CONTENT:
+                case CHUNK_DATA: {
+                    final int length = (int) Math.min(this.remaining, in.readableBytes());
+                    body.append(in.readRetainedSlice(length));
+                    if ((this.remaining -= length) == 0) {
+                        this.state = this.state == State.CONTENT ? State.COMPLETE : State.CHUNK_DATA_END;
+                    }
+                }
+                break;
+                case CHUNK_SIZE:
+                    this.readChunkSize(in.readByte());
+                    break;
+                case CHUNK_EXTENSION: {
+                    final byte b = in.readByte();
+                    if (b == '\n') {
+                        this.readChunk();
+                    } else if (++this.lineLength > CoreConfig.Limits.limitRequestFieldSize) {
+                        throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+                    }
+                }
+                break;
+                case CHUNK_DATA_END: {
+                    final byte b = in.readByte();
+                    if (b == '\n') {
+                        this.state = State.CHUNK_SIZE;
+                        this.lineLength = 0;
+                    } else if (b != '\r' || this.lineLength++ > 0) {
+                        throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+                    }
+                }
+                break;
+                case TRAILER:
+                    this.readTrailer(in.readByte());
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown state: " + this.state);
+            }
+        }
+        return this.state == State.COMPLETE;
+    }
+
+    private void readChunkSize(final byte b) throws ReturnStatus {
+        if (++this.lineLength > CoreConfig.Limits.limitRequestFieldSize) {
+            throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+        }
+        final int digit = Character.digit(b, 16);
+        if (digit != -1) {
+            if (this.chunkSize > (Long.MAX_VALUE >> 4)) {
+                throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
+            }
+            this.chunkSize = (this.chunkSize << 4) | digit;
+            this.chunkSizeDigits++;
+        } else if (this.chunkSizeDigits == 0) {
+            throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+        } else if (b == '\n') {
+            this.readChunk();
+        } else if (b == ';' || b == '\r' || b == ' ' || b == '\t') {
+            this.state = State.CHUNK_EXTENSION;
+        } else {
+            throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+        }
+    }
+
+    private void readChunk() throws ReturnStatus {
+        if (this.chunkSizeDigits == 0) {
+            throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+        }
+        this.total += this.chunkSize;
+        if (this.total > CoreConfig.Limits.limitPostMaxSize) {
+            throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
+        }
+        this.state = this.chunkSize == 0 ? State.TRAILER : State.CHUNK_DATA;
+        this.remaining = this.chunkSize;
+        this.chunkSize = 0;
+        this.chunkSizeDigits = 0;
+        this.lineLength = 0;
+    }
+
+    private void readTrailer(final byte b) throws ReturnStatus {
+        if (b == '\n') {
+            if (this.lineLength == 0) {
+                this.state = State.COMPLETE;
+            } else if (++this.trailers > CoreConfig.Limits.limitRequestFields) {
+                throw new ReturnStatus(Header.STATUS_HEADER_FIELDS_TOO_LARGE, null);
+            }
+            this.lineLength = 0;
+        } else if (b != '\r' && ++this.lineLength > CoreConfig.Limits.limitRequestFieldSize) {
+            throw new ReturnStatus(Header.STATUS_HEADER_FIELDS_TOO_LARGE, null);
+        }
+    }
+
+    private enum State {
+        CONTENT, CHUNK_SIZE, CHUNK_EXTENSION, CHUNK_DATA, CHUNK_DATA_END, TRAILER, COMPLETE
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.Arrays;
+
+/**
+ * Lower case header names that are shared between all requests. Names are looked up directly from the bytes that
+ * were read, ignoring their case, so that common headers don't allocate anything. Names that aren't known are
+ * created for every request, and never cached, as clients can send any number of them.
+ */
+final class RequestHeaderNames {
+
+    private static final String[] KNOWN_NAMES =
+        {"accept", "accept-charset", "accept-encoding", "accept-language", "authorization",
+            "cache-control", "connection", "content-encoding", "content-length", "content-type",
+            "cookie", "dnt", "expect", "forwarded", "host", "if-match", "if-modified-since",
+            "if-none-match", "if-range", "if-unmodified-since", "keep-alive", "origin", "pragma",
+            "range", "referer", "te", "transfer-encoding", "upgrade",
+            "upgrade-insecure-requests", "user-agent", "via", "x-forwarded-for",
+            "x-forwarded-host", "x-forwarded-proto", "x-real-ip", "x-requested-with"};
+
+    private static final int TABLE_SIZE = 128;
+    private static final int TABLE_MASK = TABLE_SIZE - 1;
+    private static final byte[][] TABLE_BYTES = new byte[TABLE_SIZE][];
+    private static final AsciiString[] TABLE_NAMES = new AsciiString[TABLE_SIZE];
+
+    static {
+        for (final String name : KNOWN_NAMES) {
+            final AsciiString asciiString = AsciiString.of(name);
+            final byte[] bytes = asciiString.getValue();
+            int slot = hash(bytes, 0, bytes.length) & TABLE_MASK;
+            while (TABLE_NAMES[slot] != null) {
+                slot = (slot + 1) & TABLE_MASK;
+            }
+            TABLE_BYTES[slot] = bytes;
+            TABLE_NAMES[slot] = asciiString;
+        }
+    }
+
+    private RequestHeaderNames() {
+    }
+
+    private static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private static int hash(final byte[] bytes, final int offset, final int length) {
+        int hash = 0;
+        for (int i = offset; i < offset + length; i++) {
+            hash = 31 * hash + toLowerCase(bytes[i]);
+        }
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean equalsIgnoreCase(final byte[] name, final byte[] bytes,
+        final int offset, final int length) {
+        if (name.length != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (name[i] != toLowerCase(bytes[offset + i])) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Get the lower case header name represented by a range of bytes
+     *
+     * @param bytes  Bytes containing the name
+     * @param offset Offset of the name
+     * @param length Length of the name
+     * @return The shared instance, if the header is known, else a new lower case name
+     */
+    static AsciiString of(final byte[] bytes, final int offset, final int length) {
+        int slot = hash(bytes, offset, length) & TABLE_MASK;
+        while (TABLE_NAMES[slot] != null) {
+            if (equalsIgnoreCase(TABLE_BYTES[slot], bytes, offset, length)) {
+                return TABLE_NAMES[slot];
+            }
+            slot = (slot + 1) & TABLE_MASK;
+        }
+        final byte[] name = Arrays.copyOfRange(bytes, offset, offset + length);
+        for (int i = 0; i < name.length; i++) {
+            name[i] = toLowerCase(name[i]);
+        }
+        return AsciiString.of(name);
+    }
+
+}
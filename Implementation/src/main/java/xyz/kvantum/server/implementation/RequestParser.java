@@ -0,0 +1,324 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.util.ByteProcessor;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.request.RequestCompiler;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Incremental parser for the request line and the headers of a HTTP/1.x request. The bytes are read straight from the
+ * Netty buffers, using {@link ByteBuf#forEachByte(ByteProcessor)}, so a request head may be split over any number of
+ * reads. One parser is used per channel, and it is {@link #reset(AbstractRequest) reset} for every request. Malformed
+ * and oversized request heads are rejected as soon as the offending byte has been read, rather than once the line is
+ * complete.
+ */
+final class RequestParser implements ByteProcessor {
+
+    private static final int INITIAL_LINE_SIZE = 256;
+    private static final byte[] HTTP_PREFIX = AsciiString.of("HTTP/").getValue();
+    private static final byte[] HTTP_1_PREFIX = AsciiString.of("HTTP/1.").getValue();
+    private static final HttpMethod[] METHODS;
+    private static final byte[][] METHOD_NAMES;
+    private static final int MAX_METHOD_LENGTH;
+    /**
+     * Characters that are allowed in header names, as defined by RFC 7230
+     */
+    private static final boolean[] TOKEN_CHARACTERS = new boolean[128];
+
+    static {
+        METHODS = Arrays.stream(HttpMethod.values()).filter(method -> method != HttpMethod.ALL)
+            .toArray(HttpMethod[]::new);
+        METHOD_NAMES = new byte[METHODS.length][];
+        int maxMethodLength = 0;
+        for (int i = 0; i < METHODS.length; i++) {
+            METHOD_NAMES[i] = METHODS[i].name().getBytes(StandardCharsets.US_ASCII);
+            maxMethodLength = Math.max(maxMethodLength, METHOD_NAMES[i].length);
+        }
+        MAX_METHOD_LENGTH = maxMethodLength;
+        for (char c = '0'; c <= '9'; c++) {
+            TOKEN_CHARACTERS[c] = true;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            TOKEN_CHARACTERS[c] = true;
+            TOKEN_CHARACTERS[Character.toUpperCase(c)] = true;
+        }
+        for (final char c : "!#$%&'*+-.^_`|~".toCharArray()) {
+            TOKEN_CHARACTERS[c] = true;
+        }
+    }
+
+    private byte[] line = new byte[INITIAL_LINE_SIZE];
+    private int lineLength;
+    private boolean carriageReturn;
+    /**
+     * Length of the method token of the request line, or -1 if the method hasn't been read yet
+     */
+    private int methodLength;
+    private int headerCount;
+    private State state = State.COMPLETE;
+    private AsciiString error;
+    private AbstractRequest request;
+
+    /**
+     * Prepare the parser for a new request
+     *
+     * @param request Request that the parsed query and headers are stored in
+     */
+    void reset(final AbstractRequest request) {
+        this.request = request;
+        this.state = State.REQUEST_LINE;
+        this.lineLength = 0;
+        this.carriageReturn = false;
+        this.methodLength = -1;
+        this.headerCount = 0;
+        this.error = null;
+        if (this.line.length > INITIAL_LINE_SIZE) {
+            // Don't hold on to large lines between requests
+            this.line = new byte[INITIAL_LINE_SIZE];
+        }
+    }
+
+    /**
+     * Check whether the request line and all headers have been read
+     *
+     * @return True if the request head is complete
+     */
+    boolean isComplete() {
+        return this.state == State.COMPLETE;
+    }
+
+    /**
+     * Parse the readable bytes of a buffer. The reader index is moved past the bytes that were consumed, so any bytes
+     * that follow the request head (such as the request body) are left in the buffer.
+     *
+     * @param buf Buffer to read from
+     * @return True if the request head is complete
+     * @throws ReturnStatus If the request head is malformed, or exceeds the configured limits
+     */
+    boolean parse(final ByteBuf buf) throws ReturnStatus {
+        if (this.state == State.COMPLETE) {
+            return true;
+        }
+        final int index = buf.forEachByte(this);
+        if (index == -1) {
+            buf.skipBytes(buf.readableBytes());
+            return false;
+        }
+        buf.readerIndex(index + 1);
+        if (this.state == State.FAILED) {
+            if (CoreConfig.debug) {
+                Logger.debug("Rejecting malformed request head: {}", this.error);
+            }
+            throw new ReturnStatus(this.error, null);
+        }
+        return true;
+    }
+
+    @Override public boolean process(final byte value) {
+        if (value == '\n') {
+            return this.endLine();
+        }
+        if (this.carriageReturn) {
+            // A carriage return is only allowed at the end of a line
+            return this.fail(Header.STATUS_BAD_REQUEST);
+        }
+        if (value == '\r') {
+            this.carriageReturn = true;
+            return true;
+        }
+        if (this.state == State.REQUEST_LINE) {
+            if (this.lineLength >= CoreConfig.Limits.limitRequestLineSize) {
+                return this.fail(Header.STATUS_URI_TOO_LONG);
+            }
+            if (value < 0x21 || value == 0x7F) {
+                if (value != ' ' || this.lineLength == 0) {
+                    return this.fail(Header.STATUS_BAD_REQUEST);
+                }
+                if (this.methodLength == -1) {
+                    this.methodLength = this.lineLength;
+                }
+            } else if (this.methodLength == -1 && (value < 'A' || value > 'Z'
+                || this.lineLength >= MAX_METHOD_LENGTH)) {
+                // Methods are short and upper case, so anything else can be rejected right away
+                return this.fail(Header.STATUS_BAD_REQUEST);
+            }
+        } else {
+            if (this.lineLength >= CoreConfig.Limits.limitRequestFieldSize) {
+                return this.fail(Header.STATUS_HEADER_FIELDS_TOO_LARGE);
+            }
+            if (value >= 0 && value < 0x20 && value != '\t' || value == 0x7F) {
+                return this.fail(Header.STATUS_BAD_REQUEST);
+            }
+            if (this.lineLength == 0 && (value == ' ' || value == '\t')) {
+                // Obsolete line folding, which RFC 7230 allows servers to reject
+                return this.fail(Header.STATUS_BAD_REQUEST);
+            }
+        }
+        if (this.lineLength == this.line.length) {
+            this.line = Arrays.copyOf(this.line, this.line.length * 2);
+        }
+        this.line[this.lineLength++] = value;
+        return true;
+    }
+
+    private boolean endLine() {
+        final int length = this.lineLength;
+        this.lineLength = 0;
+        this.carriageReturn = false;
+        if (this.state == State.REQUEST_LINE) {
+            if (length == 0) {
+                // Empty lines in front of the request line are ignored
+                return true;
+            }
+            final AsciiString status = this.parseRequestLine(length);
+            if (status != null) {
+                return this.fail(status);
+            }
+            this.state = State.HEADERS;
+            return true;
+        }
+        if (length == 0) {
+            this.state = State.COMPLETE;
+            return false;
+        }
+        if (++this.headerCount > CoreConfig.Limits.limitRequestFields) {
+            return this.fail(Header.STATUS_HEADER_FIELDS_TOO_LARGE);
+        }
+        if (!this.parseHeader(length)) {
+            return this.fail(Header.STATUS_BAD_REQUEST);
+        }
+        return true;
+    }
+
+    private boolean fail(final AsciiString status) {
+        this.error = status;
+        this.state = State.FAILED;
+        return false;
+    }
+
+    private boolean startsWith(final int offset, final int length, final byte[] prefix) {
+        if (length < prefix.length) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length; i++) {
+            if (this.line[offset + i] != prefix[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private HttpMethod getMethod() {
+        for (int i = 0; i < METHODS.length; i++) {
+            if (METHOD_NAMES[i].length == this.methodLength && this
+                .startsWith(0, this.methodLength, METHOD_NAMES[i])) {
+                return METHODS[i];
+            }
+        }
+        return null; // Nullable
+    }
+
+    /**
+     * Parse the request line, which has the form {@code METHOD SP request-target SP HTTP-version}
+     *
+     * @param length Line length
+     * @return Status to reject the request with, or null if the line is valid
+     */
+    private AsciiString parseRequestLine(final int length) {
+        if (this.methodLength == -1) {
+            return Header.STATUS_BAD_REQUEST;
+        }
+        final int resourceStart = this.methodLength + 1;
+        int resourceEnd = resourceStart;
+        while (resourceEnd < length && this.line[resourceEnd] != ' ') {
+            resourceEnd++;
+        }
+        final int versionStart = resourceEnd + 1;
+        if (resourceEnd == resourceStart || versionStart >= length) {
+            return Header.STATUS_BAD_REQUEST;
+        }
+        final int versionLength = length - versionStart;
+        if (!this.startsWith(versionStart, versionLength, HTTP_PREFIX)) {
+            return Header.STATUS_BAD_REQUEST;
+        }
+        if (versionLength != HTTP_1_PREFIX.length + 1 || !this
+            .startsWith(versionStart, versionLength, HTTP_1_PREFIX)) {
+            return Header.STATUS_HTTP_VERSION_NOT_SUPPORTED;
+        }
+        final HttpMethod method = this.getMethod();
+        if (method == null) {
+            return Header.STATUS_NOT_ALLOWED;
+        }
+        RequestCompiler.compileQuery(this.request, method,
+            new String(this.line, resourceStart, resourceEnd - resourceStart,
+                StandardCharsets.US_ASCII));
+        return null; // Nullable
+    }
+
+    /**
+     * Parse a header line, which has the form {@code name ":" OWS value OWS}
+     *
+     * @param length Line length
+     * @return True if the header is valid
+     */
+    private boolean parseHeader(final int length) {
+        int nameEnd = 0;
+        while (nameEnd < length && this.line[nameEnd] != ':') {
+            final byte value = this.line[nameEnd];
+            if (value < 0 || !TOKEN_CHARACTERS[value]) {
+                return false;
+            }
+            nameEnd++;
+        }
+        if (nameEnd == 0 || nameEnd == length) {
+            return false;
+        }
+        int valueStart = nameEnd + 1;
+        int valueEnd = length;
+        while (valueStart < valueEnd && (this.line[valueStart] == ' '
+            || this.line[valueStart] == '\t')) {
+            valueStart++;
+        }
+        while (valueEnd > valueStart && (this.line[valueEnd - 1] == ' '
+            || this.line[valueEnd - 1] == '\t')) {
+            valueEnd--;
+        }
+        this.request.getHeaders().put(RequestHeaderNames.of(this.line, 0, nameEnd),
+            AsciiString.of(Arrays.copyOfRange(this.line, valueStart, valueEnd)));
+        return true;
+    }
+
+    private enum State {
+        REQUEST_LINE, HEADERS, COMPLETE, FAILED
+    }
+
+}
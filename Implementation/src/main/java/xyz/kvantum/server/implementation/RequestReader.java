@@ -22,16 +22,9 @@
 package xyz.kvantum.server.implementation;
 
 import io.netty.buffer.ByteBuf;
-import lombok.AccessLevel;
-import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.config.CoreConfig;
-import xyz.kvantum.server.api.core.ServerImplementation;
-import xyz.kvantum.server.api.io.KvantumInputStream;
-import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.AbstractRequest;
-import xyz.kvantum.server.api.request.RequestCompiler;
 import xyz.kvantum.server.api.request.post.DummyPostRequest;
 import xyz.kvantum.server.api.request.post.EntityType;
 import xyz.kvantum.server.api.request.post.JsonPostRequest;
@@ -40,63 +33,51 @@ import xyz.kvantum.server.api.request.post.RequestEntity;
 import xyz.kvantum.server.api.request.post.UrlEncodedPostRequest;
 import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.util.AsciiString;
-import xyz.kvantum.server.api.util.AutoCloseable;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.util.Optional;
+import java.nio.charset.StandardCharsets;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
- * Read a HTTP request until the first clear line. Does not read the HTTP message. The reader uses {@link
- * java.nio.charset.StandardCharsets#US_ASCII} as the charset, as defined by the HTTP protocol.
+ * Read a HTTP request. The request head is parsed by the channel's {@link RequestParser}, after which the request
+ * entity (if any) is decoded by a {@link RequestBodyDecoder} into a {@link RequestBody}. Everything is read by the
+ * event loop, no thread is occupied while waiting for the client.
  */
 @SuppressWarnings({"unused", "WeakerAccess"}) final class RequestReader {
 
     private static final AsciiString CONTENT_TYPE = AsciiString.of("content-type");
     private static final AsciiString CONTENT_LENGTH = AsciiString.of("content-length");
+    private static final AsciiString TRANSFER_ENCODING = AsciiString.of("transfer-encoding");
+    private static final AsciiString CHUNKED = AsciiString.of("chunked");
     private static final AsciiString CONTENT_TYPE_URL_ENCODED =
         AsciiString.of("application/x-www-form-urlencoded");
     private static final AsciiString CONTENT_TYPE_MULTIPART = AsciiString.of("multipart");
 
-    private final Object lock = new Object();
-    @Getter private final StringBuilder builder;
     private final AbstractRequest abstractRequest;
-    private char lastCharacter = ' ';
-    private AtomicBoolean done = new AtomicBoolean(false);
-    private boolean begunLastLine = false;
-    private final AtomicBoolean hasQuery = new AtomicBoolean(false);
-    private int contentLength = -1;
-    @Getter private ReadTarget readTargetz = ReadTarget.REQUEST_HEADERS;
-    @Getter private boolean cleared = true;
+    private final RequestParser requestParser;
+    private final AtomicBoolean done = new AtomicBoolean(false);
+    private ReadTarget readTarget = ReadTarget.REQUEST_HEADERS;
     private final WorkerContext context;
 
     // Request body
-    private RequestOutputStream overflowStream;
-    private RequestEntityReader requestEntityReader;
+    private RequestBodyDecoder bodyDecoder;
+    private RequestBody requestBody;
 
-    RequestReader(final AbstractRequest abstractRequest, final WorkerContext workerContext) {
+    /**
+     * @param abstractRequest Request to read into
+     * @param workerContext   Context of the request
+     * @param requestParser   Parser of the channel, which is reset for this request
+     */
+    RequestReader(final AbstractRequest abstractRequest, final WorkerContext workerContext,
+        final RequestParser requestParser) {
         this.abstractRequest = abstractRequest;
         this.context = workerContext;
-        this.builder = new StringBuilder(CoreConfig.Limits.limitRequestLineSize);
-    }
-
-    ReadTarget getReadTarget() {
-        synchronized (this.lock) {
-            return this.readTargetz;
-        }
-    }
-
-    void setReadTarget(final ReadTarget target) {
-        synchronized (this.lock) {
-            this.readTargetz = target;
-        }
+        this.requestParser = requestParser;
+        this.requestParser.reset(abstractRequest);
     }
 
     /**
-     * Check whether the reader is done reading theabstractRequest
+     * Check whether the reader is done reading the request
      *
      * @return true if the HTTP request is read, false if not
      */
@@ -105,297 +86,180 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
 
     /**
-     * Get the last read character, ' ' if no character has been read
+     * Check whether the request has been read, but its body is still being written to disk
      *
-     * @return last read character
+     * @return true if the reader waits for the body to be written
      */
-    public char getLastCharacter() {
-        return this.lastCharacter;
+    boolean isWaiting() {
+        return this.readTarget == ReadTarget.NONE && !this.done.get();
     }
 
     /**
-     * Attempt to read a byte
+     * Check whether the head of the request is still being read
      *
-     * @param b Byte
-     * @return True if the byte was read, False if not
+     * @return true if the request line or headers haven't been read completely
      */
-    boolean readByte(final byte b) throws Throwable {
-        this.cleared = false;
-
-        if (isDone() || getReadTarget() == ReadTarget.REQUEST_BODY) {
-            return false;
-        }
-
-        final char character = (char) b;
-
-        if (begunLastLine) {
-            if (character == '\n') {
-                final AsciiString contentLength = abstractRequest.getHeader(CONTENT_LENGTH);
-                if (contentLength.isEmpty()) {
-                    done.set(true);
-                    return true;
-                }
-                try {
-                    this.contentLength = contentLength.toInteger();
-                } catch (final Exception e) {
-                    throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null, e);
-                }
-                if (this.contentLength >= CoreConfig.Limits.limitPostBasicSize) {
-                    if (CoreConfig.debug) {
-                        Logger.debug("Supplied post body getCount too large ({0} > {1})",
-                            contentLength,
-                            CoreConfig.Limits.limitPostBasicSize);
-                    }
-                    throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
-                }
-
-                if (CoreConfig.debug && CoreConfig.verbose) {
-                    Logger.debug("Creating a new request output stream for {}", this.abstractRequest);
-                }
+    boolean isReadingHead() {
+        return this.readTarget == ReadTarget.REQUEST_HEADERS;
+    }
 
-                this.setReadTarget(ReadTarget.REQUEST_BODY);
-                this.overflowStream = new RequestOutputStream(this.contentLength);
-                this.requestEntityReader = new RequestEntityReader(new KvantumInputStream(overflowStream, this.contentLength));
-                // Submit the reading task
-                ServerImplementation.getImplementation().getExecutorService().submit(this.requestEntityReader);
-                return false; // Indicate that we should read into the stream instead
-            } else {
-                begunLastLine = false;
+    /**
+     * Read from a buffer. Only bytes that belong to the request are consumed, anything following the request is
+     * left in the buffer for the next request.
+     *
+     * @param byteBuf Buffer to read from
+     */
+    void readBytes(final ByteBuf byteBuf) throws Throwable {
+        if (this.readTarget == ReadTarget.REQUEST_HEADERS) {
+            if (!this.requestParser.parse(byteBuf)) {
+                return;
             }
+            this.readEntityHeaders();
         }
-
-        if (lastCharacter == '\r') {
-            if (character == '\n') {
-                if (builder.length() != 0) {
-                    final String line = builder.toString();
-                    if (!this.hasQuery.get()) {
-                        RequestCompiler.compileQuery(this.abstractRequest, line);
-                        hasQuery.set(true);
-                    } else {
-                        final Optional<RequestCompiler.HeaderPair> headerPair =
-                            RequestCompiler.compileHeader(line);
-                        if (headerPair.isPresent()) {
-                            final RequestCompiler.HeaderPair pair = headerPair.get();
-                            this.abstractRequest.getHeaders().put(pair.getKey(), pair.getValue());
-                        } else {
-                            Logger.warn("Failed to read post request line: '{}'", line);
-                        }
-                    }
-                }
-                builder.setLength(0);
+        if (this.readTarget == ReadTarget.REQUEST_BODY) {
+            if (!this.bodyDecoder.decode(byteBuf, this.requestBody)) {
+                return;
             }
-        } else {
-            if (lastCharacter == '\n' && character == '\r') {
-                begunLastLine = true;
-            } else if (character != '\n' && character != '\r') {
-                builder.append(character);
+            this.readTarget = ReadTarget.NONE;
+            if (CoreConfig.debug && CoreConfig.verbose) {
+                Logger.debug("Read a total of {}B (from {})", this.requestBody.getLength(),
+                    this.abstractRequest);
+            }
+            if (this.requestBody.complete(this::handleBodyWritten)) {
+                this.readEntity();
             }
         }
-        lastCharacter = character;
-        return true;
     }
 
     /**
-     * Attempt to read the integer as a byte, wrapper method for usage with {@link InputStream#read()}
-     *
-     * @param val Integer (byte)
-     * @return true if the byte was read, false if not
+     * Determine whether the request has an entity, once the request head has been read. If it does, a decoder is
+     * created for the entity, otherwise the request is done.
      */
-    boolean readByte(final int val) throws Throwable {
-        if (val == -1) {
+    private void readEntityHeaders() throws ReturnStatus {
+        final AsciiString transferEncoding = abstractRequest.getHeader(TRANSFER_ENCODING);
+        final AsciiString contentLength = abstractRequest.getHeader(CONTENT_LENGTH);
+        if (!transferEncoding.isEmpty()) {
+            //
+            // A request with both headers may be read differently by different
+            // servers, so it is rejected rather than guessed
+            //
+            if (!contentLength.isEmpty()) {
+                throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+            }
+            if (!transferEncoding.equalsIgnoreCase(CHUNKED)) {
+                throw new ReturnStatus(Header.STATUS_NOT_IMPLEMENTED, null);
+            }
+            this.bodyDecoder = RequestBodyDecoder.chunked();
+        } else if (contentLength.isEmpty()) {
+            this.readTarget = ReadTarget.NONE;
             this.done.set(true);
-            return false;
+            return;
+        } else {
+            final long length;
+            try {
+                length = contentLength.toLong();
+            } catch (final Exception e) {
+                throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null, e);
+            }
+            if (length < 0) {
+                throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null);
+            }
+            if (length > this.getLimit()) {
+                if (CoreConfig.debug) {
+                    Logger.debug("Supplied post body getCount too large ({0} > {1})", length,
+                        this.getLimit());
+                }
+                throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
+            }
+            if (length == 0) {
+                this.readTarget = ReadTarget.NONE;
+                this.done.set(true);
+                return;
+            }
+            this.bodyDecoder = RequestBodyDecoder.fixed(length);
         }
-        return this.readByte((byte) val);
-    }
 
-    void readBytes(final ByteBuf byteBuf) throws Throwable {
-        synchronized (this.lock) {
-            if (this.getReadTarget() == ReadTarget.REQUEST_BODY && !this.overflowStream.canWrite()) {
-                return; // Read nothing, we need to wait!
-            }
-            final int length = byteBuf.readableBytes();
-            final byte[] bytes = new byte[length];
-            byteBuf.readBytes(bytes, 0, length);
-            this.readBytes(bytes, length);
+        if (CoreConfig.debug && CoreConfig.verbose) {
+            Logger.debug("Reading request body of {}", this.abstractRequest);
         }
+
+        this.readTarget = ReadTarget.REQUEST_BODY;
+        this.requestBody = new RequestBody(this.abstractRequest, this.context.getLastContext().channel());
+        this.context.setRequestBody(this.requestBody);
     }
 
     /**
-     * Attempt to read a byte array
-     *
-     * @param bytes  Byte array
-     * @param length Length to be read
-     * @return Number of read bytes
+     * Bodies that are parsed into memory have a lower size limit than bodies that can be streamed
      */
-    private int readBytes(final byte[] bytes, final int length) throws Throwable {
-        synchronized (this.lock) {
-            if (this.getReadTarget() == ReadTarget.REQUEST_HEADERS) {
-                int read = 0;
-                for (int i = 0; i < length && i < bytes.length; i++) {
-                    if (this.readByte(bytes[i])) {
-                        read++;
-                    } else if (this.getReadTarget() == ReadTarget.REQUEST_BODY) {
-                        // We need to copy the remaining data over
-                        final int remaining = length - i;
-                        if (CoreConfig.debug && CoreConfig.verbose) {
-                            Logger.debug("Copying {0} bytes over to request entity (from {1})",
-                                remaining, this.abstractRequest);
-                        }
-                        final byte[] remainingData = new byte[remaining];
-                        System.arraycopy(bytes, i, remainingData, 0, remaining);
-                        this.overflowStream.setBuffer(remainingData);
-
-                        if (remainingData.length < (read + i)) {
-                            throw new IllegalStateException(String.format("%d < %d", remainingData.length,
-                                (read + i)));
-                        }
-
-                        return read + remainingData.length;
-                    }
-                    if (this.isDone()) {
-                        break;
-                    }
-                }
-                return read;
-            } else {
-                this.overflowStream.setBuffer(bytes);
-            }
-            return 0;
+    private long getLimit() {
+        if (this.isBasicEntity(abstractRequest.getHeader(CONTENT_TYPE))) {
+            return CoreConfig.Limits.limitPostBasicSize;
         }
+        return CoreConfig.Limits.limitPostMaxSize;
     }
 
-    @RequiredArgsConstructor(access = AccessLevel.PRIVATE) private class RequestEntityReader
-        extends AutoCloseable implements Runnable {
+    private boolean isBasicEntity(final AsciiString contentType) {
+        return contentType.startsWith(CONTENT_TYPE_URL_ENCODED) || EntityType.JSON
+            .getContentType().startsWith(contentType.toString());
+    }
 
-        private final KvantumInputStream kvantumInputStream;
+    /**
+     * Invoked by the event loop once a spilled body has been written to disk
+     */
+    private void handleBodyWritten() {
+        try {
+            this.readEntity();
+        } catch (final ReturnStatus returnStatus) {
+            this.context.getKvantumServerHandler().discard();
+            new ResponseTask(this.context.getLastContext(), this.context)
+                .handleThrowable(returnStatus, this.context.getLastContext());
+            return;
+        }
+        this.context.getKvantumServerHandler().readLeftover(this.context.getLastContext());
+    }
 
-        @Override public void run() {
-            if (isDone()) {
-                if (CoreConfig.debug && CoreConfig.verbose) {
-                    Logger.debug("RequestEntityReader started but terminated instantly, for request {}", abstractRequest);
-                }
-                return;
-            }
-            if (CoreConfig.debug && CoreConfig.verbose) {
-                Logger.debug("RequestEntityReader reading (from {})", abstractRequest);
-            }
-            // Determine read strategy
-            final AsciiString contentType = abstractRequest.getHeader(CONTENT_TYPE);
-            final RequestEntity requestEntity;
-            boolean isFormURLEncoded;
-            if ((isFormURLEncoded = contentType.startsWith(CONTENT_TYPE_URL_ENCODED)) ||
-                EntityType.JSON.getContentType().startsWith(contentType.toString())) {
-                // Read into memory and then parse the request
-                final StringBuilder builder = new StringBuilder(contentLength);
-                try (final BufferedReader bufferedReader =
-                    new BufferedReader(new InputStreamReader(this.kvantumInputStream))) {
-                    if (CoreConfig.debug && CoreConfig.verbose) {
-                        Logger.debug("RequestEntityReader reading data into memory (from {})", abstractRequest);
-                    }
-                    String line;
-                    while ((line = bufferedReader.readLine()) != null) {
-                        builder.append(line).append("\n");
-                    }
-                } catch (final IOException e) {
-                    Logger.error("Failed to read request entity");
-                    e.printStackTrace();
+    /**
+     * Create the request entity from the complete body. Multipart bodies are parsed lazily, by the worker that
+     * handles the request.
+     */
+    private void readEntity() throws ReturnStatus {
+        if (this.requestBody.getFailure() != null) {
+            throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, null, this.requestBody.getFailure());
+        }
+        final AsciiString contentType = abstractRequest.getHeader(CONTENT_TYPE);
+        final RequestEntity requestEntity;
+        try {
+            if (this.isBasicEntity(contentType)) {
+                if (this.requestBody.getLength() > CoreConfig.Limits.limitPostBasicSize) {
+                    throw new ReturnStatus(Header.STATUS_ENTITY_TOO_LARGE, null);
                 }
-                if (isFormURLEncoded) {
-                    requestEntity = new UrlEncodedPostRequest(abstractRequest, builder.toString());
+                final String entity = this.requestBody.toString(StandardCharsets.UTF_8);
+                if (contentType.startsWith(CONTENT_TYPE_URL_ENCODED)) {
+                    requestEntity = new UrlEncodedPostRequest(abstractRequest, entity);
                 } else {
-                    requestEntity = new JsonPostRequest(abstractRequest, builder.toString());
+                    requestEntity = new JsonPostRequest(abstractRequest, entity);
                 }
             } else if (contentType.startsWith(CONTENT_TYPE_MULTIPART)) {
                 if (CoreConfig.debug && CoreConfig.verbose) {
                     Logger.debug("Creating a new multipart post request (for {})", abstractRequest);
                 }
-                // It's a multipart form
-                requestEntity = new MultipartPostRequest(abstractRequest, this.kvantumInputStream);
-                requestEntity.load();
+                requestEntity = new MultipartPostRequest(abstractRequest, this.requestBody.openStream());
             } else {
                 Logger.warn("Request provided unknown post request type (Request: {0}): {1}",
                     abstractRequest, contentType);
                 requestEntity = new DummyPostRequest(abstractRequest, "");
             }
-            abstractRequest.setPostRequest(requestEntity);
-            done.set(true);
-
-            if (CoreConfig.debug && CoreConfig.verbose) {
-                Logger.debug("Completely read request entity (from {})",  abstractRequest);
-                Logger.debug("Read a total of {}B", this.kvantumInputStream.getTotalRead());
-            }
-
-            // We don't know if it's finished or not
-            context.handleReadCompletion();
+        } catch (final IOException e) {
+            throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, null, e);
+        } catch (final RuntimeException e) {
+            throw new ReturnStatus(Header.STATUS_BAD_REQUEST, null, e);
         }
-
-        @Override protected void handleClose() {
-            try {
-                this.kvantumInputStream.close();
-            } catch (final IOException ignored) {
-            }
-        }
-    }
-
-    private class RequestOutputStream extends KvantumOutputStream {
-
-        private final Object lock = new Object();
-        private final int expectedSize;
-
-        @Getter private volatile byte[] buffer;
-        private int read = 0;
-
-        public RequestOutputStream(final int expectedSize) {
-            this.expectedSize = expectedSize;
-        }
-
-        public void setBuffer(final byte[] buffer) {
-            synchronized (this.lock) {
-                if (this.isFinished()) {
-                    throw new IllegalStateException("Cannot write when the stream is finished");
-                } else if (!this.canWrite()) {
-                    throw new IllegalStateException("Cannot write when the stream is being read");
-                }
-                this.buffer = buffer;
-                this.read = 0;
-            }
-        }
-
-        @Override public int read(byte[] buffer) {
-            synchronized (this.lock) {
-                if (this.isFinished()) {
-                    return -1;
-                }
-                if (this.buffer == null || this.buffer.length == 0) {
-                    return 0;
-                }
-                int toRead = Math.min(this.buffer.length, buffer.length);
-                System.arraycopy(this.buffer, read, buffer, 0, toRead);
-                this.read += toRead;
-                if (this.expectedSize <= this.read) {
-                    this.finish();
-                }
-                return toRead;
-            }
-        }
-
-        @Override public int getOffer() {
-            synchronized (this.lock) {
-                return this.expectedSize - this.read; // this.buffer != null ? this.buffer.length - read : 0;
-            }
-        }
-
-        public boolean canWrite() {
-            synchronized (this.lock) {
-                return this.buffer == null || this.buffer.length - this.read <= 0;// this.getOffer() <= 0;
-            }
-        }
-
+        abstractRequest.setPostRequest(requestEntity);
+        this.done.set(true);
     }
 
     private enum ReadTarget {
-        REQUEST_HEADERS, REQUEST_BODY
+        REQUEST_HEADERS, REQUEST_BODY, NONE
     }
 
 }
@@ -0,0 +1,360 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.stream.ChunkedInput;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import xyz.kvantum.server.api.io.KvantumOutputStream;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.implementation.cache.ThreadCache;
+import xyz.kvantum.server.implementation.error.KvantumException;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A streamed response body, which is pulled by the {@link ChunkedWriteHandler} whenever the channel is writable. The
+ * worker that generated the response doesn't wait for the body to be sent, and a slow client only ever has a few
+ * chunks buffered for it.
+ * <p>
+ * Reading from the response stream may block, and runs user code, so it never happens on the event loop. Chunks are
+ * read ahead by a worker, up to {@link #MAX_QUEUED} of them. The event loop only takes chunks that are ready, and the
+ * transfer is suspended while there are none. It is resumed once the worker has read the next chunk. When the stream
+ * has nothing to read, the worker stops until data is offered, or the stream is finished.
+ * <p>
+ * Bodies of unknown length are framed using the chunked transfer coding, and may be compressed as they are sent.
+ */
+final class ResponseStreamInput implements ChunkedInput<ByteBuf> {
+
+    private static final int CHUNK_SIZE_WIDTH = 8;
+    private static final int MAX_QUEUED = 4;
+    private static final byte[] HEX_DIGITS = AsciiString.of("0123456789abcdef").getValue();
+
+    private final KvantumOutputStream responseStream;
+    private final long length;
+    private final GzipHandler gzipHandler;
+    private final Executor executor;
+    private final ChunkedWriteHandler writer;
+
+    //
+    // Shared between the event loop and the worker, guarded by the lock
+    //
+    private final Object lock = new Object();
+    private final ArrayDeque<ByteBuf> chunks = new ArrayDeque<>(MAX_QUEUED);
+    private ByteBufAllocator allocator;
+    private boolean reading;
+    private boolean waiting;
+    private boolean exhausted;
+    private boolean closed;
+    private Throwable failure;
+
+    //
+    // Only updated by the worker that reads the stream
+    //
+    private boolean endOfStream;
+    private volatile long written;
+    private volatile long progress;
+
+    /**
+     * @param responseStream Stream to read the body from
+     * @param length         Body length, or -1 if the length is unknown and the chunked transfer coding is used
+     * @param gzipHandler    Handler used to compress chunks (nullable). It is closed, releasing its deflater, once the
+     *                       input is closed and no read is in flight. Only applicable to bodies of unknown length.
+     * @param executor       Executor that reads from the stream
+     * @param writer         Handler that pulls the chunks, which is resumed when a chunk is ready
+     */
+    ResponseStreamInput(final KvantumOutputStream responseStream, final long length,
+        final GzipHandler gzipHandler, final Executor executor, final ChunkedWriteHandler writer) {
+        this.responseStream = responseStream;
+        this.length = length;
+        this.gzipHandler = gzipHandler;
+        this.executor = executor;
+        this.writer = writer;
+        this.responseStream.setAvailableListener(this::wake);
+    }
+
+    @Override public boolean isEndOfInput() {
+        synchronized (this.lock) {
+            return this.exhausted && this.chunks.isEmpty();
+        }
+    }
+
+    @Override public void close() {
+        final boolean idle;
+        synchronized (this.lock) {
+            this.closed = true;
+            ByteBuf chunk;
+            while ((chunk = this.chunks.poll()) != null) {
+                chunk.release();
+            }
+            idle = !this.reading;
+        }
+        this.responseStream.setAvailableListener(null);
+        if (idle) {
+            this.release();
+        }
+    }
+
+    @Deprecated @Override public ByteBuf readChunk(final ChannelHandlerContext context)
+        throws Exception {
+        return this.readChunk(context.alloc());
+    }
+
+    /**
+     * Take the next chunk that has been read, if there is one. Returns null if no chunk is ready yet, which makes the
+     * {@link ChunkedWriteHandler} wait until it is resumed.
+     */
+    @Override public ByteBuf readChunk(final ByteBufAllocator allocator) throws Exception {
+        final ByteBuf chunk;
+        final boolean schedule;
+        synchronized (this.lock) {
+            if (this.failure != null) {
+                throw new KvantumException("Failed to read the response body", this.failure);
+            }
+            this.allocator = allocator;
+            chunk = this.chunks.poll();
+            schedule = !this.reading && !this.waiting && !this.exhausted && !this.closed;
+            this.reading |= schedule;
+        }
+        if (schedule) {
+            this.schedule();
+        }
+        return chunk; // Nullable
+    }
+
+    /**
+     * Invoked when data is offered to the stream, or when it is finished
+     */
+    private void wake() {
+        synchronized (this.lock) {
+            if (!this.waiting || this.closed) {
+                return;
+            }
+            this.waiting = false;
+            this.reading = true;
+        }
+        this.schedule();
+    }
+
+    private void schedule() {
+        try {
+            this.executor.execute(this::readAhead);
+        } catch (final RejectedExecutionException e) {
+            this.fail(e);
+        }
+    }
+
+    /**
+     * Read chunks until the queue is full, the stream has nothing to read, or the body has been read
+     */
+    private void readAhead() {
+        try {
+            while (true) {
+                final ByteBufAllocator allocator;
+                synchronized (this.lock) {
+                    if (this.closed || this.chunks.size() >= MAX_QUEUED) {
+                        break;
+                    }
+                    allocator = this.allocator;
+                }
+                final ByteBuf chunk = this.nextChunk(allocator);
+                if (chunk == null && !this.endOfStream) {
+                    //
+                    // Nothing has been offered yet. The check is repeated once the
+                    // worker is waiting, in case data was offered in between
+                    //
+                    synchronized (this.lock) {
+                        this.waiting = true;
+                        this.reading = false;
+                    }
+                    if (this.responseStream.getOffer() > 0 || this.responseStream.isFinished()) {
+                        this.wake();
+                    }
+                    return;
+                }
+                if (chunk != null && !chunk.isReadable() && !this.endOfStream) {
+                    chunk.release();
+                    continue;
+                }
+                synchronized (this.lock) {
+                    if (this.closed) {
+                        if (chunk != null) {
+                            chunk.release();
+                        }
+                        break;
+                    }
+                    if (chunk != null) {
+                        this.chunks.add(chunk);
+                    }
+                    this.exhausted = this.endOfStream;
+                }
+                this.writer.resumeTransfer();
+                if (this.endOfStream) {
+                    break;
+                }
+            }
+        } catch (final Throwable throwable) {
+            this.fail(throwable);
+            return;
+        }
+        this.stopReading();
+    }
+
+    private void fail(final Throwable throwable) {
+        synchronized (this.lock) {
+            this.failure = throwable;
+        }
+        this.stopReading();
+        this.writer.resumeTransfer();
+    }
+
+    private void stopReading() {
+        final boolean closed;
+        synchronized (this.lock) {
+            this.reading = false;
+            closed = this.closed;
+        }
+        if (closed) {
+            this.release();
+        }
+    }
+
+    private void release() {
+        if (this.gzipHandler != null) {
+            this.gzipHandler.close();
+        }
+    }
+
+    /**
+     * Read the next chunk from the stream
+     *
+     * @param allocator Allocator of the chunk
+     * @return The chunk, which may be empty, or null if there was nothing to read. {@link #endOfStream} is set once
+     * the last chunk has been read.
+     * @throws KvantumException If compression fails
+     */
+    private ByteBuf nextChunk(final ByteBufAllocator allocator) throws KvantumException {
+        final byte[] buffer = ThreadCache.CHUNK_BUFFER.get();
+        final int read = this.responseStream.isFinished() ? -1 : this.responseStream.read(buffer);
+        if (read <= 0) {
+            if (read == -1 || this.responseStream.isFinished()) {
+                this.endOfStream = true;
+                if (this.length == -1 && this.gzipHandler != null) {
+                    final ByteBuf chunk = allocator.buffer();
+                    this.writeCompressedChunk(chunk, null, 0);
+                    chunk.writeBytes(KvantumServerHandler.END_CHUNK);
+                    return chunk;
+                } else if (this.length == -1) {
+                    return Unpooled.wrappedBuffer(KvantumServerHandler.END_CHUNK);
+                }
+            }
+            return null; // Nullable
+        }
+        this.progress += read;
+        final ByteBuf chunk;
+        if (this.length != -1) {
+            //
+            // The buffer is reused for the next chunk, so the data has to be copied
+            //
+            chunk = allocator.buffer(read);
+            chunk.writeBytes(buffer, 0, read);
+            this.written += read;
+        } else if (this.gzipHandler != null) {
+            chunk = allocator.buffer(read + KvantumServerHandler.MAX_LENGTH);
+            this.writeCompressedChunk(chunk, buffer, read);
+        } else {
+            chunk = allocator.buffer(read + KvantumServerHandler.MAX_LENGTH);
+            chunk.writeCharSequence(Integer.toHexString(read), StandardCharsets.US_ASCII);
+            chunk.writeBytes(KvantumServerHandler.CRLF);
+            chunk.writeBytes(buffer, 0, read);
+            chunk.writeBytes(KvantumServerHandler.CRLF);
+            this.written += read;
+        }
+        if (this.length != -1 && this.responseStream.isFinished()) {
+            this.endOfStream = true;
+        }
+        return chunk;
+    }
+
+    /**
+     * Compress data into a chunk. The size of the chunk isn't known until the data has been compressed, so it is
+     * written as a fixed width (zero padded) number in front of the data, once the data is written.
+     *
+     * @param chunk  Buffer to write the chunk to
+     * @param input  Data to compress, or null to finish the body
+     * @param length Length of the data
+     * @return Size of the chunk. Nothing is written to the buffer if this is zero, as such a chunk would end the body.
+     * @throws KvantumException If compression fails
+     */
+    private int writeCompressedChunk(final ByteBuf chunk, final byte[] input, final int length)
+        throws KvantumException {
+        final int start = chunk.writerIndex();
+        chunk.writeZero(CHUNK_SIZE_WIDTH);
+        chunk.writeBytes(KvantumServerHandler.CRLF);
+        try {
+            if (input == null) {
+                this.gzipHandler.finish(chunk);
+            } else {
+                this.gzipHandler.compress(input, length, chunk);
+            }
+        } catch (final IOException e) {
+            throw new KvantumException("( GZIP ) Failed to compress the bytes", e);
+        }
+        final int size =
+            chunk.writerIndex() - start - CHUNK_SIZE_WIDTH - KvantumServerHandler.CRLF.length;
+        if (size == 0) {
+            chunk.writerIndex(start);
+            return 0;
+        }
+        chunk.writeBytes(KvantumServerHandler.CRLF);
+        this.written += size;
+        for (int i = CHUNK_SIZE_WIDTH - 1, digits = size; i >= 0; i--, digits >>>= 4) {
+            chunk.setByte(start + i, HEX_DIGITS[digits & 0xF]);
+        }
+        return size;
+    }
+
+    @Override public long length() {
+        return this.length;
+    }
+
+    @Override public long progress() {
+        return this.progress;
+    }
+
+    /**
+     * Get the number of body bytes (excluding chunk framing) that have been handed to the channel
+     *
+     * @return Written bytes
+     */
+    long getWritten() {
+        return this.written;
+    }
+
+}
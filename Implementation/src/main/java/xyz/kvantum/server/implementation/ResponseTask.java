@@ -23,43 +23,55 @@ package xyz.kvantum.server.implementation;
 
 import com.codahale.metrics.Timer;
 import io.netty.buffer.ByteBuf;
-import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
 import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.cache.CacheApplicable;
+import xyz.kvantum.server.api.cache.CacheLookup;
+import xyz.kvantum.server.api.cache.CachedResponse;
+import xyz.kvantum.server.api.cache.PrecompiledResponse;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.CoreConfig.Buffer;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.core.WorkerProcedure;
+import xyz.kvantum.server.api.io.ByteBufferKvantumOutputStream;
+import xyz.kvantum.server.api.io.FileKvantumOutputStream;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.ContentEncoding;
 import xyz.kvantum.server.api.response.FinalizedResponse;
 import xyz.kvantum.server.api.response.Header;
-import xyz.kvantum.server.api.response.HeaderOption;
+import xyz.kvantum.server.api.response.HeaderList;
 import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.response.ResponseBody;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.DebugTree;
+import xyz.kvantum.server.api.util.HttpDate;
 import xyz.kvantum.server.api.util.ProtocolType;
-import xyz.kvantum.server.api.util.TimeUtil;
 import xyz.kvantum.server.api.views.RequestHandler;
 import xyz.kvantum.server.api.views.errors.ViewException;
 import xyz.kvantum.server.api.views.requesthandler.HTTPSRedirectHandler;
-import xyz.kvantum.server.implementation.cache.ThreadCache;
 import xyz.kvantum.server.implementation.error.KvantumException;
 
 import javax.net.ssl.SSLException;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.charset.StandardCharsets;
-import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CLOSE;
 import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
@@ -67,6 +79,10 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 @RequiredArgsConstructor final class ResponseTask implements Runnable {
 
     private static final String HIDDEN_IP = "127.0.0.1";
+    /**
+     * Initial capacity of the buffer that holds the per request headers of precompiled responses
+     */
+    private static final int PRECOMPILED_HEADERS_SIZE = 64;
 
     final ChannelHandlerContext context;
     final WorkerContext workerContext;
@@ -85,9 +101,11 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             //
             // Send the response to the client
             //
-            sendResponse(context);
+            sendInOrder(context);
         } catch (final Throwable throwable) {
             handleThrowable(throwable, context);
+        } finally {
+            workerContext.releaseRequestBody();
         }
     }
 
@@ -149,13 +167,15 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
                 this.workerContext.setBody(response);
                 this.workerContext.setResponseStream(response.getResponseStream());
-                this.sendResponse(context);
+                this.sendInOrder(context);
             } catch (final Throwable innerThrowable) {
                 new KvantumException("Failed to handle return status", innerThrowable)
                     .printStackTrace();
+                workerContext.responseWritten();
             }
         } else {
             new KvantumException("Failed to handle incoming socket", throwable).printStackTrace();
+            workerContext.responseWritten();
         }
     }
 
@@ -169,8 +189,17 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         ResponseBody body;
         KvantumOutputStream responseStream;
         boolean cache = false, shouldCache = false;
+        CacheLookup cacheLookup = null;
 
         try {
+            //
+            // The request entity is parsed here, rather than by the event loop, as
+            // it may have to be read back from disk
+            //
+            if (request.getPostRequest() != null) {
+                request.getPostRequest().load();
+            }
+
             //
             // Validate the request, if there are
             // registered request validators
@@ -179,29 +208,69 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                 requestHandler.getValidationManager().validate(request);
             }
 
+            CachedResponse cachedResponse = null;
             if (requestHandler instanceof CacheApplicable && ((CacheApplicable) requestHandler)
                 .isApplicable(request)) {
                 cache = true;
-                if (!ServerImplementation.getImplementation().getCacheManager()
-                    .hasCache(requestHandler)) {
+                //
+                // Only one request generates the response for a given cache key, any concurrent
+                // requests wait for it to be cached
+                //
+                cacheLookup = ServerImplementation.getImplementation().getCacheManager()
+                    .lookup(request, requestHandler);
+                cachedResponse = cacheLookup.getResponse();
+                if (cachedResponse == null) {
                     shouldCache = true;
+                } else if (CoreConfig.debug && cacheLookup.isCoalesced()) {
+                    Logger.debug("Waited for another request to generate {}",
+                        requestHandler.getName());
+                }
+            }
+
+            //
+            // Answer conditional requests without generating (or copying) the body, if the
+            // validators can be determined up front
+            //
+            if (CacheValidators.isConditional(request)) {
+                final CacheValidators validators;
+                if (cachedResponse != null) {
+                    validators = workerContext.isTransformed(cachedResponse) ?
+                        null :
+                        cachedResponse
+                            .getCacheValidators(workerContext.negotiateEncoding(cachedResponse));
+                } else {
+                    validators = requestHandler.getCacheValidators(request);
+                }
+                if (validators != null && validators.isNotModified(request)) {
+                    if (CoreConfig.debug) {
+                        Logger.debug("Request {} was not modified", request);
+                    }
+                    body = createNotModifiedResponse(validators);
+                    workerContext.setBody(body);
+                    workerContext.setResponseStream(body.getResponseStream());
+                    timer.stop();
+                    return;
                 }
             }
 
             //
             // Make sure that cache is handled as it should
             //
-            if (!cache
-                || shouldCache) { // Either it's a non-cached view, or there is no cache stored
+            if (cachedResponse == null) { // Either it's a non-cached view, or there is no cache stored
                 body = requestHandler.handle(request);
-                if (CoreConfig.debug) {
+                if (CoreConfig.debug && cache) {
                     Logger.debug("Did not find cache for request handler: {}",
                         requestHandler.getName());
                 }
             } else {
-                // Just read from memory
-                body = ServerImplementation.getImplementation().getCacheManager()
-                    .getCache(requestHandler);
+                //
+                // Just read from memory. The header is copied, as it's changed for this request,
+                // but the body is shared
+                //
+                body = cachedResponse.forRequest();
+                if (!workerContext.isTransformed(cachedResponse)) {
+                    cachedResponse.getCacheValidators().apply(body.getHeader());
+                }
                 if (CoreConfig.debug) {
                     Logger.debug("Found request handler in cache: {}", requestHandler.getName());
                 }
@@ -243,7 +312,10 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             //
             if (shouldCache && body.getResponseStream() instanceof KnownLengthStream) {
                 ServerImplementation.getImplementation().getCacheManager()
-                    .setCache(requestHandler, body);
+                    .setCache(request, requestHandler, body);
+            }
+            if (cacheLookup != null) {
+                cacheLookup.complete();
             }
 
             //
@@ -280,6 +352,19 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
                 knownLengthStream.replaceBytes(text.getBytes(StandardCharsets.UTF_8));
             }
+
+            //
+            // Handlers may also set validators on the generated response, in which case
+            // conditional requests are answered before the body is compressed and sent
+            //
+            if (cachedResponse == null && CacheValidators.isConditional(request) && body
+                .getHeader().getStatus().startsWith("200")) {
+                final CacheValidators validators = CacheValidators.fromHeader(body.getHeader());
+                if (validators != null && validators.isNotModified(request)) {
+                    body = createNotModifiedResponse(validators);
+                    responseStream = body.getResponseStream();
+                }
+            }
         } catch (final Exception e) {
 			/*
 			Message.WORKER_FAILED_HANDLING.log( e.getMessage() );
@@ -299,6 +384,10 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 			*/
             timer.stop();
             throw new ReturnStatus(Header.STATUS_INTERNAL_ERROR, workerContext, e);
+        } finally {
+            if (cacheLookup != null) {
+                cacheLookup.complete();
+            }
         }
 
         if (responseStream == null) {
@@ -311,14 +400,52 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         timer.stop();
     }
 
+    /**
+     * Create an empty {@code 304 Not Modified} response, containing the validators
+     *
+     * @param validators Validators of the representation that the client already has
+     * @return Created response
+     */
+    private ResponseBody createNotModifiedResponse(final CacheValidators validators) {
+        final Response response = new Response(workerContext.getRequestHandler());
+        response.getHeader().setStatus(Header.STATUS_NOT_MODIFIED);
+        response.getHeader().set(Header.HEADER_CONTENT_TYPE, (AsciiString) null);
+        validators.apply(response.getHeader());
+        return response;
+    }
+
+    /**
+     * Send the response once the responses to all earlier requests on the connection have been written, so that
+     * pipelined requests are answered in order. Responses that have to wait are sent by a worker, once it's their
+     * turn.
+     *
+     * @param context Channel context
+     */
+    private void sendInOrder(final ChannelHandlerContext context) {
+        final CompletableFuture<Void> turn = workerContext.getTurn();
+        if (turn.isDone()) {
+            sendResponse(context);
+            return;
+        }
+        final Runnable send = () -> {
+            try {
+                sendResponse(context);
+            } catch (final Throwable throwable) {
+                handleThrowable(throwable, context);
+            }
+        };
+        turn.thenRun(() -> {
+            try {
+                ServerImplementation.getImplementation().getExecutorService().execute(send);
+            } catch (final RejectedExecutionException e) {
+                send.run();
+            }
+        });
+    }
+
     @SuppressWarnings("ALL") private void sendResponse(final ChannelHandlerContext context) {
         final Timer.Context timer = KvantumServerHandler.TIMER_SEND_RESPONSE.time();
 
-        //
-        // Determine whether or not the response should be compressed
-        //
-        workerContext.determineGzipStatus();
-
         //
         // Get the generated body
         //
@@ -328,21 +455,29 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         Assert.notNull(body);
         Assert.notNull(body.getHeader());
 
-        // Retrieve an Md5Handler from the handler pool
-        // final Md5Handler md5Handler = SimpleServer.md5HandlerPool.getNullable();
-        // Generate the md5 checksum
-        // TODO: Re-enable this final String checksum = md5Handler.generateChecksum( bytes );
-        // Update the headers to include the md5 checksum
-        // body.getHeader().set( Header.HEADER_CONTENT_MD5, checksum );
-        // body.getHeader().set( Header.HEADER_ETAG, checksum );
-        // Return the md5 handler to the pool
-        // SimpleServer.md5HandlerPool.add( md5Handler );
+        //
+        // 304 responses never have a body
+        //
+        final boolean notModified = body.getHeader().getStatus().startsWith("304");
+
+        //
+        // Determine whether or not the response should be compressed
+        //
+        if (!notModified) {
+            workerContext.determineGzipStatus();
+        }
+
+        //
+        // Cached responses are sent as they were compiled, unless this request changes them
+        //
+        final PrecompiledResponse precompiledResponse =
+            this.getPrecompiledResponse(body, notModified);
 
         //
         // Add a Last-Modified if it isn't already present in the response
         //
-        if (!body.getHeader().get(Header.HEADER_LAST_MODIFIED).isPresent()) {
-            body.getHeader().set(Header.HEADER_LAST_MODIFIED, TimeUtil.getHTTPTimeStamp());
+        if (!notModified && !body.getHeader().get(Header.HEADER_LAST_MODIFIED).isPresent()) {
+            body.getHeader().set(Header.HEADER_LAST_MODIFIED, HttpDate.now());
         }
 
         //
@@ -361,19 +496,20 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         final KvantumOutputStream responseStream =
             workerContext.getResponseStream(); // body.getResponseStream();
         final boolean hasKnownLength = responseStream instanceof KnownLengthStream;
-
         //
-        // Fetch the GZIP handler, if applicable
+        // File backed streams are transferred directly from the file, unless they have to be compressed
         //
-        final GzipHandler gzipHandler;
-        if (workerContext.isGzip()) {
-            gzipHandler = SimpleServer.gzipHandlerPool.getNullable();
+        final FileKvantumOutputStream fileStream;
+        if (responseStream instanceof FileKvantumOutputStream && !workerContext.isGzip()) {
+            fileStream = (FileKvantumOutputStream) responseStream;
         } else {
-            gzipHandler = null;
+            fileStream = null;
         }
 
         boolean shouldWriteBody;
-        if (workerContext.getRequest().getQuery().getMethod().hasBody()) {
+        if (notModified) {
+            shouldWriteBody = false;
+        } else if (workerContext.getRequest().getQuery().getMethod().hasBody()) {
             shouldWriteBody = true;
         } else {
             shouldWriteBody = false;
@@ -387,28 +523,62 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
             //
             // If the length is known, we compress before writing
             //
-            if (workerContext.isGzip()) {
-                byte[] bytes = ((KnownLengthStream) responseStream).getAll();
+            final PrecompiledResponse encodedResponse = this.getEncodedResponse(body);
+            if (encodedResponse != null) {
+                //
+                // Cached responses are sent using the variant that was compressed when they were cached
+                //
+                ((ByteBufferKvantumOutputStream) responseStream)
+                    .replaceContent(encodedResponse.getBody());
+                ContentEncoding.GZIP.applyHeaders(body.getHeader());
+                ((CachedResponse) body).getCacheValidators(ContentEncoding.GZIP)
+                    .apply(body.getHeader());
+            } else if (workerContext.isGzip()) {
+                final byte[] bytes = ((KnownLengthStream) responseStream).getAll();
                 try {
-                    bytes = gzipHandler.compress(bytes);
+                    final byte[] compressed = GzipHandler.compress(bytes);
+                    //
+                    // Bodies that don't shrink are sent as they are
+                    //
+                    if (compressed.length < bytes.length) {
+                        ((KnownLengthStream) responseStream).replaceBytes(compressed);
+                        ContentEncoding.GZIP.applyHeaders(body.getHeader());
+                    } else {
+                        workerContext.setGzip(false);
+                    }
                 } catch (final IOException e) {
                     new KvantumException("( GZIP ) Failed to compress the bytes").printStackTrace();
+                    workerContext.setGzip(false);
                 }
-                ((KnownLengthStream) responseStream).replaceBytes(bytes);
             }
             body.getHeader().set(Header.HEADER_CONTENT_LENGTH,
                 AsciiString.of(((KnownLengthStream) responseStream).getLength()));
-        } else {
+        } else if (shouldWriteBody && fileStream != null) {
+            body.getHeader()
+                .set(Header.HEADER_CONTENT_LENGTH, AsciiString.of(fileStream.getLength()));
+        } else if (!notModified) {
             body.getHeader().set(Header.HEADER_TRANSFER_ENCODING, "chunked");
         }
 
+        //
+        // Streamed bodies are compressed as they are sent, by a deflater of their own
+        //
+        GzipHandler gzipHandler = null;
+        if (shouldWriteBody && !hasKnownLength && fileStream == null && workerContext.isGzip()) {
+            try {
+                gzipHandler = new GzipHandler();
+                ContentEncoding.GZIP.applyHeaders(body.getHeader());
+            } catch (final IOException e) {
+                new KvantumException("( GZIP ) Failed to create a compressor", e).printStackTrace();
+            }
+        }
+
         //
         // Determine whether to keep the connection alive
         //
         final boolean keepAlive;
-        if (workerContext.getRequest().getHeaders()
-            .getOrDefault(KvantumServerHandler.CONNECTION, CLOSE).equalsIgnoreCase(KEEP_ALIVE)
-            && !body.getHeader().get(Header.HEADER_CONNECTION).orElse(KEEP_ALIVE).equals(CLOSE)) {
+        if (workerContext.isKeepAlive() && !body.getHeader().get(Header.HEADER_CONNECTION)
+            .orElse(KEEP_ALIVE).equals(CLOSE)) {
             if (CoreConfig.debug) {
                 Logger.debug("Request " + workerContext.getRequest() + " requested keep-alive...");
             }
@@ -428,96 +598,64 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         //
         final Timer.Context timerWriteToClient = KvantumServerHandler.TIMER_WRITE_TO_CLIENT.time();
 
-        final ByteBuf buf = PooledByteBufAllocator.DEFAULT.buffer(Buffer.out);
+        if (precompiledResponse == null) {
+            final ByteBuf buf = context.alloc().buffer(Buffer.out);
 
-        //
-        // Write the header
-        //
-        buf.writeBytes(body.getHeader().getFormat().getValue());
-        buf.writeBytes(KvantumServerHandler.SPACE);
-        buf.writeBytes(body.getHeader().getStatus().getValue());
-        buf.writeBytes(KvantumServerHandler.NEW_LINE);
-        for (final Map.Entry<HeaderOption, AsciiString> entry : body.getHeader().getHeaders()
-            .entries()) {
-            buf.writeBytes(entry.getKey().getBytes());
-            buf.writeBytes(KvantumServerHandler.COLON_SPACE);
-            buf.writeBytes(entry.getValue().getValue());
-            buf.writeBytes(KvantumServerHandler.NEW_LINE);
-        }
-        // Print one empty line to indicate that the header sending is finished, this is important as the content
-        // would otherwise be classed as headers, which really isn't optimal <3
-        buf.writeBytes(KvantumServerHandler.NEW_LINE);
+            //
+            // Write the header, names and status lines are pre-encoded
+            //
+            buf.writeBytes(body.getHeader().getStatusLine());
+            final HeaderList headers = body.getHeader().getEntries();
+            for (int i = 0; i < headers.size(); i++) {
+                buf.writeBytes(headers.getName(i).getPrefix());
+                buf.writeBytes(headers.getValue(i).getValue());
+                buf.writeBytes(KvantumServerHandler.CRLF);
+            }
+            // Print one empty line to indicate that the header sending is finished, this is important as the content
+            // would otherwise be classed as headers, which really isn't optimal <3
+            buf.writeBytes(KvantumServerHandler.CRLF);
 
-        //
-        // Write the header to the client
-        //
-        context.write(buf);
+            //
+            // Write the header to the client
+            //
+            context.write(buf);
+        }
 
         long actualLength = 0L;
+        ResponseStreamInput streamInput = null;
 
-        if (shouldWriteBody) {
+        if (precompiledResponse != null) {
             if (CoreConfig.debug) {
-                Logger.debug("Using direct write from memory: {}", hasKnownLength);
+                Logger.debug("Writing precompiled response for {}", body);
             }
-
+            actualLength = writePrecompiledResponse(context, precompiledResponse, keepAlive);
+        } else if (shouldWriteBody && fileStream != null) {
+            if (CoreConfig.debug) {
+                Logger.debug("Transferring {} directly from disk", fileStream.getFile());
+            }
+            actualLength = writeFile(context, fileStream);
+        } else if (shouldWriteBody && responseStream instanceof ByteBufferKvantumOutputStream) {
             //
-            // Write the response
+            // Buffer backed bodies (such as cached responses) are written without being copied
             //
-            byte[] buffer = ThreadCache.CHUNK_BUFFER.get();
-            while (!responseStream.isFinished()) {
-                //
-                // Read as much data as possible from the respone stream
-                //
-                int read = responseStream.read(buffer);
-                if (read != -1) {
-                    //
-                    // If the length is known, write data directly
-                    //
-                    if (hasKnownLength) {
-                        context.write(Unpooled.wrappedBuffer(buffer, 0, read));
-                        context.flush().newSucceededFuture().awaitUninterruptibly();
-                        actualLength += read;
-                    } else {
-                        //
-                        // If the length isn't known, we first compress (if applicable) and then write using
-                        // the chunked transfer encoding format
-                        //
-                        final ByteBuf result;
-
-                        if (workerContext.isGzip()) {
-                            try {
-                                result = gzipHandler.compress(buffer, read);
-                                actualLength += result.readableBytes();
-                            } catch (final IOException e) {
-                                new KvantumException("( GZIP ) Failed to compress the bytes").printStackTrace();
-                                continue;
-                            }
-                        } else {
-                            result = Unpooled.wrappedBuffer(buffer, 0, read);
-                        }
-
-                        actualLength += read;
-
-                        context.write(AsciiString.of(Integer.toHexString(read)).getValue());
-                        context.write(KvantumServerHandler.CRLF);
-                        context.write(result);
-                        context.write(KvantumServerHandler.CRLF);
-                        //
-                        // When using this mode we need to make sure that everything is written, so the
-                        // client doesn't time out
-                        //
-                        context.flush().newSucceededFuture().awaitUninterruptibly();
-                    }
-                }
+            final ByteBuffer content =
+                ((ByteBufferKvantumOutputStream) responseStream).getContent();
+            actualLength = content.remaining();
+            context.write(Unpooled.wrappedBuffer(content));
+        } else if (shouldWriteBody) {
+            if (CoreConfig.debug) {
+                Logger.debug("Streaming response body, known length: {}", hasKnownLength);
             }
-
             //
-            // If we're using the chunked encoding format
-            // write the end chunk
+            // The body is pulled by the chunked write handler whenever the channel is writable,
+            // so a slow client doesn't make the response pile up in memory, nor does it hold on
+            // to this thread. The stream itself is read by the workers, never by the event loop
             //
-            if (!hasKnownLength) {
-                context.write(KvantumServerHandler.END_CHUNK);
-            }
+            streamInput = new ResponseStreamInput(responseStream,
+                hasKnownLength ? ((KnownLengthStream) responseStream).getLength() : -1L,
+                gzipHandler, ServerImplementation.getImplementation().getExecutorService(),
+                context.pipeline().get(ChunkedWriteHandler.class));
+            context.write(streamInput);
         } /* shouldWriteToClient */ else if (CoreConfig.debug) {
             Logger.debug("Skipping body, because method {} does not require body",
                 workerContext.getRequest().getQuery().getMethod());
@@ -525,13 +663,6 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
         timerWriteToClient.stop();
 
-        //
-        // Return the GZIP handler to the pool
-        //
-        if (gzipHandler != null) {
-            SimpleServer.gzipHandlerPool.add(gzipHandler);
-        }
-
         //
         // Invalidate request to make sure that it isn't handled anywhere else, again (wouldn't work)
         //
@@ -555,23 +686,151 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
         finalizedResponse
             .authorization(this.workerContext.getRequest().getAuthorization().orElse(null))
-            .length((int) actualLength).status(body.getHeader().getStatus().toString())
-            .query(this.workerContext.getRequest().getQuery())
-            .timeFinished(System.currentTimeMillis()).build();
-
-        ServerImplementation.getImplementation().getEventBus()
-            .throwEvent(finalizedResponse.build(), true);
+            .status(body.getHeader().getStatus().toString())
+            .query(this.workerContext.getRequest().getQuery());
 
         //
         // Make sure everything is written and either close the connection
-        // or the channel (depending on whether keep-alive is used or not)
+        // or the channel (depending on whether keep-alive is used or not).
+        // The empty buffer completes once everything before it has been written
         //
-        final ChannelFuture future = context.flush().newSucceededFuture();
+        final ChannelFuture future = context.writeAndFlush(Unpooled.EMPTY_BUFFER);
         if (!keepAlive) {
             future.addListener(ChannelFutureListener.CLOSE);
         }
+        future.addListener(ignored -> workerContext.responseWritten());
+
+        //
+        // The length of streamed bodies is known once they have been written
+        //
+        final long knownLength = actualLength;
+        final ResponseStreamInput writtenInput = streamInput;
+        future.addListener(ignored -> ServerImplementation.getImplementation().getEventBus()
+            .throwEvent(finalizedResponse
+                .length((int) (writtenInput == null ? knownLength : writtenInput.getWritten()))
+                .timeFinished(System.currentTimeMillis()).build(), true));
 
         timer.stop();
     }
 
+    /**
+     * Get the precompiled form of a cached response, if it can be sent as it is. That isn't the case if the body is
+     * transformed, if the request sets cookies or doesn't expect a body, or if the status was changed. Clients that
+     * accept gzip are sent the compressed variant, if there is one.
+     *
+     * @param body        Response
+     * @param notModified Whether the response is a {@code 304 Not Modified} response
+     * @return Precompiled response, or null if the response has to be serialized
+     */
+    private PrecompiledResponse getPrecompiledResponse(final ResponseBody body,
+        final boolean notModified) {
+        if (notModified || !(body instanceof CachedResponse)) {
+            return null; // Nullable
+        }
+        final CachedResponse cachedResponse = (CachedResponse) body;
+        final AbstractRequest request = workerContext.getRequest();
+        if (!request.getQuery().getMethod().hasBody() || !request.postponedCookies.isEmpty()
+            || workerContext.isTransformed(cachedResponse)) {
+            return null; // Nullable
+        }
+        final PrecompiledResponse precompiledResponse = cachedResponse.getPrecompiledResponse(
+            workerContext.isGzip() ? ContentEncoding.GZIP : ContentEncoding.IDENTITY);
+        if (precompiledResponse == null || !precompiledResponse.getStatus()
+            .equals(body.getHeader().getStatus())) {
+            return null; // Nullable
+        }
+        return precompiledResponse;
+    }
+
+    /**
+     * Get the compressed variant of a cached response, if the client is sent it
+     *
+     * @param body Response
+     * @return Compiled variant, or null if the body isn't a cached response, or is sent as it is
+     */
+    private PrecompiledResponse getEncodedResponse(final ResponseBody body) {
+        if (!workerContext.isGzip() || !(body instanceof CachedResponse) || workerContext
+            .isTransformed((CachedResponse) body) || !(workerContext
+            .getResponseStream() instanceof ByteBufferKvantumOutputStream)) {
+            return null; // Nullable
+        }
+        return ((CachedResponse) body).getPrecompiledResponse(ContentEncoding.GZIP); // Nullable
+    }
+
+    /**
+     * Write a precompiled response. The compiled buffer is shared, only the headers that differ between requests
+     * ({@code Date} and {@code Connection}) are written for each request, after the status line.
+     *
+     * @param context             Channel context
+     * @param precompiledResponse Precompiled response
+     * @param keepAlive           Whether the connection is kept alive
+     * @return Number of body bytes written
+     */
+    private static long writePrecompiledResponse(final ChannelHandlerContext context,
+        final PrecompiledResponse precompiledResponse, final boolean keepAlive) {
+        final ByteBuf headers = context.alloc().buffer(PRECOMPILED_HEADERS_SIZE);
+        headers.writeBytes(Header.HEADER_DATE.getPrefix());
+        headers.writeBytes(HttpDate.nowBytes());
+        headers.writeBytes(KvantumServerHandler.CRLF);
+        headers.writeBytes(Header.HEADER_CONNECTION.getPrefix());
+        headers.writeBytes(keepAlive ? KEEP_ALIVE.getValue() : CLOSE.getValue());
+        headers.writeBytes(KvantumServerHandler.CRLF);
+        context.write(Unpooled
+            .wrappedBuffer(Unpooled.wrappedBuffer(precompiledResponse.getStatusLine()), headers,
+                Unpooled.wrappedBuffer(precompiledResponse.getHeadersAndBody())));
+        return precompiledResponse.getBodyLength();
+    }
+
+    /**
+     * Write a file backed response body. Plain connections use a {@link DefaultFileRegion}, which lets the transport
+     * copy the file straight into the socket ({@code sendfile} when using epoll). Encrypted connections and HTTP/2
+     * streams can't do that, so the file is read in chunks by the {@link io.netty.handler.stream.ChunkedWriteHandler}
+     * instead.
+     *
+     * @param context    Channel context
+     * @param fileStream File stream
+     * @return Number of bytes that will be written
+     */
+    private long writeFile(final ChannelHandlerContext context,
+        final FileKvantumOutputStream fileStream) {
+        final boolean chunked =
+            workerContext.getRequest().getProtocolType() == ProtocolType.HTTPS
+                || context.channel() instanceof Http2StreamChannel;
+        for (final FileKvantumOutputStream.Segment segment : fileStream.getSegments()) {
+            if (!segment.isRegion()) {
+                context.write(Unpooled.wrappedBuffer(segment.getBytes()));
+                continue;
+            }
+            //
+            // Every region gets its own channel, as it is closed once the region has been written
+            //
+            FileChannel fileChannel = null;
+            try {
+                fileChannel = fileStream.openChannel();
+                if (chunked) {
+                    context.write(new ChunkedNioFile(fileChannel, segment.getPosition(),
+                        segment.getLength(), Buffer.out));
+                } else {
+                    context.write(new DefaultFileRegion(fileChannel, segment.getPosition(),
+                        segment.getLength()));
+                }
+            } catch (final IOException e) {
+                new KvantumException("Failed to transfer " + fileStream.getFile(), e)
+                    .printStackTrace();
+                if (fileChannel != null) {
+                    try {
+                        fileChannel.close();
+                    } catch (final IOException ignored) {
+                    }
+                }
+                //
+                // The content length has already been sent, so the connection is unusable
+                //
+                context.close();
+                return 0L;
+            }
+        }
+        return fileStream.getLength();
+    }
+
 }
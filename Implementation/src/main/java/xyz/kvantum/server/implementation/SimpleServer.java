@@ -25,7 +25,6 @@ import com.google.gson.Gson;
 import com.google.gson.GsonBuilder;
 import com.intellectualsites.commands.CommandManager;
 import com.intellectualsites.configurable.ConfigurationFactory;
-import io.netty.util.concurrent.DefaultThreadFactory;
 import io.netty.util.internal.logging.InternalLoggerFactory;
 import lombok.Getter;
 import lombok.SneakyThrows;
@@ -91,7 +90,7 @@ import java.net.UnknownHostException;
 import java.util.Locale;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 import java.util.function.BiConsumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -103,9 +102,6 @@ public class SimpleServer implements Kvantum {
 
     private static final Pattern LOG_ARG_PATTERN = Pattern.compile("\\{(?<num>([0-9])+)}");
 
-    static ObjectPool<GzipHandler> gzipHandlerPool;
-    static ObjectPool<Md5Handler> md5HandlerPool;
-
     //region Instance fields
     @Getter private final WorkerProcedure procedure = new WorkerProcedure();
     @Getter private final ITempFileManagerFactory tempFileManagerFactory =
@@ -128,6 +124,9 @@ public class SimpleServer implements Kvantum {
     @Getter private boolean stopped;
     private HTTPThread httpThread;
     private HTTPSThread httpsThread;
+    private ConnectionThrottle throttle;
+    private AdmissionController admission;
+    private ConnectionDrainer connections;
     @Getter private FileSystem fileSystem;
     @Getter private FileWatcher fileWatcher;
     @Getter private CommandManager commandManager;
@@ -155,12 +154,6 @@ public class SimpleServer implements Kvantum {
                 "Failed to create the core folder: " + getCoreFolder());
         }
 
-        //
-        // Initialize the executor service
-        //
-        this.executorService = Executors.newCachedThreadPool(
-            new DefaultThreadFactory("kvantum-pool"));
-
         //
         // Watches for file updates and invalidates cache
         //
@@ -224,11 +217,6 @@ public class SimpleServer implements Kvantum {
         Logger.info("Starting memory guard!");
         MemoryGuard.getInstance().start();
 
-        //
-        // Setup the cache manager
-        //
-        this.cacheManager = new CacheManager();
-
         //
         // Load the configuration file
         //
@@ -236,6 +224,25 @@ public class SimpleServer implements Kvantum {
             ConfigurationFactory.load(CoreConfig.class, new File(getCoreFolder(), "config")).get();
         }
 
+        //
+        // Setup the cache manager, after the configuration has been loaded as it
+        // determines the cache sizes
+        //
+        this.cacheManager = new CacheManager(this.metrics);
+
+        //
+        // Initialize the executor service, which is bounded by the configuration
+        //
+        final WorkerExecutor workerExecutor = WorkerExecutor.create(this.metrics);
+        this.executorService = workerExecutor;
+        //
+        // Requests are admitted against the limits in the configuration, and
+        // the number of requests that wait for a worker
+        //
+        this.admission =
+            new AdmissionController(this.metrics, () -> workerExecutor.getQueue().size());
+        this.connections = new ConnectionDrainer(this.metrics);
+
         //
         // Setup the internal application
         //
@@ -342,7 +349,7 @@ public class SimpleServer implements Kvantum {
         //
         // Setup the connection throttler
         //
-        ConnectionThrottle.initialize();
+        this.throttle = new ConnectionThrottle(this.metrics);
     }
 
     @Override public final File getCoreFolder() {
@@ -365,11 +372,6 @@ public class SimpleServer implements Kvantum {
     }
 
     @Override @Synchronized public final boolean start() {
-        if (CoreConfig.gzip) {
-            gzipHandlerPool = new ObjectPool<>(CoreConfig.Pools.gzipHandlers, GzipHandler::new);
-        }
-        md5HandlerPool = new ObjectPool<>(CoreConfig.Pools.md5Handlers, Md5Handler::new);
-
         try {
             Assert.equals(this.started, false,
                 new KvantumStartException("Cannot start the server, it is already started",
@@ -414,7 +416,8 @@ public class SimpleServer implements Kvantum {
                 System
                     .setProperty("javax.net.ssl.keyStorePassword", CoreConfig.SSL.keyStorePassword);
 
-                this.httpsThread = new HTTPSThread(classResolver);
+                this.httpsThread = new HTTPSThread(classResolver, this.throttle, this.connections,
+                    this.admission);
                 this.httpsThread.start();
             } catch (final Exception e) {
                 new KvantumException("Failed to start HTTPS server", e).printStackTrace();
@@ -426,7 +429,8 @@ public class SimpleServer implements Kvantum {
         log(Message.OUTPUT_BUFFER_INFO, CoreConfig.Buffer.out / 1024, CoreConfig.Buffer.in / 1024);
 
         try {
-            this.httpThread = new HTTPThread(new ServerSocketFactory(), classResolver);
+            this.httpThread = new HTTPThread(new ServerSocketFactory(), classResolver,
+                this.throttle, this.connections, this.admission);
         } catch (KvantumInitializationException e) {
             Message.SERVER_START_FAILED.log();
             ServerImplementation.getImplementation().stopServer();
@@ -547,18 +551,56 @@ public class SimpleServer implements Kvantum {
         //
         this.fileWatcher.getStopSignal().stop();
 
+        //
+        // Stop accepting connections, and let the open connections finish
+        // the responses that they are writing
+        //
+        try {
+            if (httpThread != null) {
+                httpThread.stopAccepting();
+            }
+            if (httpsThread != null) {
+                httpsThread.stopAccepting();
+            }
+            if (connections != null) {
+                connections.drain(CoreConfig.Connections.shutdownGracePeriod, TimeUnit.SECONDS);
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (final Exception e) {
+            e.printStackTrace();
+        }
+
         //
         // Shutdown the netty servers
         //
         try {
-            httpThread.close();
-            if (CoreConfig.SSL.enable) {
+            if (httpThread != null) {
+                httpThread.close();
+            }
+            if (CoreConfig.SSL.enable && httpsThread != null) {
                 httpsThread.close();
             }
         } catch (final Exception e) {
             e.printStackTrace();
         }
 
+        //
+        // Shutdown the workers, the connections have been closed so
+        // nothing is left for them to do
+        //
+        if (executorService != null) {
+            executorService.shutdown();
+            try {
+                if (!executorService.awaitTermination(5L, TimeUnit.SECONDS)) {
+                    executorService.shutdownNow();
+                }
+            } catch (final InterruptedException e) {
+                executorService.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+
         //
         // Shutdown utilities
         //
@@ -0,0 +1,139 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.WriteBufferWaterMark;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Applies {@link CoreConfig.Sockets} to server bootstraps, and binds their listening sockets
+ */
+final class SocketOptions {
+
+    private SocketOptions() {
+    }
+
+    /**
+     * Apply the socket options to a bootstrap. Transport specific options are applied by the class provider.
+     *
+     * @param bootstrap     Bootstrap to configure
+     * @param classProvider Provider of the bootstrap's channel classes
+     */
+    static void apply(final ServerBootstrap bootstrap,
+        final NioClassResolver.ClassProvider classProvider) {
+        final int high = CoreConfig.Sockets.writeBufferHighWaterMark;
+        final int low = Math.min(CoreConfig.Sockets.writeBufferLowWaterMark, high);
+        bootstrap.option(ChannelOption.SO_BACKLOG, CoreConfig.Sockets.backlog)
+            .childOption(ChannelOption.TCP_NODELAY, CoreConfig.Sockets.tcpNoDelay)
+            .childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(low, high))
+            .childOption(ChannelOption.ALLOCATOR, allocator(CoreConfig.Sockets.allocator));
+        classProvider.applyOptions(bootstrap);
+    }
+
+    /**
+     * Get the number of listening sockets to bind per port. This is 1 unless the transport supports SO_REUSEPORT.
+     *
+     * @param classProvider Provider of the channel classes
+     * @return Number of acceptors
+     */
+    static int acceptors(final NioClassResolver.ClassProvider classProvider) {
+        final int acceptors = Math.max(1, CoreConfig.Sockets.acceptors);
+        if (acceptors > 1 && !classProvider.isReusePortSupported()) {
+            Logger.warn("{} acceptors were configured, but SO_REUSEPORT requires epoll. Using 1 "
+                + "acceptor", acceptors);
+            return 1;
+        }
+        return acceptors;
+    }
+
+    /**
+     * Get the number of threads in a boss group, so that every acceptor gets an event loop of its own
+     *
+     * @param configured Configured number of threads, 0 meaning netty's default
+     * @param acceptors  Number of acceptors
+     * @return Number of threads
+     */
+    static int bossThreads(final int configured, final int acceptors) {
+        if (configured == 0) {
+            return 0;
+        }
+        return Math.max(configured, acceptors);
+    }
+
+    /**
+     * Bind a number of listening sockets to the same port
+     *
+     * @param bootstrap Configured bootstrap
+     * @param port      Port to bind to
+     * @param acceptors Number of sockets
+     * @return Futures of the bound sockets
+     * @throws InterruptedException If interrupted while binding
+     */
+    static List<ChannelFuture> bind(final ServerBootstrap bootstrap, final int port,
+        final int acceptors) throws InterruptedException {
+        final List<ChannelFuture> futures = new ArrayList<>(acceptors);
+        for (int i = 0; i < acceptors; i++) {
+            futures.add(bootstrap.bind(port).sync());
+        }
+        return futures;
+    }
+
+    /**
+     * Close listening sockets. Connections that they accepted are left open.
+     *
+     * @param futures Futures of the bound sockets, may be null
+     */
+    static void unbind(final List<ChannelFuture> futures) {
+        if (futures == null) {
+            return;
+        }
+        for (final ChannelFuture future : futures) {
+            future.channel().close().syncUninterruptibly();
+        }
+    }
+
+    static ByteBufAllocator allocator(final String name) {
+        switch (name.toLowerCase(Locale.ENGLISH)) {
+            case "pooled":
+                return PooledByteBufAllocator.DEFAULT;
+            case "unpooled":
+                return UnpooledByteBufAllocator.DEFAULT;
+            case "default":
+                return ByteBufAllocator.DEFAULT;
+            default:
+                Logger.warn("Unknown allocator '{}', using the pooled allocator", name);
+                return PooledByteBufAllocator.DEFAULT;
+        }
+    }
+
+}
@@ -0,0 +1,167 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.handler.codec.http2.Http2SecurityUtil;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSsl;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.SslContextBuilder;
+import io.netty.handler.ssl.SslProvider;
+import io.netty.handler.ssl.SupportedCipherSuiteFilter;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLSessionContext;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.security.GeneralSecurityException;
+import java.security.KeyStore;
+import java.util.Arrays;
+
+/**
+ * Creates the {@link SslContext} of the HTTPS server. OpenSSL (netty-tcnative) is used when it is available, as it
+ * is a lot cheaper than the JDK implementation, which is used otherwise. The key material is either read from PEM
+ * files or from a JKS key store. Sessions are cached, and can be resumed using session tickets.
+ */
+final class SslContextFactory {
+
+    /**
+     * Size of a session ticket key: a 16 byte name, a 16 byte HMAC secret and a 16 byte AES key
+     */
+    private static final int TICKET_KEY_SIZE = 48;
+    private static final String JDK_SESSION_TICKETS = "jdk.tls.server.enableSessionTicketExtension";
+
+    private SslContextFactory() {
+    }
+
+    /**
+     * Create the context, using the settings in {@link CoreConfig.SSL}
+     *
+     * @return Created context
+     * @throws IOException              If the key material or session ticket keys can't be read
+     * @throws GeneralSecurityException If the key store can't be loaded
+     */
+    static SslContext create() throws IOException, GeneralSecurityException {
+        final SslProvider provider = getProvider();
+        final SslContextBuilder builder;
+        if (!CoreConfig.SSL.certificateChain.isEmpty() && !CoreConfig.SSL.privateKey.isEmpty()) {
+            builder = SslContextBuilder.forServer(new File(CoreConfig.SSL.certificateChain),
+                new File(CoreConfig.SSL.privateKey), CoreConfig.SSL.privateKeyPassword.isEmpty() ?
+                    null :
+                    CoreConfig.SSL.privateKeyPassword);
+        } else {
+            final KeyStore keyStore = KeyStore.getInstance("JKS");
+            try (final InputStream inputStream = new FileInputStream(
+                new File(CoreConfig.SSL.keyStore))) {
+                keyStore.load(inputStream, CoreConfig.SSL.keyStorePassword.toCharArray());
+            }
+            final KeyManagerFactory keyManagerFactory =
+                KeyManagerFactory.getInstance("SunX509");
+            keyManagerFactory.init(keyStore, CoreConfig.SSL.keyStorePassword.toCharArray());
+            builder = SslContextBuilder.forServer(keyManagerFactory);
+        }
+        builder.sslProvider(provider).sessionCacheSize(CoreConfig.SSL.sessionCacheSize)
+            .sessionTimeout(CoreConfig.SSL.sessionTimeout);
+        if (CoreConfig.Http2.enable) {
+            //
+            // HTTP/2 requires TLS 1.2 ciphers that aren't blacklisted by RFC 7540
+            //
+            builder.ciphers(Http2SecurityUtil.CIPHERS, SupportedCipherSuiteFilter.INSTANCE)
+                .applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+                    SelectorFailureBehavior.NO_ADVERTISE, SelectedListenerFailureBehavior.ACCEPT,
+                    ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+        }
+        if (provider == SslProvider.JDK && System.getProperty(JDK_SESSION_TICKETS) == null) {
+            //
+            // Only honored by JDK 13 and later, earlier versions resume sessions
+            // using the session cache alone
+            //
+            System.setProperty(JDK_SESSION_TICKETS, "true");
+        }
+        final SslContext sslContext = builder.build();
+        //
+        // OpenSSL issues tickets using random keys, unless keys are configured
+        //
+        final SSLSessionContext sessionContext = sslContext.sessionContext();
+        if (sessionContext instanceof OpenSslSessionContext
+            && !CoreConfig.SSL.sessionTicketKeys.isEmpty()) {
+            ((OpenSslSessionContext) sessionContext)
+                .setTicketKeys(readTicketKeys(new File(CoreConfig.SSL.sessionTicketKeys)));
+        }
+        return sslContext;
+    }
+
+    private static SslProvider getProvider() {
+        if (!CoreConfig.SSL.openSsl) {
+            return SslProvider.JDK;
+        }
+        if (!OpenSsl.isAvailable()) {
+            Logger.warn("OpenSSL is not available, falling back to JDK TLS: {}",
+                OpenSsl.unavailabilityCause().getMessage());
+            return SslProvider.JDK;
+        }
+        if (CoreConfig.Http2.enable && !OpenSsl.isAlpnSupported()) {
+            Logger.warn("OpenSSL {} does not support ALPN, falling back to JDK TLS",
+                OpenSsl.versionString());
+            return SslProvider.JDK;
+        }
+        Logger.info("Using {} for TLS", OpenSsl.versionString());
+        return SslProvider.OPENSSL;
+    }
+
+    /**
+     * Read the session ticket keys. Servers that share keys can resume each other's sessions. New tickets are
+     * encrypted using the first key, the others are only used to decrypt tickets, which allows for rotation.
+     *
+     * @param file File containing the keys
+     * @return Read keys
+     * @throws IOException If the file can't be read, or doesn't contain whole keys
+     */
+    static OpenSslSessionTicketKey[] readTicketKeys(final File file) throws IOException {
+        final byte[] bytes = Files.readAllBytes(file.toPath());
+        if (bytes.length == 0 || bytes.length % TICKET_KEY_SIZE != 0) {
+            throw new IOException(String.format("Session ticket keys must be a multiple of %d bytes",
+                TICKET_KEY_SIZE));
+        }
+        final OpenSslSessionTicketKey[] keys =
+            new OpenSslSessionTicketKey[bytes.length / TICKET_KEY_SIZE];
+        for (int i = 0; i < keys.length; i++) {
+            final int offset = i * TICKET_KEY_SIZE;
+            keys[i] = new OpenSslSessionTicketKey(Arrays.copyOfRange(bytes, offset, offset + 16),
+                Arrays.copyOfRange(bytes, offset + 16, offset + 32),
+                Arrays.copyOfRange(bytes, offset + 32, offset + 48));
+        }
+        return keys;
+    }
+
+}
@@ -25,6 +25,7 @@ import io.netty.channel.ChannelHandlerContext;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import xyz.kvantum.server.api.cache.CachedResponse;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.core.Kvantum;
@@ -33,13 +34,17 @@ import xyz.kvantum.server.api.core.WorkerProcedure;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.ContentEncoding;
 import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.ResponseBody;
 import xyz.kvantum.server.api.socket.SocketContext;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.views.RequestHandler;
 
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.RejectedExecutionException;
 
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CLOSE;
 import static xyz.kvantum.server.implementation.KvantumServerHandler.CONNECTION;
@@ -49,9 +54,8 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
 
     private static final String CONTENT_TYPE = "content_type";
     private static final byte[] EMPTY = "NULL".getBytes(StandardCharsets.UTF_8);
+    private static final CompletableFuture<Void> WRITTEN = CompletableFuture.completedFuture(null);
     private static final AsciiString ACCEPT_ENCODING = AsciiString.of("Accept-Encoding");
-    private static final AsciiString GZIP = AsciiString.of("gzip");
-    private static final AsciiString NULL = null;
 
     private final Kvantum server;
     private final WorkerProcedure.WorkerProcedureInstance workerProcedureInstance;
@@ -66,6 +70,20 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
     private boolean gzip = false;
     private SocketContext socketContext;
     private ChannelHandlerContext lastContext;
+    private volatile RequestBody requestBody;
+    private volatile AdmissionController.Permit permit;
+    /**
+     * Completes once the response to the previous request on the connection has been written
+     */
+    private CompletableFuture<Void> turn = WRITTEN;
+    /**
+     * Completes once the response to this request has been written
+     */
+    private final CompletableFuture<Void> written = new CompletableFuture<>();
+    /**
+     * Whether the connection is kept alive after the response has been written
+     */
+    private boolean keepAlive;
 
     private volatile boolean finished;
 
@@ -80,8 +98,10 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
                 if (CoreConfig.debug) {
                     this.getRequest().dumpRequest();
                 }
+                this.keepAlive = getRequest().getHeaders().getOrDefault(CONNECTION, CLOSE)
+                    .equalsIgnoreCase(KEEP_ALIVE) && this.kvantumServerHandler.nextRequest();
                 this.handleResponse(this.lastContext);
-                if (getRequest().getHeaders().getOrDefault(CONNECTION, CLOSE).equalsIgnoreCase(KEEP_ALIVE)) {
+                if (this.keepAlive) {
                     this.kvantumServerHandler.reused = true;
                     this.kvantumServerHandler.createNew(getSocketContext());
                 }
@@ -91,37 +111,121 @@ import static xyz.kvantum.server.implementation.KvantumServerHandler.KEEP_ALIVE;
         }
     }
 
+    /**
+     * Release the body of the request, if it has one
+     */
+    void releaseRequestBody() {
+        final RequestBody requestBody = this.requestBody;
+        if (requestBody != null) {
+            requestBody.release();
+        }
+    }
+
+    /**
+     * Mark the response as written, or abandoned. This releases the admission of the request, and lets the response
+     * to the next request on the connection be written.
+     */
+    void responseWritten() {
+        final AdmissionController.Permit permit = this.permit;
+        if (permit != null) {
+            permit.release();
+        }
+        this.written.complete(null);
+    }
+
     @SuppressWarnings("unused") private void handleResponse(final ChannelHandlerContext context) {
         final ResponseTask responseTask = new ResponseTask(context, this);
+        final AdmissionController.Permit permit = this.permit;
+        if (permit != null) {
+            permit.dispatch();
+        }
         // Either we reuse the old thread, or we create a new one
-        if (Thread.currentThread().getName().startsWith("kvantum-")) {
+        if (WorkerExecutor.isWorkerThread()) {
             responseTask.run();
         } else {
-            ServerImplementation.getImplementation().getExecutorService().execute(responseTask);
+            try {
+                ServerImplementation.getImplementation().getExecutorService().execute(responseTask);
+            } catch (final RejectedExecutionException e) {
+                if (CoreConfig.debug) {
+                    Logger.debug("Rejecting request {}: {}", request, e.getMessage());
+                }
+                this.releaseRequestBody();
+                if (permit != null) {
+                    permit.drop();
+                }
+                this.kvantumServerHandler.discard();
+                // Like any other response, the 503 is written after the earlier responses, and
+                // the next response waits until it has been written
+                this.turn.thenRun(() -> this.kvantumServerHandler.writeServiceUnavailable(context)
+                    .addListener(ignored -> this.responseWritten()));
+            }
         }
     }
 
     /**
-     * TODO: I am fairly confident this would be better somewhere else
-     *
-     * <p> Determine whether or not GZIP compression should be used. This depends on two things: <ol> <li>If GZIP
-     * compression is enabled in {@link CoreConfig}</li> <li>If the client has sent a "Accept-Encoding" header</li>
-     * </ol> </p> <p> The value can be fetched using {@link #isGzip()} </p>
+     * Determine whether or not the response should be compressed using gzip. This is the case if GZIP compression is
+     * enabled in {@link CoreConfig}, the client accepts gzip, the content type is in {@link
+     * CoreConfig.Compression#mimeTypes}, and the body isn't smaller than {@link CoreConfig.Compression#minimumSize}.
+     * The value can be fetched using {@link #isGzip()}. The response headers are only changed once the body is
+     * actually compressed. Cached responses are only sent compressed if a compressed variant was compiled when they
+     * were cached.
      */
     void determineGzipStatus() {
-        if (CoreConfig.gzip) {
-            if (!body.supportsGzip()) {
-                if (CoreConfig.debug) {
-                    Logger.debug("Response does not support GZIP encoding");
-                }
-            } else if (request.getHeader(ACCEPT_ENCODING).contains("gzip")) {
-                this.gzip = true;
-                body.getHeader().set(Header.HEADER_CONTENT_ENCODING, GZIP);
-            } else if (CoreConfig.debug) {
-                Message.CLIENT_NOT_ACCEPTING_GZIP.log(request.getHeaders());
-                body.getHeader().set(Header.HEADER_CONTENT_ENCODING, NULL);
+        this.gzip = false;
+        if (!CoreConfig.gzip) {
+            return;
+        }
+        if (body instanceof CachedResponse && !this.isTransformed((CachedResponse) body)) {
+            this.gzip = this.negotiateEncoding((CachedResponse) body) == ContentEncoding.GZIP;
+        } else if (!body.supportsGzip()) {
+            if (CoreConfig.debug) {
+                Logger.debug("Response does not support GZIP encoding");
+            }
+        } else if (body.getHeader().get(Header.HEADER_CONTENT_ENCODING).isPresent()) {
+            if (CoreConfig.debug) {
+                Logger.debug("Response is already encoded");
+            }
+        } else if (responseStream instanceof KnownLengthStream
+            && ((KnownLengthStream) responseStream).getLength()
+            < CoreConfig.Compression.minimumSize) {
+            if (CoreConfig.debug) {
+                Logger.debug("Response is too small to be compressed");
             }
+        } else if (!ContentEncoding.isCompressible(
+            body.getHeader().get(Header.HEADER_CONTENT_TYPE).orElse(AsciiString.empty))) {
+            if (CoreConfig.debug) {
+                Logger.debug("Response content type is not compressed");
+            }
+        } else if (ContentEncoding.negotiate(request.getHeader(ACCEPT_ENCODING),
+            ContentEncoding.GZIP) == ContentEncoding.GZIP) {
+            this.gzip = true;
+        } else if (CoreConfig.debug) {
+            Message.CLIENT_NOT_ACCEPTING_GZIP.log(request.getHeaders());
+        }
+    }
+
+    /**
+     * Check whether the body of a cached response is modified by the text handlers before it is sent, in which case
+     * neither its validators nor its compiled variants describe what the client receives
+     *
+     * @param cachedResponse Cached response
+     * @return True if the body will be modified
+     */
+    boolean isTransformed(final CachedResponse cachedResponse) {
+        return cachedResponse.isText() && this.workerProcedureInstance.containsHandlers();
+    }
+
+    /**
+     * Choose the variant of a cached response that the client should be sent
+     *
+     * @param cachedResponse Cached response
+     * @return Content coding of the variant
+     */
+    ContentEncoding negotiateEncoding(final CachedResponse cachedResponse) {
+        if (!CoreConfig.gzip) {
+            return ContentEncoding.IDENTITY;
         }
+        return cachedResponse.negotiate(request.getHeader(ACCEPT_ENCODING));
     }
 
 }
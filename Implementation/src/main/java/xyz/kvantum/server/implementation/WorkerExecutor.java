@@ -0,0 +1,159 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Executor that runs the request workers. Both the number of workers and the number of waiting tasks are bounded, so
+ * that a burst of requests is turned away with {@code 503 Service Unavailable}, rather than answered by an ever
+ * growing number of threads. The workers can be virtual threads, on JDKs that support them.
+ */
+final class WorkerExecutor extends ThreadPoolExecutor {
+
+    private static final ThreadLocal<Boolean> WORKER = new ThreadLocal<>();
+
+    private final Timer queueWait;
+
+    private WorkerExecutor(final int threads, final int queueSize,
+        final ThreadFactory threadFactory, final Metrics metrics) {
+        super(threads, threads, CoreConfig.Pools.workerKeepAlive, TimeUnit.SECONDS,
+            createQueue(queueSize), new WorkerThreadFactory(threadFactory),
+            createRejectionHandler(metrics));
+        this.allowCoreThreadTimeOut(true);
+        this.queueWait = metrics.getRegistry()
+            .timer(MetricRegistry.name(WorkerExecutor.class, "queueWait"));
+        metrics.registerMetric(MetricRegistry.name(WorkerExecutor.class, "queued"),
+            (Gauge<Integer>) () -> this.getQueue().size());
+        metrics.registerMetric(MetricRegistry.name(WorkerExecutor.class, "active"),
+            (Gauge<Integer>) this::getActiveCount);
+        metrics.registerMetric(MetricRegistry.name(WorkerExecutor.class, "threads"),
+            (Gauge<Integer>) this::getPoolSize);
+    }
+
+    /**
+     * Create the worker executor, as configured in {@link CoreConfig.Pools}
+     *
+     * @param metrics Metrics that the executor statistics are registered to
+     * @return Created executor
+     */
+    static WorkerExecutor create(final Metrics metrics) {
+        if (CoreConfig.Pools.virtualWorkers) {
+            final ThreadFactory virtualThreadFactory = createVirtualThreadFactory();
+            if (virtualThreadFactory != null) {
+                return new WorkerExecutor(CoreConfig.Pools.virtualWorkerThreads,
+                    CoreConfig.Pools.workerQueue, virtualThreadFactory, metrics);
+            }
+            Logger.warn("Virtual threads are not supported by this JDK, using platform threads");
+        }
+        return new WorkerExecutor(CoreConfig.Pools.workerThreads, CoreConfig.Pools.workerQueue,
+            new DefaultThreadFactory("kvantum-pool"), metrics);
+    }
+
+    /**
+     * Check whether the current thread is a worker of a worker executor, in which case tasks can be run right away,
+     * rather than being queued
+     *
+     * @return True if the current thread is a worker
+     */
+    static boolean isWorkerThread() {
+        return WORKER.get() != null;
+    }
+
+    private static BlockingQueue<Runnable> createQueue(final int queueSize) {
+        if (queueSize <= 0) {
+            return new SynchronousQueue<>();
+        }
+        return new ArrayBlockingQueue<>(queueSize);
+    }
+
+    private static RejectedExecutionHandler createRejectionHandler(final Metrics metrics) {
+        final Meter rejected =
+            metrics.getRegistry().meter(MetricRegistry.name(WorkerExecutor.class, "rejected"));
+        return (task, executor) -> {
+            rejected.mark();
+            throw new RejectedExecutionException("The worker queue is full");
+        };
+    }
+
+    /**
+     * Create a factory of virtual threads. This is looked up reflectively, as the server is built for JDKs that
+     * predate virtual threads.
+     *
+     * @return Thread factory, or null if virtual threads aren't supported
+     */
+    private static ThreadFactory createVirtualThreadFactory() {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder$OfVirtual");
+            final Object namedBuilder = builderClass.getMethod("name", String.class, long.class)
+                .invoke(builder, "kvantum-virtual-", 0L);
+            return (ThreadFactory) builderClass.getMethod("factory").invoke(namedBuilder);
+        } catch (final ReflectiveOperationException | RuntimeException e) {
+            return null; // Nullable
+        }
+    }
+
+    @Override public void execute(final Runnable command) {
+        final long queued = System.nanoTime();
+        super.execute(() -> {
+            this.queueWait.update(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+            command.run();
+        });
+    }
+
+    /**
+     * Marks the threads that it creates as workers
+     */
+    private static final class WorkerThreadFactory implements ThreadFactory {
+
+        private final ThreadFactory parent;
+
+        private WorkerThreadFactory(final ThreadFactory parent) {
+            this.parent = parent;
+        }
+
+        @Override public Thread newThread(final Runnable runnable) {
+            return this.parent.newThread(() -> {
+                WORKER.set(Boolean.TRUE);
+                runnable.run();
+            });
+        }
+    }
+
+}
@@ -33,7 +33,6 @@ public class ThreadCache {
 
     public static void clear() {
         CHUNK_BUFFER.clean();
-        COMPRESS_BUFFER.clean();
     }
 
     public static Thread[] getThreads() {
@@ -57,12 +56,6 @@ public class ThreadCache {
         }
     };
 
-    public static final IterableThreadLocal<byte[]> COMPRESS_BUFFER = new IterableThreadLocal<byte[]>() {
-        @Override public byte[] init() {
-            return new byte[getMaxLen() + 1024]; // TODO is 1024 large enough to handle data that can't be compressed?
-        }
-    };
-
     public static final IterableThreadLocal<byte[]> BUFFER_8192 = new IterableThreadLocal<byte[]>() {
         @Override public byte[] init() {
             return new byte[8192];
@@ -0,0 +1,122 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.EventLoopGroup;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the rate at which loopback connections are accepted, with 1 and with 4 listening sockets. Every
+ * connection is closed by the server once it has been accepted, and the client waits for that. More than one
+ * acceptor requires epoll, elsewhere both runs use a single acceptor. Run using {@link #main(String[])}.
+ */
+@BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.MILLISECONDS) @State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1) @Threads(16)
+public class AcceptBenchmark {
+
+    @Param({"1", "4"}) private int acceptors;
+
+    private EventLoopGroup bossGroup;
+    private EventLoopGroup workerGroup;
+    private List<ChannelFuture> futures;
+    private InetSocketAddress address;
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(AcceptBenchmark.class.getSimpleName()).build())
+            .run();
+    }
+
+    @Setup public void setup() throws IOException, InterruptedException {
+        CoreConfig.Sockets.acceptors = this.acceptors;
+        final NioClassResolver.ClassProvider classProvider =
+            new NioClassResolver().getClassProvider();
+        final int acceptors = SocketOptions.acceptors(classProvider);
+        this.bossGroup = classProvider.getEventLoopGroup(acceptors);
+        this.workerGroup = classProvider.getEventLoopGroup(0);
+
+        final ServerBootstrap bootstrap = new ServerBootstrap();
+        SocketOptions.apply(bootstrap, classProvider);
+        bootstrap.group(this.bossGroup, this.workerGroup)
+            .channel(classProvider.getServerSocketChannelClass()).childHandler(new CloseHandler());
+
+        final int port;
+        try (final ServerSocket serverSocket = new ServerSocket(0)) {
+            port = serverSocket.getLocalPort();
+        }
+        this.futures = SocketOptions.bind(bootstrap, port, acceptors);
+        this.address = new InetSocketAddress(InetAddress.getLoopbackAddress(), port);
+    }
+
+    @TearDown public void tearDown() throws InterruptedException {
+        SocketOptions.unbind(this.futures);
+        this.bossGroup.shutdownGracefully().sync();
+        this.workerGroup.shutdownGracefully().sync();
+        CoreConfig.Sockets.acceptors = 1;
+    }
+
+    @Benchmark public int accept() throws IOException {
+        try (final Socket socket = new Socket()) {
+            // Reset the connection when closing it, so that it isn't kept in TIME_WAIT
+            socket.setSoLinger(true, 0);
+            socket.connect(this.address);
+            return socket.getInputStream().read();
+        }
+    }
+
+    @ChannelHandler.Sharable private static final class CloseHandler
+        extends ChannelInboundHandlerAdapter {
+
+        @Override public void channelActive(final ChannelHandlerContext ctx) {
+            ctx.close();
+        }
+    }
+
+}
@@ -0,0 +1,160 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdmissionControllerTest {
+
+    private int maxInFlight;
+    private int maxQueued;
+    private int maxLatency;
+    private boolean adaptive;
+    private int targetLatency;
+    private int minInFlight;
+    private int retryAfter;
+
+    @BeforeEach void configure() {
+        this.maxInFlight = CoreConfig.Admission.maxInFlight;
+        this.maxQueued = CoreConfig.Admission.maxQueued;
+        this.maxLatency = CoreConfig.Admission.maxLatency;
+        this.adaptive = CoreConfig.Admission.adaptive;
+        this.targetLatency = CoreConfig.Admission.targetLatency;
+        this.minInFlight = CoreConfig.Admission.minInFlight;
+        this.retryAfter = CoreConfig.Admission.retryAfter;
+    }
+
+    @AfterEach void restore() {
+        CoreConfig.Admission.maxInFlight = this.maxInFlight;
+        CoreConfig.Admission.maxQueued = this.maxQueued;
+        CoreConfig.Admission.maxLatency = this.maxLatency;
+        CoreConfig.Admission.adaptive = this.adaptive;
+        CoreConfig.Admission.targetLatency = this.targetLatency;
+        CoreConfig.Admission.minInFlight = this.minInFlight;
+        CoreConfig.Admission.retryAfter = this.retryAfter;
+    }
+
+    @Test void retryAfter() {
+        CoreConfig.Admission.retryAfter = 7;
+        final String head = new String(new AdmissionController(new Metrics(), () -> 0)
+            .getServiceUnavailable(), StandardCharsets.US_ASCII);
+        assertTrue(head.startsWith("HTTP/1.1 503"), head);
+        assertTrue(head.contains("\r\nRetry-After: 7\r\n"), head);
+    }
+
+    @Test void inFlight() {
+        CoreConfig.Admission.maxInFlight = 2;
+        final Metrics metrics = new Metrics();
+        final AdmissionController controller = new AdmissionController(metrics, () -> 0);
+        final AdmissionController.Permit first = controller.tryAcquire();
+        final AdmissionController.Permit second = controller.tryAcquire();
+        assertNotNull(first);
+        assertNotNull(second);
+        assertNull(controller.tryAcquire());
+        assertEquals(1, metrics.getRegistry()
+            .meter(MetricRegistry.name(AdmissionController.class, "rejected")).getCount());
+        // Releasing twice mustn't free two slots
+        first.release();
+        first.release();
+        assertEquals(1, controller.getInFlight());
+        assertNotNull(controller.tryAcquire());
+        assertNull(controller.tryAcquire());
+    }
+
+    @Test void queued() {
+        CoreConfig.Admission.maxQueued = 4;
+        final AtomicInteger queued = new AtomicInteger(3);
+        final AdmissionController controller = new AdmissionController(new Metrics(), queued::get);
+        assertNotNull(controller.tryAcquire());
+        queued.set(4);
+        assertNull(controller.tryAcquire());
+    }
+
+    @Test void latency() {
+        CoreConfig.Admission.maxLatency = 100;
+        CoreConfig.Admission.minInFlight = 1;
+        final AdmissionController controller = new AdmissionController(new Metrics(), () -> 0);
+        controller.onSample(TimeUnit.MILLISECONDS.toNanos(500));
+        // Slow responses only let a single request through at a time
+        final AdmissionController.Permit permit = controller.tryAcquire();
+        assertNotNull(permit);
+        assertNull(controller.tryAcquire());
+        permit.release();
+        // Fast responses bring the average back down
+        for (int i = 0; i < 20; i++) {
+            controller.onSample(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        assertTrue(controller.getLatency() < TimeUnit.MILLISECONDS.toNanos(100));
+        assertNotNull(controller.tryAcquire());
+        assertNotNull(controller.tryAcquire());
+    }
+
+    @Test void adaptive() {
+        CoreConfig.Admission.adaptive = true;
+        CoreConfig.Admission.maxInFlight = 64;
+        CoreConfig.Admission.minInFlight = 4;
+        CoreConfig.Admission.targetLatency = 100;
+        final AdmissionController controller = new AdmissionController(new Metrics(), () -> 0);
+        assertEquals(4, controller.getLimit());
+        //
+        // The limit grows while it's used and responses are fast
+        //
+        for (int i = 0; i < 4; i++) {
+            assertNotNull(controller.tryAcquire());
+        }
+        for (int i = 0; i < 1000; i++) {
+            controller.onSample(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        final int raised = controller.getLimit();
+        assertTrue(raised > 4);
+        assertTrue(raised <= 64);
+        //
+        // Slow responses and rejected requests shrink it
+        //
+        controller.onSample(TimeUnit.SECONDS.toNanos(1));
+        assertTrue(controller.getLimit() < raised);
+        final AdmissionController.Permit permit = controller.tryAcquire();
+        assertNotNull(permit);
+        final int limit = controller.getLimit();
+        permit.drop();
+        assertTrue(controller.getLimit() <= limit);
+        for (int i = 0; i < 100; i++) {
+            controller.onDrop();
+        }
+        assertEquals(4, controller.getLimit());
+    }
+
+}
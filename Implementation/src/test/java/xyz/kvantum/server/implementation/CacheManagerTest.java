@@ -0,0 +1,215 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.cache.CacheApplicable;
+import xyz.kvantum.server.api.cache.CacheLookup;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.Metrics;
+import xyz.kvantum.server.api.util.ProtocolType;
+import xyz.kvantum.server.api.views.RequestHandler;
+import xyz.kvantum.server.api.views.requesthandler.SimpleRequestHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheManagerTest {
+
+    private static final int WAITING_REQUESTS = 8;
+
+    private static final RequestHandler HANDLER =
+        SimpleRequestHandler.builder().pattern("[page]").generator((request, response) -> {
+        }).build();
+
+    private static AbstractRequest request(final String query) {
+        return new MockRequest(AbstractRequest.QueryCache.getInstance().getQuery(
+            new AbstractRequest.QueryParameters(HttpMethod.GET, ProtocolType.HTTP, query)));
+    }
+
+    private static List<Future<CacheLookup>> lookupConcurrently(final ExecutorService executor,
+        final CacheManager cacheManager, final String query) throws InterruptedException {
+        final List<Future<CacheLookup>> lookups = new ArrayList<>();
+        for (int i = 0; i < WAITING_REQUESTS; i++) {
+            lookups.add(executor.submit(() -> cacheManager.lookup(request(query), HANDLER)));
+        }
+        // Give the lookups some time to start waiting
+        Thread.sleep(100L);
+        return lookups;
+    }
+
+    @Test void coalesce() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CacheManager cacheManager = new CacheManager(metrics);
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITING_REQUESTS);
+        try {
+            final CacheLookup first = cacheManager.lookup(request("/page"), HANDLER);
+            assertTrue(first.isMiss());
+
+            final List<Future<CacheLookup>> lookups =
+                lookupConcurrently(executor, cacheManager, "/page");
+            for (final Future<CacheLookup> lookup : lookups) {
+                assertFalse(lookup.isDone());
+            }
+
+            cacheManager.setCache(request("/page"), HANDLER, new Response().setResponse("Hello"));
+            first.complete();
+
+            for (final Future<CacheLookup> lookup : lookups) {
+                final CacheLookup result = lookup.get(5L, TimeUnit.SECONDS);
+                assertFalse(result.isMiss());
+                assertTrue(result.isCoalesced());
+                assertEquals(5, result.getResponse().getLength());
+            }
+            assertEquals(WAITING_REQUESTS, metrics.getRegistry().counter(
+                "xyz.kvantum.server.implementation.CacheManager.bodies.coalesced").getCount());
+
+            final CacheLookup cached = cacheManager.lookup(request("/page"), HANDLER);
+            assertNotNull(cached.getResponse());
+            assertFalse(cached.isCoalesced());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test void notCacheable() throws Exception {
+        final CacheManager cacheManager = new CacheManager(new Metrics());
+        final ExecutorService executor = Executors.newFixedThreadPool(WAITING_REQUESTS);
+        try {
+            final CacheLookup first = cacheManager.lookup(request("/other"), HANDLER);
+            assertTrue(first.isMiss());
+
+            final List<Future<CacheLookup>> lookups =
+                lookupConcurrently(executor, cacheManager, "/other");
+            first.complete();
+
+            //
+            // Nothing was cached, so every waiting request has to generate the response
+            //
+            for (final Future<CacheLookup> lookup : lookups) {
+                assertTrue(lookup.get(5L, TimeUnit.SECONDS).isMiss());
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test void onlyCompleteResponses() {
+        final CacheManager cacheManager = new CacheManager(new Metrics());
+        final AbstractRequest rangeRequest = request("/range");
+        rangeRequest.getHeaders().put(AsciiString.of("range"), AsciiString.of("bytes=999999-"));
+
+        final Response unsatisfiable = new Response().setResponse(new byte[0]);
+        unsatisfiable.getHeader().setStatus(Header.STATUS_RANGE_NOT_SATISFIABLE);
+        cacheManager.setCache(rangeRequest, HANDLER, unsatisfiable);
+        assertFalse(cacheManager.hasCache(request("/range"), HANDLER));
+
+        // The cache key ignores the range, so nothing generated for a range request is cached
+        cacheManager.setCache(rangeRequest, HANDLER, new Response().setResponse("Hello"));
+        assertFalse(cacheManager.hasCache(request("/range"), HANDLER));
+
+        final Response notFound = new Response().setResponse("Missing");
+        notFound.getHeader().setStatus(Header.STATUS_NOT_FOUND);
+        cacheManager.setCache(request("/range"), HANDLER, notFound);
+        assertFalse(cacheManager.hasCache(request("/range"), HANDLER));
+
+        cacheManager.setCache(request("/range"), HANDLER, new Response().setResponse("Hello"));
+        assertTrue(cacheManager.hasCache(request("/range"), HANDLER));
+    }
+
+    @Test void serveStaleWhileRefreshing() throws Exception {
+        final Metrics metrics = new Metrics();
+        final CacheManager cacheManager = new CacheManager(metrics);
+        final StaleHandler handler = new StaleHandler();
+
+        final CacheLookup first = cacheManager.lookup(request("/stale"), handler);
+        assertTrue(first.isMiss());
+        cacheManager.setCache(request("/stale"), handler, handler.handle(request("/stale")));
+        first.complete();
+
+        //
+        // The entry is stale right away, so it is served as is and regenerated in the background
+        //
+        final CacheLookup stale = cacheManager.lookup(request("/stale"), handler);
+        assertFalse(stale.isMiss());
+        assertEquals(1, stale.getResponse().getLength());
+
+        final long deadline = System.currentTimeMillis() + 5000L;
+        CacheLookup refreshed;
+        do {
+            Thread.sleep(10L);
+            refreshed = cacheManager.lookup(request("/stale"), handler);
+        } while (refreshed.getResponse().getLength() == 1
+            && System.currentTimeMillis() < deadline);
+        assertFalse(refreshed.isMiss());
+        assertTrue(refreshed.getResponse().getLength() > 1);
+        assertTrue(handler.generated.get() >= 2);
+        assertTrue(metrics.getRegistry()
+            .counter("xyz.kvantum.server.implementation.CacheManager.bodies.refreshes")
+            .getCount() >= 1);
+    }
+
+    private static final class StaleHandler extends SimpleRequestHandler
+        implements CacheApplicable {
+
+        private final AtomicInteger generated;
+
+        private StaleHandler() {
+            this(new AtomicInteger());
+        }
+
+        private StaleHandler(final AtomicInteger generated) {
+            super("[page]", (request, response) -> response
+                .setResponse(Integer.toString(generated.incrementAndGet() * 100 - 99)));
+            this.generated = generated;
+        }
+
+        @Override public boolean isApplicable(final AbstractRequest request) {
+            return true;
+        }
+
+        @Override public int getCacheSoftTtl() {
+            return 0;
+        }
+
+        @Override public int getCacheHardTtl() {
+            return 60;
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.Metrics;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.kvantum.server.implementation.TestServer.readResponse;
+
+class ConnectionLifecycleTest extends GenericServerTest {
+
+    private static final String KEEP_ALIVE_REQUEST =
+        "GET /lifecycle HTTP/1.1\r\nHost: localhost\r\nConnection: keep-alive\r\n\r\n";
+
+    private TestServer server;
+    private ConnectionThrottle throttle;
+    private ConnectionDrainer connections;
+    private AdmissionController admission;
+
+    @BeforeAll void bind() throws InterruptedException {
+        serverInstance.createSimpleRequestHandler("lifecycle",
+            (request, response) -> response.setResponse("lifecycle"));
+        this.throttle = new ConnectionThrottle(new Metrics());
+        this.connections = new ConnectionDrainer(new Metrics());
+        this.admission = new AdmissionController(new Metrics(), () -> 0);
+        this.server = TestServer.bind(ch -> {
+            HttpPipeline.addConnectionHandlers(ch, this.throttle, this.connections);
+            HttpPipeline.addHttp1Handlers(ch.pipeline(), ProtocolType.HTTP, this.admission);
+        });
+    }
+
+    @AfterAll void close() throws InterruptedException {
+        this.server.close();
+    }
+
+    @Test void maxRequests() throws IOException {
+        final int maxRequests = CoreConfig.Connections.maxRequests;
+        CoreConfig.Connections.maxRequests = 2;
+        try (final Socket socket = this.server.connect()) {
+            final String requests = KEEP_ALIVE_REQUEST + KEEP_ALIVE_REQUEST + KEEP_ALIVE_REQUEST;
+            socket.getOutputStream().write(requests.getBytes(StandardCharsets.US_ASCII));
+            final InputStream inputStream = socket.getInputStream();
+            assertEquals("keep-alive", readResponse(inputStream, "200").getHeader("connection"));
+            // The last response closes the connection, and the third request is ignored
+            assertEquals("close", readResponse(inputStream, "200").getHeader("connection"));
+            assertEquals(-1, inputStream.read());
+        } finally {
+            CoreConfig.Connections.maxRequests = maxRequests;
+        }
+    }
+
+    @Test void headDeadline() throws IOException {
+        final int maxHeaderTime = CoreConfig.Connections.maxHeaderTime;
+        CoreConfig.Connections.maxHeaderTime = 1;
+        try (final Socket socket = this.server.connect()) {
+            final long start = System.nanoTime();
+            socket.getOutputStream()
+                .write("GET /lifecycle HTTP/1.1\r\nHost: loc".getBytes(StandardCharsets.US_ASCII));
+            final InputStream inputStream = socket.getInputStream();
+            assertEquals("close", readResponse(inputStream, "408").getHeader("connection"));
+            assertEquals(-1, inputStream.read());
+            assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(900));
+        } finally {
+            CoreConfig.Connections.maxHeaderTime = maxHeaderTime;
+        }
+    }
+
+    @Test void drain() throws IOException, InterruptedException {
+        try (final Socket socket = this.server.connect()) {
+            socket.getOutputStream().write(KEEP_ALIVE_REQUEST.getBytes(StandardCharsets.US_ASCII));
+            final InputStream inputStream = socket.getInputStream();
+            assertEquals("keep-alive", readResponse(inputStream, "200").getHeader("connection"));
+            // The connection is idle, so it is closed right away
+            assertEquals(1, this.connections.drain(5L, TimeUnit.SECONDS));
+            assertEquals(-1, inputStream.read());
+        } finally {
+            // Connections that are registered after draining are closed right away
+            this.connections = new ConnectionDrainer(new Metrics());
+        }
+    }
+
+}
@@ -0,0 +1,106 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConnectionThrottleTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1L);
+
+    private int limit;
+    private long timeSpan;
+    private String timeUnit;
+
+    @BeforeEach void configure() {
+        this.limit = CoreConfig.Throttle.limit;
+        this.timeSpan = CoreConfig.Throttle.timeSpan;
+        this.timeUnit = CoreConfig.Throttle.timeUnit;
+        CoreConfig.Throttle.limit = 3;
+        CoreConfig.Throttle.timeSpan = 1L;
+        CoreConfig.Throttle.timeUnit = "SECONDS";
+    }
+
+    @AfterEach void restore() {
+        CoreConfig.Throttle.limit = this.limit;
+        CoreConfig.Throttle.timeSpan = this.timeSpan;
+        CoreConfig.Throttle.timeUnit = this.timeUnit;
+    }
+
+    @Test void tokenBucket() throws UnknownHostException {
+        final Metrics metrics = new Metrics();
+        final ConnectionThrottle throttle = new ConnectionThrottle(metrics);
+        final InetAddress address = InetAddress.getByName("192.0.2.1");
+        final long start = System.nanoTime();
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAcquire(address, start));
+        }
+        assertFalse(throttle.tryAcquire(address, start));
+        // Other addresses have buckets of their own
+        assertTrue(throttle.tryAcquire(InetAddress.getByName("192.0.2.2"), start));
+        // A third of the period refills a single token
+        assertTrue(throttle.tryAcquire(address, start + SECOND / 3 + 1));
+        assertFalse(throttle.tryAcquire(address, start + SECOND / 3 + 1));
+        // The bucket never holds more than the limit
+        final long later = start + 10 * SECOND;
+        for (int i = 0; i < 3; i++) {
+            assertTrue(throttle.tryAcquire(address, later));
+        }
+        assertFalse(throttle.tryAcquire(address, later));
+        assertEquals(3, metrics.getRegistry()
+            .meter(MetricRegistry.name(ConnectionThrottle.class, "rejected")).getCount());
+    }
+
+    @Test void ipv6Prefix() throws UnknownHostException {
+        final ConnectionThrottle throttle = new ConnectionThrottle(new Metrics());
+        final long now = System.nanoTime();
+        assertTrue(throttle.tryAcquire(InetAddress.getByName("2001:db8:0:1::1"), now));
+        assertTrue(throttle.tryAcquire(InetAddress.getByName("2001:db8:0:1::2"), now));
+        assertTrue(throttle.tryAcquire(InetAddress.getByName("2001:db8:0:1:ffff::3"), now));
+        assertFalse(throttle.tryAcquire(InetAddress.getByName("2001:db8:0:1::4"), now));
+        assertTrue(throttle.tryAcquire(InetAddress.getByName("2001:db8:0:2::1"), now));
+    }
+
+    @Test void disabled() throws UnknownHostException {
+        CoreConfig.Throttle.limit = 0;
+        final ConnectionThrottle throttle = new ConnectionThrottle(new Metrics());
+        assertFalse(throttle.isEnabled());
+        final InetAddress address = InetAddress.getByName("192.0.2.1");
+        for (int i = 0; i < 100; i++) {
+            assertTrue(throttle.tryAcquire(address, 0L));
+        }
+    }
+
+}
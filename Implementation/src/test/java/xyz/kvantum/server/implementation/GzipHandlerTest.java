@@ -0,0 +1,85 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class GzipHandlerTest {
+
+    private static byte[] body() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 10_000; i++) {
+            builder.append("<p>Paragraph ").append(i).append("</p>\n");
+        }
+        return builder.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static byte[] decompress(final byte[] compressed) throws IOException {
+        try (final InputStream inputStream = new GZIPInputStream(
+            new ByteArrayInputStream(compressed))) {
+            return inputStream.readAllBytes();
+        }
+    }
+
+    @Test void compress() throws IOException {
+        final byte[] body = body();
+        final byte[] compressed = GzipHandler.compress(body);
+        assertTrue(compressed.length < body.length);
+        assertArrayEquals(body, decompress(compressed));
+    }
+
+    @Test void compressStreamed() throws IOException {
+        final byte[] body = body();
+        final ByteBuf output = Unpooled.buffer();
+        final GzipHandler gzipHandler = new GzipHandler();
+        try {
+            final byte[] chunk = new byte[4096];
+            for (int offset = 0; offset < body.length; offset += chunk.length) {
+                final int length = Math.min(chunk.length, body.length - offset);
+                System.arraycopy(body, offset, chunk, 0, length);
+                final int written = output.readableBytes();
+                gzipHandler.compress(chunk, length, output);
+                // Every chunk is flushed, so that it can be sent right away
+                assertTrue(output.readableBytes() > written);
+            }
+            gzipHandler.finish(output);
+        } finally {
+            gzipHandler.close();
+        }
+        // The chunks form a single gzip member
+        final byte[] compressed = new byte[output.readableBytes()];
+        output.readBytes(compressed);
+        assertArrayEquals(body, decompress(compressed));
+    }
+
+}
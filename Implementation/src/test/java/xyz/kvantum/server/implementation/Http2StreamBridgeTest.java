@@ -0,0 +1,121 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultLastHttpContent;
+import io.netty.handler.codec.http.HttpContent;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Http2StreamBridgeTest {
+
+    private static ByteBuf ascii(final String string) {
+        return Unpooled.copiedBuffer(string, StandardCharsets.US_ASCII);
+    }
+
+    private static String readInbound(final EmbeddedChannel channel) {
+        final StringBuilder builder = new StringBuilder();
+        ByteBuf buf;
+        while ((buf = channel.readInbound()) != null) {
+            builder.append(buf.toString(StandardCharsets.US_ASCII));
+            buf.release();
+        }
+        return builder.toString();
+    }
+
+    private static String readResponse(final EmbeddedChannel channel) {
+        final HttpResponse response = channel.readOutbound();
+        assertEquals(200, response.status().code());
+        final StringBuilder builder = new StringBuilder();
+        HttpContent content;
+        do {
+            content = channel.readOutbound();
+            builder.append(content.content().toString(StandardCharsets.US_ASCII));
+            content.release();
+        } while (!(content instanceof LastHttpContent));
+        assertNull(channel.readOutbound());
+        return builder.toString();
+    }
+
+    @Test void streamedRequest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new Http2StreamBridge());
+        final HttpRequest request =
+            new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload?a=b");
+        request.headers().set("host", "localhost");
+        channel.writeInbound(request, new DefaultHttpContent(ascii("hello")),
+            new DefaultLastHttpContent(ascii("!")));
+        // The length isn't known up front, so the body is chunked
+        assertEquals("POST /upload?a=b HTTP/1.1\r\nhost: localhost\r\n"
+                + "transfer-encoding: chunked\r\n\r\n5\r\nhello\r\n1\r\n!\r\n0\r\n\r\n",
+            readInbound(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test void fullRequest() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new Http2StreamBridge());
+        final HttpRequest request =
+            new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/");
+        request.headers().set("host", "localhost").set("connection", "keep-alive");
+        channel.writeInbound(request);
+        assertEquals("GET / HTTP/1.1\r\nhost: localhost\r\n\r\n", readInbound(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test void knownLengthResponse() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new Http2StreamBridge());
+        channel.writeAndFlush(ascii("HTTP/1.1 200 OK\r\nContent-Length: 5\r\n\r\nhel"));
+        channel.writeAndFlush(ascii("lo"));
+        final ChannelFuture written = channel.writeAndFlush(Unpooled.EMPTY_BUFFER);
+        assertTrue(written.isSuccess());
+        assertEquals("hello", readResponse(channel));
+        assertFalse(channel.finish());
+    }
+
+    @Test void chunkedResponse() {
+        final EmbeddedChannel channel = new EmbeddedChannel(new Http2StreamBridge());
+        // The head is split across writes
+        channel.writeAndFlush(ascii("HTTP/1.1 200 OK\r\nTransfer-"));
+        channel.writeAndFlush(ascii("Encoding: chunked\r\n\r\n5\r\nhello\r\n"));
+        channel.writeAndFlush(ascii("6\r\n world\r\n0\r\n\r\n"));
+        assertEquals("hello world", readResponse(channel));
+        assertFalse(channel.finish());
+    }
+
+}
@@ -0,0 +1,89 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static xyz.kvantum.server.implementation.TestServer.readResponse;
+
+class PipeliningTest extends GenericServerTest {
+
+    private static final int REQUESTS = 16;
+
+    private TestServer server;
+
+    @BeforeAll void bind() throws InterruptedException {
+        //
+        // Early requests take the longest, so that their responses would
+        // be ready last if they weren't ordered
+        //
+        serverInstance.createSimpleRequestHandler("pipelined/<index>", (request, response) -> {
+            final int index = Integer.parseInt(request.getVariables().get("index"));
+            try {
+                Thread.sleep((REQUESTS - index) * 5L);
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            response.setResponse("response " + index);
+        });
+        this.server = TestServer.bindHttp();
+    }
+
+    @AfterAll void close() throws InterruptedException {
+        this.server.close();
+    }
+
+    @Test void pipelined() throws IOException {
+        final StringBuilder requests = new StringBuilder();
+        for (int i = 0; i < REQUESTS; i++) {
+            requests.append("GET /pipelined/").append(i).append(" HTTP/1.1\r\n")
+                .append("Host: localhost\r\n");
+            if (i == 5) {
+                // Bodies are skipped along with the request they belong to
+                requests.append("Content-Type: text/plain\r\nContent-Length: 4\r\n")
+                    .append("Connection: keep-alive\r\n\r\nbody");
+            } else {
+                requests.append("Connection: keep-alive\r\n\r\n");
+            }
+        }
+        try (final Socket socket = this.server.connect()) {
+            final OutputStream outputStream = socket.getOutputStream();
+            // Every request is sent in a single write
+            outputStream.write(requests.toString().getBytes(StandardCharsets.US_ASCII));
+            outputStream.flush();
+            final InputStream inputStream = socket.getInputStream();
+            for (int i = 0; i < REQUESTS; i++) {
+                assertEquals("response " + i, readResponse(inputStream, "200").getBody());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,108 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestBodyDecoderTest {
+
+    private static final String CHUNKED = "5;name=value\r\nhello\r\n" + "6\r\n world\r\n"
+        + "0\r\n" + "Trailer: value\r\n" + "\r\n";
+
+    private static RequestBody body() {
+        // Bodies this small are never spilled, so no channel is needed
+        return new RequestBody(new MockRequest(AbstractRequest.QueryCache.getInstance().getQuery(
+            new AbstractRequest.QueryParameters(HttpMethod.POST, ProtocolType.HTTP, "/"))), null);
+    }
+
+    private static ByteBuf buffer(final String string) {
+        return Unpooled.copiedBuffer(string, StandardCharsets.US_ASCII);
+    }
+
+    private static AsciiString reject(final String chunks) {
+        return assertThrows(ReturnStatus.class,
+            () -> RequestBodyDecoder.chunked().decode(buffer(chunks), body())).getStatus();
+    }
+
+    @Test void decodeFixed() throws Throwable {
+        final RequestBody body = body();
+        final ByteBuf buf = buffer("hello worldGET");
+        assertTrue(RequestBodyDecoder.fixed(11).decode(buf, body));
+        assertEquals("hello world", body.toString(StandardCharsets.US_ASCII));
+        // The bytes following the body are left in the buffer
+        assertEquals("GET", buf.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test void decodeChunked() throws Throwable {
+        final RequestBody body = body();
+        final ByteBuf buf = buffer(CHUNKED + "GET");
+        assertTrue(RequestBodyDecoder.chunked().decode(buf, body));
+        assertEquals("hello world", body.toString(StandardCharsets.US_ASCII));
+        assertEquals(11, body.getLength());
+        assertEquals("GET", buf.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test void decodeChunkedSplit() throws Throwable {
+        final RequestBody body = body();
+        final RequestBodyDecoder decoder = RequestBodyDecoder.chunked();
+        final byte[] bytes = CHUNKED.getBytes(StandardCharsets.US_ASCII);
+        for (int i = 0; i < bytes.length - 1; i++) {
+            assertFalse(decoder.decode(Unpooled.wrappedBuffer(bytes, i, 1), body));
+        }
+        assertTrue(decoder.decode(Unpooled.wrappedBuffer(bytes, bytes.length - 1, 1), body));
+        assertEquals("hello world", body.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test void rejectMalformed() {
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("x\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject(";name=value\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("5\r\nhelloXX"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("5\r\nhello\r\r\n"));
+    }
+
+    @Test void rejectTooLarge() {
+        assertEquals(Header.STATUS_ENTITY_TOO_LARGE, reject("7fffffff\r\n"));
+        assertEquals(Header.STATUS_ENTITY_TOO_LARGE, reject("fffffffffffffffffffff\r\n"));
+        final StringBuilder trailers = new StringBuilder("0\r\n");
+        for (int i = 0; i <= 100; i++) {
+            trailers.append("X-Trailer-").append(i).append(": value\r\n");
+        }
+        assertEquals(Header.STATUS_HEADER_FIELDS_TOO_LARGE, reject(trailers.toString()));
+    }
+
+}
@@ -0,0 +1,141 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.exceptions.RequestException;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.request.RequestCompiler;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the throughput of {@link RequestParser} with the line based reader that it replaced. Run using {@link
+ * #main(String[])}, preferably with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput) @OutputTimeUnit(TimeUnit.MILLISECONDS) @State(Scope.Thread)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class RequestParserBenchmark {
+
+    private static final String REQUEST = "GET /static/css/style.min.css?v=1 HTTP/1.1\r\n"
+        + "Host: localhost:1337\r\n" + "Connection: keep-alive\r\n"
+        + "User-Agent: Mozilla/5.0 (X11; Linux x86_64) AppleWebKit/537.36 (KHTML, like Gecko) "
+        + "Chrome/72.0.3626.121 Safari/537.36\r\n" + "Accept: text/css,*/*;q=0.1\r\n"
+        + "Referer: http://localhost:1337/\r\n" + "Accept-Encoding: gzip, deflate, br\r\n"
+        + "Accept-Language: en-US,en;q=0.9,sv;q=0.8\r\n"
+        + "Cookie: session=5f2b1a7e-0b3c-4c55-9c0e-7d2f1e3a6b4c; theme=dark\r\n"
+        + "If-None-Match: \"5d41402abc4b2a76b9719d911017c592\"\r\n" + "\r\n";
+
+    private final RequestParser parser = new RequestParser();
+    private ByteBuf request;
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(
+            new OptionsBuilder().include(RequestParserBenchmark.class.getSimpleName()).build())
+            .run();
+    }
+
+    private static AbstractRequest newRequest() {
+        return new MockRequest(AbstractRequest.QueryCache.getInstance().getQuery(
+            new AbstractRequest.QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/")));
+    }
+
+    /**
+     * The reader that {@link RequestParser} replaced. The buffer is copied into an array, every character is appended
+     * to a builder while holding a lock, and every line is matched using the regular expressions of {@link
+     * RequestCompiler}.
+     */
+    private static void readLegacy(final ByteBuf buf, final AbstractRequest request)
+        throws RequestException {
+        final byte[] bytes = new byte[buf.readableBytes()];
+        buf.readBytes(bytes);
+        final StringBuilder builder = new StringBuilder(CoreConfig.Limits.limitRequestLineSize);
+        boolean hasQuery = false;
+        char lastCharacter = ' ';
+        synchronized (builder) {
+            for (final byte b : bytes) {
+                final char character = (char) b;
+                if (lastCharacter == '\r' && character == '\n') {
+                    if (builder.length() == 0) {
+                        break;
+                    }
+                    final String line = builder.toString();
+                    if (!hasQuery) {
+                        RequestCompiler.compileQuery(request, line);
+                        hasQuery = true;
+                    } else {
+                        RequestCompiler.compileHeader(line).ifPresent(
+                            pair -> request.getHeaders().put(pair.getKey(), pair.getValue()));
+                    }
+                    builder.setLength(0);
+                } else if (character != '\r' && character != '\n') {
+                    builder.append(character);
+                }
+                lastCharacter = character;
+            }
+        }
+    }
+
+    @Setup public void setup() {
+        CoreConfig.debug = false;
+        final byte[] bytes = REQUEST.getBytes(StandardCharsets.US_ASCII);
+        this.request = Unpooled.directBuffer(bytes.length).writeBytes(bytes);
+    }
+
+    @TearDown public void tearDown() {
+        this.request.release();
+    }
+
+    @Benchmark public AbstractRequest parser() throws ReturnStatus {
+        final AbstractRequest request = newRequest();
+        this.parser.reset(request);
+        this.parser.parse(this.request.duplicate());
+        return request;
+    }
+
+    @Benchmark public AbstractRequest legacyReader() throws RequestException {
+        final AbstractRequest request = newRequest();
+        readLegacy(this.request.duplicate(), request);
+        return request;
+    }
+
+}
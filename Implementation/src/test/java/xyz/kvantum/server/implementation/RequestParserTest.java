@@ -0,0 +1,140 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class RequestParserTest {
+
+    private static final String REQUEST = "GET /user/test?page=2 HTTP/1.1\r\n"
+        + "Host: localhost\r\n" + "Accept-Encoding:   gzip, deflate \r\n"
+        + "X-Custom-Header: Value\r\n" + "\r\n";
+
+    private static AbstractRequest request() {
+        return new MockRequest(AbstractRequest.QueryCache.getInstance().getQuery(
+            new AbstractRequest.QueryParameters(HttpMethod.GET, ProtocolType.HTTP, "/")));
+    }
+
+    private static ByteBuf buffer(final String string) {
+        return Unpooled.copiedBuffer(string, StandardCharsets.US_ASCII);
+    }
+
+    private static AsciiString reject(final String head) {
+        final RequestParser parser = new RequestParser();
+        parser.reset(request());
+        return assertThrows(ReturnStatus.class, () -> parser.parse(buffer(head))).getStatus();
+    }
+
+    private static void assertParsed(final AbstractRequest request) {
+        assertEquals(HttpMethod.GET, request.getQuery().getMethod());
+        assertEquals("/user/test", request.getQuery().getResource());
+        assertEquals("2", request.getQuery().getParameters().get("page"));
+        assertEquals("localhost", request.getHeader(AsciiString.of("host")).toString());
+        assertEquals("gzip, deflate",
+            request.getHeader(AsciiString.of("accept-encoding")).toString());
+        assertEquals("Value", request.getHeader(AsciiString.of("x-custom-header")).toString());
+    }
+
+    @Test void parse() throws Throwable {
+        final RequestParser parser = new RequestParser();
+        final AbstractRequest request = request();
+        parser.reset(request);
+        final ByteBuf buf = buffer(REQUEST + "body");
+        assertTrue(parser.parse(buf));
+        assertTrue(parser.isComplete());
+        assertParsed(request);
+        // Known header names are shared between requests
+        assertSame(AsciiString.of("host"),
+            request.getHeaders().keySet().stream().filter(AsciiString.of("host")::equals)
+                .findFirst().orElse(null));
+        // The bytes following the head are left in the buffer
+        assertEquals("body", buf.toString(StandardCharsets.US_ASCII));
+    }
+
+    @Test void parseSplit() throws Throwable {
+        final RequestParser parser = new RequestParser();
+        for (int i = 0; i < 2; i++) {
+            // The parser is reused between requests
+            final AbstractRequest request = request();
+            parser.reset(request);
+            final byte[] bytes = ("\r\n" + REQUEST).getBytes(StandardCharsets.US_ASCII);
+            for (int j = 0; j < bytes.length - 1; j++) {
+                assertFalse(parser.parse(Unpooled.wrappedBuffer(bytes, j, 1)));
+            }
+            assertTrue(parser.parse(Unpooled.wrappedBuffer(bytes, bytes.length - 1, 1)));
+            assertParsed(request);
+        }
+    }
+
+    @Test void rejectEarly() {
+        // Neither of these lines is complete, they are rejected as soon as they become invalid
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("G3T / HTTP/1.1"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("\u0016\u0003\u0001"));
+        final StringBuilder longLine = new StringBuilder("GET /");
+        while (longLine.length() <= 10_000) {
+            longLine.append('a');
+        }
+        assertEquals(Header.STATUS_URI_TOO_LONG, reject(longLine.toString()));
+    }
+
+    @Test void rejectMalformed() {
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("GET /\r\n\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("GET / FTP/1.1\r\n\r\n"));
+        assertEquals(Header.STATUS_HTTP_VERSION_NOT_SUPPORTED, reject("GET / HTTP/2.0\r\n\r\n"));
+        assertEquals(Header.STATUS_NOT_ALLOWED, reject("TRACE / HTTP/1.1\r\n\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("GET / HTTP/1.1\r\nHost\r\n\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("GET / HTTP/1.1\r\nHost : a\r\n\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST,
+            reject("GET / HTTP/1.1\r\nHost: a\r\n folded\r\n\r\n"));
+        assertEquals(Header.STATUS_BAD_REQUEST, reject("GET / HTTP/1.1\r\nHost: a\rb\r\n\r\n"));
+    }
+
+    @Test void rejectOversizedHeaders() {
+        final StringBuilder headers = new StringBuilder("GET / HTTP/1.1\r\n");
+        for (int i = 0; i <= 100; i++) {
+            headers.append("X-Header-").append(i).append(": value\r\n");
+        }
+        assertEquals(Header.STATUS_HEADER_FIELDS_TOO_LARGE, reject(headers.toString()));
+        final StringBuilder field = new StringBuilder("GET / HTTP/1.1\r\nX-Large: ");
+        while (field.length() <= 10_000) {
+            field.append('a');
+        }
+        assertEquals(Header.STATUS_HEADER_FIELDS_TOO_LARGE, reject(field.toString()));
+    }
+
+}
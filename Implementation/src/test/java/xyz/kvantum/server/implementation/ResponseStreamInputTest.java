@@ -0,0 +1,179 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.io.KvantumOutputStream;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.kvantum.server.implementation.TestServer.readAll;
+import static xyz.kvantum.server.implementation.TestServer.readLine;
+
+class ResponseStreamInputTest extends GenericServerTest {
+
+    private static final long BODY_LENGTH = 256L * 1024 * 1024;
+    private static final long READ_LENGTH = 4L * 1024 * 1024;
+    private static final long MAX_BUFFERED = 4L * 1024 * 1024;
+    private static final int SOCKET_BUFFER = 32 * 1024;
+
+    /**
+     * Stream of unknown length, which generates its content as it is read
+     */
+    private static final class GeneratedStream extends KvantumOutputStream {
+
+        private final AtomicLong generated;
+
+        private GeneratedStream(final AtomicLong generated) {
+            this.generated = generated;
+        }
+
+        @Override public int read(final byte[] buffer) {
+            if (this.isFinished()) {
+                return -1;
+            }
+            final int read = (int) Math.min(buffer.length, BODY_LENGTH - this.generated.get());
+            Arrays.fill(buffer, 0, read, (byte) 'k');
+            if (this.generated.addAndGet(read) >= BODY_LENGTH) {
+                this.finish();
+            }
+            return read;
+        }
+    }
+
+    /**
+     * Stream that has nothing to read until it is released
+     */
+    private static final class StalledStream extends KvantumOutputStream {
+
+        private static final byte[] CONTENT = "stalled".getBytes(StandardCharsets.US_ASCII);
+
+        private volatile boolean released;
+
+        private void release() {
+            this.released = true;
+            this.notifyAvailable();
+        }
+
+        @Override public int read(final byte[] buffer) {
+            if (this.isFinished()) {
+                return -1;
+            }
+            if (!this.released) {
+                return 0;
+            }
+            System.arraycopy(CONTENT, 0, buffer, 0, CONTENT.length);
+            this.finish();
+            return CONTENT.length;
+        }
+    }
+
+    @Test void slowClient() throws Exception {
+        final AtomicLong generated = new AtomicLong();
+        final ExecutorService executor = Executors.newCachedThreadPool();
+        try (final TestServer server = TestServer.bind(channel -> {
+            channel.config().setSendBufferSize(SOCKET_BUFFER);
+            channel.pipeline().addLast(new ChunkedWriteHandler())
+                .addLast(new ChannelInboundHandlerAdapter() {
+                    @Override public void channelActive(final ChannelHandlerContext context) {
+                        context.writeAndFlush(new ResponseStreamInput(
+                            new GeneratedStream(generated), -1L, null, executor,
+                            context.pipeline().get(ChunkedWriteHandler.class)));
+                    }
+                });
+        }); final Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(SOCKET_BUFFER);
+            socket.connect(server.getAddress());
+            final InputStream inputStream = socket.getInputStream();
+            final byte[] buffer = new byte[8192];
+            long received = 0;
+            while (received < READ_LENGTH) {
+                final int read = inputStream.read(buffer);
+                assertNotEquals(-1, read);
+                received += read;
+                // Only a bounded amount is generated ahead of what the client has read
+                assertTrue(generated.get() - received < MAX_BUFFERED,
+                    "Generated " + generated.get() + " bytes, but only " + received
+                        + " bytes were read");
+                Thread.sleep(1);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * A stream that has nothing to read mustn't hold up the event loop, which serves other connections as well
+     */
+    @Test void stalledProducer() throws Exception {
+        final StalledStream stalledStream = new StalledStream();
+        serverInstance.createSimpleRequestHandler("stream/stalled",
+            (request, response) -> response.setResponse(stalledStream));
+        serverInstance.createSimpleRequestHandler("stream/quick",
+            (request, response) -> response.setResponse("quick"));
+        try (final TestServer server = TestServer.bindHttp();
+            final Socket stalled = server.connect()) {
+            request(stalled, "/stream/stalled");
+            final InputStream stalledInput = stalled.getInputStream();
+            assertTrue(readLine(stalledInput).startsWith("HTTP/1.1 200"));
+            //
+            // The stalled response has started, and another connection is
+            // served by the same event loop in the meantime
+            //
+            try (final Socket quick = server.connect()) {
+                quick.setSoTimeout(5_000);
+                request(quick, "/stream/quick");
+                final String quickResponse = readAll(quick.getInputStream());
+                assertTrue(quickResponse.startsWith("HTTP/1.1 200"), quickResponse);
+                assertTrue(quickResponse.endsWith("quick"), quickResponse);
+            }
+            //
+            // The stalled response completes once data is available
+            //
+            stalledStream.release();
+            final String stalledResponse = readAll(stalledInput);
+            assertTrue(stalledResponse.contains("\r\n7\r\nstalled\r\n"), stalledResponse);
+            assertTrue(stalledResponse.endsWith("0\r\n\r\n"), stalledResponse);
+        }
+    }
+
+    private static void request(final Socket socket, final String path) throws IOException {
+        final OutputStream outputStream = socket.getOutputStream();
+        outputStream.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n"
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        outputStream.flush();
+    }
+
+}
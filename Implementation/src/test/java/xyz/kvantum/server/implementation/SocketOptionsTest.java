@@ -0,0 +1,59 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.buffer.PooledByteBufAllocator;
+import io.netty.buffer.UnpooledByteBufAllocator;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class SocketOptionsTest {
+
+    @AfterEach void restore() {
+        CoreConfig.Sockets.acceptors = 1;
+    }
+
+    @Test void allocator() {
+        assertSame(PooledByteBufAllocator.DEFAULT, SocketOptions.allocator("pooled"));
+        assertSame(UnpooledByteBufAllocator.DEFAULT, SocketOptions.allocator("Unpooled"));
+        assertSame(PooledByteBufAllocator.DEFAULT, SocketOptions.allocator("unknown"));
+    }
+
+    @Test void bossThreads() {
+        assertEquals(0, SocketOptions.bossThreads(0, 4));
+        assertEquals(4, SocketOptions.bossThreads(1, 4));
+        assertEquals(8, SocketOptions.bossThreads(8, 4));
+    }
+
+    @Test void acceptors() {
+        CoreConfig.Sockets.acceptors = 4;
+        assertEquals(1, SocketOptions.acceptors(new DefaultClassResolver()));
+        assertEquals(4, SocketOptions.acceptors(new EpollClassResolver()));
+        CoreConfig.Sockets.acceptors = 0;
+        assertEquals(1, SocketOptions.acceptors(new EpollClassResolver()));
+    }
+
+}
@@ -0,0 +1,98 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
+import io.netty.handler.ssl.SslContext;
+import io.netty.handler.ssl.util.SelfSignedCertificate;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SslContextFactoryTest {
+
+    private boolean openSsl;
+    private String certificateChain;
+    private String privateKey;
+
+    @BeforeEach void configure() {
+        this.openSsl = CoreConfig.SSL.openSsl;
+        this.certificateChain = CoreConfig.SSL.certificateChain;
+        this.privateKey = CoreConfig.SSL.privateKey;
+    }
+
+    @AfterEach void restore() {
+        CoreConfig.SSL.openSsl = this.openSsl;
+        CoreConfig.SSL.certificateChain = this.certificateChain;
+        CoreConfig.SSL.privateKey = this.privateKey;
+    }
+
+    @Test void pem() throws Exception {
+        final SelfSignedCertificate certificate = new SelfSignedCertificate();
+        try {
+            CoreConfig.SSL.openSsl = false;
+            CoreConfig.SSL.certificateChain = certificate.certificate().getPath();
+            CoreConfig.SSL.privateKey = certificate.privateKey().getPath();
+            final SslContext sslContext = SslContextFactory.create();
+            assertTrue(sslContext.isServer());
+            assertEquals(CoreConfig.SSL.sessionCacheSize, sslContext.sessionCacheSize());
+            assertEquals(CoreConfig.SSL.sessionTimeout, sslContext.sessionTimeout());
+            if (CoreConfig.Http2.enable) {
+                assertEquals(ApplicationProtocolNames.HTTP_2,
+                    sslContext.applicationProtocolNegotiator().protocols().get(0));
+            }
+        } finally {
+            certificate.delete();
+        }
+    }
+
+    @Test void ticketKeys() throws IOException {
+        final File file = File.createTempFile("ticketKeys", ".bin");
+        try {
+            final byte[] bytes = new byte[96];
+            for (int i = 0; i < bytes.length; i++) {
+                bytes[i] = (byte) i;
+            }
+            Files.write(file.toPath(), bytes);
+            final OpenSslSessionTicketKey[] keys = SslContextFactory.readTicketKeys(file);
+            assertEquals(2, keys.length);
+            assertArrayEquals(new byte[] {48, 49, 50, 51, 52, 53, 54, 55, 56, 57, 58, 59, 60, 61, 62, 63},
+                keys[1].name());
+            Files.write(file.toPath(), new byte[47]);
+            assertThrows(IOException.class, () -> SslContextFactory.readTicketKeys(file));
+        } finally {
+            file.delete();
+        }
+    }
+
+}
@@ -0,0 +1,86 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.views.CSSView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static xyz.kvantum.server.implementation.TestServer.readResponse;
+
+class StaticFileRangeTest extends GenericServerTest {
+
+    private static final String CONTENT = "body { color: #000; }";
+
+    private TestServer server;
+
+    @BeforeAll void bind() throws IOException, InterruptedException {
+        final File folder = new File(this.temporaryFolder, "ranges");
+        assertTrue(folder.mkdir());
+        Files.write(new File(folder, "style.css").toPath(),
+            CONTENT.getBytes(StandardCharsets.US_ASCII));
+        final Map<String, Object> options = new HashMap<>();
+        options.put("folder", "./ranges");
+        // Stylesheets are cached by default
+        serverInstance.getRouter().add(new CSSView("ranges/<file>.css", options));
+        this.server = TestServer.bindHttp();
+    }
+
+    @AfterAll void close() throws InterruptedException {
+        this.server.close();
+    }
+
+    /**
+     * Responses to range requests mustn't be cached, as every later request for the file would get them
+     */
+    @Test void unsatisfiableRangeIsNotCached() throws IOException {
+        try (final Socket socket = this.server.connect()) {
+            request(socket, "Range: bytes=999999-\r\n");
+            final TestServer.Response response = readResponse(socket.getInputStream(), "416");
+            assertEquals("bytes */" + CONTENT.length(), response.getHeader("content-range"));
+        }
+        try (final Socket socket = this.server.connect()) {
+            request(socket, "");
+            assertEquals(CONTENT, readResponse(socket.getInputStream(), "200").getBody());
+        }
+    }
+
+    private static void request(final Socket socket, final String headers) throws IOException {
+        final OutputStream outputStream = socket.getOutputStream();
+        outputStream.write(("GET /ranges/style.css HTTP/1.1\r\nHost: localhost\r\n" + headers
+            + "Connection: close\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        outputStream.flush();
+    }
+
+}
@@ -0,0 +1,224 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import xyz.kvantum.server.api.util.Metrics;
+import xyz.kvantum.server.api.util.ProtocolType;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Server that is bound to a random loopback port and runs on a single event loop, along with helpers that talk to it
+ * over plain sockets. Tests use it to exercise the actual connection pipeline.
+ */
+final class TestServer implements AutoCloseable {
+
+    private final EventLoopGroup group;
+    private final Channel channel;
+
+    private TestServer(final EventLoopGroup group, final Channel channel) {
+        this.group = group;
+        this.channel = channel;
+    }
+
+    /**
+     * Bind a server
+     *
+     * @param initializer Sets up the pipeline of every accepted connection
+     * @return Bound server
+     * @throws InterruptedException If interrupted while binding
+     */
+    static TestServer bind(final Consumer<SocketChannel> initializer)
+        throws InterruptedException {
+        final EventLoopGroup group = new NioEventLoopGroup(1);
+        try {
+            final Channel channel = new ServerBootstrap().group(group)
+                .channel(NioServerSocketChannel.class)
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override protected void initChannel(final SocketChannel ch) {
+                        initializer.accept(ch);
+                    }
+                }).bind(InetAddress.getLoopbackAddress(), 0).sync().channel();
+            return new TestServer(group, channel);
+        } catch (final InterruptedException | RuntimeException e) {
+            group.shutdownGracefully();
+            throw e;
+        }
+    }
+
+    /**
+     * Bind a server that handles HTTP/1.1 requests, and admits them using the current configuration
+     *
+     * @return Bound server
+     * @throws InterruptedException If interrupted while binding
+     */
+    static TestServer bindHttp() throws InterruptedException {
+        final AdmissionController admission = new AdmissionController(new Metrics(), () -> 0);
+        return bind(
+            ch -> HttpPipeline.addHttp1Handlers(ch.pipeline(), ProtocolType.HTTP, admission));
+    }
+
+    /**
+     * Get the address that the server is bound to
+     *
+     * @return Local address of the server
+     */
+    SocketAddress getAddress() {
+        return this.channel.localAddress();
+    }
+
+    /**
+     * Open a connection to the server. Reads time out after ten seconds.
+     *
+     * @return Connected socket
+     * @throws IOException If the connection fails
+     */
+    Socket connect() throws IOException {
+        final Socket socket = new Socket();
+        socket.setSoTimeout(10_000);
+        socket.connect(this.getAddress());
+        return socket;
+    }
+
+    @Override public void close() throws InterruptedException {
+        try {
+            this.channel.close().sync();
+        } finally {
+            this.group.shutdownGracefully().sync();
+        }
+    }
+
+    /**
+     * Read a response that is delimited by its {@code Content-Length} header, or that has no body if the header is
+     * missing
+     *
+     * @param inputStream Stream of the connection
+     * @param status      Expected status code
+     * @return Read response
+     * @throws IOException If reading fails
+     */
+    static Response readResponse(final InputStream inputStream, final String status)
+        throws IOException {
+        final String statusLine = readLine(inputStream);
+        assertTrue(statusLine.startsWith("HTTP/1.1 " + status), statusLine);
+        final Map<String, String> headers = new HashMap<>();
+        String line;
+        while (!(line = readLine(inputStream)).isEmpty()) {
+            final int separator = line.indexOf(':');
+            headers.put(line.substring(0, separator).trim().toLowerCase(Locale.ENGLISH),
+                line.substring(separator + 1).trim());
+        }
+        final String contentLength = headers.get("content-length");
+        final byte[] body = new byte[contentLength == null ? 0 : Integer.parseInt(contentLength)];
+        int read = 0;
+        while (read < body.length) {
+            final int count = inputStream.read(body, read, body.length - read);
+            assertTrue(count != -1, "Connection closed");
+            read += count;
+        }
+        return new Response(headers, new String(body, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Read a line, without its line break
+     *
+     * @param inputStream Stream of the connection
+     * @return Read line
+     * @throws IOException If reading fails
+     */
+    static String readLine(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int value;
+        while ((value = inputStream.read()) != '\n') {
+            assertTrue(value != -1, "Connection closed");
+            if (value != '\r') {
+                line.write(value);
+            }
+        }
+        return line.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    /**
+     * Read until the server closes the connection
+     *
+     * @param inputStream Stream of the connection
+     * @return Everything that was read
+     * @throws IOException If reading fails
+     */
+    static String readAll(final InputStream inputStream) throws IOException {
+        final ByteArrayOutputStream content = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[1024];
+        int read;
+        while ((read = inputStream.read(buffer)) != -1) {
+            content.write(buffer, 0, read);
+        }
+        return content.toString(StandardCharsets.US_ASCII.name());
+    }
+
+    /**
+     * Response that has been read from a connection
+     */
+    static final class Response {
+
+        private final Map<String, String> headers;
+        private final String body;
+
+        private Response(final Map<String, String> headers, final String body) {
+            this.headers = headers;
+            this.body = body;
+        }
+
+        /**
+         * Get a header
+         *
+         * @param name Header name, in lower case
+         * @return Header value, or null if the header is missing
+         */
+        String getHeader(final String name) {
+            return this.headers.get(name);
+        }
+
+        String getBody() {
+            return this.body;
+        }
+    }
+
+}
@@ -0,0 +1,102 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.implementation;
+
+import com.codahale.metrics.MetricRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.Metrics;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class WorkerExecutorTest {
+
+    private static final int THREADS = 2;
+    private static final int QUEUE = 3;
+
+    private int workerThreads;
+    private int workerQueue;
+
+    @BeforeEach void configure() {
+        this.workerThreads = CoreConfig.Pools.workerThreads;
+        this.workerQueue = CoreConfig.Pools.workerQueue;
+        CoreConfig.Pools.workerThreads = THREADS;
+        CoreConfig.Pools.workerQueue = QUEUE;
+    }
+
+    @AfterEach void restore() {
+        CoreConfig.Pools.workerThreads = this.workerThreads;
+        CoreConfig.Pools.workerQueue = this.workerQueue;
+    }
+
+    @Test void bounded() throws InterruptedException {
+        final Metrics metrics = new Metrics();
+        final WorkerExecutor executor = WorkerExecutor.create(metrics);
+        final CountDownLatch started = new CountDownLatch(THREADS);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger onWorker = new AtomicInteger();
+        final Runnable task = () -> {
+            if (WorkerExecutor.isWorkerThread()) {
+                onWorker.incrementAndGet();
+            }
+            started.countDown();
+            try {
+                release.await();
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            for (int i = 0; i < THREADS; i++) {
+                executor.execute(task);
+            }
+            assertTrue(started.await(5, TimeUnit.SECONDS));
+            for (int i = 0; i < QUEUE; i++) {
+                executor.execute(task);
+            }
+            // Every worker is busy and the queue is full
+            assertThrows(RejectedExecutionException.class, () -> executor.execute(task));
+            assertEquals(THREADS, executor.getPoolSize());
+            assertEquals(1, metrics.getRegistry()
+                .meter(MetricRegistry.name(WorkerExecutor.class, "rejected")).getCount());
+        } finally {
+            release.countDown();
+            executor.shutdown();
+        }
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(THREADS + QUEUE, onWorker.get());
+        assertEquals(THREADS + QUEUE, metrics.getRegistry()
+            .timer(MetricRegistry.name(WorkerExecutor.class, "queueWait")).getCount());
+        assertFalse(WorkerExecutor.isWorkerThread());
+    }
+
+}
@@ -21,7 +21,14 @@
  */
 package xyz.kvantum.files;
 
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.response.ContentEncoding;
+import xyz.kvantum.server.api.util.EntityTag;
+
+import java.io.IOException;
 import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Class that represents the content of a file
@@ -29,6 +36,12 @@ import java.nio.charset.StandardCharsets;
 public final class CachedFile {
 
     private final byte[] bytes;
+    private volatile EntityTag entityTag;
+    /**
+     * Encoded variants of the content, indexed by coding
+     */
+    private final AtomicReferenceArray<Variant> variants =
+        new AtomicReferenceArray<>(ContentEncoding.values().length);
 
     CachedFile(final String content) {
         if (content == null) {
@@ -48,6 +61,99 @@ public final class CachedFile {
         return this.bytes.length;
     }
 
+    /**
+     * Get the number of bytes that the content and its encoded variants occupy
+     *
+     * @return Size, in bytes
+     */
+    public int getWeight() {
+        int weight = this.bytes.length;
+        for (int i = 0; i < this.variants.length(); i++) {
+            final Variant variant = this.variants.get(i);
+            if (variant != null && variant.bytes != null) {
+                weight += variant.bytes.length;
+            }
+        }
+        return weight;
+    }
+
+    /**
+     * Get a strong entity tag for the content. The tag is computed the first time this is called, and is then kept
+     * for as long as the file stays cached.
+     *
+     * @return Entity tag
+     */
+    public EntityTag getEntityTag() {
+        EntityTag entityTag = this.entityTag;
+        if (entityTag == null) {
+            this.entityTag = entityTag = EntityTag.of(this.bytes);
+        }
+        return entityTag;
+    }
+
+    /**
+     * Get the entity tag of an encoded variant of the content
+     *
+     * @param encoding Content coding
+     * @return Entity tag, or null if the variant hasn't been encoded, or isn't smaller than the content
+     */
+    public EntityTag getEntityTag(final ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return this.getEntityTag();
+        }
+        final Variant variant = this.variants.get(encoding.ordinal());
+        if (variant == null || variant.bytes == null) {
+            return null; // Nullable
+        }
+        return variant.entityTag;
+    }
+
+    /**
+     * Check whether an encoded variant of the content has been computed
+     *
+     * @param encoding Content coding
+     * @return True if {@link #getEncoded(ContentEncoding)} won't encode the content
+     */
+    boolean isEncoded(final ContentEncoding encoding) {
+        return encoding == ContentEncoding.IDENTITY || this.variants.get(encoding.ordinal()) != null;
+    }
+
+    /**
+     * Get the content encoded using a content coding. The variant is encoded the first time this is called, and is
+     * then kept for as long as the file stays cached.
+     *
+     * @param encoding Content coding
+     * @return Encoded content, or null if encoding doesn't make the content any smaller
+     */
+    byte[] getEncoded(final ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return this.bytes;
+        }
+        Variant variant = this.variants.get(encoding.ordinal());
+        if (variant == null) {
+            variant = this.encode(encoding);
+            if (!this.variants.compareAndSet(encoding.ordinal(), null, variant)) {
+                variant = this.variants.get(encoding.ordinal());
+            }
+        }
+        return variant.bytes; // Nullable
+    }
+
+    private Variant encode(final ContentEncoding encoding) {
+        final byte[] encoded;
+        try {
+            encoded = encoding.encode(this.bytes, CoreConfig.Compression.cachedLevel);
+        } catch (final IOException e) {
+            Logger.error("Failed to encode cached file using {}: {}", encoding, e.getMessage());
+            return new Variant(null, null);
+        }
+        if (encoded.length >= this.bytes.length) {
+            return new Variant(null, null);
+        }
+        return new Variant(encoded,
+            EntityTag.strong(this.getEntityTag().getOpaqueTag() + "-" + encoding.getToken()));
+    }
+
     @Override public String toString() {
         return this.getAsString();
     }
@@ -59,4 +165,15 @@ public final class CachedFile {
     byte[] getAsByteArray() {
         return this.bytes;
     }
+
+    private static final class Variant {
+
+        private final byte[] bytes;
+        private final EntityTag entityTag;
+
+        private Variant(final byte[] bytes, final EntityTag entityTag) {
+            this.bytes = bytes;
+            this.entityTag = entityTag;
+        }
+    }
 }
@@ -21,6 +21,9 @@
  */
 package xyz.kvantum.files;
 
+import xyz.kvantum.server.api.response.ContentEncoding;
+import xyz.kvantum.server.api.util.EntityTag;
+
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.FileWriter;
@@ -172,6 +175,74 @@ import java.util.stream.Stream;
         return content;
     }
 
+    /**
+     * Get a strong entity tag for the content of the file. The tag is stored in the file cache together with the
+     * content, which will be read into the cache if it isn't already there.
+     *
+     * @return Entity tag, or null if the file doesn't exist or is too large to be cached
+     */
+    public EntityTag getEntityTag() {
+        if (!exists) {
+            return null; // Nullable
+        }
+        return this.readCacheEntry().map(CachedFile::getEntityTag).orElse(null);
+    }
+
+    private Optional<CachedFile> readCacheEntry() {
+        Optional<CachedFile> cacheEntry = fileSystem.getFileCacheManager().readCachedFile(this);
+        if (!cacheEntry.isPresent()) {
+            this.readBytes();
+            cacheEntry = fileSystem.getFileCacheManager().readCachedFile(this);
+        }
+        return cacheEntry;
+    }
+
+    /**
+     * Read the file, encoded using a content coding. The encoded content is stored in the file cache together with
+     * the content, so the file is only encoded once for as long as it stays cached.
+     *
+     * @param encoding Content coding
+     * @return Encoded content, or null if the file doesn't exist, is too large to be cached, or doesn't get any
+     * smaller when it's encoded
+     */
+    public byte[] readEncoded(final ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return this.readBytes();
+        }
+        if (!exists) {
+            return null; // Nullable
+        }
+        final Optional<CachedFile> cacheEntry = this.readCacheEntry();
+        if (!cacheEntry.isPresent()) {
+            return null; // Nullable
+        }
+        final CachedFile cachedFile = cacheEntry.get();
+        final boolean encoded = cachedFile.isEncoded(encoding);
+        final byte[] content = cachedFile.getEncoded(encoding);
+        if (!encoded) {
+            // Store the entry again, so that the variant is included in its weight
+            fileSystem.getFileCacheManager().writeCachedFile(this, cachedFile);
+        }
+        return content;
+    }
+
+    /**
+     * Get a strong entity tag for an encoded variant of the file
+     *
+     * @param encoding Content coding
+     * @return Entity tag, or null if the variant can't be read using {@link #readEncoded(ContentEncoding)}
+     */
+    public EntityTag getEntityTag(final ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return this.getEntityTag();
+        }
+        if (this.readEncoded(encoding) == null) {
+            return null; // Nullable
+        }
+        return this.readCacheEntry().map(cachedFile -> cachedFile.getEntityTag(encoding))
+            .orElse(null);
+    }
+
     /**
      * Attempt to read the file that the path is pointing to. Will first check the file cache, then attempt to read the
      * file
@@ -21,6 +21,7 @@
  */
 package xyz.kvantum.server.api.cache;
 
+import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.request.AbstractRequest;
 
 /**
@@ -36,4 +37,35 @@ import xyz.kvantum.server.api.request.AbstractRequest;
      */
     boolean isApplicable(AbstractRequest r);
 
+    /**
+     * Get the request attributes that affect the cached response, apart from the method and the path. By default,
+     * all query parameters are included.
+     *
+     * @return Cache key attributes
+     * @see CacheKey
+     */
+    default CacheKeyAttributes getCacheKeyAttributes() {
+        return CacheKeyAttributes.DEFAULT;
+    }
+
+    /**
+     * Get the number of seconds that a cached response is fresh. After that, the cached response is still served
+     * while a fresh one is generated in the background, until {@link #getCacheHardTtl()} has passed.
+     *
+     * @return Soft time to live, in seconds
+     */
+    default int getCacheSoftTtl() {
+        return CoreConfig.Cache.cachedBodiesExpiry;
+    }
+
+    /**
+     * Get the number of seconds after which a cached response is discarded, and has to be generated before it can be
+     * served again. Values lower than {@link #getCacheSoftTtl()} are treated as the soft time to live.
+     *
+     * @return Hard time to live, in seconds
+     */
+    default int getCacheHardTtl() {
+        return CoreConfig.Cache.cachedBodiesExpiry + CoreConfig.Cache.cachedBodiesStaleTime;
+    }
+
 }
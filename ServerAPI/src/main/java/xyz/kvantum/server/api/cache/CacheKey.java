@@ -0,0 +1,208 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import lombok.Getter;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.views.RequestHandler;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Identifies a cached response. The key is built from the request handler, the request method, the normalized path,
+ * the query parameters and request headers declared by the handler (see {@link CacheKeyAttributes}) and the request
+ * headers listed in the {@code Vary} header of the cached response.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class CacheKey {
+
+    private static final String[] EMPTY = new String[0];
+
+    @Getter private final String handler;
+    @Getter private final HttpMethod method;
+    @Getter private final String path;
+    /**
+     * Alternating parameter names and values, sorted by name. Absent parameters have null values.
+     */
+    private final String[] parameters;
+    /**
+     * Alternating header names and values, sorted by name
+     */
+    private final String[] headers;
+    private final int hashCode;
+
+    private CacheKey(final String handler, final HttpMethod method, final String path,
+        final String[] parameters, final String[] headers) {
+        this.handler = handler;
+        this.method = method;
+        this.path = path;
+        this.parameters = parameters;
+        this.headers = headers;
+        int hashCode = handler.hashCode();
+        hashCode = 31 * hashCode + method.hashCode();
+        hashCode = 31 * hashCode + path.hashCode();
+        hashCode = 31 * hashCode + Arrays.hashCode(parameters);
+        hashCode = 31 * hashCode + Arrays.hashCode(headers);
+        this.hashCode = hashCode;
+    }
+
+    /**
+     * Create a cache key for a request
+     *
+     * @param request    Incoming request
+     * @param handler    Handler that serves the request
+     * @param attributes Request attributes that affect the response
+     * @return Created key
+     */
+    public static CacheKey of(final AbstractRequest request, final RequestHandler handler,
+        final CacheKeyAttributes attributes) {
+        final AbstractRequest.Query query = request.getQuery();
+        final String[] parameters;
+        final Map<String, String> requestParameters = query.getParameters();
+        if (attributes.isAllParameters()) {
+            if (requestParameters.isEmpty()) {
+                parameters = EMPTY;
+            } else {
+                parameters = new String[requestParameters.size() * 2];
+                int index = 0;
+                for (final Map.Entry<String, String> entry : new TreeMap<>(requestParameters)
+                    .entrySet()) {
+                    parameters[index++] = entry.getKey();
+                    parameters[index++] = entry.getValue();
+                }
+            }
+        } else {
+            final String[] names = attributes.getParameterArray();
+            parameters = new String[names.length * 2];
+            for (int i = 0; i < names.length; i++) {
+                parameters[i * 2] = names[i];
+                parameters[i * 2 + 1] = requestParameters.get(names[i]);
+            }
+        }
+        return new CacheKey(handler.toString(), query.getMethod(),
+            normalizePath(query.getResource()), parameters,
+            headerValues(request, attributes.getHeaders()));
+    }
+
+    /**
+     * Create a copy of this key that also includes the values of the specified request headers. This is used for
+     * headers listed in the {@code Vary} header of a response.
+     *
+     * @param request Incoming request
+     * @param headers Lower case header names
+     * @return Created key, or this key if no headers were specified
+     */
+    public CacheKey withHeaders(final AbstractRequest request, final AsciiString[] headers) {
+        if (headers.length == 0) {
+            return this;
+        }
+        final String[] values = headerValues(request, headers);
+        if (this.headers.length == 0) {
+            return new CacheKey(this.handler, this.method, this.path, this.parameters, values);
+        }
+        final Map<String, String> merged = new TreeMap<>();
+        for (int i = 0; i < this.headers.length; i += 2) {
+            merged.put(this.headers[i], this.headers[i + 1]);
+        }
+        for (int i = 0; i < values.length; i += 2) {
+            merged.put(values[i], values[i + 1]);
+        }
+        final String[] mergedArray = new String[merged.size() * 2];
+        int index = 0;
+        for (final Map.Entry<String, String> entry : merged.entrySet()) {
+            mergedArray[index++] = entry.getKey();
+            mergedArray[index++] = entry.getValue();
+        }
+        return new CacheKey(this.handler, this.method, this.path, this.parameters, mergedArray);
+    }
+
+    private static String[] headerValues(final AbstractRequest request,
+        final AsciiString[] headers) {
+        if (headers.length == 0) {
+            return EMPTY;
+        }
+        final String[] values = new String[headers.length * 2];
+        for (int i = 0; i < headers.length; i++) {
+            values[i * 2] = headers[i].toString();
+            values[i * 2 + 1] = request.getHeader(headers[i]).toString();
+        }
+        return values;
+    }
+
+    /**
+     * Normalize a request path, so that equivalent paths share the same key. Repeated slashes are collapsed and
+     * trailing slashes are removed.
+     *
+     * @param path Request path, without the query string
+     * @return Normalized path, always starting with a slash
+     */
+    public static String normalizePath(final String path) {
+        final int length = path.length();
+        boolean normalized = length > 0 && path.charAt(0) == '/' && (length == 1
+            || path.charAt(length - 1) != '/');
+        for (int i = 1; normalized && i < length; i++) {
+            normalized = path.charAt(i) != '/' || path.charAt(i - 1) != '/';
+        }
+        if (normalized) {
+            return path;
+        }
+        final StringBuilder builder = new StringBuilder(length + 1).append('/');
+        for (int i = 0; i < length; i++) {
+            final char character = path.charAt(i);
+            if (character != '/' || builder.charAt(builder.length() - 1) != '/') {
+                builder.append(character);
+            }
+        }
+        if (builder.length() > 1 && builder.charAt(builder.length() - 1) == '/') {
+            builder.setLength(builder.length() - 1);
+        }
+        return builder.toString();
+    }
+
+    @Override public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKey)) {
+            return false;
+        }
+        final CacheKey other = (CacheKey) o;
+        return this.hashCode == other.hashCode && this.method == other.method && this.path
+            .equals(other.path) && this.handler.equals(other.handler) && Arrays
+            .equals(this.parameters, other.parameters) && Arrays
+            .equals(this.headers, other.headers);
+    }
+
+    @Override public int hashCode() {
+        return this.hashCode;
+    }
+
+    @Override public String toString() {
+        return "CacheKey{handler=" + this.handler + ", method=" + this.method + ", path="
+            + this.path + ", parameters=" + Arrays.toString(this.parameters) + ", headers="
+            + Arrays.toString(this.headers) + "}";
+    }
+
+}
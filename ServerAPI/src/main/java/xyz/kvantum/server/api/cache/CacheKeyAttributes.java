@@ -0,0 +1,163 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import lombok.Getter;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Declares which request attributes (apart from the method and path) that affect a cacheable response, and therefore
+ * have to be a part of its {@link CacheKey}
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class CacheKeyAttributes {
+
+    /**
+     * All query parameters, and no request headers
+     */
+    public static final CacheKeyAttributes DEFAULT = new CacheKeyAttributes(null, new AsciiString[0]);
+
+    /**
+     * Sorted query parameter names, or null if all parameters are included
+     */
+    private final String[] parameters;
+    /**
+     * Lower case names of the request headers that the response varies on
+     */
+    @Getter private final AsciiString[] headers;
+
+    private CacheKeyAttributes(final String[] parameters, final AsciiString[] headers) {
+        this.parameters = parameters;
+        this.headers = headers;
+    }
+
+    /**
+     * Only include the specified query parameters in the key. Any other parameter is ignored.
+     *
+     * @param parameters Parameter names
+     * @return Attributes, without any request headers
+     */
+    public static CacheKeyAttributes parameters(final String... parameters) {
+        return DEFAULT.withParameters(Arrays.asList(parameters));
+    }
+
+    /**
+     * Create a copy of the attributes, only including the specified query parameters
+     *
+     * @param parameters Parameter names, or null to include all parameters
+     * @return Created attributes
+     */
+    public CacheKeyAttributes withParameters(final Collection<String> parameters) {
+        if (parameters == null) {
+            return new CacheKeyAttributes(null, this.headers);
+        }
+        return new CacheKeyAttributes(new TreeSet<>(parameters).toArray(new String[0]),
+            this.headers);
+    }
+
+    /**
+     * Create a copy of the attributes, which also includes the values of the specified request headers
+     *
+     * @param headers Header names (case insensitive)
+     * @return Created attributes
+     */
+    public CacheKeyAttributes withHeaders(final Collection<String> headers) {
+        final Set<String> names = new TreeSet<>();
+        for (final AsciiString header : this.headers) {
+            names.add(header.toString());
+        }
+        for (final String header : headers) {
+            names.add(header.trim().toLowerCase(Locale.ENGLISH));
+        }
+        final AsciiString[] array = new AsciiString[names.size()];
+        int index = 0;
+        for (final String name : names) {
+            array[index++] = AsciiString.of(name, false);
+        }
+        return new CacheKeyAttributes(this.parameters, array);
+    }
+
+    /**
+     * Create a copy of the attributes, which also includes the values of the specified request headers
+     *
+     * @param headers Header names (case insensitive)
+     * @return Created attributes
+     */
+    public CacheKeyAttributes withHeaders(final String... headers) {
+        return withHeaders(Arrays.asList(headers));
+    }
+
+    /**
+     * Check whether all query parameters are included in the key
+     *
+     * @return True if all parameters are included
+     */
+    public boolean isAllParameters() {
+        return this.parameters == null;
+    }
+
+    /**
+     * Get the names of the included query parameters
+     *
+     * @return Sorted parameter names, empty if {@link #isAllParameters()}
+     */
+    public Collection<String> getParameters() {
+        if (this.parameters == null) {
+            return Collections.emptyList();
+        }
+        return Collections.unmodifiableList(Arrays.asList(this.parameters));
+    }
+
+    String[] getParameterArray() {
+        return this.parameters;
+    }
+
+    @Override public boolean equals(final Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CacheKeyAttributes)) {
+            return false;
+        }
+        final CacheKeyAttributes other = (CacheKeyAttributes) o;
+        return Arrays.equals(this.parameters, other.parameters) && Arrays
+            .equals(this.headers, other.headers);
+    }
+
+    @Override public int hashCode() {
+        return Objects.hash(Arrays.hashCode(this.parameters), Arrays.hashCode(this.headers));
+    }
+
+    @Override public String toString() {
+        return "CacheKeyAttributes{parameters=" + (this.parameters == null ?
+            "*" :
+            Arrays.toString(this.parameters)) + ", headers=" + Arrays.toString(this.headers) + "}";
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+/**
+ * Result of a response cache lookup. Either it contains a cached response, or it makes the request responsible for
+ * generating the response, in which case other requests for the same cache key wait for it to be cached rather than
+ * generating it themselves
+ *
+ * @see ICacheManager#lookup(xyz.kvantum.server.api.request.AbstractRequest,
+ * xyz.kvantum.server.api.views.RequestHandler)
+ */
+@RequiredArgsConstructor(access = AccessLevel.PRIVATE) public final class CacheLookup {
+
+    private static final Runnable NO_COMPLETION = () -> {
+    };
+
+    /**
+     * The cached response, or null if the request has to generate it
+     */
+    @Getter private final CachedResponse response;
+    /**
+     * Whether the response was cached by another request that the lookup waited for
+     */
+    @Getter private final boolean coalesced;
+    private final Runnable completion;
+
+    /**
+     * Create a lookup result for a cached response
+     *
+     * @param response  Cached response
+     * @param coalesced Whether the lookup waited for another request to generate the response
+     * @return Lookup result
+     */
+    public static CacheLookup hit(final CachedResponse response, final boolean coalesced) {
+        return new CacheLookup(response, coalesced, NO_COMPLETION);
+    }
+
+    /**
+     * Create a lookup result for a response that isn't cached
+     *
+     * @param completion Action that releases any requests waiting for the response, or null if none can be waiting
+     * @return Lookup result
+     */
+    public static CacheLookup miss(final Runnable completion) {
+        return new CacheLookup(null, false, completion == null ? NO_COMPLETION : completion);
+    }
+
+    /**
+     * Check whether the request has to generate the response
+     *
+     * @return True if nothing was cached
+     */
+    public boolean isMiss() {
+        return this.response == null;
+    }
+
+    /**
+     * Signal that the response has been generated, and cached if possible. This has to be called for misses once the
+     * response has been cached, or the generation has failed, as other requests may be waiting for it. Calling this
+     * more than once has no effect.
+     */
+    public void complete() {
+        this.completion.run();
+    }
+
+}
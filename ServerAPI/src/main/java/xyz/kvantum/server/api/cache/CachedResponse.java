@@ -21,15 +21,25 @@
  */
 package xyz.kvantum.server.api.cache;
 
+import lombok.Getter;
 import lombok.ToString;
 import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.io.ByteBufferKvantumOutputStream;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
-import xyz.kvantum.server.api.io.SimpleOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.ContentEncoding;
 import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.HeaderList;
 import xyz.kvantum.server.api.response.KnownLengthStream;
 import xyz.kvantum.server.api.response.ResponseBody;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.EntityTag;
 
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.EnumMap;
+import java.util.Map;
 import java.util.UUID;
 
 /**
@@ -38,13 +48,36 @@ import java.util.UUID;
 @ToString(of = "uuid") public final class CachedResponse implements ResponseBody {
 
     public final Header header;
-    private final UUID uuid = UUID.randomUUID();
-    private final SimpleOutputStream responseStream;
+    private final UUID uuid;
+    /**
+     * Read only body content, which shares the precompiled response
+     */
+    private final ByteBuffer content;
+    /**
+     * The response as it's sent to clients, compiled when the response is cached. This is stored in a direct buffer
+     * if {@link CoreConfig.Cache#cachedBodiesOffHeap} was enabled when the response was cached.
+     */
+    @Getter private final PrecompiledResponse precompiledResponse;
+    /**
+     * Encoded variants of the response, compiled when the response is cached, so that cache hits are never encoded
+     * at request time
+     */
+    private final Map<ContentEncoding, PrecompiledResponse> encodedResponses;
+    private final Map<ContentEncoding, EntityTag> encodedEntityTags;
+    /**
+     * Codings that the response is available in, in order of preference
+     */
+    private final ContentEncoding[] encodings;
     private final boolean isText;
     private boolean supportsGzip;
+    /**
+     * Strong entity tag of the cached body, computed once when the response is cached
+     */
+    @Getter private final EntityTag entityTag;
 
     public CachedResponse(final ResponseBody parent) {
         this.header = parent.getHeader();
+        this.uuid = UUID.randomUUID();
         this.isText = parent.isText();
         this.supportsGzip = parent.supportsGzip();
         final KvantumOutputStream responseStream = parent.getResponseStream();
@@ -52,8 +85,171 @@ import java.util.UUID;
             throw new IllegalArgumentException(
                 "Supplied parent does not have a known length response stream");
         }
-        final KnownLengthStream knownLengthStream = (KnownLengthStream) responseStream;
-        this.responseStream = new SimpleOutputStream(knownLengthStream.getAll());
+        final byte[] bytes = ((KnownLengthStream) responseStream).getAll();
+        this.entityTag = EntityTag.of(bytes);
+        final CacheValidators validators = this.getCacheValidators();
+        this.encodedResponses = new EnumMap<>(ContentEncoding.class);
+        this.encodedEntityTags = new EnumMap<>(ContentEncoding.class);
+        if (this.isCompressible(bytes)) {
+            this.compileEncoded(ContentEncoding.GZIP, validators, bytes);
+        }
+        this.encodings = new ContentEncoding[this.encodedResponses.size() + 1];
+        int index = 0;
+        for (final ContentEncoding encoding : this.encodedResponses.keySet()) {
+            this.encodings[index++] = encoding;
+        }
+        this.encodings[index] = ContentEncoding.IDENTITY;
+        this.precompiledResponse = PrecompiledResponse
+            .compile(this.header, validators, bytes, CoreConfig.Cache.cachedBodiesOffHeap,
+                this.encodedResponses.isEmpty() ? null : ContentEncoding.IDENTITY);
+        this.content = this.precompiledResponse.getBody();
+    }
+
+    private CachedResponse(final CachedResponse parent, final Header header) {
+        this.header = header;
+        this.uuid = parent.uuid;
+        this.content = parent.content;
+        this.precompiledResponse = parent.precompiledResponse;
+        this.encodedResponses = parent.encodedResponses;
+        this.encodedEntityTags = parent.encodedEntityTags;
+        this.encodings = parent.encodings;
+        this.isText = parent.isText;
+        this.supportsGzip = parent.supportsGzip;
+        this.entityTag = parent.entityTag;
+    }
+
+    private boolean isCompressible(final byte[] bytes) {
+        return CoreConfig.gzip && this.supportsGzip
+            && bytes.length >= CoreConfig.Compression.minimumSize && !this.header
+            .hasHeader(Header.HEADER_CONTENT_ENCODING) && ContentEncoding.isCompressible(
+            this.header.get(Header.HEADER_CONTENT_TYPE).orElse(AsciiString.empty));
+    }
+
+    /**
+     * Compile an encoded variant of the response, unless encoding doesn't make the body any smaller. The entity tag
+     * of the variant is derived from the tag of the body. Weak tags are kept as they are, as the variants are
+     * semantically equivalent.
+     *
+     * @param encoding   Content coding
+     * @param validators Validators of the identity body
+     * @param bytes      Identity body
+     */
+    private void compileEncoded(final ContentEncoding encoding, final CacheValidators validators,
+        final byte[] bytes) {
+        final byte[] encoded;
+        try {
+            encoded = encoding.encode(bytes, CoreConfig.Compression.cachedLevel);
+        } catch (final IOException e) {
+            Logger.error("Failed to encode cached response {} using {}: {}", this, encoding,
+                e.getMessage());
+            return;
+        }
+        if (encoded.length >= bytes.length) {
+            return;
+        }
+        final EntityTag identityTag = validators.getEntityTag();
+        final EntityTag entityTag = identityTag.isWeak() ?
+            identityTag :
+            EntityTag.strong(identityTag.getOpaqueTag() + "-" + encoding.getToken());
+        final CacheValidators encodedValidators =
+            CacheValidators.of(entityTag, validators.getLastModified());
+        this.encodedEntityTags.put(encoding, entityTag);
+        this.encodedResponses.put(encoding, PrecompiledResponse
+            .compile(this.header, encodedValidators, encoded,
+                CoreConfig.Cache.cachedBodiesOffHeap, encoding));
+    }
+
+    /**
+     * Get a copy of the response, with a header of its own that can be changed while a single request is handled.
+     * The body and its compiled variants are shared.
+     *
+     * @return Response copy
+     */
+    public CachedResponse forRequest() {
+        final Header copy = new Header(this.header.getStatus(), this.header.getFormat());
+        final HeaderList entries = this.header.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            copy.set(entries.getName(i), entries.getValue(i), true);
+        }
+        return new CachedResponse(this, copy);
+    }
+
+    /**
+     * Choose the variant that a client should be sent
+     *
+     * @param acceptEncoding Value of the Accept-Encoding header
+     * @return Content coding of the variant
+     */
+    public ContentEncoding negotiate(final AsciiString acceptEncoding) {
+        return ContentEncoding.negotiate(acceptEncoding, this.encodings);
+    }
+
+    /**
+     * Get the compiled form of a variant of the response
+     *
+     * @param encoding Content coding of the variant
+     * @return Compiled variant, or null if the response isn't available in the coding
+     */
+    public PrecompiledResponse getPrecompiledResponse(final ContentEncoding encoding) {
+        if (encoding == ContentEncoding.IDENTITY) {
+            return this.precompiledResponse;
+        }
+        return this.encodedResponses.get(encoding); // Nullable
+    }
+
+    /**
+     * Get the number of bytes that the response and its variants occupy
+     *
+     * @return Size, in bytes
+     */
+    public int getWeight() {
+        int weight = this.precompiledResponse.getLength();
+        for (final PrecompiledResponse encodedResponse : this.encodedResponses.values()) {
+            weight += encodedResponse.getLength();
+        }
+        return weight;
+    }
+
+    /**
+     * Get the length of the cached body
+     *
+     * @return Body length, in bytes
+     */
+    public int getLength() {
+        return this.content.remaining();
+    }
+
+    /**
+     * Get the validators of the cached response. The entity tag is computed from the cached body, and the last
+     * modification time is read from the cached header, if present.
+     *
+     * @return Validators
+     */
+    public CacheValidators getCacheValidators() {
+        final CacheValidators headerValidators = CacheValidators.fromHeader(this.header);
+        final long lastModified = headerValidators == null ? -1 : headerValidators.getLastModified();
+        if (headerValidators != null && headerValidators.getEntityTag() != null) {
+            return headerValidators;
+        }
+        return CacheValidators.of(this.entityTag, lastModified);
+    }
+
+    /**
+     * Get the validators of a variant of the response
+     *
+     * @param encoding Content coding of the variant
+     * @return Validators, or null if the response isn't available in the coding
+     */
+    public CacheValidators getCacheValidators(final ContentEncoding encoding) {
+        final CacheValidators validators = this.getCacheValidators();
+        if (encoding == ContentEncoding.IDENTITY) {
+            return validators;
+        }
+        final EntityTag encodedTag = this.encodedEntityTags.get(encoding);
+        if (encodedTag == null) {
+            return null; // Nullable
+        }
+        return CacheValidators.of(encodedTag, validators.getLastModified());
     }
 
     @Override public Header getHeader() {
@@ -64,8 +260,8 @@ import java.util.UUID;
         if (CoreConfig.debug) {
             Logger.debug("Creating a new copy of response stream: {}", this);
         }
-        // Always return a copy of the response stream
-        return new SimpleOutputStream(responseStream.getInternalBytes());
+        // The stream shares the cached content, and only copies it if it has to be modified
+        return new ByteBufferKvantumOutputStream(this.content);
     }
 
     @Override public boolean supportsGzip() {
@@ -23,6 +23,7 @@ package xyz.kvantum.server.api.cache;
 
 import xyz.kvantum.files.CachedFile;
 import xyz.kvantum.files.Path;
+import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.response.ResponseBody;
 import xyz.kvantum.server.api.views.RequestHandler;
 
@@ -73,29 +74,57 @@ public interface ICacheManager {
     void removeFileCache(Path path);
 
     /**
-     * Check if there is a ResponseBody cached for the view
+     * Get the cache key for a request
      *
-     * @param view RequestHandler
+     * @param request Incoming request
+     * @param view    RequestHandler that serves the request
+     * @return Cache key, built from the attributes declared by the view and the headers that previously cached
+     * responses varied on
+     * @see CacheApplicable#getCacheKeyAttributes()
+     */
+    CacheKey getCacheKey(AbstractRequest request, RequestHandler view);
+
+    /**
+     * Check if there is a ResponseBody cached for the request
+     *
+     * @param request Incoming request
+     * @param view    RequestHandler
      * @return true if there is a ResponseBody cached, else false
      */
-    boolean hasCache(RequestHandler view);
+    boolean hasCache(AbstractRequest request, RequestHandler view);
 
     /**
-     * Add a cached ResponseBody
+     * Add a cached ResponseBody. Only {@code 200 OK} responses to requests without a {@code Range} header are cached,
+     * and responses with a {@code Vary: *} header are not cached.
      *
-     * @param view RequestHandler for which the caching will apply
-     * @param body ResponseBody (will generate a CachedResponseBody)
+     * @param request Request that the body was generated for
+     * @param view    RequestHandler for which the caching will apply
+     * @param body    ResponseBody (will generate a CachedResponseBody)
      * @see CachedResponse
      */
-    void setCache(RequestHandler view, ResponseBody body);
+    void setCache(AbstractRequest request, RequestHandler view, ResponseBody body);
+
+    /**
+     * Get the cached response for a request
+     *
+     * @param request Incoming request
+     * @param view    RequestHandler
+     * @return the cached ResponseBody, or null if there is no cached response
+     * @see #hasCache(AbstractRequest, RequestHandler) To check if the view has a cache
+     */
+    CachedResponse getCache(AbstractRequest request, RequestHandler view);
 
     /**
-     * Get the cached response for a view
+     * Get the cached response for a request, while making sure that only one request at a time generates the response
+     * for any given cache key. If another request is already generating it, this waits (at most {@link
+     * xyz.kvantum.server.api.config.CoreConfig.Cache#coalescingTimeout} milliseconds) for it to be cached. If nothing
+     * is cached afterwards, the request generates the response on its own.
      *
-     * @param view RequestHandler
-     * @return the cached ResponseBody
-     * @see #hasCache(RequestHandler) To check if the view has a cache
+     * @param request Incoming request
+     * @param view    RequestHandler
+     * @return Lookup result. {@link CacheLookup#complete()} must be called for misses, once the response has been
+     * cached
      */
-    CachedResponse getCache(RequestHandler view);
+    CacheLookup lookup(AbstractRequest request, RequestHandler view);
 
 }
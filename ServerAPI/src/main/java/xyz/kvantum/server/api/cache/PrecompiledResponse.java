@@ -0,0 +1,183 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import lombok.Getter;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.ContentEncoding;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.HeaderList;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.HttpDate;
+
+import java.nio.ByteBuffer;
+
+/**
+ * The wire representation of a cached response. The status line, the headers and the body are serialized once, into
+ * a single read only buffer, so that the response can be sent without being serialized again. Headers that aren't
+ * {@link HeaderOption#isCacheApplicable() cache applicable} (such as {@code Date} and {@code Connection}) are left
+ * out, and have to be written for every request, between the {@link #getStatusLine() status line} and the {@link
+ * #getHeadersAndBody() remaining headers}.
+ */
+public final class PrecompiledResponse {
+
+    private static final byte[] CRLF = AsciiString.of("\r\n").getValue();
+
+    private final ByteBuffer buffer;
+    private final int statusLineLength;
+    private final int bodyOffset;
+    /**
+     * Status of the compiled response
+     */
+    @Getter private final AsciiString status;
+
+    private PrecompiledResponse(final ByteBuffer buffer, final int statusLineLength,
+        final int bodyOffset, final AsciiString status) {
+        this.buffer = buffer.asReadOnlyBuffer();
+        this.statusLineLength = statusLineLength;
+        this.bodyOffset = bodyOffset;
+        this.status = status;
+    }
+
+    /**
+     * Compile a response. The header isn't modified. The compiled headers contain the validators, a {@code
+     * Content-Length} and, unless the header contains one, a {@code Last-Modified} header set to the current time.
+     *
+     * @param header     Response header
+     * @param validators Validators of the response (Nullable)
+     * @param body       Response body
+     * @param direct     Whether the response should be stored in a direct buffer
+     * @return Compiled response
+     */
+    public static PrecompiledResponse compile(final Header header,
+        final CacheValidators validators, final byte[] body, final boolean direct) {
+        return compile(header, validators, body, direct, null);
+    }
+
+    /**
+     * Compile a variant of a response, that has been chosen by negotiating the content coding. The compiled headers
+     * contain the {@code Content-Encoding} of the body, and vary on {@code Accept-Encoding}.
+     *
+     * @param header     Response header
+     * @param validators Validators of the variant (Nullable)
+     * @param body       Encoded response body
+     * @param direct     Whether the response should be stored in a direct buffer
+     * @param encoding   Content coding of the body, or null if the response isn't negotiated
+     * @return Compiled response
+     * @see #compile(Header, CacheValidators, byte[], boolean)
+     */
+    public static PrecompiledResponse compile(final Header header,
+        final CacheValidators validators, final byte[] body, final boolean direct,
+        final ContentEncoding encoding) {
+        final Header compiled = new Header(header.getStatus(), header.getFormat());
+        final HeaderList entries = header.getEntries();
+        for (int i = 0; i < entries.size(); i++) {
+            if (entries.getName(i).isCacheApplicable()) {
+                compiled.set(entries.getName(i), entries.getValue(i), true);
+            }
+        }
+        compiled.set(Header.HEADER_TRANSFER_ENCODING, (AsciiString) null);
+        if (encoding != null) {
+            encoding.applyHeaders(compiled);
+        }
+        if (validators != null) {
+            validators.apply(compiled);
+        }
+        if (!compiled.hasHeader(Header.HEADER_LAST_MODIFIED)) {
+            compiled.set(Header.HEADER_LAST_MODIFIED, HttpDate.now());
+        }
+        compiled.set(Header.HEADER_CONTENT_LENGTH, AsciiString.of(body.length));
+
+        final byte[] statusLine = compiled.getStatusLine();
+        final int statusLineLength = statusLine.length;
+        final HeaderList headers = compiled.getEntries();
+        int headerLength = 0;
+        for (int i = 0; i < headers.size(); i++) {
+            headerLength += headers.getName(i).getPrefix().length
+                + headers.getValue(i).getValue().length + CRLF.length;
+        }
+        final int bodyOffset = statusLineLength + headerLength + CRLF.length;
+
+        final ByteBuffer buffer = direct ?
+            ByteBuffer.allocateDirect(bodyOffset + body.length) :
+            ByteBuffer.allocate(bodyOffset + body.length);
+        buffer.put(statusLine);
+        for (int i = 0; i < headers.size(); i++) {
+            buffer.put(headers.getName(i).getPrefix()).put(headers.getValue(i).getValue())
+                .put(CRLF);
+        }
+        buffer.put(CRLF).put(body).flip();
+        return new PrecompiledResponse(buffer, statusLineLength, bodyOffset, compiled.getStatus());
+    }
+
+    private ByteBuffer slice(final int from, final int to) {
+        final ByteBuffer duplicate = this.buffer.duplicate();
+        duplicate.position(from).limit(to);
+        return duplicate.slice();
+    }
+
+    /**
+     * Get the status line, including the line break
+     *
+     * @return Read only buffer, sharing the compiled response
+     */
+    public ByteBuffer getStatusLine() {
+        return this.slice(0, this.statusLineLength);
+    }
+
+    /**
+     * Get the compiled headers, the empty line that ends the header and the body
+     *
+     * @return Read only buffer, sharing the compiled response
+     */
+    public ByteBuffer getHeadersAndBody() {
+        return this.slice(this.statusLineLength, this.buffer.limit());
+    }
+
+    /**
+     * Get the body
+     *
+     * @return Read only buffer, sharing the compiled response
+     */
+    public ByteBuffer getBody() {
+        return this.slice(this.bodyOffset, this.buffer.limit());
+    }
+
+    /**
+     * Get the length of the body
+     *
+     * @return Body length, in bytes
+     */
+    public int getBodyLength() {
+        return this.buffer.limit() - this.bodyOffset;
+    }
+
+    /**
+     * Get the length of the compiled response
+     *
+     * @return Response length, in bytes
+     */
+    public int getLength() {
+        return this.buffer.limit();
+    }
+
+}
@@ -26,6 +26,7 @@ import com.intellectualsites.configurable.annotations.ConfigSection;
 import com.intellectualsites.configurable.annotations.Configuration;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -50,6 +51,7 @@ public class CoreConfig {
     public static boolean exitOnStop = true;
     public static boolean hideIps = false;
     public static int requestHandlerSortRate = 60; // Once every minute
+    public static boolean regexPatternMatching = false; // Use the legacy regex view pattern matcher
 
     public static long timeout = 15;
     public static String timeoutUnit = "SECONDS";
@@ -72,8 +74,16 @@ public class CoreConfig {
     @ConfigSection(name = "Throttling") public static class Throttle {
 
         public static String timeUnit = "MINUTES";
+        /**
+         * Number of connections that an address may open in a burst, and per {@link #timeSpan}. 0 disables
+         * throttling.
+         */
         public static int limit = 1000;
         public static long timeSpan = 1;
+        /**
+         * Maximum number of addresses that are tracked at once
+         */
+        public static long maxAddresses = 65_536;
     }
 
 
@@ -111,8 +121,145 @@ public class CoreConfig {
         public static int httpsBossGroupThreads = 0;
         public static int httpsWorkerGroupThreads = 0;
 
-        public static int gzipHandlers = 2;
-        public static int md5Handlers = 2;
+        /**
+         * Maximum number of threads that generate responses
+         */
+        public static int workerThreads = 256;
+        /**
+         * Maximum number of requests that wait for a worker. Requests beyond this are answered with 503 Service
+         * Unavailable.
+         */
+        public static int workerQueue = 1024;
+        /**
+         * Seconds that an idle worker thread is kept alive
+         */
+        public static int workerKeepAlive = 60;
+        /**
+         * Run the workers in virtual threads, if the JDK supports them. Up to {@link #virtualWorkerThreads} virtual
+         * threads are used in place of the {@link #workerThreads} platform threads.
+         */
+        public static boolean virtualWorkers = false;
+        public static int virtualWorkerThreads = 10_000;
+    }
+
+    @ConfigSection(name = "admission") public static class Admission {
+
+        /**
+         * Maximum number of requests that are handled at once, counted from their first byte until their response has
+         * been written. Requests beyond that are answered with 503. 0 means no limit. In adaptive mode, this is the
+         * upper bound of the limit.
+         */
+        public static int maxInFlight = 0;
+        /**
+         * Reject requests while this many requests wait for a worker. 0 means no limit.
+         */
+        public static int maxQueued = 0;
+        /**
+         * Only admit {@link #minInFlight} requests at once while the average response latency exceeds this many
+         * milliseconds. 0 disables the check.
+         */
+        public static int maxLatency = 0;
+        /**
+         * Seconds that rejected clients are told to wait before retrying
+         */
+        public static int retryAfter = 1;
+        /**
+         * Adjust the concurrency limit automatically: it is raised while responses take less than {@link
+         * #targetLatency} milliseconds, and multiplied by {@link #backoffRatio} when they take longer or when the
+         * workers reject requests
+         */
+        public static boolean adaptive = false;
+        public static int targetLatency = 250;
+        public static double backoffRatio = 0.9;
+        public static int minInFlight = 8;
+    }
+
+
+    @ConfigSection(name = "connections") public static class Connections {
+
+        /**
+         * Seconds that a client has to send the head of a request, counted from its first byte. Clients that are
+         * slower are answered with 408, and disconnected. 0 means no limit.
+         */
+        public static int maxHeaderTime = 20;
+        /**
+         * Maximum number of requests that are served on a kept-alive connection. The last response tells the client
+         * to close the connection. 0 means no limit.
+         */
+        public static int maxRequests = 1000;
+        /**
+         * Seconds that a kept-alive connection may stay idle between requests, before it is closed. 0 means no
+         * limit.
+         */
+        public static int idleTimeout = 60;
+        /**
+         * Seconds that in-flight responses are given to be written when the server is stopped, before the remaining
+         * connections are closed
+         */
+        public static int shutdownGracePeriod = 30;
+    }
+
+
+    @ConfigSection(name = "sockets") public static class Sockets {
+
+        /**
+         * Number of listening sockets per port. More than one requires epoll, the sockets then share the port using
+         * SO_REUSEPORT and the kernel spreads new connections over them.
+         */
+        public static int acceptors = 1;
+        /**
+         * Maximum number of connections that wait to be accepted, per listening socket
+         */
+        public static int backlog = 1024;
+        /**
+         * Disable Nagle's algorithm on accepted connections
+         */
+        public static boolean tcpNoDelay = true;
+        /**
+         * Length of the TCP Fast Open queue. 0 disables TCP Fast Open. Requires epoll.
+         */
+        public static int tcpFastOpen = 0;
+        /**
+         * Seconds that a connection may wait for its first bytes before it is accepted. 0 accepts connections as
+         * soon as the handshake completes. Requires epoll.
+         */
+        public static int deferAccept = 0;
+        /**
+         * Connections stop being writable when this many bytes are queued, until the queue has drained to
+         * {@link #writeBufferLowWaterMark}
+         */
+        public static int writeBufferHighWaterMark = 64 * 1024;
+        public static int writeBufferLowWaterMark = 32 * 1024;
+        /**
+         * Buffer allocator of accepted connections: "pooled", "unpooled" or "default" (netty's choice)
+         */
+        public static String allocator = "pooled";
+    }
+
+
+    @ConfigSection(name = "compression") public static class Compression {
+
+        /**
+         * Bodies of known length that are smaller than this (in bytes) are sent uncompressed
+         */
+        public static int minimumSize = 1024;
+        /**
+         * Deflate level, from 1 (fastest) to 9 (smallest)
+         */
+        public static int level = 6;
+        /**
+         * Deflate level of the compressed variants that are stored together with cached responses and files. These
+         * are compressed once, so this can be higher than {@link #level}.
+         */
+        public static int cachedLevel = 9;
+        /**
+         * Content types that are compressed. Entries ending with a slash match every subtype.
+         */
+        public static List<String> mimeTypes = new ArrayList<>(Arrays
+            .asList("text/", "application/json", "application/javascript",
+                "application/ecmascript", "application/xml", "application/xhtml+xml",
+                "application/rss+xml", "application/atom+xml", "application/ld+json",
+                "application/manifest+json", "image/svg+xml", "image/x-icon"));
     }
 
 
@@ -134,6 +281,49 @@ public class CoreConfig {
         public static int port = 443;
         public static String keyStore = "keyStore";
         public static String keyStorePassword = "password";
+        /**
+         * Use OpenSSL (netty-tcnative) when it is available, rather than the JDK implementation
+         */
+        public static boolean openSsl = true;
+        /**
+         * PEM certificate chain and PKCS#8 private key. They are used instead of the key store when both are set.
+         */
+        public static String certificateChain = "";
+        public static String privateKey = "";
+        public static String privateKeyPassword = "";
+        /**
+         * Number of sessions that are cached for resumption. 0 uses the default of the implementation.
+         */
+        public static long sessionCacheSize = 20_480;
+        /**
+         * Seconds that a session can be resumed for. 0 uses the default of the implementation.
+         */
+        public static long sessionTimeout = 3600;
+        /**
+         * File containing one or more 48 byte session ticket keys, shared by servers that should be able to resume
+         * each other's sessions. New tickets use the first key. OpenSSL uses random keys when this isn't set.
+         */
+        public static String sessionTicketKeys = "";
+
+    }
+
+
+    @ConfigSection(name = "http2") public static class Http2 {
+
+        /**
+         * Accept HTTP/2 connections. They are negotiated using ALPN on the SSL port, and accepted from clients with
+         * prior knowledge on the plain port.
+         */
+        public static boolean enable = true;
+        public static int maxConcurrentStreams = 100;
+        /**
+         * Initial flow control window of every stream, in bytes
+         */
+        public static int initialWindowSize = 65_535;
+        /**
+         * Maximum size of the decompressed request headers, in bytes
+         */
+        public static int maxHeaderListSize = 16_384;
 
     }
 
@@ -143,13 +333,20 @@ public class CoreConfig {
         public static int in = 100_000;
         public static int out = 100_000;
         public static int files = 100_000;
+        /**
+         * Request bodies larger than this are spilled to a temporary file, rather than kept in memory
+         */
+        public static int requestBody = 1024 * 1024;
     }
 
 
     @ConfigSection(name = "limits") public static class Limits {
 
         public static int limitRequestLineSize = 8190;
+        public static int limitRequestFieldSize = 8190;
+        public static int limitRequestFields = 100;
         public static int limitPostBasicSize = 8190;
+        public static long limitPostMaxSize = 512L * 1024 * 1024; // 512MB
 
     }
 
@@ -162,12 +359,27 @@ public class CoreConfig {
         public static int cachedAccountIdsExpiry = 60 * 60 * 24;
         public static int cachedAccountIdsMaxItems = 1000;
         public static int cachedBodiesExpiry = 60 * 60;
-        public static int cachedBodiesMaxItems = 1000;
+        public static long cachedBodiesMaxBytes = 64L * 1024 * 1024; // 64MB
+        /**
+         * Seconds that an expired body may still be served, while a fresh one is generated in the background
+         */
+        public static int cachedBodiesStaleTime = 0;
+        public static int cachedBodiesRefreshThreads = 2;
+        public static int cachedBodiesRefreshQueue = 100;
+        /**
+         * Store cached response bodies in direct buffers, outside of the heap
+         */
+        public static boolean cachedBodiesOffHeap = false;
         public static int cachedFilesExpiry = 60 * 60 * 24;
-        public static int cachedFilesMaxItems = 1000;
+        public static long cachedFilesMaxBytes = 128L * 1024 * 1024; // 128MB
         public static int cachedSessionsMaxItems = 1000;
         public static int cachedQueryMinimumAccesses = 10;
         public static int cachedFilesMaxSize = 1024 * 1024; // Default max size is 1MB
+        /**
+         * Let concurrent requests for an uncached response wait for a single request to generate it
+         */
+        public static boolean coalesceRequests = true;
+        public static int coalescingTimeout = 5000; // Milliseconds
     }
 
 
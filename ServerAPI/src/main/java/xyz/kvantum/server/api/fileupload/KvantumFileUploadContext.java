@@ -27,6 +27,7 @@ import lombok.RequiredArgsConstructor;
 import org.apache.commons.fileupload.UploadContext;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.AsciiString;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -78,7 +79,11 @@ public final class KvantumFileUploadContext implements UploadContext {
     }
 
     @Override public long contentLength() {
-        return this.request.getHeader("content-length").toLong();
+        final AsciiString contentLength = this.request.getHeader("content-length");
+        if (contentLength.isEmpty()) {
+            return -1L; // Chunked request bodies have an unknown length
+        }
+        return contentLength.toLong();
     }
 
     @Override public InputStream getInputStream() throws IOException {
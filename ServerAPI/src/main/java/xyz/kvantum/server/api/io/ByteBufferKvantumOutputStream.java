@@ -0,0 +1,97 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.io;
+
+import xyz.kvantum.server.api.response.KnownLengthStream;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Response stream backed by a (possibly direct) {@link ByteBuffer}. The content is only copied into a byte array if
+ * it has to be modified, or read as one; otherwise the buffer can be written to the channel as it is.
+ * {@inheritDoc}
+ */
+public class ByteBufferKvantumOutputStream extends KvantumOutputStream implements KnownLengthStream {
+
+    private ByteBuffer content;
+
+    /**
+     * Create a new stream. The buffer is not copied, and must not be modified while the stream is in use.
+     *
+     * @param content Stream content, from position to limit
+     */
+    public ByteBufferKvantumOutputStream(final ByteBuffer content) {
+        this.content = content.slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Get the content that hasn't been read yet. The buffer is read only, and shares the content of the stream.
+     *
+     * @return Remaining content
+     */
+    public ByteBuffer getContent() {
+        return this.content.duplicate();
+    }
+
+    @Override public int read(final byte[] buffer) {
+        if (this.isFinished()) {
+            return -1;
+        }
+        final int toRead = Math.min(this.getOffer(), buffer.length);
+        this.content.get(buffer, 0, toRead);
+        if (!this.content.hasRemaining()) {
+            this.finish();
+        }
+        return toRead;
+    }
+
+    @Override public int getOffer() {
+        return this.content.remaining();
+    }
+
+    @Override public int getLength() {
+        return this.content.limit();
+    }
+
+    @Override public byte[] getAll() {
+        final ByteBuffer duplicate = this.content.duplicate();
+        duplicate.rewind();
+        final byte[] bytes = new byte[duplicate.remaining()];
+        duplicate.get(bytes);
+        return bytes;
+    }
+
+    @Override public void replaceBytes(final byte[] bytes) {
+        this.content = ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+    }
+
+    /**
+     * Replace the content of the stream. The buffer is not copied, and must not be modified while the stream is in
+     * use.
+     *
+     * @param content New content, from position to limit
+     */
+    public void replaceContent(final ByteBuffer content) {
+        this.content = content.slice().asReadOnlyBuffer();
+    }
+
+}
@@ -0,0 +1,238 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.io;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Response stream backed by regions of a file, optionally interleaved with in-memory segments (such as multipart
+ * boundaries). The server transfers the regions directly from the file to the socket (using a {@code FileRegion}, or
+ * chunks of the file when the connection is encrypted) rather than reading them through {@link #read(byte[])}, so the
+ * content never has to pass through the heap. {@link #read(byte[])} is still supported, for when the content has to
+ * be transformed before it is sent.
+ * {@inheritDoc}
+ */
+public class FileKvantumOutputStream extends KvantumOutputStream {
+
+    /**
+     * The file that is being served
+     */
+    @Getter private final Path file;
+    /**
+     * The segments that make up the content, in order
+     */
+    @Getter private final List<Segment> segments;
+    /**
+     * Total number of bytes that will be served
+     */
+    @Getter private final long length;
+
+    private FileChannel channel;
+    private int segmentIndex = 0;
+    private long segmentRead = 0L;
+
+    /**
+     * Construct a new stream that serves an entire file
+     *
+     * @param file File. Must exist
+     * @throws UncheckedIOException If the file size cannot be determined
+     */
+    public FileKvantumOutputStream(final Path file) {
+        this(file, 0L, size(file));
+    }
+
+    /**
+     * Construct a new stream that serves a region of a file
+     *
+     * @param file     File
+     * @param position Offset of the first byte
+     * @param length   Number of bytes
+     */
+    public FileKvantumOutputStream(final Path file, final long position, final long length) {
+        this(file, Collections.singletonList(Segment.region(position, length)));
+    }
+
+    /**
+     * Construct a new stream that serves a sequence of segments
+     *
+     * @param file     File that the region segments refer to
+     * @param segments Segments, in order
+     */
+    public FileKvantumOutputStream(final Path file, final List<Segment> segments) {
+        this.file = file;
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+        long length = 0L;
+        for (final Segment segment : this.segments) {
+            length += segment.getLength();
+        }
+        this.length = length;
+    }
+
+    private static long size(final Path file) {
+        try {
+            return Files.size(file);
+        } catch (final IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Open a new channel to the file. The caller is responsible for closing the channel.
+     *
+     * @return Read-only file channel
+     * @throws IOException If the file cannot be opened
+     */
+    public FileChannel openChannel() throws IOException {
+        return FileChannel.open(this.file, StandardOpenOption.READ);
+    }
+
+    @Override public int getOffer() {
+        long remaining = 0L;
+        for (int i = this.segmentIndex; i < this.segments.size(); i++) {
+            remaining += this.segments.get(i).getLength();
+        }
+        return (int) Math.min(Integer.MAX_VALUE, remaining - this.segmentRead);
+    }
+
+    @Override public int read(final byte[] buffer) {
+        if (this.isFinished()) {
+            return -1;
+        }
+        try {
+            int written = 0;
+            while (written < buffer.length && this.segmentIndex < this.segments.size()) {
+                final Segment segment = this.segments.get(this.segmentIndex);
+                final int toRead =
+                    (int) Math.min(buffer.length - written, segment.getLength() - this.segmentRead);
+                final int read;
+                if (segment.isRegion()) {
+                    read = this.readRegion(segment, buffer, written, toRead);
+                } else {
+                    System.arraycopy(segment.getBytes(), (int) this.segmentRead, buffer, written,
+                        toRead);
+                    read = toRead;
+                }
+                written += read;
+                this.segmentRead += read;
+                if (read < toRead) {
+                    this.segmentIndex = this.segments.size(); // The file was truncated
+                } else if (this.segmentRead >= segment.getLength()) {
+                    this.segmentIndex++;
+                    this.segmentRead = 0L;
+                }
+            }
+            if (this.segmentIndex >= this.segments.size()) {
+                this.close();
+            }
+            return written;
+        } catch (final IOException e) {
+            this.close();
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int readRegion(final Segment segment, final byte[] buffer, final int offset,
+        final int length) throws IOException {
+        if (this.channel == null) {
+            this.channel = this.openChannel();
+        }
+        final ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, offset, length);
+        final long position = segment.getPosition() + this.segmentRead - offset;
+        while (byteBuffer.hasRemaining()) {
+            if (this.channel.read(byteBuffer, position + byteBuffer.position()) == -1) {
+                break;
+            }
+        }
+        return byteBuffer.position() - offset;
+    }
+
+    private void close() {
+        if (!this.isFinished()) {
+            this.finish();
+        }
+        if (this.channel != null) {
+            try {
+                this.channel.close();
+            } catch (final IOException ignored) {
+            }
+            this.channel = null;
+        }
+    }
+
+    /**
+     * A part of the content served by {@link FileKvantumOutputStream}. This is either a region of the file, or a
+     * (small) in-memory byte array.
+     */
+    @Getter @RequiredArgsConstructor(access = AccessLevel.PRIVATE) public static final class Segment {
+
+        private final byte[] bytes;
+        private final long position;
+        private final long length;
+
+        /**
+         * Create a segment that refers to a region of the file
+         *
+         * @param position Offset of the first byte
+         * @param length   Number of bytes
+         * @return Created segment
+         */
+        public static Segment region(final long position, final long length) {
+            if (position < 0 || length < 0) {
+                throw new IllegalArgumentException("Position and length cannot be negative");
+            }
+            return new Segment(null, position, length);
+        }
+
+        /**
+         * Create a segment that serves a byte array
+         *
+         * @param bytes Bytes. Will not be copied.
+         * @return Created segment
+         */
+        public static Segment bytes(final byte[] bytes) {
+            return new Segment(bytes, 0L, bytes.length);
+        }
+
+        /**
+         * Check whether the segment refers to a region of the file
+         *
+         * @return True if the segment is a file region, false if it is a byte array
+         */
+        public boolean isRegion() {
+            return this.bytes == null;
+        }
+    }
+
+}
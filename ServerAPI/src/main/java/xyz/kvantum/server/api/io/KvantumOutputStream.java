@@ -33,11 +33,12 @@ import java.util.function.Consumer;
 
     private static final long MAX_WAIT = 500L; // Wait time of 500ms
 
-    @Getter private boolean finished = false;
+    @Getter private volatile boolean finished = false;
 
     @Getter private int read = 0;
-    private int offer = -1;
+    private volatile int offer = -1;
     private Consumer<Integer> offerAction, finalizedAction;
+    private volatile Runnable availableListener;
 
     private byte[] buffer; // internal buffer
     private int bufferLength; // length of written buffer
@@ -61,6 +62,28 @@ import java.util.function.Consumer;
             throw new IllegalStateException("Cannot finish the stream when it's already finished");
         }
         this.finished = true;
+        this.notifyAvailable();
+    }
+
+    /**
+     * Set the listener that is notified whenever data is offered, or the stream is finished. The listener may be
+     * invoked from any thread.
+     *
+     * @param availableListener Listener, or null to remove the listener
+     */
+    public void setAvailableListener(final Runnable availableListener) {
+        this.availableListener = availableListener;
+    }
+
+    /**
+     * Notify the listener that data can be read from the stream. Implementations that produce data without offering
+     * it should call this when data becomes available.
+     */
+    protected void notifyAvailable() {
+        final Runnable availableListener = this.availableListener;
+        if (availableListener != null) {
+            availableListener.run();
+        }
     }
 
     /**
@@ -83,6 +106,7 @@ import java.util.function.Consumer;
         if (finalizedAction != null) {
             this.finalizedAction = finalizedAction;
         }
+        this.notifyAvailable();
     }
 
     /**
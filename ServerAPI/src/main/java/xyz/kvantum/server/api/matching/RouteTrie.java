@@ -0,0 +1,402 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.matching;
+
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.views.RequestHandler;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.TreeMap;
+
+/**
+ * <p> Compiled segment trie that indexes {@link RequestHandler request handlers} by the parts of their {@link
+ * ViewPattern}. Every segment of a pattern, that is every run of parts between two separators, becomes a node. Static
+ * segments are keyed by their string, and segments that contain variables or dots share a wildcard child that accepts
+ * any one segment. Looking up a path walks the trie segment by segment, following both the static child and the
+ * wildcard child, and returns the handlers that could possibly match the path, in registration order. </p> <p> The
+ * trie is conservative: it never excludes a handler that would match the path, but it may return handlers that don't.
+ * Patterns are indexed up to the first separator that may be repeated or left out (which is the case in front of an
+ * optional variable), and are tried for every path that reaches that point. Callers are expected to confirm each
+ * candidate using {@link RequestHandler#matches(xyz.kvantum.server.api.request.AbstractRequest)}. Handlers without a
+ * view pattern are always returned. </p> <p> Instances are immutable and safe to share between threads. Changes to the
+ * handler list are applied by compiling a new trie. </p>
+ */
+public final class RouteTrie {
+
+    private static final int[] NO_ROUTES = new int[0];
+    private static final ThreadLocal<Candidates> CANDIDATES =
+        ThreadLocal.withInitial(Candidates::new);
+
+    /**
+     * Trie without any handlers
+     */
+    public static final RouteTrie EMPTY = new RouteTrie(Collections.emptyList());
+
+    private final RequestHandler[] handlers;
+    private final int[] unindexed;
+    private final Node root;
+
+    /**
+     * Compile a new trie
+     *
+     * @param handlers Request handlers, in order of precedence
+     */
+    public RouteTrie(final List<? extends RequestHandler> handlers) {
+        this.handlers = handlers.toArray(new RequestHandler[0]);
+        final List<Integer> unindexed = new ArrayList<>();
+        final NodeBuilder rootBuilder = new NodeBuilder();
+        for (int ordinal = 0; ordinal < this.handlers.length; ordinal++) {
+            final ViewPattern viewPattern = this.handlers[ordinal].getViewPattern();
+            if (viewPattern == null) {
+                unindexed.add(ordinal);
+            } else {
+                insert(rootBuilder, viewPattern.getParts(), ordinal);
+            }
+        }
+        this.unindexed = toArray(unindexed);
+        this.root = rootBuilder.build();
+    }
+
+    /**
+     * Index a pattern, segment by segment
+     *
+     * @param root    Root node
+     * @param parts   Parts of the pattern
+     * @param ordinal Ordinal of the handler
+     */
+    private static void insert(final NodeBuilder root, final ViewPattern.Part[] parts,
+        final int ordinal) {
+        NodeBuilder node = root;
+        int index = 0;
+        while (index < parts.length) {
+            int split = index;
+            while (split < parts.length && !(parts[split] instanceof ViewPattern.Split)) {
+                split++;
+            }
+            final boolean last = split == parts.length;
+            if (split == index) {
+                node.addTail(null, ordinal);
+                return;
+            }
+            if (!last && parts[split].nextOptional) {
+                //
+                // The separator may be repeated or left out, so the rest of the
+                // pattern isn't aligned with the segments of the path
+                //
+                node.addTail(staticString(parts[index]), ordinal);
+                return;
+            }
+            if (canBeEmpty(parts, index, split)) {
+                if (!last) {
+                    node.addTail(null, ordinal);
+                    return;
+                }
+                node.routes.add(ordinal); // The segment may be left out
+            }
+            if (split == index + 1 && parts[index] instanceof ViewPattern.Static) {
+                node = node.children.computeIfAbsent(((ViewPattern.Static) parts[index]).string,
+                    s -> new NodeBuilder());
+            } else {
+                if (node.wildcard == null) {
+                    node.wildcard = new NodeBuilder();
+                }
+                node = node.wildcard;
+            }
+            index = split + 1;
+        }
+        node.routes.add(ordinal);
+    }
+
+    /**
+     * Check whether a segment of a pattern can match an empty string
+     */
+    private static boolean canBeEmpty(final ViewPattern.Part[] parts, final int start,
+        final int end) {
+        for (int i = start; i < end; i++) {
+            final ViewPattern.Part part = parts[i];
+            if (part instanceof ViewPattern.Variable) {
+                if (((ViewPattern.Variable) part).getType() != ViewPattern.Variable.TYPE_OPTIONAL) {
+                    return false;
+                }
+            } else if (!(part instanceof ViewPattern.Dot) || !part.nextOptional) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String staticString(final ViewPattern.Part part) {
+        if (part instanceof ViewPattern.Static) {
+            return ((ViewPattern.Static) part).string;
+        }
+        return null; // Nullable
+    }
+
+    private static int[] toArray(final List<Integer> list) {
+        if (list.isEmpty()) {
+            return NO_ROUTES;
+        }
+        final int[] array = new int[list.size()];
+        for (int i = 0; i < array.length; i++) {
+            array[i] = list.get(i);
+        }
+        return array;
+    }
+
+    /**
+     * Compare a string with a region of a character sequence
+     *
+     * @param key   String
+     * @param path  Sequence
+     * @param start Region start (inclusive)
+     * @param end   Region end (exclusive)
+     * @return A value following the contract of {@link Comparable#compareTo(Object)}
+     */
+    private static int compareRegion(final String key, final CharSequence path, final int start,
+        final int end) {
+        final int length = Math.min(key.length(), end - start);
+        for (int i = 0; i < length; i++) {
+            final int difference = key.charAt(i) - path.charAt(start + i);
+            if (difference != 0) {
+                return difference;
+            }
+        }
+        return key.length() - (end - start);
+    }
+
+    private static boolean regionStartsWith(final CharSequence path, final int start,
+        final int end, final String prefix) {
+        if (end - start < prefix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (path.charAt(start + i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Find all request handlers that could match the given path. Nothing is allocated: the returned list belongs to
+     * the calling thread, and is reused by its next lookup.
+     *
+     * @param path Request path. Anything following the first {@code ?} is ignored.
+     * @return Candidate handlers, in order of precedence. Only valid until the calling thread looks up another path.
+     */
+    public List<RequestHandler> getCandidates(final CharSequence path) {
+        final Candidates candidates = CANDIDATES.get();
+        candidates.reset(this.handlers.length);
+        candidates.mark(this.unindexed);
+        int end = path.length();
+        for (int i = 0; i < end; i++) {
+            if (path.charAt(i) == '?') {
+                end = i;
+                break;
+            }
+        }
+        int index = 0;
+        while (index < end && path.charAt(index) == '/') {
+            index++;
+        }
+        this.collect(this.root, path, index, end, candidates);
+        candidates.collect(this.handlers);
+        return candidates;
+    }
+
+    /**
+     * Mark the handlers that could match the rest of the path, starting at a node
+     *
+     * @param node       Node
+     * @param path       Path
+     * @param index      Start of the segment that follows the node
+     * @param end        End of the path (exclusive)
+     * @param candidates Candidates to mark
+     */
+    private void collect(final Node node, final CharSequence path, final int index, final int end,
+        final Candidates candidates) {
+        for (int i = 0; i < node.tails.length; i++) {
+            final String prefix = node.tailPrefixes[i];
+            if (prefix == null || regionStartsWith(path, index, end, prefix)) {
+                candidates.mark(node.tails[i]);
+            }
+        }
+        int segmentEnd = index;
+        while (segmentEnd < end && path.charAt(segmentEnd) != '/') {
+            segmentEnd++;
+        }
+        if (segmentEnd == index) {
+            //
+            // Nothing but (trailing) separators remain, otherwise the
+            // path contains an empty segment that no child accepts
+            //
+            int separatorsEnd = index;
+            while (separatorsEnd < end && path.charAt(separatorsEnd) == '/') {
+                separatorsEnd++;
+            }
+            if (separatorsEnd == end) {
+                candidates.mark(node.routes);
+            }
+            return;
+        }
+        final int next = segmentEnd == end ? end : segmentEnd + 1;
+        final Node child = node.getChild(path, index, segmentEnd);
+        if (child != null) {
+            this.collect(child, path, next, end, candidates);
+        }
+        if (node.wildcard != null) {
+            this.collect(node.wildcard, path, next, end, candidates);
+        }
+    }
+
+    /**
+     * Candidates of a lookup, which are reused by the thread that performs the lookup
+     */
+    private static final class Candidates extends AbstractList<RequestHandler>
+        implements RandomAccess {
+
+        private long[] marked = new long[1];
+        private RequestHandler[] handlers = new RequestHandler[16];
+        private int size;
+
+        private void reset(final int routes) {
+            final int words = (routes + 63) >>> 6;
+            if (this.marked.length < words) {
+                this.marked = new long[words];
+            }
+            if (this.handlers.length < routes) {
+                this.handlers = new RequestHandler[routes];
+            } else {
+                Arrays.fill(this.handlers, 0, this.size, null);
+            }
+            this.size = 0;
+        }
+
+        private void mark(final int ordinal) {
+            this.marked[ordinal >>> 6] |= 1L << ordinal;
+        }
+
+        private void mark(final int[] ordinals) {
+            for (final int ordinal : ordinals) {
+                this.mark(ordinal);
+            }
+        }
+
+        /**
+         * Collect the marked handlers in order, and clear the marks
+         */
+        private void collect(final RequestHandler[] handlers) {
+            final int words = (handlers.length + 63) >>> 6;
+            for (int word = 0; word < words; word++) {
+                long bits = this.marked[word];
+                while (bits != 0) {
+                    final int ordinal = (word << 6) + Long.numberOfTrailingZeros(bits);
+                    this.handlers[this.size++] = handlers[ordinal];
+                    bits &= bits - 1;
+                }
+                this.marked[word] = 0L;
+            }
+        }
+
+        @Override public RequestHandler get(final int index) {
+            if (index < 0 || index >= this.size) {
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + this.size);
+            }
+            return this.handlers[index];
+        }
+
+        @Override public int size() {
+            return this.size;
+        }
+    }
+
+
+    private static final class NodeBuilder {
+
+        private final Map<String, NodeBuilder> children = new TreeMap<>();
+        private final List<Integer> routes = new ArrayList<>();
+        private final List<String> tailPrefixes = new ArrayList<>();
+        private final List<Integer> tails = new ArrayList<>();
+        private NodeBuilder wildcard;
+
+        private void addTail(final String prefix, final int ordinal) {
+            this.tailPrefixes.add(prefix);
+            this.tails.add(ordinal);
+        }
+
+        private Node build() {
+            final String[] keys = new String[this.children.size()];
+            final Node[] nodes = new Node[this.children.size()];
+            int index = 0;
+            for (final Map.Entry<String, NodeBuilder> entry : this.children.entrySet()) {
+                keys[index] = entry.getKey();
+                nodes[index++] = entry.getValue().build();
+            }
+            return new Node(keys, nodes, this.wildcard == null ? null : this.wildcard.build(),
+                toArray(this.routes), this.tailPrefixes.toArray(new String[0]),
+                toArray(this.tails));
+        }
+    }
+
+
+    @RequiredArgsConstructor private static final class Node {
+
+        private final String[] keys; // Sorted
+        private final Node[] children;
+        private final Node wildcard; // Nullable
+        private final int[] routes; // Patterns that end at this node
+        private final String[] tailPrefixes; // Nullable elements
+        private final int[] tails; // Patterns that accept any path that starts with their prefix
+
+        /**
+         * Find the child node that corresponds to a segment, using binary search
+         *
+         * @param path  Path
+         * @param start Segment start (inclusive)
+         * @param end   Segment end (exclusive)
+         * @return Child node, or null
+         */
+        private Node getChild(final CharSequence path, final int start, final int end) {
+            int low = 0;
+            int high = this.keys.length - 1;
+            while (low <= high) {
+                final int middle = (low + high) >>> 1;
+                final int comparison = compareRegion(this.keys[middle], path, start, end);
+                if (comparison < 0) {
+                    low = middle + 1;
+                } else if (comparison > 0) {
+                    high = middle - 1;
+                } else {
+                    return this.children[middle];
+                }
+            }
+            return null; // Nullable
+        }
+    }
+
+}
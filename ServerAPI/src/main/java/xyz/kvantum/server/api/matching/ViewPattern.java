@@ -45,7 +45,10 @@ import java.util.regex.Pattern;
  * Example: &lt;username&gt;</li> <li>Optional Variable - Example: [page]</li> </ul> </p> <p> <b>Examples</b> </p> <p>
  * <b>user/&lt;username&gt;</b> - Serves user/Citymonstret, but not user/ or user/Citymonstret/other </p> <p>
  * <b>news/[page]</b> - Serves news, news/1, news/foo, but not news/foo/bar </p> <p>
- * <b>user/&lt;username&gt;/posts/[page]</b> - Serves user/Citymonstret/posts and user/Citymonstrst/posts/10 </p>
+ * <b>user/&lt;username&gt;/posts/[page]</b> - Serves user/Citymonstret/posts and user/Citymonstrst/posts/10 </p> <p>
+ * Paths are matched by walking the parts directly, without allocating anything unless the path matches. The pattern
+ * is also compiled into an equivalent regular expression, which is used instead when {@link
+ * CoreConfig#regexPatternMatching} is enabled. </p>
  */
 @SuppressWarnings("unused") public class ViewPattern {
 
@@ -56,6 +59,7 @@ import java.util.regex.Pattern;
     private static final String PATTERN_PATTERN = "[\\/]*%s[\\/]*";
 
     private final List<Part> parts = new ArrayList<>();
+    private final Part[] partArray;
     private final String raw;
     private final Pattern pattern;
     private final Map<String, Variable> variableMap = new HashMap<>();
@@ -130,6 +134,7 @@ import java.util.regex.Pattern;
             }
             final boolean optional = nextPart instanceof Variable
                 && ((Variable) nextPart).getType() == Variable.TYPE_OPTIONAL;
+            part.nextOptional = optional;
             pattern.append(part.toRegexBlock(optional));
             if (part instanceof Variable) {
                 final Variable variable = (Variable) part;
@@ -137,6 +142,7 @@ import java.util.regex.Pattern;
             }
         }
         this.pattern = Pattern.compile(String.format(PATTERN_PATTERN, pattern.toString()));
+        this.partArray = this.parts.toArray(new Part[0]);
 
         if (CoreConfig.debug) {
             Logger.debug("Transformed pattern into regex: {0} -> {1}", raw, this.pattern.pattern());
@@ -144,13 +150,165 @@ import java.util.regex.Pattern;
 
     }
 
+    /**
+     * Get the parts that the pattern consists of. Used by {@link RouteTrie} to index the pattern.
+     *
+     * @return Parts, which must not be modified
+     */
+    Part[] getParts() {
+        return this.partArray;
+    }
+
     /**
      * Test if a string matches the pattern
      *
+     * @param in String to test for. Anything following the first {@code ?} is ignored.
+     * @return A map containing the variables extracted from the string. If there was no match, the map will be null
+     */
+    public Map<String, String> matches(final CharSequence in) {
+        Assert.notNull(in);
+
+        if (CoreConfig.regexPatternMatching) {
+            return this.matchesRegex(in.toString());
+        }
+
+        int end = in.length();
+        for (int i = 0; i < end; i++) {
+            if (in.charAt(i) == '?') {
+                end = i;
+                break;
+            }
+        }
+
+        if (parts.isEmpty()) {
+            if (end == 0) {
+                return new HashMap<>();
+            } else {
+                return null; // Nullable
+            }
+        }
+
+        //
+        // Leading separators, [\/]*
+        //
+        final int separators = run(in, 0, end, '/');
+        for (int position = separators; position >= 0; position--) {
+            final Map<String, String> variables = this.matchParts(in, position, end, 0);
+            if (variables != null) {
+                return variables;
+            }
+        }
+        return null; // Nullable
+    }
+
+    /**
+     * Match the parts, starting at a given part, against a region of the path. Quantified parts are greedy and
+     * backtrack, exactly like the compiled regular expression. The variable map is only created once the entire path
+     * has been matched, and is then populated while returning.
+     *
+     * @param path     Path
+     * @param position Region start (inclusive)
+     * @param end      Region end (exclusive)
+     * @param index    Index of the first part to match
+     * @return Extracted variables, or null if the region doesn't match
+     */
+    private Map<String, String> matchParts(final CharSequence path, final int position,
+        final int end, final int index) {
+        if (index == this.partArray.length) {
+            //
+            // Trailing separators, [\/]*
+            //
+            if (position + run(path, position, end, '/') == end) {
+                return new HashMap<>();
+            }
+            return null; // Nullable
+        }
+        final Part part = this.partArray[index];
+        if (part instanceof Static) {
+            final String string = ((Static) part).string;
+            if (end - position < string.length()) {
+                return null; // Nullable
+            }
+            for (int i = 0; i < string.length(); i++) {
+                if (path.charAt(position + i) != string.charAt(i)) {
+                    return null; // Nullable
+                }
+            }
+            return this.matchParts(path, position + string.length(), end, index + 1);
+        }
+        if (part instanceof Variable) {
+            final Variable variable = (Variable) part;
+            final int minimum = variable.getType() == Variable.TYPE_REQUIRED ? 1 : 0;
+            for (int length = run(path, position, end, (char) 0); length >= minimum; length--) {
+                final Map<String, String> variables =
+                    this.matchParts(path, position + length, end, index + 1);
+                if (variables == null) {
+                    continue;
+                }
+                if (length > 0) {
+                    variables.put(variable.getName(),
+                        path.subSequence(position, position + length).toString());
+                } else if (variable.hasDefaultValue()) {
+                    variables.put(variable.getName(), variable.getDefaultValue());
+                }
+                return variables;
+            }
+            return null; // Nullable
+        }
+        final char delimiter = part instanceof Dot ? '.' : '/';
+        if (!part.nextOptional) {
+            if (position < end && path.charAt(position) == delimiter) {
+                return this.matchParts(path, position + 1, end, index + 1);
+            }
+            return null; // Nullable
+        }
+        for (int length = run(path, position, end, delimiter); length >= 0; length--) {
+            final Map<String, String> variables =
+                this.matchParts(path, position + length, end, index + 1);
+            if (variables != null) {
+                return variables;
+            }
+        }
+        return null; // Nullable
+    }
+
+    /**
+     * Count the characters at the start of a region that match a character
+     *
+     * @param path     Path
+     * @param position Region start (inclusive)
+     * @param end      Region end (exclusive)
+     * @param c        Character to look for, or 0 to look for characters that are allowed in variables
+     * @return Number of matching characters
+     */
+    private static int run(final CharSequence path, final int position, final int end,
+        final char c) {
+        int index = position;
+        if (c == 0) {
+            while (index < end && isVariableCharacter(path.charAt(index))) {
+                index++;
+            }
+        } else {
+            while (index < end && path.charAt(index) == c) {
+                index++;
+            }
+        }
+        return index - position;
+    }
+
+    private static boolean isVariableCharacter(final char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+            || c == '_' || c == '-';
+    }
+
+    /**
+     * Test if a string matches the compiled regular expression. This is the legacy implementation of {@link
+     * #matches(CharSequence)}, which is used when {@link CoreConfig#regexPatternMatching} is enabled.
+     *
      * @param in String to test for
      * @return A map containing the variables extracted from the string. If there was no match, the map will be null
      */
-    public Map<String, String> matches(final String in) {
+    Map<String, String> matchesRegex(final String in) {
         Assert.notNull(in);
 
         String url;
@@ -211,7 +369,12 @@ import java.util.regex.Pattern;
         return this.raw;
     }
 
-    private abstract static class Part {
+    abstract static class Part {
+
+        /**
+         * Whether the next part is an optional variable, in which case delimiters may be repeated or omitted
+         */
+        boolean nextOptional;
 
         @Override public abstract String toString();
 
@@ -220,9 +383,9 @@ import java.util.regex.Pattern;
     }
 
 
-    private static class Static extends Part {
+    static class Static extends Part {
 
-        private final String string;
+        final String string;
 
         private Static(final String string) {
             this.string = string;
@@ -238,7 +401,7 @@ import java.util.regex.Pattern;
     }
 
 
-    private static final class Dot extends Part {
+    static final class Dot extends Part {
 
         @Override public String toString() {
             return ".";
@@ -254,7 +417,7 @@ import java.util.regex.Pattern;
     }
 
 
-    private static final class Split extends Part {
+    static final class Split extends Part {
 
         @Override public String toString() {
             return "/";
@@ -270,9 +433,9 @@ import java.util.regex.Pattern;
     }
 
 
-    @AllArgsConstructor private static class Variable extends Part {
+    @AllArgsConstructor static class Variable extends Part {
 
-        private static int TYPE_REQUIRED = 0, TYPE_OPTIONAL = 1;
+        static final int TYPE_REQUIRED = 0, TYPE_OPTIONAL = 1;
         @Getter private final String name;
         @Getter private final int type;
         @Getter private final String defaultValue;
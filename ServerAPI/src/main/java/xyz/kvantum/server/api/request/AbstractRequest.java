@@ -212,6 +212,19 @@ public abstract class AbstractRequest
         Message.INTERNAL_REDIRECT.log(url);
     }
 
+    /**
+     * Create a copy of the request, which can be handled independently of this request. This is used to regenerate
+     * cached responses in the background. The copy shares the query, headers, cookies, session and meta values of
+     * this request.
+     *
+     * @return Request copy
+     */
+    public AbstractRequest copy() {
+        final AbstractRequest request = newRequest(this.query.getResource());
+        request.setQuery(this.query);
+        return request;
+    }
+
     /**
      * Get a meta value
      *
@@ -72,26 +72,46 @@ import java.util.regex.Pattern;
 
     public static void compileQuery(final AbstractRequest request, final String line)
         throws IllegalArgumentException, RequestException {
-        final Timer.Context timer = TIMER_COMPILE_QUERY.time();
-        final Matcher matcher = PATTERN_QUERY.matcher(line);
-        if (!matcher.matches()) {
-            timer.close();
-            throw new IllegalArgumentException(String.format("Not a query line: %s", line));
-        }
-        if (CoreConfig.verbose) {
-            ServerImplementation.getImplementation().log("Query: " + matcher.group());
-        }
-        final Optional<HttpMethod> methodOptional = HttpMethod.getByName(matcher.group(METHOD));
-        if (!methodOptional.isPresent()) {
-            timer.close();
-            throw new RequestException("Unknown request method: " + matcher.group(METHOD), request);
+        // The timer is only available when running inside of a server
+        final Timer.Context timer =
+            TIMER_COMPILE_QUERY == null ? null : TIMER_COMPILE_QUERY.time();
+        try {
+            final Matcher matcher = PATTERN_QUERY.matcher(line);
+            if (!matcher.matches()) {
+                throw new IllegalArgumentException(String.format("Not a query line: %s", line));
+            }
+            if (CoreConfig.verbose) {
+                ServerImplementation.getImplementation().log("Query: " + matcher.group());
+            }
+            final Optional<HttpMethod> methodOptional =
+                HttpMethod.getByName(matcher.group(METHOD));
+            if (!methodOptional.isPresent()) {
+                throw new RequestException("Unknown request method: " + matcher.group(METHOD),
+                    request);
+            }
+            // request.setQuery( new AbstractRequest.Query( methodOptional.get(), request.getProtocolType(),
+            // 		matcher.group( RESOURCE ) ) );
+            request.setQuery(AbstractRequest.QueryCache.getInstance().getQuery(
+                new QueryParameters(methodOptional.get(), request.getProtocolType(),
+                    matcher.group(RESOURCE))));
+        } finally {
+            if (timer != null) {
+                timer.close();
+            }
         }
-        // request.setQuery( new AbstractRequest.Query( methodOptional.get(), request.getProtocolType(),
-        // 		matcher.group( RESOURCE ) ) );
-        request.setQuery(AbstractRequest.QueryCache.getInstance().getQuery(
-            new QueryParameters(methodOptional.get(), request.getProtocolType(),
-                matcher.group(RESOURCE))));
-        timer.close();
+    }
+
+    /**
+     * Set the query of a request from an already parsed request line
+     *
+     * @param request  Request
+     * @param method   Request method
+     * @param resource Requested resource, including the query string
+     */
+    public static void compileQuery(final AbstractRequest request, final HttpMethod method,
+        final String resource) {
+        request.setQuery(AbstractRequest.QueryCache.getInstance()
+            .getQuery(new QueryParameters(method, request.getProtocolType(), resource)));
     }
 
     @Getter @RequiredArgsConstructor public static final class HeaderPair {
@@ -0,0 +1,164 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import lombok.AccessLevel;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.EntityTag;
+import xyz.kvantum.server.api.util.HttpDate;
+import xyz.kvantum.server.api.util.TimeUtil;
+
+import java.util.Optional;
+
+/**
+ * The validators of a response, used to evaluate conditional requests ({@code If-None-Match} and {@code
+ * If-Modified-Since}, RFC 7232) without having to generate the response body
+ */
+@Getter @RequiredArgsConstructor(access = AccessLevel.PRIVATE) public final class CacheValidators {
+
+    private static final AsciiString IF_NONE_MATCH = AsciiString.of("if-none-match");
+    private static final AsciiString IF_MODIFIED_SINCE = AsciiString.of("if-modified-since");
+
+    /**
+     * Entity tag of the response, or null
+     */
+    private final EntityTag entityTag;
+    /**
+     * Last modification time of the response, in milliseconds, or -1 if unknown
+     */
+    private final long lastModified;
+
+    /**
+     * Create a new set of validators
+     *
+     * @param entityTag    Entity tag. May be null.
+     * @param lastModified Last modification time, in milliseconds, or -1 if unknown
+     * @return Created validators
+     */
+    public static CacheValidators of(final EntityTag entityTag, final long lastModified) {
+        return new CacheValidators(entityTag, lastModified);
+    }
+
+    /**
+     * Read the validators that have been set in a response header
+     *
+     * @param header Response header
+     * @return Validators, or null if the header contains neither an {@code ETag} nor a {@code Last-Modified} header
+     */
+    public static CacheValidators fromHeader(final Header header) {
+        final Optional<AsciiString> entityTag = header.get(Header.HEADER_ETAG);
+        final Optional<AsciiString> lastModified = header.get(Header.HEADER_LAST_MODIFIED);
+        if (!entityTag.isPresent() && !lastModified.isPresent()) {
+            return null; // Nullable
+        }
+        return new CacheValidators(entityTag.map(EntityTag::parse).orElse(null),
+            lastModified.map(TimeUtil::parseHTTPTimeStamp).orElse(-1L));
+    }
+
+    /**
+     * Check whether a request contains any preconditions that can be evaluated using validators
+     *
+     * @param request Request
+     * @return True if the request is a conditional GET or HEAD request
+     */
+    public static boolean isConditional(final AbstractRequest request) {
+        final HttpMethod method = request.getQuery().getMethod();
+        return (method == HttpMethod.GET || method == HttpMethod.HEAD) && (
+            !request.getHeader(IF_NONE_MATCH).isEmpty() || !request.getHeader(IF_MODIFIED_SINCE)
+                .isEmpty());
+    }
+
+    /**
+     * Evaluate the preconditions of a request. {@code If-Modified-Since} is only considered when the request does
+     * not contain {@code If-None-Match}.
+     *
+     * @param request Request
+     * @return True if the client already has the current representation, and should be sent {@code 304 Not
+     * Modified}
+     */
+    public boolean isNotModified(final AbstractRequest request) {
+        if (!isConditional(request)) {
+            return false;
+        }
+        final AsciiString ifNoneMatch = request.getHeader(IF_NONE_MATCH);
+        if (!ifNoneMatch.isEmpty()) {
+            if (this.entityTag == null) {
+                return "*".equals(ifNoneMatch.toString().trim());
+            }
+            return this.entityTag.matchesAnyWeak(ifNoneMatch);
+        }
+        if (this.lastModified == -1) {
+            return false;
+        }
+        final long ifModifiedSince =
+            TimeUtil.parseHTTPTimeStamp(request.getHeader(IF_MODIFIED_SINCE));
+        // HTTP dates only have second precision
+        return ifModifiedSince != -1 && this.lastModified / 1000 <= ifModifiedSince / 1000;
+    }
+
+    /**
+     * Evaluate an {@code If-Range} header (RFC 7233, section 3.2). An entity tag only matches if both it and the
+     * current tag are strong and identical. A date only matches if it is exactly the last modification date, and
+     * that date is strong, meaning that it lies at least a second in the past.
+     *
+     * @param ifRange Header value, an entity tag or an HTTP-date
+     * @return True if the client's copy is still current, and the requested ranges may be served
+     */
+    public boolean matchesIfRange(final CharSequence ifRange) {
+        final String value = ifRange.toString().trim();
+        // Entity tags start with a quote, or with W/ if they are weak
+        if (value.startsWith("\"") || value.startsWith("W/")) {
+            return this.entityTag != null && this.entityTag.matchesStrong(EntityTag.parse(value));
+        }
+        if (this.lastModified == -1) {
+            return false;
+        }
+        final long date = TimeUtil.parseHTTPTimeStamp(value);
+        if (date == -1) {
+            return false;
+        }
+        // HTTP dates only have second precision
+        final long lastModifiedSecond = this.lastModified / 1000;
+        return lastModifiedSecond == date / 1000
+            && lastModifiedSecond < System.currentTimeMillis() / 1000;
+    }
+
+    /**
+     * Add the validators to a response header
+     *
+     * @param header Response header
+     */
+    public void apply(final Header header) {
+        if (this.entityTag != null) {
+            header.set(Header.HEADER_ETAG, this.entityTag.getHeaderValue());
+        }
+        if (this.lastModified != -1) {
+            header.set(Header.HEADER_LAST_MODIFIED,
+                HttpDate.format(this.lastModified));
+        }
+    }
+
+}
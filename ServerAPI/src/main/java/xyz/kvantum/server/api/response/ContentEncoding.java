@@ -0,0 +1,187 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Content codings that responses can be sent with
+ */
+@RequiredArgsConstructor public enum ContentEncoding {
+
+    GZIP(AsciiString.of("gzip")), IDENTITY(AsciiString.of("identity"));
+
+    private static final AsciiString ACCEPT_ENCODING = AsciiString.of("Accept-Encoding");
+    private static final String WILDCARD = "*";
+    /**
+     * Quality given to the identity coding when the client doesn't mention it, so that any coding the client does
+     * mention is preferred
+     */
+    private static final double IMPLICIT_IDENTITY_QUALITY = Double.MIN_VALUE;
+
+    /**
+     * Token used in the Accept-Encoding and Content-Encoding headers
+     */
+    @Getter private final AsciiString token;
+
+    /**
+     * Encode a complete body
+     *
+     * @param data  Bytes to encode
+     * @param level Compression level, from 1 (fastest) to 9 (smallest)
+     * @return Encoded bytes
+     * @throws IOException If the data cannot be encoded
+     */
+    public byte[] encode(final byte[] data, final int level) throws IOException {
+        if (this == IDENTITY) {
+            return data;
+        }
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream(data.length / 2 + 32);
+        try (final GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream) {
+            {
+                this.def.setLevel(level);
+            }
+        }) {
+            gzipOutputStream.write(data);
+        }
+        return outputStream.toByteArray();
+    }
+
+    /**
+     * Mark a response as encoded using this coding, and as varying on the Accept-Encoding header. The identity coding
+     * only adds the Vary header, which should be sent whenever other codings could have been chosen.
+     *
+     * @param header Response header
+     */
+    public void applyHeaders(final Header header) {
+        if (this != IDENTITY) {
+            header.set(Header.HEADER_CONTENT_ENCODING, this.token);
+        }
+        final Optional<AsciiString> vary = header.get(Header.HEADER_VARY);
+        if (!vary.isPresent()) {
+            header.set(Header.HEADER_VARY, ACCEPT_ENCODING);
+        } else if (!vary.get().containsIgnoreCase(ACCEPT_ENCODING)) {
+            header.set(Header.HEADER_VARY, AsciiString.of(vary.get() + ", " + ACCEPT_ENCODING));
+        }
+    }
+
+    /**
+     * Choose the coding to send a response with, using the quality values of the Accept-Encoding header. Explicit
+     * entries override the wildcard, and ties go to the coding that is listed first.
+     *
+     * @param acceptEncoding Value of the Accept-Encoding header
+     * @param available      Codings that the response is available in, in order of preference
+     * @return Chosen coding, or {@link #IDENTITY} if none of the available codings are accepted
+     */
+    public static ContentEncoding negotiate(final AsciiString acceptEncoding,
+        final ContentEncoding... available) {
+        ContentEncoding chosen = IDENTITY;
+        double chosenQuality = 0;
+        for (final ContentEncoding encoding : available) {
+            final double quality = getQuality(acceptEncoding, encoding);
+            if (quality > chosenQuality) {
+                chosen = encoding;
+                chosenQuality = quality;
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Get the quality that a client gives a coding
+     *
+     * @param acceptEncoding Value of the Accept-Encoding header
+     * @param encoding       Coding
+     * @return Quality, 0 if the coding isn't acceptable
+     */
+    private static double getQuality(final AsciiString acceptEncoding,
+        final ContentEncoding encoding) {
+        double wildcardQuality = -1;
+        for (final String coding : acceptEncoding.toString().split(",")) {
+            final int parameters = coding.indexOf(';');
+            final String name =
+                (parameters == -1 ? coding : coding.substring(0, parameters)).trim();
+            final double quality =
+                parameters == -1 ? 1 : parseQuality(coding.substring(parameters + 1));
+            if (name.equalsIgnoreCase(encoding.token.toString())) {
+                return quality; // An explicit entry overrides the wildcard
+            }
+            if (name.equals(WILDCARD)) {
+                wildcardQuality = quality;
+            }
+        }
+        if (wildcardQuality >= 0) {
+            return wildcardQuality;
+        }
+        return encoding == IDENTITY ? IMPLICIT_IDENTITY_QUALITY : 0;
+    }
+
+    private static double parseQuality(final String parameters) {
+        for (final String parameter : parameters.split(";")) {
+            final String trimmed = parameter.trim();
+            if (trimmed.length() > 2 && (trimmed.charAt(0) == 'q' || trimmed.charAt(0) == 'Q')
+                && trimmed.charAt(1) == '=') {
+                try {
+                    return Math.max(0, Double.parseDouble(trimmed.substring(2)));
+                } catch (final NumberFormatException e) {
+                    return 0;
+                }
+            }
+        }
+        return 1;
+    }
+
+    /**
+     * Check whether responses of a given content type are compressed, according to {@link
+     * CoreConfig.Compression#mimeTypes}
+     *
+     * @param contentType Value of the Content-Type header
+     * @return True if the type should be compressed
+     */
+    public static boolean isCompressible(final AsciiString contentType) {
+        String mimeType = contentType.toString();
+        final int parameters = mimeType.indexOf(';');
+        if (parameters != -1) {
+            mimeType = mimeType.substring(0, parameters);
+        }
+        mimeType = mimeType.trim().toLowerCase(Locale.ENGLISH);
+        if (mimeType.isEmpty()) {
+            return false;
+        }
+        for (final String allowed : CoreConfig.Compression.mimeTypes) {
+            if (allowed.endsWith("/") ? mimeType.startsWith(allowed) : mimeType.equals(allowed)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -25,12 +25,14 @@ import lombok.Getter;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.HttpDate;
 import xyz.kvantum.server.api.util.ListMultiMap;
-import xyz.kvantum.server.api.util.TimeUtil;
 
-import java.util.ArrayList;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.Optional;
 
 /**
@@ -38,6 +40,12 @@ import java.util.Optional;
  */
 @SuppressWarnings({"unused", "WeakerAccess"}) public final class Header {
 
+    private static final AsciiString DEFAULT_FORMAT = AsciiString.of("HTTP/1.1");
+    /**
+     * Pre-encoded HTTP/1.1 status lines of the known statuses, including the trailing CRLF
+     */
+    private static final Map<AsciiString, byte[]> STATUS_LINES = new HashMap<>();
+
     /**
      * text/css; charset=utf-8
      */
@@ -86,16 +94,16 @@ import java.util.Optional;
     /**
      * 100
      */
-    public static final AsciiString STATUS_CONTINUE = AsciiString.of("100 Continue");
+    public static final AsciiString STATUS_CONTINUE = status("100 Continue");
     /**
      * 101
      */
     public static final AsciiString STATUS_SWITCHING_PROTOCOLS =
-        AsciiString.of("101 Switching Protocols");
+        status("101 Switching Protocols");
     /**
      * 102
      */
-    public static final AsciiString STATUS_PROCESSING = AsciiString.of("102 Processing");
+    public static final AsciiString STATUS_PROCESSING = status("102 Processing");
 
     //
     // 2xx Success
@@ -104,32 +112,32 @@ import java.util.Optional;
     /**
      * 200
      */
-    public static final AsciiString STATUS_OK = AsciiString.of("200 OK");
+    public static final AsciiString STATUS_OK = status("200 OK");
     /**
      * 201
      */
-    public static final AsciiString STATUS_CREATED = AsciiString.of("201 Created");
+    public static final AsciiString STATUS_CREATED = status("201 Created");
     /**
      * 203
      */
     public static final AsciiString STATUS_NON_AUTHORITATIVE_INFORMATION =
-        AsciiString.of("203 Non-Authoritative Information");
+        status("203 Non-Authoritative Information");
     /**
      * 202
      */
-    public static final AsciiString STATUS_ACCEPTED = AsciiString.of("202 Accepted");
+    public static final AsciiString STATUS_ACCEPTED = status("202 Accepted");
     /**
      * 204
      */
-    public static final AsciiString STATUS_NO_CONTENT = AsciiString.of("204 No Content");
+    public static final AsciiString STATUS_NO_CONTENT = status("204 No Content");
     /**
      * 205
      */
-    public static final AsciiString STATUS_RESET_CONTENT = AsciiString.of("205 Reset Content");
+    public static final AsciiString STATUS_RESET_CONTENT = status("205 Reset Content");
     /**
      * 206
      */
-    public static final AsciiString STATUS_PARTIAL_CONTENT = AsciiString.of("206 Partial Content");
+    public static final AsciiString STATUS_PARTIAL_CONTENT = status("206 Partial Content");
 
     //
     // 3xx Redirection
@@ -139,12 +147,16 @@ import java.util.Optional;
      * 301
      */
     public static final AsciiString STATUS_MOVED_PERMANENTLY =
-        AsciiString.of("301 Moved Permanently");
+        status("301 Moved Permanently");
+    /**
+     * 304
+     */
+    public static final AsciiString STATUS_NOT_MODIFIED = status("304 Not Modified");
     /**
      * 307
      */
     public static final AsciiString STATUS_TEMPORARY_REDIRECT =
-        AsciiString.of("307 Temporary Redirect");
+        status("307 Temporary Redirect");
 
     //
     // 4xx Client errors
@@ -153,46 +165,60 @@ import java.util.Optional;
     /**
      * 400
      */
-    public static final AsciiString STATUS_BAD_REQUEST = AsciiString.of("400 Bad Request");
+    public static final AsciiString STATUS_BAD_REQUEST = status("400 Bad Request");
     /**
      * 401
      */
-    public static final AsciiString STATUS_ACCESS_DENIED = AsciiString.of("401 Access Denied");
+    public static final AsciiString STATUS_ACCESS_DENIED = status("401 Access Denied");
     /**
      * 401
      */
-    public static final AsciiString STATUS_UNAUTHORIZED = AsciiString.of("401 Unauthorized status");
+    public static final AsciiString STATUS_UNAUTHORIZED = status("401 Unauthorized status");
     /**
      * 404
      */
-    public static final AsciiString STATUS_NOT_FOUND = AsciiString.of("404 Not Found");
+    public static final AsciiString STATUS_NOT_FOUND = status("404 Not Found");
     /**
      * 405
      */
-    public static final AsciiString STATUS_NOT_ALLOWED = AsciiString.of("405 Method not allowed");
+    public static final AsciiString STATUS_NOT_ALLOWED = status("405 Method not allowed");
     /**
      * 406
      */
-    public static final AsciiString STATUS_NOT_ACCEPTABLE = AsciiString.of("406 Not Acceptable");
+    public static final AsciiString STATUS_NOT_ACCEPTABLE = status("406 Not Acceptable");
     /**
      * 408
      */
-    public static final AsciiString STATUS_REQUEST_TIMEOUT = AsciiString.of("408 Request Timeout");
+    public static final AsciiString STATUS_REQUEST_TIMEOUT = status("408 Request Timeout");
     /**
      * 413
      */
     public static final AsciiString STATUS_PAYLOAD_TOO_LARGE =
-        AsciiString.of("413 Payload Too Large");
+        status("413 Payload Too Large");
     /**
      * 413
      */
     public static final AsciiString STATUS_ENTITY_TOO_LARGE =
-        AsciiString.of("413 Entity Too Large");
+        status("413 Entity Too Large");
+    /**
+     * 414
+     */
+    public static final AsciiString STATUS_URI_TOO_LONG = status("414 URI Too Long");
+    /**
+     * 416
+     */
+    public static final AsciiString STATUS_RANGE_NOT_SATISFIABLE =
+        status("416 Range Not Satisfiable");
     /**
      * 429
      */
     public static final AsciiString STATUS_TOO_MANY_REQUESTS =
-        AsciiString.of("429 Too Many Requests");
+        status("429 Too Many Requests");
+    /**
+     * 431
+     */
+    public static final AsciiString STATUS_HEADER_FIELDS_TOO_LARGE =
+        status("431 Request Header Fields Too Large");
 
     //
     // 5xx Server errors
@@ -202,12 +228,21 @@ import java.util.Optional;
      * 500
      */
     public static final AsciiString STATUS_INTERNAL_ERROR =
-        AsciiString.of("500 Internal Server Error");
+        status("500 Internal Server Error");
+    /**
+     * 501
+     */
+    public static final AsciiString STATUS_NOT_IMPLEMENTED = status("501 Not Implemented");
+    /**
+     * 503
+     */
+    public static final AsciiString STATUS_SERVICE_UNAVAILABLE =
+        status("503 Service Unavailable");
     /**
      * 505
      */
     public static final AsciiString STATUS_HTTP_VERSION_NOT_SUPPORTED =
-        AsciiString.of("505 HTTP Version Not Supported");
+        status("505 HTTP Version Not Supported");
 
     public static final AsciiString ALLOW_ALL = AsciiString.of("*");
 
@@ -263,7 +298,8 @@ import java.util.Optional;
     /**
      * Control options for the current connection and list of hop-by-hop response fields
      */
-    public static final HeaderOption HEADER_CONNECTION = HeaderOption.create("Connection");
+    public static final HeaderOption HEADER_CONNECTION =
+        HeaderOption.create(AsciiString.of("Connection"), false);
     /**
      * The type of encoding used on the data
      */
@@ -308,9 +344,10 @@ import java.util.Optional;
     /**
      * The date and time that the message was sent (in HTTP-date format as defined by RFC 7231
      *
-     * @see TimeUtil#getHTTPTimeStamp() To get a valid timestamp
+     * @see HttpDate To get a valid timestamp
      */
-    public static final HeaderOption HEADER_DATE = HeaderOption.create("Date");
+    public static final HeaderOption HEADER_DATE =
+        HeaderOption.create(AsciiString.of("Date"), false);
     /**
      * An identifier for a specific version of a resource, often a message digest
      */
@@ -322,13 +359,13 @@ import java.util.Optional;
     /**
      * Gives the date/time after which the response is considered stale (in HTTP-date format as defined by RFC 7231)
      *
-     * @see TimeUtil#getHTTPTimeStamp() To get a valid timestamp
+     * @see HttpDate To get a valid timestamp
      */
     public static final HeaderOption HEADER_EXPIRES = HeaderOption.create("Expires");
     /**
      * The last modified date for the requested object (in HTTP-date format as defined by RFC 7231)
      *
-     * @see TimeUtil#getHTTPTimeStamp() To get a valid timestamp
+     * @see HttpDate To get a valid timestamp
      */
     public static final HeaderOption HEADER_LAST_MODIFIED = HeaderOption.create("Last-Modified");
     /**
@@ -369,11 +406,25 @@ import java.util.Optional;
      * period of time (in seconds) or a HTTP-date
      */
     public static final HeaderOption HEADER_RETRY_AFTER = HeaderOption.create("Retry-After");
-    private static final AsciiString DEFAULT_FORMAT = AsciiString.of("HTTP/1.1");
-    private final ListMultiMap<HeaderOption, AsciiString> headers = new ListMultiMap<>();
+    /**
+     * Tells downstream proxies how to match future request headers to decide whether the cached response can be used
+     * rather than requesting a fresh one from the origin server
+     */
+    public static final HeaderOption HEADER_VARY = HeaderOption.create("Vary");
+    private final HeaderList headers = new HeaderList();
     @Getter private AsciiString status;
     @Getter private AsciiString format;
 
+    private static AsciiString status(final String status) {
+        final AsciiString asciiString = AsciiString.of(status);
+        STATUS_LINES.put(asciiString, encodeStatusLine(DEFAULT_FORMAT, asciiString));
+        return asciiString;
+    }
+
+    private static byte[] encodeStatusLine(final AsciiString format, final AsciiString status) {
+        return (format + " " + status + "\r\n").getBytes(StandardCharsets.US_ASCII);
+    }
+
     /**
      * Construct a new header instance
      *
@@ -451,11 +502,12 @@ import java.util.Optional;
      */
     public Header set(final HeaderOption key, final AsciiString value,
         final boolean allowDuplicates) {
-        if (value == null || !allowDuplicates) {
+        if (value == null) {
             this.headers.remove(key);
-        }
-        if (value != null) {
-            this.headers.put(key, value);
+        } else if (allowDuplicates) {
+            this.headers.add(key, value);
+        } else {
+            this.headers.set(key, value);
         }
         return this;
     }
@@ -467,11 +519,7 @@ import java.util.Optional;
      * @return Collection with all stored values
      */
     public Collection<AsciiString> getMultiple(final HeaderOption key) {
-        final Collection<AsciiString> values = new ArrayList<>();
-        if (this.headers.containsKey(key)) {
-            values.addAll(this.headers.get(key));
-        }
-        return values;
+        return this.headers.getAll(key);
     }
 
     /**
@@ -481,10 +529,7 @@ import java.util.Optional;
      * @return Optional
      */
     public Optional<AsciiString> get(final HeaderOption key) {
-        if (this.headers.containsKey(key)) {
-            return Optional.of(this.headers.get(key).get(0));
-        }
-        return Optional.empty();
+        return Optional.ofNullable(this.headers.get(key));
     }
 
     /**
@@ -519,10 +564,9 @@ import java.util.Optional;
             Logger.debug("Cookie set! Key: {}, Value: {}, Full: {}", cookie.getCookie(),
                 cookie.getValue(), cookie.toString());
         }
-        if (this.headers.containsEntry(HEADER_SET_COOKIE, cookie.toAsciiString())) {
-            this.headers.remove(HEADER_SET_COOKIE, cookie.toAsciiString());
-        }
-        this.headers.put(HEADER_SET_COOKIE, cookie.toAsciiString());
+        final AsciiString value = cookie.toAsciiString();
+        this.headers.remove(HEADER_SET_COOKIE, value);
+        this.headers.add(HEADER_SET_COOKIE, value);
         return this;
     }
 
@@ -552,16 +596,47 @@ import java.util.Optional;
      * @return True if it is stored
      */
     public boolean hasHeader(final HeaderOption headerOption) {
-        return this.headers.containsKey(headerOption);
+        return this.headers.contains(headerOption);
     }
 
     /**
      * Get a copy of the stored header pairs
      *
      * @return Copy of the internal map
+     * @see #getEntries() to access the pairs without copying them
      */
     public ListMultiMap<HeaderOption, AsciiString> getHeaders() {
-        return this.headers.getCopy();
+        final ListMultiMap<HeaderOption, AsciiString> copy = new ListMultiMap<>();
+        for (int i = 0; i < this.headers.size(); i++) {
+            copy.put(this.headers.getName(i), this.headers.getValue(i));
+        }
+        return copy;
+    }
+
+    /**
+     * Get the stored header pairs, in the order they were added. The list is shared, and should only be changed
+     * through this header.
+     *
+     * @return Header pairs
+     */
+    public HeaderList getEntries() {
+        return this.headers;
+    }
+
+    /**
+     * Get the status line, such as {@code HTTP/1.1 200 OK}, encoded as ASCII and followed by CRLF. The lines of the
+     * known statuses are pre-encoded, and must not be modified.
+     *
+     * @return Encoded status line
+     */
+    public byte[] getStatusLine() {
+        if (this.format == DEFAULT_FORMAT || this.format.equals(DEFAULT_FORMAT)) {
+            final byte[] statusLine = STATUS_LINES.get(this.status);
+            if (statusLine != null) {
+                return statusLine;
+            }
+        }
+        return encodeStatusLine(this.format, this.status);
     }
 
 }
@@ -0,0 +1,267 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Flat list of header name-value pairs, stored in insertion order in two parallel arrays. Names are matched ignoring
+ * their case, using {@link HeaderOption#matches(HeaderOption)}. Responses rarely have more than a dozen headers, so
+ * a linear scan is cheaper than hashing, and the pairs can be serialized by index without creating any entries.
+ */
+@SuppressWarnings({"unused", "WeakerAccess"}) public final class HeaderList {
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    private HeaderOption[] names;
+    private AsciiString[] values;
+    private int size;
+
+    public HeaderList() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public HeaderList(final int capacity) {
+        this.names = new HeaderOption[Math.max(capacity, 1)];
+        this.values = new AsciiString[this.names.length];
+    }
+
+    /**
+     * Get the number of stored pairs
+     *
+     * @return Number of pairs
+     */
+    public int size() {
+        return this.size;
+    }
+
+    public boolean isEmpty() {
+        return this.size == 0;
+    }
+
+    /**
+     * Get the name of the pair at an index
+     *
+     * @param index Index, less than {@link #size()}
+     * @return Header name
+     */
+    public HeaderOption getName(final int index) {
+        checkIndex(index);
+        return this.names[index];
+    }
+
+    /**
+     * Get the value of the pair at an index
+     *
+     * @param index Index, less than {@link #size()}
+     * @return Header value
+     */
+    public AsciiString getValue(final int index) {
+        checkIndex(index);
+        return this.values[index];
+    }
+
+    /**
+     * Get the index of the first pair with a name
+     *
+     * @param name Header name
+     * @return Index, or -1 if there is no such pair
+     */
+    public int indexOf(final HeaderOption name) {
+        return indexOf(name, 0);
+    }
+
+    private int indexOf(final HeaderOption name, final int from) {
+        for (int i = from; i < this.size; i++) {
+            if (this.names[i].matches(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    public boolean contains(final HeaderOption name) {
+        return indexOf(name) != -1;
+    }
+
+    public boolean contains(final HeaderOption name, final AsciiString value) {
+        for (int i = 0; i < this.size; i++) {
+            if (this.names[i].matches(name) && this.values[i].equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Get the value of the first pair with a name
+     *
+     * @param name Header name
+     * @return Value, or null if there is no such pair
+     */
+    public AsciiString get(final HeaderOption name) {
+        final int index = indexOf(name);
+        if (index == -1) {
+            return null; // Nullable
+        }
+        return this.values[index];
+    }
+
+    /**
+     * Get the values of all pairs with a name
+     *
+     * @param name Header name
+     * @return Values, in insertion order
+     */
+    public Collection<AsciiString> getAll(final HeaderOption name) {
+        final Collection<AsciiString> values = new ArrayList<>();
+        for (int i = 0; i < this.size; i++) {
+            if (this.names[i].matches(name)) {
+                values.add(this.values[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Append a pair, keeping any existing pairs with the same name
+     *
+     * @param name  Header name
+     * @param value Header value
+     */
+    public void add(final HeaderOption name, final AsciiString value) {
+        if (this.size == this.names.length) {
+            this.names = Arrays.copyOf(this.names, this.size * 2);
+            this.values = Arrays.copyOf(this.values, this.size * 2);
+        }
+        this.names[this.size] = name;
+        this.values[this.size++] = value;
+    }
+
+    /**
+     * Replace the value of the first pair with a name, and remove any others. The pair is appended if there is
+     * none.
+     *
+     * @param name  Header name
+     * @param value Header value
+     */
+    public void set(final HeaderOption name, final AsciiString value) {
+        final int index = indexOf(name);
+        if (index == -1) {
+            add(name, value);
+            return;
+        }
+        this.values[index] = value;
+        removeFrom(name, index + 1);
+    }
+
+    /**
+     * Remove all pairs with a name
+     *
+     * @param name Header name
+     * @return True if any pair was removed
+     */
+    public boolean remove(final HeaderOption name) {
+        return removeFrom(name, 0);
+    }
+
+    /**
+     * Remove all pairs with a name and value
+     *
+     * @param name  Header name
+     * @param value Header value
+     * @return True if any pair was removed
+     */
+    public boolean remove(final HeaderOption name, final AsciiString value) {
+        int retained = 0;
+        for (int i = 0; i < this.size; i++) {
+            if (!this.names[i].matches(name) || !this.values[i].equals(value)) {
+                this.names[retained] = this.names[i];
+                this.values[retained++] = this.values[i];
+            }
+        }
+        return truncate(retained);
+    }
+
+    private boolean removeFrom(final HeaderOption name, final int from) {
+        int retained = from;
+        for (int i = from; i < this.size; i++) {
+            if (!this.names[i].matches(name)) {
+                this.names[retained] = this.names[i];
+                this.values[retained++] = this.values[i];
+            }
+        }
+        return truncate(retained);
+    }
+
+    private boolean truncate(final int size) {
+        if (size == this.size) {
+            return false;
+        }
+        Arrays.fill(this.names, size, this.size, null);
+        Arrays.fill(this.values, size, this.size, null);
+        this.size = size;
+        return true;
+    }
+
+    /**
+     * Remove all pairs
+     */
+    public void clear() {
+        truncate(0);
+    }
+
+    /**
+     * Get a copy of the list, that can be changed independently
+     *
+     * @return List copy
+     */
+    public HeaderList copy() {
+        final HeaderList copy = new HeaderList(this.size);
+        System.arraycopy(this.names, 0, copy.names, 0, this.size);
+        System.arraycopy(this.values, 0, copy.values, 0, this.size);
+        copy.size = this.size;
+        return copy;
+    }
+
+    private void checkIndex(final int index) {
+        if (index < 0 || index >= this.size) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", size: " + this.size);
+        }
+    }
+
+    @Override public String toString() {
+        final StringBuilder builder = new StringBuilder("{");
+        for (int i = 0; i < this.size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            builder.append(this.names[i]).append('=').append(this.values[i]);
+        }
+        return builder.append('}').toString();
+    }
+
+}
@@ -21,26 +21,48 @@
  */
 package xyz.kvantum.server.api.response;
 
-import lombok.AccessLevel;
 import lombok.EqualsAndHashCode;
 import lombok.Getter;
-import lombok.RequiredArgsConstructor;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.AsciiStringable;
 
-import java.util.HashMap;
+import java.util.Arrays;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
-@SuppressWarnings("unused") @EqualsAndHashCode(of = "text")
-@RequiredArgsConstructor(access = AccessLevel.PRIVATE) public final class HeaderOption
+@SuppressWarnings("unused") @EqualsAndHashCode(of = "text") public final class HeaderOption
     implements AsciiStringable {
 
-    private static Map<AsciiString, HeaderOption> headerOptionMap = new HashMap<>();
+    private static final Map<AsciiString, HeaderOption> headerOptionMap = new ConcurrentHashMap<>();
+    /**
+     * Options by the exact text they were requested with, so that known names aren't lower cased on every lookup
+     */
+    private static final Map<AsciiString, HeaderOption> exactHeaderOptionMap =
+        new ConcurrentHashMap<>();
 
     @Getter private final AsciiString text;
     @Getter private boolean cacheApplicable = true;
+    private final byte[] prefix;
+    private final int foldedHashCode;
+
+    private HeaderOption(final AsciiString text) {
+        this.text = text;
+        final byte[] bytes = text.getValue();
+        this.prefix = Arrays.copyOf(bytes, bytes.length + 2);
+        this.prefix[bytes.length] = ':';
+        this.prefix[bytes.length + 1] = ' ';
+        int hash = 0;
+        for (final byte b : bytes) {
+            hash = 31 * hash + toLowerCase(b);
+        }
+        this.foldedHashCode = hash;
+    }
+
+    private static byte toLowerCase(final byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
 
     public static HeaderOption create(final String string) {
         return create(AsciiString.of(string));
@@ -53,12 +75,19 @@ import java.util.Map;
     public static HeaderOption create(final AsciiString text, boolean cacheApplicable) {
         final HeaderOption headerOption = new HeaderOption(text).cacheApplicable(cacheApplicable);
         headerOptionMap.put(text.toLowerCase(), headerOption);
+        exactHeaderOptionMap.put(text, headerOption);
         return headerOption;
     }
 
     public static HeaderOption getOrCreate(final AsciiString text) {
-        if (headerOptionMap.containsKey(text.toLowerCase())) {
-            return headerOptionMap.get(text.toLowerCase());
+        final HeaderOption exact = exactHeaderOptionMap.get(text);
+        if (exact != null) {
+            return exact;
+        }
+        final HeaderOption headerOption = headerOptionMap.get(text.toLowerCase());
+        if (headerOption != null) {
+            exactHeaderOptionMap.putIfAbsent(text, headerOption);
+            return headerOption;
         }
         if (CoreConfig.debug) {
             Logger.debug("View requested unknown header [{}] - Creating...", text);
@@ -87,4 +116,40 @@ import java.util.Map;
     public final byte[] getBytes() {
         return this.toAsciiString().getValue();
     }
+
+    /**
+     * Get the ascii-encoded name followed by {@code ": "}, as it is written before the value of a header. The
+     * returned array is shared, and must not be modified.
+     *
+     * @return ascii encoded header prefix
+     */
+    public final byte[] getPrefix() {
+        return this.prefix;
+    }
+
+    /**
+     * Check whether this option has the same name as another option, ignoring case
+     *
+     * @param other Other option
+     * @return True if the names are equal, ignoring case
+     */
+    public boolean matches(final HeaderOption other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || this.foldedHashCode != other.foldedHashCode) {
+            return false;
+        }
+        final byte[] bytes = this.text.getValue();
+        final byte[] otherBytes = other.text.getValue();
+        if (bytes.length != otherBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < bytes.length; i++) {
+            if (toLowerCase(bytes[i]) != toLowerCase(otherBytes[i])) {
+                return false;
+            }
+        }
+        return true;
+    }
 }
@@ -22,11 +22,12 @@
 package xyz.kvantum.server.api.response;
 
 import lombok.Getter;
+import xyz.kvantum.server.api.io.FileKvantumOutputStream;
 import xyz.kvantum.server.api.io.ImmutableKvantumOutputStream;
 import xyz.kvantum.server.api.io.KvantumOutputStream;
 import xyz.kvantum.server.api.io.SimpleOutputStream;
 import xyz.kvantum.server.api.util.Assert;
-import xyz.kvantum.server.api.util.TimeUtil;
+import xyz.kvantum.server.api.util.HttpDate;
 import xyz.kvantum.server.api.views.RequestHandler;
 
 import java.nio.charset.StandardCharsets;
@@ -55,7 +56,7 @@ import java.nio.charset.StandardCharsets;
         this.header =
             new Header(Header.STATUS_OK).set(Header.HEADER_CONTENT_TYPE, Header.CONTENT_TYPE_HTML)
                 .set(Header.HEADER_SERVER, Header.POWERED_BY)
-                .set(Header.HEADER_DATE, TimeUtil.getHTTPTimeStamp())
+                .set(Header.HEADER_DATE, HttpDate.now())
                 .set(Header.HEADER_STATUS, Header.STATUS_OK);
     }
 
@@ -111,6 +112,9 @@ import java.nio.charset.StandardCharsets;
     }
 
     public boolean supportsGzip() {
+        if (this.responseStream instanceof FileKvantumOutputStream) {
+            return false; // Files are transferred as-is, without being copied into memory
+        }
         if (this.responseStream instanceof KnownLengthStream) {
             final KnownLengthStream knownLengthStream = (KnownLengthStream) this.responseStream;
             return knownLengthStream.getLength() != 0;
@@ -26,7 +26,7 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.AsciiStringable;
-import xyz.kvantum.server.api.util.TimeUtil;
+import xyz.kvantum.server.api.util.HttpDate;
 
 import java.util.Date;
 
@@ -56,7 +56,7 @@ import java.util.Date;
                 new StringBuilder(this.cookie).append('=').append(value).append(ELEMENT_PATH)
                     .append(path);
             if (this.expires != null) {
-                builder.append(ELEMENT_EXPIRES).append(TimeUtil.getHTTPTimeStamp(this.expires));
+                builder.append(ELEMENT_EXPIRES).append(HttpDate.format(this.expires.getTime()));
             }
             if (this.secure) {
                 builder.append(ELEMENT_SECURE);
@@ -0,0 +1,154 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An inclusive range of bytes, as requested using the HTTP {@code Range} header (RFC 7233)
+ */
+@Getter @EqualsAndHashCode @RequiredArgsConstructor public final class ByteRange {
+
+    /**
+     * The maximum amount of ranges that will be served in a single response. Requests for more ranges are served the
+     * entire representation.
+     */
+    public static final int MAX_RANGES = 16;
+
+    private static final String UNIT = "bytes=";
+    private static final long INVALID = -2;
+
+    /**
+     * Offset of the first byte (inclusive)
+     */
+    private final long first;
+    /**
+     * Offset of the last byte (inclusive)
+     */
+    private final long last;
+
+    /**
+     * Parse the value of a {@code Range} header
+     *
+     * @param header Header value
+     * @param length Length of the complete representation
+     * @return null if the header is malformed, uses an unsupported unit or requests too many ranges, in which case the
+     * header should be ignored. An empty list if none of the ranges can be satisfied. Otherwise, the satisfiable ranges
+     * in the order that they were requested.
+     */
+    public static List<ByteRange> parse(final CharSequence header, final long length) {
+        final String value = header.toString().trim();
+        if (!value.regionMatches(true, 0, UNIT, 0, UNIT.length())) {
+            return null; // Nullable
+        }
+        final String[] specifications = value.substring(UNIT.length()).split(",");
+        if (specifications.length > MAX_RANGES) {
+            return null; // Nullable
+        }
+        final List<ByteRange> ranges = new ArrayList<>(specifications.length);
+        for (final String rawSpecification : specifications) {
+            final String specification = rawSpecification.trim();
+            final int dash = specification.indexOf('-');
+            if (dash == -1) {
+                return null; // Nullable
+            }
+            final long first = parseNumber(specification, 0, dash);
+            final long last = parseNumber(specification, dash + 1, specification.length());
+            if (first == INVALID || last == INVALID) {
+                return null; // Nullable
+            }
+            if (first == -1) {
+                //
+                // Suffix range, "-500" means the last 500 bytes
+                //
+                if (last == -1) {
+                    return null; // Nullable
+                }
+                if (last > 0 && length > 0) {
+                    ranges.add(new ByteRange(Math.max(0, length - last), length - 1));
+                }
+            } else {
+                if (last != -1 && last < first) {
+                    return null; // Nullable
+                }
+                if (first < length) {
+                    final long actualLast = last == -1 ? length - 1 : Math.min(last, length - 1);
+                    ranges.add(new ByteRange(first, actualLast));
+                }
+            }
+        }
+        return Collections.unmodifiableList(ranges);
+    }
+
+    /**
+     * Parse a non-negative decimal number
+     *
+     * @return the number, -1 if the region is empty or {@link #INVALID} if it contains anything else than digits
+     */
+    private static long parseNumber(final String string, final int start, final int end) {
+        if (start >= end) {
+            return -1;
+        }
+        if (end - start > 18) {
+            return INVALID;
+        }
+        long number = 0;
+        for (int i = start; i < end; i++) {
+            final char c = string.charAt(i);
+            if (c < '0' || c > '9') {
+                return INVALID;
+            }
+            number = number * 10 + (c - '0');
+        }
+        return number;
+    }
+
+    /**
+     * Get the number of bytes in the range
+     *
+     * @return Range length
+     */
+    public long getLength() {
+        return this.last - this.first + 1;
+    }
+
+    /**
+     * Get the value of the {@code Content-Range} header for this range
+     *
+     * @param length Length of the complete representation
+     * @return Header value
+     */
+    public String toContentRange(final long length) {
+        return "bytes " + this.first + "-" + this.last + "/" + length;
+    }
+
+    @Override public String toString() {
+        return this.first + "-" + this.last;
+    }
+
+}
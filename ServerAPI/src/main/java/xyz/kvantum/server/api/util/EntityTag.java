@@ -0,0 +1,167 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * An HTTP entity tag (RFC 7232), used to validate cached representations
+ */
+@EqualsAndHashCode(of = {"opaqueTag", "weak"}) public final class EntityTag {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+    private static final String WEAK_PREFIX = "W/";
+
+    /**
+     * The opaque tag, without quotes
+     */
+    @Getter private final String opaqueTag;
+    /**
+     * Whether or not the tag is weak, meaning that representations with the same tag are semantically equivalent,
+     * but not necessarily byte-for-byte identical
+     */
+    @Getter private final boolean weak;
+    /**
+     * The tag, formatted for use in the {@code ETag} header
+     */
+    @Getter private final AsciiString headerValue;
+
+    private EntityTag(final String opaqueTag, final boolean weak) {
+        this.opaqueTag = opaqueTag;
+        this.weak = weak;
+        this.headerValue =
+            AsciiString.of((weak ? WEAK_PREFIX : "") + '"' + opaqueTag + '"', false);
+    }
+
+    /**
+     * Create a strong entity tag
+     *
+     * @param opaqueTag Opaque tag, without quotes
+     * @return Created tag
+     */
+    public static EntityTag strong(final String opaqueTag) {
+        return new EntityTag(opaqueTag, false);
+    }
+
+    /**
+     * Create a weak entity tag
+     *
+     * @param opaqueTag Opaque tag, without quotes
+     * @return Created tag
+     */
+    public static EntityTag weak(final String opaqueTag) {
+        return new EntityTag(opaqueTag, true);
+    }
+
+    /**
+     * Create a strong entity tag from a digest of the content
+     *
+     * @param content Representation content
+     * @return Created tag
+     */
+    public static EntityTag of(final byte[] content) {
+        final MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException("MD5 is not supported by the JVM", e);
+        }
+        final byte[] hash = digest.digest(content);
+        final char[] characters = new char[hash.length * 2];
+        for (int i = 0; i < hash.length; i++) {
+            characters[i * 2] = HEX[(hash[i] >> 4) & 0xF];
+            characters[i * 2 + 1] = HEX[hash[i] & 0xF];
+        }
+        return strong(new String(characters));
+    }
+
+    /**
+     * Create a strong entity tag from the modification time and length of a file. This avoids having to read the
+     * file, and is what most servers use for static files.
+     *
+     * @param lastModified Last modification time, in milliseconds
+     * @param length       File length
+     * @return Created tag
+     */
+    public static EntityTag of(final long lastModified, final long length) {
+        return strong(Long.toHexString(lastModified) + '-' + Long.toHexString(length));
+    }
+
+    /**
+     * Parse a single entity tag
+     *
+     * @param value Header value
+     * @return Parsed tag, or null if the value isn't an entity tag
+     */
+    public static EntityTag parse(final CharSequence value) {
+        String string = value.toString().trim();
+        final boolean weak = string.startsWith(WEAK_PREFIX);
+        if (weak) {
+            string = string.substring(WEAK_PREFIX.length());
+        }
+        if (string.length() < 2 || string.charAt(0) != '"'
+            || string.charAt(string.length() - 1) != '"') {
+            return null; // Nullable
+        }
+        return new EntityTag(string.substring(1, string.length() - 1), weak);
+    }
+
+    /**
+     * Check if the tag matches any of the tags in an {@code If-None-Match} header, using the weak comparison function
+     *
+     * @param header Header value, a list of tags or {@code *}
+     * @return True if the tag matches
+     */
+    public boolean matchesAnyWeak(final CharSequence header) {
+        final String string = header.toString().trim();
+        if (string.equals("*")) {
+            return true;
+        }
+        for (final String part : string.split(",")) {
+            final EntityTag other = parse(part);
+            if (other != null && other.opaqueTag.equals(this.opaqueTag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Check if the tag is equal to another tag, using the strong comparison function. Weak tags never match.
+     *
+     * @param other Other tag. May be null.
+     * @return True if both tags are strong and identical
+     */
+    public boolean matchesStrong(final EntityTag other) {
+        return other != null && !this.weak && !other.weak && this.opaqueTag
+            .equals(other.opaqueTag);
+    }
+
+    @Override public String toString() {
+        return this.headerValue.toString();
+    }
+
+}
@@ -0,0 +1,112 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import lombok.experimental.UtilityClass;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP-date timestamps, in the IMF-fixdate format of RFC 7231. The current date is formatted at most once per
+ * second, and is shared as a pre-encoded string, without any locking. Other timestamps are formatted using an
+ * immutable, thread-safe formatter.
+ */
+@UtilityClass public final class HttpDate {
+
+    /**
+     * Formats timestamps as IMF-fixdate, such as {@code Sun, 06 Nov 1994 08:49:37 GMT}
+     */
+    public static final DateTimeFormatter FORMATTER =
+        DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.ENGLISH)
+            .withZone(ZoneOffset.UTC);
+
+    /**
+     * Second that was last claimed for formatting
+     */
+    private static final AtomicLong formattedSecond = new AtomicLong(Long.MIN_VALUE);
+    private static volatile Snapshot snapshot = new Snapshot(System.currentTimeMillis() / 1000L);
+
+    /**
+     * Get the current date. The returned string is shared, and must not be modified.
+     *
+     * @return Current date
+     */
+    public static AsciiString now() {
+        return current().date;
+    }
+
+    /**
+     * Get the current date, encoded as ASCII. The returned array is shared, and must not be modified.
+     *
+     * @return Current date
+     */
+    public static byte[] nowBytes() {
+        return current().date.getValue();
+    }
+
+    /**
+     * Format a timestamp
+     *
+     * @param epochMillis Time in milliseconds since the epoch
+     * @return Formatted timestamp
+     */
+    public static String format(final long epochMillis) {
+        return FORMATTER.format(Instant.ofEpochMilli(epochMillis));
+    }
+
+    private static Snapshot current() {
+        final Snapshot current = snapshot;
+        final long second = System.currentTimeMillis() / 1000L;
+        if (current.second == second) {
+            return current;
+        }
+        //
+        // Only the thread that claims the second formats it, the others
+        // keep using the previous one until it's done
+        //
+        final long claimed = formattedSecond.get();
+        if (claimed != second && formattedSecond.compareAndSet(claimed, second)) {
+            final Snapshot updated = new Snapshot(second);
+            snapshot = updated;
+            return updated;
+        }
+        return current;
+    }
+
+    private static final class Snapshot {
+
+        private final long second;
+        private final AsciiString date;
+
+        private Snapshot(final long second) {
+            this.second = second;
+            this.date = AsciiString.of(format(second * 1000L).getBytes(StandardCharsets.US_ASCII));
+        }
+
+    }
+
+}
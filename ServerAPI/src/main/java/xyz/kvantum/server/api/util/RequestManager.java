@@ -30,6 +30,7 @@ import xyz.kvantum.server.api.core.Kvantum;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.events.RequestHandlerAddedEvent;
 import xyz.kvantum.server.api.logging.Logger;
+import xyz.kvantum.server.api.matching.RouteTrie;
 import xyz.kvantum.server.api.matching.Router;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.views.RequestHandler;
@@ -73,6 +74,12 @@ import java.util.TimerTask;
     @Builder.Default private List<RequestHandler> views =
         Collections.synchronizedList(new ArrayList<>());
 
+    /**
+     * Compiled index of {@link #views}. It is compiled again by the first request that follows a change to the views.
+     */
+    private volatile RouteTrie routeTrie = RouteTrie.EMPTY;
+    private volatile boolean routeTrieChanged = true;
+
     /**
      * Instance 404 generator, defaults to {@link #DEFAULT_404_GENERATOR}
      */
@@ -194,9 +201,28 @@ import java.util.TimerTask;
         // register handler
         //
         views.add(view);
+        this.routeTrieChanged = true;
         return view;
     }
 
+    /**
+     * Get the {@link RouteTrie} of the current views, compiling a new one if the views have changed
+     *
+     * @return Route trie
+     */
+    private RouteTrie getRouteTrie() {
+        if (!this.routeTrieChanged) {
+            return this.routeTrie;
+        }
+        synchronized (this.views) {
+            if (this.routeTrieChanged) {
+                this.routeTrieChanged = false;
+                this.routeTrie = new RouteTrie(this.views);
+            }
+            return this.routeTrie;
+        }
+    }
+
     private void sortViews() {
         if (!changed) {
             return;
@@ -207,6 +233,7 @@ import java.util.TimerTask;
         final long nanoTime1 = System.nanoTime();
         this.views.sort(REQUEST_HANDLER_COMPARATOR);
         this.currentHead = this.views.get(0);
+        this.routeTrieChanged = true;
         final long nanoTime2 = System.nanoTime();
         changed = false;
 
@@ -229,15 +256,20 @@ import java.util.TimerTask;
      */
     @Override public RequestHandler match(final AbstractRequest request) {
         Assert.isValid(request);
-        if (!this.views.isEmpty()) {
-            for (final RequestHandler handler : this.views) {
-                if (handler.matches(request)) {
-                    handler.incrementMatchCount();
-                    if (currentHead == null || currentHead != handler) {
-                        changed = true;
-                    }
-                    return handler;
+        //
+        // Only the handlers whose patterns could match the request
+        // path need to be tested
+        //
+        final List<RequestHandler> candidates =
+            this.getRouteTrie().getCandidates(request.getQuery().getResource());
+        for (int i = 0; i < candidates.size(); i++) {
+            final RequestHandler handler = candidates.get(i);
+            if (handler.matches(request)) {
+                handler.incrementMatchCount();
+                if (currentHead == null || currentHead != handler) {
+                    changed = true;
                 }
+                return handler;
             }
         }
         return error404Generator.generate(request);
@@ -255,6 +287,7 @@ import java.util.TimerTask;
     @Override public void remove(final RequestHandler view) {
         if (this.views.contains(view)) {
             this.views.remove(view);
+            this.routeTrieChanged = true;
         } else {
             throw new IllegalArgumentException("Cannot remove a view before registering it");
         }
@@ -262,6 +295,7 @@ import java.util.TimerTask;
 
     @Override public void clear() {
         Message.CLEARED_VIEWS.log(CollectionUtil.clear(this.views));
+        this.routeTrieChanged = true;
     }
 
 }
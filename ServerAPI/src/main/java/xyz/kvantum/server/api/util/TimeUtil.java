@@ -24,6 +24,9 @@ package xyz.kvantum.server.api.util;
 import lombok.experimental.UtilityClass;
 
 import java.text.SimpleDateFormat;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.Locale;
 
@@ -33,12 +36,10 @@ import java.util.Locale;
 @SuppressWarnings("WeakerAccess") @UtilityClass public final class TimeUtil {
 
     public final static SimpleDateFormat logFileFormat;
-    public final static SimpleDateFormat httpFormat;
     public final static SimpleDateFormat logFormat;
     public static final SimpleDateFormat accessLogFormat;
 
     static {
-        httpFormat = new SimpleDateFormat("EEE, dd MMM yyyy kk:mm:ss 'GMT'", Locale.ENGLISH);
         logFormat = new SimpleDateFormat("HH:mm:ss", Locale.ENGLISH);
         logFileFormat = new SimpleDateFormat("dd MMM yyyy kk-mm-ss", Locale.ENGLISH);
         accessLogFormat = new SimpleDateFormat("dd/MMM/yyyy:HH:mm:ss Z", Locale.ENGLISH);
@@ -58,9 +59,27 @@ import java.util.Locale;
      *
      * @param date Date from which the timestamp is generated
      * @return RFC 7231 formatted timestamp
+     * @see HttpDate#format(long)
      */
     public static String getHTTPTimeStamp(final Date date) {
-        return getTimeStamp(httpFormat, date);
+        return HttpDate.format(date.getTime());
+    }
+
+    /**
+     * Parse a timestamp formatted with the HTTP-date format as defined by RFC 7231, such as the value of an {@code
+     * If-Modified-Since} header
+     *
+     * @param timeStamp RFC 7231 formatted timestamp
+     * @return Time in milliseconds since the epoch, or -1 if the timestamp couldn't be parsed
+     */
+    public static long parseHTTPTimeStamp(final CharSequence timeStamp) {
+        try {
+            return ZonedDateTime
+                .parse(timeStamp.toString().trim(), DateTimeFormatter.RFC_1123_DATE_TIME)
+                .toInstant().toEpochMilli();
+        } catch (final DateTimeParseException e) {
+            return -1;
+        }
     }
 
     public static String getAccessLogTimeStamp(final long time) {
@@ -71,9 +90,10 @@ import java.util.Locale;
      * Returns a string with current timestamp formatted with HTTP-date format as defined by RFC 7231
      *
      * @return RFC 7231 formatted timestamp
+     * @see HttpDate#now()
      */
     public static String getHTTPTimeStamp() {
-        return getTimeStamp(httpFormat, new Date());
+        return HttpDate.now().toString();
     }
 
     public static String getTimeStamp(final SimpleDateFormat format, final Date date) {
@@ -42,7 +42,9 @@ public final class DownloadView extends StaticFileView implements IgnoreSyntax {
     }
 
     @Override public void handle(final AbstractRequest r, final Response response) {
-        final Path path = r.getMetaUnsafe("path");
+        super.handle(r, response);
+
+        final Path path = r.getMetaUnsafe("file");
         final String fileName = path.getEntityName();
         final FileExtension extension = r.getMetaUnsafe("extension");
 
@@ -27,7 +27,9 @@ import lombok.EqualsAndHashCode;
 import lombok.Getter;
 import xyz.kvantum.server.api.core.ServerImplementation;
 import xyz.kvantum.server.api.exceptions.KvantumException;
+import xyz.kvantum.server.api.matching.ViewPattern;
 import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.response.CacheValidators;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.util.Assert;
 import xyz.kvantum.server.api.util.ProviderFactory;
@@ -142,6 +144,30 @@ public abstract class RequestHandler {
      */
     public abstract boolean matches(AbstractRequest request);
 
+    /**
+     * Get the view pattern that requests must match in order to be served by this handler. This is used by the
+     * {@link xyz.kvantum.server.api.matching.RouteTrie} to narrow down which handlers are tested against a request,
+     * and must therefore never be more restrictive than {@link #matches(AbstractRequest)}
+     *
+     * @return View pattern, or null if the handler doesn't match requests using a single pattern
+     */
+    public ViewPattern getViewPattern() {
+        return null; // Nullable
+    }
+
+    /**
+     * Get the validators of the response that would be generated for a request, without generating it. If the
+     * request is conditional and the validators show that the client already has the response, {@code 304 Not
+     * Modified} is sent and the response is never generated. This is called after {@link #matches(AbstractRequest)},
+     * and should be cheap.
+     *
+     * @param request Incoming request
+     * @return Validators, or null if they can't be determined without generating the response
+     */
+    public CacheValidators getCacheValidators(final AbstractRequest request) {
+        return null; // Nullable
+    }
+
     /**
      * Attempt to serve a request
      *
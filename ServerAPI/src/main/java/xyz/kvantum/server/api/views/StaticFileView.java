@@ -22,31 +22,40 @@
 package xyz.kvantum.server.api.views;
 
 import xyz.kvantum.files.Path;
+import xyz.kvantum.server.api.cache.CacheApplicable;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.CoreConfig.Buffer;
 import xyz.kvantum.server.api.core.ServerImplementation;
-import xyz.kvantum.server.api.io.KvantumOutputStream;
+import xyz.kvantum.server.api.io.FileKvantumOutputStream;
 import xyz.kvantum.server.api.logging.Logger;
 import xyz.kvantum.server.api.matching.FilePattern;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.ContentEncoding;
 import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ByteRange;
+import xyz.kvantum.server.api.util.EntityTag;
 import xyz.kvantum.server.api.util.FileExtension;
-import xyz.kvantum.server.api.util.TimeUtil;
+import xyz.kvantum.server.api.util.HttpDate;
 
-import java.io.FileInputStream;
-import java.io.FileNotFoundException;
-import java.io.IOException;
-import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Date;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.function.Consumer;
+import java.util.concurrent.ThreadLocalRandom;
 
 @SuppressWarnings({"WeakerAccess", "unused"}) public abstract class StaticFileView extends View {
 
+    private static final AsciiString HEADER_RANGE = AsciiString.of("range");
+    private static final AsciiString HEADER_IF_RANGE = AsciiString.of("if-range");
+    private static final AsciiString RANGE_UNIT = AsciiString.of("bytes");
+    private static final AsciiString HEADER_ACCEPT_ENCODING = AsciiString.of("accept-encoding");
+
     final Collection<FileExtension> extensionList;
 
     public StaticFileView(String filter, Map<String, Object> options, String name,
@@ -109,53 +118,29 @@ import java.util.function.Consumer;
 
         final long fileLength = path.length();
 
+        //
+        // Validators and ranges can only be used when the file is served as-is
+        //
+        if (isServedAsIs(extension, fileLength)) {
+            final CacheValidators validators = createCacheValidators(path, fileLength);
+            validators.apply(response.getHeader());
+            response.getHeader().set(Header.HEADER_ACCEPT_RANGES, RANGE_UNIT);
+            if (this.handleRanges(r, response, extension, javaPath, fileLength, validators)) {
+                return;
+            }
+        } else {
+            response.getHeader().set(Header.HEADER_LAST_MODIFIED,
+                HttpDate.format(path.getLastModified()));
+        }
+
         if (fileLength > CoreConfig.Buffer.files) // Large files won't be read into memory
         {
             if (CoreConfig.debug) {
                 Logger.debug(
-                    "Reading chunks of '{0}' (too big to store into primary memory: {1} > {2})",
+                    "Serving '{0}' from disk (too big to store into primary memory: {1} > {2})",
                     path, fileLength, CoreConfig.Buffer.files);
             }
-            final InputStream inputStream;
-            final KvantumOutputStream responseStream = new KvantumOutputStream();
-            try {
-                inputStream = new FileInputStream(javaPath.toFile());
-            } catch (final FileNotFoundException e) {
-                e.printStackTrace();
-                return;
-            }
-            response.setResponse(responseStream);
-            final byte[] outerBuffer = new byte[Buffer.files];
-            final Consumer<Integer> writer = accepted -> {
-                final int toRead = Math.min(outerBuffer.length, accepted);
-                try {
-                    final int read = inputStream.read(outerBuffer, 0, toRead);
-                    if (CoreConfig.debug && read != toRead) {
-                        Logger.debug("StaticFileView: accepted was {0} but {1} was read", read,
-                            read);
-                    }
-                    responseStream.push(outerBuffer, read);
-                } catch (final IOException e) {
-                    e.printStackTrace();
-                }
-            };
-
-            final Consumer<Integer> finalizedAction = totalRead -> {
-                final int leftToRead = (int) (fileLength - totalRead);
-                if (leftToRead > 0) {
-                    responseStream.offer((int) (fileLength - totalRead), writer,
-                        null /* Will re-use this one */);
-                } else {
-                    responseStream.finish();
-                    try {
-                        inputStream.close();
-                    } catch (final Exception e) {
-                        Logger.error("Failed to close the input stream in StaticFileView: {}",
-                            e.getMessage());
-                    }
-                }
-            };
-            responseStream.offer((int) fileLength, writer, finalizedAction);
+            response.setResponse(new FileKvantumOutputStream(javaPath, 0L, fileLength));
         } else {
             if (CoreConfig.debug) {
                 Logger.debug("Reading entire file '{0}' into memory ({1} < {2})", path, fileLength,
@@ -166,15 +151,192 @@ import java.util.function.Consumer;
                 if (CoreConfig.debug) {
                     Logger.debug("Serving {} using byte[]", this);
                 }
-                response.setResponse(path.readBytes());
+                final ContentEncoding encoding =
+                    this.negotiateEncoding(r, extension, path, fileLength);
+                if (encoding == null) {
+                    response.setResponse(path.readBytes());
+                } else {
+                    //
+                    // Compressed variants are stored in the file cache, so that the file
+                    // is compressed once rather than for every request
+                    //
+                    encoding.applyHeaders(response.getHeader());
+                    if (encoding != ContentEncoding.IDENTITY) {
+                        createCacheValidators(path, fileLength, encoding)
+                            .apply(response.getHeader());
+                    }
+                    response.setResponse(path.readEncoded(encoding));
+                }
             } else {
                 response.setResponse(
                     extension.getComment("Served to you by Kvantum") + System.lineSeparator() + path
                         .readFile());
             }
         }
+    }
+
+    /**
+     * Check whether the response body is identical to the file. This isn't the case for text files that are passed on
+     * to the text handlers (such as templating engines), which may change the content for every request.
+     *
+     * @param extension  File extension
+     * @param fileLength Length of the file
+     * @return True if the file is served as-is
+     */
+    private static boolean isServedAsIs(final FileExtension extension, final long fileLength) {
+        return fileLength > CoreConfig.Buffer.files
+            || extension.getReadType() == FileExtension.ReadType.BYTES || !ServerImplementation
+            .getImplementation().getProcedure().hasHandlers();
+    }
+
+    /**
+     * Create the validators of a file. Files that are served from memory are tagged using their (cached) content,
+     * larger files using their modification time and length, so that they never have to be read.
+     *
+     * @param path       File
+     * @param fileLength Length of the file
+     * @return Validators
+     */
+    private static CacheValidators createCacheValidators(final Path path, final long fileLength) {
+        return createCacheValidators(path, fileLength, ContentEncoding.IDENTITY);
+    }
+
+    /**
+     * Create the validators of a variant of a file
+     *
+     * @param path       File
+     * @param fileLength Length of the file
+     * @param encoding   Content coding of the variant
+     * @return Validators
+     * @see #createCacheValidators(Path, long)
+     */
+    private static CacheValidators createCacheValidators(final Path path, final long fileLength,
+        final ContentEncoding encoding) {
+        final long lastModified = path.getLastModified();
+        EntityTag entityTag = null;
+        if (fileLength <= CoreConfig.Buffer.files) {
+            entityTag = path.getEntityTag(encoding);
+        }
+        if (entityTag == null) {
+            entityTag = EntityTag.of(lastModified, fileLength);
+        }
+        return CacheValidators.of(entityTag, lastModified);
+    }
+
+    @Override public CacheValidators getCacheValidators(final AbstractRequest request) {
+        final Object pathRaw = request.getMeta("file");
+        final Object extensionRaw = request.getMeta("extension");
+        if (!(pathRaw instanceof Path) || !(extensionRaw instanceof FileExtension)) {
+            return null; // Nullable
+        }
+        final Path path = (Path) pathRaw;
+        final long fileLength = path.length();
+        if (!isServedAsIs((FileExtension) extensionRaw, fileLength)) {
+            return null; // Nullable
+        }
+        final ContentEncoding encoding =
+            this.negotiateEncoding(request, (FileExtension) extensionRaw, path, fileLength);
+        return createCacheValidators(path, fileLength,
+            encoding == null ? ContentEncoding.IDENTITY : encoding);
+    }
+
+    /**
+     * Choose the coding that a file is sent with. Only files that are served from memory, as they are, are sent
+     * using the compressed variants in the file cache. Responses that are stored in the response cache are left
+     * alone, as the cache compiles compressed variants of its own.
+     *
+     * @param request    Request
+     * @param extension  File extension
+     * @param path       File
+     * @param fileLength Length of the file
+     * @return Chosen coding, or null if the response isn't negotiated here
+     */
+    private ContentEncoding negotiateEncoding(final AbstractRequest request,
+        final FileExtension extension, final Path path, final long fileLength) {
+        if (!CoreConfig.gzip || fileLength > CoreConfig.Buffer.files
+            || fileLength > CoreConfig.Cache.cachedFilesMaxSize
+            || fileLength < CoreConfig.Compression.minimumSize || !isServedAsIs(extension,
+            fileLength) || !ContentEncoding.isCompressible(extension.getContentType())) {
+            return null; // Nullable
+        }
+        if (this instanceof CacheApplicable && ((CacheApplicable) this).isApplicable(request)) {
+            return null; // Nullable
+        }
+        final ContentEncoding encoding = ContentEncoding
+            .negotiate(request.getHeader(HEADER_ACCEPT_ENCODING), ContentEncoding.GZIP,
+                ContentEncoding.IDENTITY);
+        if (encoding != ContentEncoding.IDENTITY && path.readEncoded(encoding) == null) {
+            return null; // Nullable
+        }
+        return encoding;
+    }
 
-        response.getHeader().set(Header.HEADER_LAST_MODIFIED,
-            TimeUtil.getHTTPTimeStamp(new Date(path.getLastModified())));
+    /**
+     * Serve the byte ranges requested by the client, if any. Only GET requests are considered, and {@code If-Range}
+     * has to match the validators of the file, see {@link CacheValidators#matchesIfRange(CharSequence)}.
+     *
+     * @param request    Request
+     * @param response   Response
+     * @param extension  File extension
+     * @param file       File
+     * @param fileLength Length of the file
+     * @param validators Validators of the file
+     * @return True if the ranges were served, false if the entire file should be served
+     */
+    private boolean handleRanges(final AbstractRequest request, final Response response,
+        final FileExtension extension, final java.nio.file.Path file, final long fileLength,
+        final CacheValidators validators) {
+        if (request.getQuery().getMethod() != HttpMethod.GET) {
+            return false;
+        }
+        final AsciiString range = request.getHeader(HEADER_RANGE);
+        if (range.isEmpty()) {
+            return false;
+        }
+        final AsciiString ifRange = request.getHeader(HEADER_IF_RANGE);
+        if (!ifRange.isEmpty() && !validators.matchesIfRange(ifRange)) {
+            return false; // The file may have changed since the client got the rest of it
+        }
+        final List<ByteRange> ranges = ByteRange.parse(range, fileLength);
+        if (ranges == null) {
+            return false;
+        }
+        if (ranges.isEmpty()) {
+            response.getHeader().setStatus(Header.STATUS_RANGE_NOT_SATISFIABLE);
+            response.getHeader().set(Header.HEADER_CONTENT_RANGE, "bytes */" + fileLength);
+            response.setResponse(new byte[0]);
+            return true;
+        }
+        response.getHeader().setStatus(Header.STATUS_PARTIAL_CONTENT);
+        if (ranges.size() == 1) {
+            final ByteRange byteRange = ranges.get(0);
+            response.getHeader()
+                .set(Header.HEADER_CONTENT_RANGE, byteRange.toContentRange(fileLength));
+            response.setResponse(
+                new FileKvantumOutputStream(file, byteRange.getFirst(), byteRange.getLength()));
+            return true;
+        }
+        //
+        // Multiple ranges are sent as multipart/byteranges, with the boundaries
+        // kept in memory and the ranges themselves transferred from the file
+        //
+        final String boundary = Long.toHexString(ThreadLocalRandom.current().nextLong())
+            + Long.toHexString(ThreadLocalRandom.current().nextLong());
+        final List<FileKvantumOutputStream.Segment> segments = new ArrayList<>();
+        for (final ByteRange byteRange : ranges) {
+            final String partHeader = "\r\n--" + boundary + "\r\nContent-Type: " + extension
+                .getContentType() + "\r\nContent-Range: " + byteRange.toContentRange(fileLength)
+                + "\r\n\r\n";
+            segments.add(FileKvantumOutputStream.Segment
+                .bytes(partHeader.getBytes(StandardCharsets.US_ASCII)));
+            segments.add(FileKvantumOutputStream.Segment
+                .region(byteRange.getFirst(), byteRange.getLength()));
+        }
+        segments.add(FileKvantumOutputStream.Segment
+            .bytes(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII)));
+        response.getHeader().set(Header.HEADER_CONTENT_TYPE,
+            "multipart/byteranges; boundary=" + boundary);
+        response.setResponse(new FileKvantumOutputStream(file, segments));
+        return true;
     }
 }
@@ -26,6 +26,7 @@ import lombok.Getter;
 import lombok.Setter;
 import xyz.kvantum.files.FileSystem;
 import xyz.kvantum.files.Path;
+import xyz.kvantum.server.api.cache.CacheKeyAttributes;
 import xyz.kvantum.server.api.config.CoreConfig;
 import xyz.kvantum.server.api.config.Message;
 import xyz.kvantum.server.api.core.ServerImplementation;
@@ -42,6 +43,7 @@ import xyz.kvantum.server.api.util.AsciiString;
 import xyz.kvantum.server.api.util.Assert;
 
 import java.io.File;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
@@ -90,6 +92,10 @@ public class View extends RequestHandler {
     private static final String FILE_PATTERN = "filePattern";
     private static final String FOLDER = "folder";
     private static final String FILE_MATCHER = "fileMatcher";
+    private static final String CACHE_PARAMETERS = "cacheParameters";
+    private static final String CACHE_VARY = "cacheVary";
+    private static final String CACHE_SOFT_TTL = "cacheSoftTtl";
+    private static final String CACHE_HARD_TTL = "cacheHardTtl";
     private static final String DEFAULT_RESPONSE = "<h1>Hello World!</h1>";
     protected final Map<HeaderOption, String> headers = new HashMap<>();
     protected final Map<String, Object> options;
@@ -100,6 +106,7 @@ public class View extends RequestHandler {
     public String relatedFolderPath;
     protected boolean forceHTTPS;
     protected String defaultFilePattern = "${file}.${extension}";
+    protected CacheKeyAttributes cacheKeyAttributes;
     private Path folder;
     private int buffer = -1;
     private ViewReturn viewReturn;
@@ -227,6 +234,55 @@ public class View extends RequestHandler {
         return b.toString();
     }
 
+    /**
+     * Get the request attributes that affect cached responses, for views that are {@link
+     * xyz.kvantum.server.api.cache.CacheApplicable}. The query parameters and request headers are read from the
+     * "cacheParameters" and "cacheVary" options. All query parameters are included if "cacheParameters" isn't set.
+     *
+     * @return Cache key attributes
+     */
+    @SuppressWarnings("unchecked") public CacheKeyAttributes getCacheKeyAttributes() {
+        if (this.cacheKeyAttributes == null) {
+            CacheKeyAttributes attributes = CacheKeyAttributes.DEFAULT;
+            if (this.options.containsKey(CACHE_PARAMETERS)) {
+                attributes = attributes
+                    .withParameters((Collection<String>) this.options.get(CACHE_PARAMETERS));
+            }
+            if (this.options.containsKey(CACHE_VARY)) {
+                attributes =
+                    attributes.withHeaders((Collection<String>) this.options.get(CACHE_VARY));
+            }
+            this.cacheKeyAttributes = attributes;
+        }
+        return this.cacheKeyAttributes;
+    }
+
+    /**
+     * Get the number of seconds that cached responses are fresh, for views that are {@link
+     * xyz.kvantum.server.api.cache.CacheApplicable}. This is read from the "cacheSoftTtl" option.
+     *
+     * @return Soft time to live, in seconds
+     */
+    public int getCacheSoftTtl() {
+        return ((Number) this.options
+            .getOrDefault(CACHE_SOFT_TTL, CoreConfig.Cache.cachedBodiesExpiry)).intValue();
+    }
+
+    /**
+     * Get the number of seconds after which cached responses are discarded, for views that are {@link
+     * xyz.kvantum.server.api.cache.CacheApplicable}. This is read from the "cacheHardTtl" option. Stale responses are
+     * served while they are regenerated in the background, for {@link CoreConfig.Cache#cachedBodiesStaleTime} seconds
+     * by default.
+     *
+     * @return Hard time to live, in seconds
+     */
+    public int getCacheHardTtl() {
+        if (this.options.containsKey(CACHE_HARD_TTL)) {
+            return ((Number) this.options.get(CACHE_HARD_TTL)).intValue();
+        }
+        return this.getCacheSoftTtl() + CoreConfig.Cache.cachedBodiesStaleTime;
+    }
+
     /**
      * Check if the option is stored
      *
@@ -370,7 +426,7 @@ public class View extends RequestHandler {
             return false;
         }
 
-        final Map<String, String> map = viewPattern.matches(request.getQuery().getFullRequest());
+        final Map<String, String> map = viewPattern.matches(request.getQuery().getResource());
         if (map != null) {
             request.addMeta(CONSTANT_VARIABLES, map);
         }
@@ -383,6 +439,10 @@ public class View extends RequestHandler {
         return map != null && passes(request);
     }
 
+    @Override public final ViewPattern getViewPattern() {
+        return this.viewPattern;
+    }
+
     /**
      * This is for further testing (... further than regex...) For example, check if a file exists etc.
      *
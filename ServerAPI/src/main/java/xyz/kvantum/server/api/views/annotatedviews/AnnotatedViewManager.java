@@ -21,6 +21,7 @@
  */
 package xyz.kvantum.server.api.views.annotatedviews;
 
+import xyz.kvantum.server.api.cache.CacheKeyAttributes;
 import xyz.kvantum.server.api.request.AbstractRequest;
 import xyz.kvantum.server.api.response.Response;
 import xyz.kvantum.server.api.util.CollectionUtil;
@@ -73,6 +74,14 @@ public final class AnnotatedViewManager {
                     new IllegalArgumentException("M has wrong parameter types").printStackTrace();
                 } else {
                     declaration.setCache(matcher.cache());
+                    final CacheKeyAttributes cacheKeyAttributes =
+                        Arrays.asList(matcher.cacheParameters()).contains("*") ?
+                            CacheKeyAttributes.DEFAULT :
+                            CacheKeyAttributes.parameters(matcher.cacheParameters());
+                    declaration.setCacheKeyAttributes(
+                        cacheKeyAttributes.withHeaders(matcher.cacheVary()));
+                    declaration.setCacheSoftTtl(matcher.cacheSoftTtl());
+                    declaration.setCacheHardTtl(matcher.cacheHardTtl());
                     declaration.setFilter(matcher.filter());
                     declaration.setMiddleware(matcher.middlewares());
                     declaration.setForceHttps(matcher.forceHTTPS());
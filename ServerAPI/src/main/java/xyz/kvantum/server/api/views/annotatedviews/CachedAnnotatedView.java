@@ -31,6 +31,13 @@ final class CachedAnnotatedView<C> extends View implements CacheApplicable {
         super(viewDeclaration.getFilter(), viewDeclaration.getName(), null, method,
             viewDeclaration.getHttpMethod());
         this.forceHTTPS = viewDeclaration.isForceHttps();
+        this.cacheKeyAttributes = viewDeclaration.getCacheKeyAttributes();
+        if (viewDeclaration.getCacheSoftTtl() >= 0) {
+            this.options.put("cacheSoftTtl", viewDeclaration.getCacheSoftTtl());
+        }
+        if (viewDeclaration.getCacheHardTtl() >= 0) {
+            this.options.put("cacheHardTtl", viewDeclaration.getCacheHardTtl());
+        }
     }
 
     @Override public boolean passes(final AbstractRequest request) {
@@ -22,6 +22,7 @@
 package xyz.kvantum.server.api.views.annotatedviews;
 
 import lombok.Data;
+import xyz.kvantum.server.api.cache.CacheKeyAttributes;
 import xyz.kvantum.server.api.request.HttpMethod;
 import xyz.kvantum.server.api.views.requesthandler.Middleware;
 
@@ -31,6 +32,9 @@ import xyz.kvantum.server.api.views.requesthandler.Middleware;
     private String name;
     private Class<? extends Middleware>[] middleware;
     private boolean cache = true;
+    private CacheKeyAttributes cacheKeyAttributes = CacheKeyAttributes.DEFAULT;
+    private int cacheSoftTtl = -1;
+    private int cacheHardTtl = -1;
     private boolean forceHttps = true;
     private HttpMethod httpMethod = HttpMethod.ALL;
     private OutputConverter outputConverter = null;
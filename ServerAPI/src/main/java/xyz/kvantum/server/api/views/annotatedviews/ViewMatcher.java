@@ -39,6 +39,29 @@ import java.lang.annotation.Target;
 
     boolean cache() default false;
 
+    /**
+     * The query parameters that are included in the cache key, if {@link #cache()} is enabled. {@code "*"} includes
+     * all parameters.
+     */
+    String[] cacheParameters() default "*";
+
+    /**
+     * The request headers that are included in the cache key, if {@link #cache()} is enabled
+     */
+    String[] cacheVary() default {};
+
+    /**
+     * The number of seconds that cached responses are fresh, if {@link #cache()} is enabled. Negative values use the
+     * configured default.
+     */
+    int cacheSoftTtl() default -1;
+
+    /**
+     * The number of seconds after which cached responses are discarded, if {@link #cache()} is enabled. Stale
+     * responses are served while they are regenerated in the background. Negative values use the configured default.
+     */
+    int cacheHardTtl() default -1;
+
     boolean forceHTTPS() default false;
 
     HttpMethod httpMethod() default HttpMethod.ALL;
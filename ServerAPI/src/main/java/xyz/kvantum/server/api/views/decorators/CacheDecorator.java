@@ -24,12 +24,10 @@ package xyz.kvantum.server.api.views.decorators;
 import lombok.Builder;
 import xyz.kvantum.server.api.response.Header;
 import xyz.kvantum.server.api.response.HeaderOption;
+import xyz.kvantum.server.api.util.HttpDate;
 import xyz.kvantum.server.api.util.MapBuilder;
-import xyz.kvantum.server.api.util.TimeUtil;
 import xyz.kvantum.server.api.views.Decorator;
 
-import java.util.Date;
-
 @Builder public final class CacheDecorator {
 
     @Builder.Default public boolean cachePublic = true;
@@ -48,7 +46,7 @@ import java.util.Date;
         cacheBuilder.append(cachePublic ? "public" : "private");
         cacheBuilder.append(", max-age=").append(maxAge);
         if (expires.isEmpty()) {
-            expires = TimeUtil.getHTTPTimeStamp(new Date(System.currentTimeMillis() + maxAge));
+            expires = HttpDate.format(System.currentTimeMillis() + maxAge);
         }
         if (noCache) {
             cacheBuilder.append(", no-cache");
@@ -99,6 +99,13 @@ import java.util.function.BiConsumer;
         return compiledPattern;
     }
 
+    @Override public ViewPattern getViewPattern() {
+        if (this.pattern == null) {
+            return null; // Nullable
+        }
+        return this.getPattern();
+    }
+
     @Override public String toString() {
         return this.pattern;
     }
@@ -112,7 +119,7 @@ import java.util.function.BiConsumer;
             }
             return false;
         }
-        final Map<String, String> map = getPattern().matches(request.getQuery().getFullRequest());
+        final Map<String, String> map = getPattern().matches(request.getQuery().getResource());
         if (map != null) {
             request.addMeta("variables", map);
         } else if (CoreConfig.debug) {
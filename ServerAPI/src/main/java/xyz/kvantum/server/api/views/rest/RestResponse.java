@@ -80,7 +80,7 @@ import java.util.Map;
     }
 
     protected final boolean matches(final AbstractRequest request) {
-        final Map<String, String> map = viewPattern.matches(request.getQuery().getFullRequest());
+        final Map<String, String> map = viewPattern.matches(request.getQuery().getResource());
         if (map != null) {
             request.addMeta("variables", map);
         }
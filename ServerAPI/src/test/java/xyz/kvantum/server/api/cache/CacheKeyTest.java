@@ -0,0 +1,104 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.mocking.MockRequest;
+import xyz.kvantum.server.api.request.AbstractRequest;
+import xyz.kvantum.server.api.request.HttpMethod;
+import xyz.kvantum.server.api.util.AsciiString;
+import xyz.kvantum.server.api.util.ProtocolType;
+import xyz.kvantum.server.api.views.RequestHandler;
+import xyz.kvantum.server.api.views.requesthandler.SimpleRequestHandler;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CacheKeyTest {
+
+    private static final RequestHandler HANDLER =
+        SimpleRequestHandler.builder().pattern("[page]").generator((request, response) -> {
+        }).build();
+
+    private static AbstractRequest request(final HttpMethod method, final String query) {
+        return new MockRequest(AbstractRequest.QueryCache.getInstance()
+            .getQuery(new AbstractRequest.QueryParameters(method, ProtocolType.HTTP, query)));
+    }
+
+    private static CacheKey key(final String query, final CacheKeyAttributes attributes) {
+        return CacheKey.of(request(HttpMethod.GET, query), HANDLER, attributes);
+    }
+
+    @Test void normalizePath() {
+        assertEquals("/", CacheKey.normalizePath(""));
+        assertEquals("/", CacheKey.normalizePath("/"));
+        assertEquals("/", CacheKey.normalizePath("//"));
+        assertEquals("/a/b", CacheKey.normalizePath("/a/b"));
+        assertEquals("/a/b", CacheKey.normalizePath("a//b/"));
+        assertEquals("/a/b", CacheKey.normalizePath("//a///b//"));
+    }
+
+    @Test void pathAndMethod() {
+        assertEquals(key("/a", CacheKeyAttributes.DEFAULT),
+            key("/a/", CacheKeyAttributes.DEFAULT));
+        assertNotEquals(key("/a", CacheKeyAttributes.DEFAULT),
+            key("/b", CacheKeyAttributes.DEFAULT));
+        assertNotEquals(key("/a", CacheKeyAttributes.DEFAULT),
+            CacheKey.of(request(HttpMethod.POST, "/a"), HANDLER, CacheKeyAttributes.DEFAULT));
+    }
+
+    @Test void parameters() {
+        assertEquals(key("/a?x=1&y=2", CacheKeyAttributes.DEFAULT),
+            key("/a?y=2&x=1", CacheKeyAttributes.DEFAULT));
+        assertNotEquals(key("/a?x=1", CacheKeyAttributes.DEFAULT),
+            key("/a?x=2", CacheKeyAttributes.DEFAULT));
+        assertNotEquals(key("/a?x=1", CacheKeyAttributes.DEFAULT),
+            key("/a", CacheKeyAttributes.DEFAULT));
+
+        final CacheKeyAttributes attributes = CacheKeyAttributes.parameters("x");
+        assertEquals(key("/a?x=1&utm=foo", attributes), key("/a?x=1", attributes));
+        assertNotEquals(key("/a?x=1", attributes), key("/a?x=2", attributes));
+        assertNotEquals(key("/a?x=", attributes), key("/a", attributes));
+    }
+
+    @Test void headers() {
+        final CacheKeyAttributes attributes =
+            CacheKeyAttributes.DEFAULT.withHeaders("Accept-Language");
+        final AbstractRequest english = request(HttpMethod.GET, "/a");
+        english.getHeaders().put(AsciiString.of("accept-language"), AsciiString.of("en"));
+        final AbstractRequest swedish = request(HttpMethod.GET, "/a");
+        swedish.getHeaders().put(AsciiString.of("accept-language"), AsciiString.of("sv"));
+        assertNotEquals(CacheKey.of(english, HANDLER, attributes),
+            CacheKey.of(swedish, HANDLER, attributes));
+        assertEquals(CacheKey.of(english, HANDLER, CacheKeyAttributes.DEFAULT),
+            CacheKey.of(swedish, HANDLER, CacheKeyAttributes.DEFAULT));
+
+        final CacheKey key = CacheKey.of(english, HANDLER, CacheKeyAttributes.DEFAULT);
+        assertSame(key, key.withHeaders(english, new AsciiString[0]));
+        final AsciiString[] vary = {AsciiString.of("accept-language")};
+        assertEquals(CacheKey.of(english, HANDLER, attributes), key.withHeaders(english, vary));
+        assertEquals(CacheKey.of(english, HANDLER, attributes),
+            CacheKey.of(english, HANDLER, attributes).withHeaders(english, vary));
+    }
+
+}
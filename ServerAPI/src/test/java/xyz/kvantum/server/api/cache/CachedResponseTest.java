@@ -0,0 +1,124 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.ContentEncoding;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.response.Response;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CachedResponseTest {
+
+    private static byte[] toBytes(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
+    private static String body() {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("<p>Paragraph ").append(i).append("</p>\n");
+        }
+        return builder.toString();
+    }
+
+    @Test void compressedVariant() throws IOException {
+        final String body = body();
+        final CachedResponse cachedResponse = new CachedResponse(new Response().setResponse(body));
+
+        assertEquals(ContentEncoding.GZIP,
+            cachedResponse.negotiate(AsciiString.of("gzip, deflate")));
+        assertEquals(ContentEncoding.IDENTITY, cachedResponse.negotiate(AsciiString.of("br")));
+
+        final PrecompiledResponse identity =
+            cachedResponse.getPrecompiledResponse(ContentEncoding.IDENTITY);
+        final PrecompiledResponse gzip = cachedResponse.getPrecompiledResponse(ContentEncoding.GZIP);
+        assertTrue(gzip.getBodyLength() < identity.getBodyLength());
+        assertEquals(identity.getLength() + gzip.getLength(), cachedResponse.getWeight());
+        try (final InputStream inputStream = new GZIPInputStream(
+            new ByteArrayInputStream(toBytes(gzip.getBody())))) {
+            assertArrayEquals(body.getBytes(StandardCharsets.UTF_8), inputStream.readAllBytes());
+        }
+
+        final String gzipHeaders =
+            new String(toBytes(gzip.getHeadersAndBody()), StandardCharsets.ISO_8859_1);
+        assertTrue(gzipHeaders.contains("Content-Encoding: gzip\r\n"));
+        assertTrue(gzipHeaders.contains("Vary: Accept-Encoding\r\n"));
+        final String identityHeaders =
+            new String(toBytes(identity.getHeadersAndBody()), StandardCharsets.ISO_8859_1);
+        assertFalse(identityHeaders.contains("Content-Encoding:"));
+        assertTrue(identityHeaders.contains("Vary: Accept-Encoding\r\n"));
+
+        // The variants have entity tags of their own
+        final CacheValidators identityValidators =
+            cachedResponse.getCacheValidators(ContentEncoding.IDENTITY);
+        final CacheValidators gzipValidators =
+            cachedResponse.getCacheValidators(ContentEncoding.GZIP);
+        assertNotEquals(identityValidators.getEntityTag(), gzipValidators.getEntityTag());
+        assertTrue(gzipHeaders
+            .contains("ETag: " + gzipValidators.getEntityTag().getHeaderValue() + "\r\n"));
+
+        // The cached header isn't changed
+        assertFalse(cachedResponse.getHeader().get(Header.HEADER_CONTENT_ENCODING).isPresent());
+    }
+
+    @Test void incompressible() {
+        final Response response = new Response().setResponse(new byte[4096]);
+        response.getHeader().set(Header.HEADER_CONTENT_TYPE, "image/png");
+        final CachedResponse cachedResponse = new CachedResponse(response);
+        assertEquals(ContentEncoding.IDENTITY, cachedResponse.negotiate(AsciiString.of("gzip")));
+        assertNull(cachedResponse.getPrecompiledResponse(ContentEncoding.GZIP));
+        assertNull(cachedResponse.getCacheValidators(ContentEncoding.GZIP));
+        assertFalse(new String(toBytes(cachedResponse.getPrecompiledResponse().getHeadersAndBody()),
+            StandardCharsets.ISO_8859_1).contains("Vary:"));
+    }
+
+    @Test void forRequest() {
+        final CachedResponse cachedResponse =
+            new CachedResponse(new Response().setResponse(body()));
+        final CachedResponse copy = cachedResponse.forRequest();
+        copy.getHeader().set(Header.HEADER_CONNECTION, "close");
+        assertFalse(cachedResponse.getHeader().get(Header.HEADER_CONNECTION).isPresent());
+        assertEquals(cachedResponse.getHeader().get(Header.HEADER_CONTENT_TYPE),
+            copy.getHeader().get(Header.HEADER_CONTENT_TYPE));
+        assertEquals(cachedResponse.getPrecompiledResponse(ContentEncoding.GZIP),
+            copy.getPrecompiledResponse(ContentEncoding.GZIP));
+    }
+
+}
@@ -0,0 +1,88 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.cache;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.response.CacheValidators;
+import xyz.kvantum.server.api.response.Header;
+import xyz.kvantum.server.api.util.EntityTag;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PrecompiledResponseTest {
+
+    private static String toString(final ByteBuffer buffer) {
+        final byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
+
+    private static Header header() {
+        final Header header = new Header(Header.STATUS_OK);
+        header.set(Header.HEADER_CONTENT_TYPE, "text/plain");
+        header.set(Header.HEADER_DATE, "Thu, 01 Jan 1970 00:00:00 GMT");
+        header.set(Header.HEADER_CONNECTION, "close");
+        header.set(Header.HEADER_TRANSFER_ENCODING, "chunked");
+        return header;
+    }
+
+    @Test void compile() {
+        final Header header = header();
+        final byte[] body = "Hello".getBytes(StandardCharsets.US_ASCII);
+        final PrecompiledResponse response = PrecompiledResponse
+            .compile(header, CacheValidators.of(EntityTag.strong("abc"), 0L), body, false);
+
+        assertEquals("HTTP/1.1 200 OK\r\n", toString(response.getStatusLine()));
+        final String rest = toString(response.getHeadersAndBody());
+        assertTrue(rest.contains("Content-Type: text/plain\r\n"));
+        assertTrue(rest.contains("Content-Length: 5\r\n"));
+        assertTrue(rest.contains("ETag: \"abc\"\r\n"));
+        assertTrue(rest.contains("Last-Modified: Thu, 01 Jan 1970 00:00:00 GMT\r\n"));
+        assertFalse(rest.contains("Date:"));
+        assertFalse(rest.contains("Connection:"));
+        assertFalse(rest.contains("Transfer-Encoding:"));
+        assertTrue(rest.endsWith("\r\n\r\nHello"));
+
+        assertEquals("Hello", toString(response.getBody()));
+        assertEquals(5, response.getBodyLength());
+        assertEquals(response.getStatusLine().remaining() + response.getHeadersAndBody().remaining(),
+            response.getLength());
+        // The header itself is left as it is
+        assertTrue(header.get(Header.HEADER_DATE).isPresent());
+        assertFalse(header.get(Header.HEADER_CONTENT_LENGTH).isPresent());
+    }
+
+    @Test void direct() {
+        final PrecompiledResponse response = PrecompiledResponse
+            .compile(header(), null, new byte[] {1, 2, 3}, true);
+        assertTrue(response.getBody().isDirect());
+        assertTrue(response.getBody().isReadOnly());
+        assertEquals(3, response.getBody().remaining());
+        assertTrue(toString(response.getHeadersAndBody()).contains("Last-Modified: "));
+    }
+
+}
@@ -0,0 +1,90 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.io;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteBufferKvantumOutputStreamTest {
+
+    private static byte[] content() {
+        final byte[] content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private static ByteBuffer direct(final byte[] content) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(content.length).put(content);
+        buffer.flip();
+        return buffer;
+    }
+
+    private static byte[] readFully(final KvantumOutputStream stream) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[999];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test void read() {
+        final byte[] content = content();
+        final ByteBufferKvantumOutputStream stream =
+            new ByteBufferKvantumOutputStream(direct(content));
+        assertEquals(content.length, stream.getLength());
+        assertArrayEquals(content, readFully(stream));
+        assertTrue(stream.isFinished());
+        assertEquals(0, stream.getContent().remaining());
+    }
+
+    @Test void sharedContent() {
+        final byte[] content = content();
+        final ByteBuffer buffer = direct(content);
+        final ByteBufferKvantumOutputStream first = new ByteBufferKvantumOutputStream(buffer);
+        final ByteBufferKvantumOutputStream second = new ByteBufferKvantumOutputStream(buffer);
+        assertArrayEquals(content, readFully(first));
+        assertEquals(content.length, second.getContent().remaining());
+        assertTrue(second.getContent().isReadOnly());
+        assertArrayEquals(content, second.getAll());
+        assertEquals(0, buffer.position());
+    }
+
+    @Test void replaceBytes() {
+        final ByteBufferKvantumOutputStream stream =
+            new ByteBufferKvantumOutputStream(direct(content()));
+        stream.replaceBytes(new byte[] {1, 2, 3});
+        assertEquals(3, stream.getLength());
+        assertArrayEquals(new byte[] {1, 2, 3}, stream.getAll());
+        assertArrayEquals(new byte[] {1, 2, 3}, readFully(stream));
+    }
+
+}
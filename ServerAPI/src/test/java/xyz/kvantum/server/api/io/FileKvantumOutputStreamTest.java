@@ -0,0 +1,99 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.io;
+
+import org.junit.Assert;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+@TestInstance(TestInstance.Lifecycle.PER_CLASS) class FileKvantumOutputStreamTest {
+
+    private Path file;
+    private byte[] content;
+
+    @BeforeAll void initAll() throws IOException {
+        this.content = new byte[10_000];
+        for (int i = 0; i < this.content.length; i++) {
+            this.content[i] = (byte) i;
+        }
+        this.file = Files.createTempFile("kvantum", ".bin");
+        Files.write(this.file, this.content);
+    }
+
+    @AfterAll void tearDownAll() throws IOException {
+        Files.deleteIfExists(this.file);
+    }
+
+    private byte[] readFully(final KvantumOutputStream stream) {
+        final ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+        final byte[] buffer = new byte[999];
+        int read;
+        while ((read = stream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, read);
+        }
+        return outputStream.toByteArray();
+    }
+
+    @Test void readEntireFile() {
+        final FileKvantumOutputStream stream = new FileKvantumOutputStream(this.file);
+        Assert.assertEquals(this.content.length, stream.getLength());
+        Assert.assertArrayEquals(this.content, readFully(stream));
+        Assert.assertTrue(stream.isFinished());
+    }
+
+    @Test void readRegion() {
+        final FileKvantumOutputStream stream = new FileKvantumOutputStream(this.file, 1234, 5000);
+        Assert.assertArrayEquals(Arrays.copyOfRange(this.content, 1234, 6234), readFully(stream));
+    }
+
+    @Test void readSegments() {
+        final byte[] boundary = "--boundary--".getBytes(StandardCharsets.US_ASCII);
+        final FileKvantumOutputStream stream = new FileKvantumOutputStream(this.file, Arrays
+            .asList(FileKvantumOutputStream.Segment.bytes(boundary),
+                FileKvantumOutputStream.Segment.region(9000, 1000),
+                FileKvantumOutputStream.Segment.bytes(boundary),
+                FileKvantumOutputStream.Segment.region(0, 10)));
+        final ByteArrayOutputStream expected = new ByteArrayOutputStream();
+        expected.write(boundary, 0, boundary.length);
+        expected.write(this.content, 9000, 1000);
+        expected.write(boundary, 0, boundary.length);
+        expected.write(this.content, 0, 10);
+        Assert.assertEquals(expected.size(), stream.getLength());
+        Assert.assertArrayEquals(expected.toByteArray(), readFully(stream));
+    }
+
+    @Test void readEmptyRegion() {
+        final FileKvantumOutputStream stream = new FileKvantumOutputStream(this.file, 10, 0);
+        Assert.assertEquals(0, readFully(stream).length);
+        Assert.assertTrue(stream.isFinished());
+    }
+
+}
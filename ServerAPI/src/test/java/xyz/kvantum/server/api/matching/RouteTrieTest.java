@@ -0,0 +1,133 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.matching;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.config.CoreConfig;
+import xyz.kvantum.server.api.views.RequestHandler;
+import xyz.kvantum.server.api.views.requesthandler.SimpleRequestHandler;
+import xyz.kvantum.server.api.views.rest.RestHandler;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+class RouteTrieTest {
+
+    private static final String[] PATTERNS =
+        {"user/<username>", "news/[page=0]", "user/<username>/posts/[page]",
+            "/test/file.extension.[extension]/", "static/page", "static/<page>", "", "[file]",
+            "<folder>/[file].[extension]", "<id>/edit", "<name>.json", "files/<name>.<ext>",
+            "a/<b>/c", "[first].[second]", "<user>/posts/[page]"};
+
+    private static final String[] PATHS =
+        {"", "/", "/user/Username", "/user/", "/news", "/news/10", "/newsfoo", "/news/foo/bar",
+            "/user/Username/posts", "/user/Username/posts/10", "/test/file.extension.com",
+            "/static/page", "/static/page/", "/static/other", "//static/page", "/static//page",
+            "/index", "/css/style.css", "/static/page?foo=bar", "/5/edit", "/5/edit/", "/5//edit",
+            "/data.json", "/data.json/", "/files/a.txt", "/files/a", "/a/x/c", "/a//c", "/a/x/c/d",
+            "/first.second", ".second", "/bob/posts", "/bob/posts/2", "/bob/postsfoo"};
+
+    private static SimpleRequestHandler createHandler(final String pattern) {
+        return SimpleRequestHandler.builder().pattern(pattern).generator((request, response) -> {
+        }).build();
+    }
+
+    @BeforeAll static void setup() {
+        CoreConfig.debug = false; // Prevent logging
+    }
+
+    @Test void candidatesContainAllMatches() {
+        final List<RequestHandler> handlers = new ArrayList<>();
+        for (final String pattern : PATTERNS) {
+            handlers.add(createHandler(pattern));
+        }
+        final RouteTrie routeTrie = new RouteTrie(handlers);
+        final boolean regexPatternMatching = CoreConfig.regexPatternMatching;
+        try {
+            for (final boolean regex : new boolean[] {false, true}) {
+                CoreConfig.regexPatternMatching = regex;
+                for (final String path : PATHS) {
+                    final List<RequestHandler> candidates = routeTrie.getCandidates(path);
+                    for (final RequestHandler handler : handlers) {
+                        if (handler.getViewPattern().matches(path) != null) {
+                            Assertions.assertTrue(candidates.contains(handler), String
+                                .format("'%s' should be a candidate for '%s'", handler, path));
+                        }
+                    }
+                }
+            }
+        } finally {
+            CoreConfig.regexPatternMatching = regexPatternMatching;
+        }
+    }
+
+    @Test void candidatesAreNarrowed() {
+        final SimpleRequestHandler user = createHandler("user/<username>");
+        final SimpleRequestHandler news = createHandler("news/[page=0]");
+        final SimpleRequestHandler staticPage = createHandler("static/page");
+        final RouteTrie routeTrie = new RouteTrie(Arrays.asList(user, news, staticPage));
+
+        Assertions.assertEquals(Arrays.asList(user), routeTrie.getCandidates("/user/Username"));
+        Assertions.assertEquals(Arrays.asList(news), routeTrie.getCandidates("/news/10"));
+        Assertions.assertEquals(Arrays.asList(staticPage), routeTrie.getCandidates("/static/page"));
+        Assertions.assertTrue(routeTrie.getCandidates("/static/other").isEmpty());
+        Assertions.assertTrue(routeTrie.getCandidates("/other").isEmpty());
+    }
+
+    @Test void variableSegmentsAreIndexed() {
+        final SimpleRequestHandler edit = createHandler("<id>/edit");
+        final SimpleRequestHandler json = createHandler("<name>.json");
+        final SimpleRequestHandler file = createHandler("files/<name>.<ext>");
+        final RouteTrie routeTrie = new RouteTrie(Arrays.asList(edit, json, file));
+
+        Assertions.assertEquals(Arrays.asList(edit), routeTrie.getCandidates("/5/edit"));
+        Assertions.assertEquals(Arrays.asList(json), routeTrie.getCandidates("/data.json"));
+        Assertions.assertEquals(Arrays.asList(file), routeTrie.getCandidates("/files/a.txt"));
+        Assertions.assertTrue(routeTrie.getCandidates("/5/view").isEmpty());
+        Assertions.assertTrue(routeTrie.getCandidates("/5/edit/more").isEmpty());
+    }
+
+    @Test void candidatesAreReused() {
+        final SimpleRequestHandler user = createHandler("user/<username>");
+        final RouteTrie routeTrie = new RouteTrie(Arrays.asList(user));
+
+        final List<RequestHandler> candidates = routeTrie.getCandidates("/user/Username");
+        Assertions.assertSame(candidates, routeTrie.getCandidates("/other"));
+        Assertions.assertTrue(candidates.isEmpty());
+    }
+
+    @Test void candidatesKeepOrder() {
+        final SimpleRequestHandler first = createHandler("[file]");
+        final RestHandler second = new RestHandler();
+        final SimpleRequestHandler third = createHandler("user/<username>");
+        final SimpleRequestHandler fourth = createHandler("user/[username]");
+        final RouteTrie routeTrie = new RouteTrie(Arrays.asList(fourth, third, second, first));
+
+        Assertions.assertEquals(Arrays.asList(fourth, third, second),
+            routeTrie.getCandidates("/user/Username"));
+        Assertions.assertEquals(Arrays.asList(second, first), routeTrie.getCandidates("/index"));
+    }
+
+}
@@ -0,0 +1,77 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.matching;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import xyz.kvantum.server.api.config.CoreConfig;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the hand-written {@link ViewPattern} matcher with the legacy regex implementation. Run using {@link
+ * #main(String[])}, preferably with {@code -prof gc} to compare allocation rates.
+ */
+@BenchmarkMode(Mode.AverageTime) @OutputTimeUnit(TimeUnit.NANOSECONDS) @State(Scope.Benchmark)
+@Warmup(iterations = 5, time = 1) @Measurement(iterations = 5, time = 1) @Fork(1)
+public class ViewPatternBenchmark {
+
+    @Param({"user/<username>/posts/[page]", "/test/file.extension.[extension]/", "news/[page=0]"})
+    private String pattern;
+
+    @Param({"user/Citymonstret/posts/10", "/test/file.extension.com", "news/foo/bar",
+        "static/css/style.min.css?v=1"}) private String path;
+
+    private ViewPattern viewPattern;
+
+    public static void main(final String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ViewPatternBenchmark.class.getSimpleName()).build())
+            .run();
+    }
+
+    @Setup public void setup() {
+        CoreConfig.debug = false;
+        this.viewPattern = new ViewPattern(this.pattern);
+    }
+
+    @Benchmark public Map<String, String> matches() {
+        return this.viewPattern.matches(this.path);
+    }
+
+    @Benchmark public Map<String, String> matchesRegex() {
+        return this.viewPattern.matchesRegex(this.path);
+    }
+
+}
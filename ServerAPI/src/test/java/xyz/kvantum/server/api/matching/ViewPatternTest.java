@@ -26,6 +26,7 @@ import org.junit.jupiter.api.Test;
 import xyz.kvantum.server.api.config.CoreConfig;
 
 import java.util.Map;
+import java.util.Objects;
 
 class ViewPatternTest {
 
@@ -88,4 +89,27 @@ class ViewPatternTest {
         Assert.assertEquals("com", map.get("extension"));
     }
 
+    @Test void matchesLikeRegex() {
+        CoreConfig.debug = false; // Prevent logging
+
+        final String[] patterns =
+            {"", "user/<username>", "news/[page=0]", "user/<username>/posts/[page]",
+                "/test/file.extension.[extension]/", "[file].[extension]", "a/[b]/[c]", "<a>.<b>"};
+        final String[] paths =
+            {"", "/", "user", "user/", "user/foo", "/user/foo/", "user//foo", "user/foo/bar", "news",
+                "news/", "newsfoo", "news/1", "news/foo/bar", "user/foo/posts", "user/foo/posts/10",
+                "test/file.extension.com", "test/file.extension", "file.txt", "file..txt",
+                "foo.bar.baz", "a", "a/b", "a//b/c", "a/b/c/d", "a.b", "user/foo?bar=baz"};
+        for (final String raw : patterns) {
+            final ViewPattern pattern = new ViewPattern(raw);
+            for (final String path : paths) {
+                final Map<String, String> expected = pattern.matchesRegex(path);
+                final Map<String, String> actual = pattern.matches(path);
+                Assert.assertTrue(
+                    "Pattern '" + raw + "' gave " + actual + " for '" + path + "', expected "
+                        + expected, Objects.equals(expected, actual));
+            }
+        }
+    }
+
 }
@@ -0,0 +1,62 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.util.EntityTag;
+import xyz.kvantum.server.api.util.HttpDate;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CacheValidatorsTest {
+
+    private static final long LAST_MODIFIED = 784111777000L;
+
+    @Test void ifRangeEntityTag() {
+        final CacheValidators validators =
+            CacheValidators.of(EntityTag.strong("abc"), LAST_MODIFIED);
+        assertTrue(validators.matchesIfRange(" \"abc\" "));
+        assertFalse(validators.matchesIfRange("\"xyz\""));
+        assertFalse(validators.matchesIfRange("W/\"abc\""));
+        assertFalse(CacheValidators.of(EntityTag.weak("abc"), LAST_MODIFIED)
+            .matchesIfRange("\"abc\""));
+        assertFalse(CacheValidators.of(null, LAST_MODIFIED).matchesIfRange("\"abc\""));
+    }
+
+    @Test void ifRangeDate() {
+        final CacheValidators validators =
+            CacheValidators.of(EntityTag.strong("abc"), LAST_MODIFIED + 123);
+        assertTrue(validators.matchesIfRange(HttpDate.format(LAST_MODIFIED)));
+        assertFalse(validators.matchesIfRange(HttpDate.format(LAST_MODIFIED + 1000)));
+        assertFalse(validators.matchesIfRange(HttpDate.format(LAST_MODIFIED - 1000)));
+        assertFalse(validators.matchesIfRange("yesterday"));
+        assertFalse(CacheValidators.of(null, -1).matchesIfRange(HttpDate.format(LAST_MODIFIED)));
+    }
+
+    @Test void ifRangeWeakDate() {
+        // Dates that do not lie at least a second in the past are weak
+        final long now = System.currentTimeMillis() + 2000;
+        assertFalse(CacheValidators.of(null, now).matchesIfRange(HttpDate.format(now)));
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPInputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentEncodingTest {
+
+    private static ContentEncoding negotiate(final String acceptEncoding) {
+        return ContentEncoding.negotiate(AsciiString.of(acceptEncoding), ContentEncoding.GZIP,
+            ContentEncoding.IDENTITY);
+    }
+
+    @Test void negotiate() {
+        assertEquals(ContentEncoding.GZIP, negotiate("gzip, deflate, br"));
+        assertEquals(ContentEncoding.GZIP, negotiate("deflate;q=1.0, GZIP;q=0.5"));
+        assertEquals(ContentEncoding.GZIP, negotiate("*"));
+        assertEquals(ContentEncoding.GZIP, negotiate("identity, gzip"));
+        assertEquals(ContentEncoding.IDENTITY, negotiate(""));
+        assertEquals(ContentEncoding.IDENTITY, negotiate("deflate, br"));
+        assertEquals(ContentEncoding.IDENTITY, negotiate("gzip;q=0, deflate"));
+        assertEquals(ContentEncoding.IDENTITY, negotiate("*, gzip;q=0"));
+        assertEquals(ContentEncoding.IDENTITY, negotiate("gzip;q=0.5, identity"));
+        assertEquals(ContentEncoding.IDENTITY,
+            ContentEncoding.negotiate(AsciiString.of("gzip"), ContentEncoding.IDENTITY));
+    }
+
+    @Test void encode() throws IOException {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            builder.append("<li>Item ").append(i).append("</li>\n");
+        }
+        final byte[] body = builder.toString().getBytes(StandardCharsets.UTF_8);
+        assertSame(body, ContentEncoding.IDENTITY.encode(body, 9));
+        final byte[] encoded = ContentEncoding.GZIP.encode(body, 9);
+        assertTrue(encoded.length < body.length);
+        try (final InputStream inputStream = new GZIPInputStream(
+            new ByteArrayInputStream(encoded))) {
+            assertArrayEquals(body, inputStream.readAllBytes());
+        }
+    }
+
+    @Test void applyHeaders() {
+        final Header header = new Header(Header.STATUS_OK);
+        header.set(Header.HEADER_VARY, AsciiString.of("Cookie"));
+        ContentEncoding.GZIP.applyHeaders(header);
+        assertEquals("gzip", header.get(Header.HEADER_CONTENT_ENCODING).get().toString());
+        assertEquals("Cookie, Accept-Encoding", header.get(Header.HEADER_VARY).get().toString());
+        ContentEncoding.IDENTITY.applyHeaders(header);
+        assertEquals("Cookie, Accept-Encoding", header.get(Header.HEADER_VARY).get().toString());
+
+        final Header identity = new Header(Header.STATUS_OK);
+        ContentEncoding.IDENTITY.applyHeaders(identity);
+        assertFalse(identity.get(Header.HEADER_CONTENT_ENCODING).isPresent());
+        assertEquals("Accept-Encoding", identity.get(Header.HEADER_VARY).get().toString());
+    }
+
+    @Test void isCompressible() {
+        assertTrue(ContentEncoding.isCompressible(AsciiString.of("text/html; charset=utf-8")));
+        assertTrue(ContentEncoding.isCompressible(AsciiString.of("Application/JSON")));
+        assertTrue(ContentEncoding.isCompressible(AsciiString.of("image/svg+xml")));
+        assertFalse(ContentEncoding.isCompressible(AsciiString.of("image/png")));
+        assertFalse(ContentEncoding.isCompressible(AsciiString.of("application/zip")));
+        assertFalse(ContentEncoding.isCompressible(AsciiString.of("")));
+    }
+
+}
@@ -0,0 +1,100 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.response;
+
+import org.junit.jupiter.api.Test;
+import xyz.kvantum.server.api.util.AsciiString;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HeaderListTest {
+
+    private static final AsciiString A = AsciiString.of("a");
+    private static final AsciiString B = AsciiString.of("b");
+    private static final AsciiString C = AsciiString.of("c");
+
+    @Test void ignoresCase() {
+        final HeaderOption lower = HeaderOption.create("x-header-list-test");
+        final HeaderOption mixed = HeaderOption.create("X-Header-List-Test");
+        assertTrue(lower.matches(mixed));
+        assertFalse(lower.matches(Header.HEADER_VARY));
+        assertSame(mixed, HeaderOption.getOrCreate(AsciiString.of("X-HEADER-LIST-TEST")));
+
+        final HeaderList list = new HeaderList();
+        list.add(lower, A);
+        assertTrue(list.contains(mixed));
+        assertEquals(A, list.get(mixed));
+        assertArrayEquals("X-Header-List-Test: ".getBytes(StandardCharsets.US_ASCII),
+            mixed.getPrefix());
+    }
+
+    @Test void setAndRemove() {
+        final HeaderList list = new HeaderList(1);
+        list.add(Header.HEADER_VARY, A);
+        list.add(Header.HEADER_SERVER, B);
+        list.add(Header.HEADER_VARY, C);
+        assertEquals(3, list.size());
+        assertEquals(Arrays.asList(A, C), list.getAll(Header.HEADER_VARY));
+
+        list.set(Header.HEADER_VARY, B);
+        assertEquals(2, list.size());
+        assertSame(Header.HEADER_VARY, list.getName(0));
+        assertEquals(B, list.getValue(0));
+        assertEquals(B, list.getValue(1));
+
+        final HeaderList copy = list.copy();
+        assertTrue(list.remove(Header.HEADER_SERVER, B));
+        assertFalse(list.remove(Header.HEADER_SERVER));
+        assertEquals(1, list.size());
+        assertEquals(2, copy.size());
+        list.clear();
+        assertNull(list.get(Header.HEADER_VARY));
+        assertTrue(list.isEmpty());
+    }
+
+    @Test void header() {
+        final Header header = new Header(Header.STATUS_OK);
+        header.set(Header.HEADER_VARY, A, true);
+        header.set(Header.HEADER_VARY, B, true);
+        header.set(Header.HEADER_SERVER, C);
+        header.set(Header.HEADER_SERVER, A);
+        assertEquals(Arrays.asList(A, B), header.getMultiple(Header.HEADER_VARY));
+        assertEquals(A, header.get(Header.HEADER_SERVER).orElse(null));
+        assertEquals(3, header.getEntries().size());
+
+        assertSame(header.getStatusLine(), new Header(Header.STATUS_OK).getStatusLine());
+        assertArrayEquals("HTTP/1.1 200 OK\r\n".getBytes(StandardCharsets.US_ASCII),
+            header.getStatusLine());
+        assertArrayEquals("HTTP/1.0 299 Custom\r\n".getBytes(StandardCharsets.US_ASCII),
+            new Header(AsciiString.of("299 Custom"), AsciiString.of("HTTP/1.0"))
+                .getStatusLine());
+    }
+
+}
@@ -0,0 +1,79 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRangeTest {
+
+    @Test void parseSingle() {
+        assertEquals(Collections.singletonList(new ByteRange(0, 499)),
+            ByteRange.parse("bytes=0-499", 10_000));
+        assertEquals(Collections.singletonList(new ByteRange(9500, 9999)),
+            ByteRange.parse("bytes=9500-", 10_000));
+        assertEquals(Collections.singletonList(new ByteRange(9500, 9999)),
+            ByteRange.parse("bytes=-500", 10_000));
+        assertEquals(Collections.singletonList(new ByteRange(0, 99)),
+            ByteRange.parse("bytes=-500", 100));
+        assertEquals(Collections.singletonList(new ByteRange(50, 99)),
+            ByteRange.parse("bytes=50-1000", 100));
+    }
+
+    @Test void parseMultiple() {
+        final List<ByteRange> ranges = ByteRange.parse("bytes=0-0, 10-19,-1", 100);
+        assertEquals(
+            Arrays.asList(new ByteRange(0, 0), new ByteRange(10, 19), new ByteRange(99, 99)),
+            ranges);
+        assertEquals(1, ranges.get(0).getLength());
+        assertEquals("bytes 10-19/100", ranges.get(1).toContentRange(100));
+    }
+
+    @Test void parseUnsatisfiable() {
+        assertTrue(ByteRange.parse("bytes=100-200", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=-0", 100).isEmpty());
+        assertTrue(ByteRange.parse("bytes=0-10", 0).isEmpty());
+        assertEquals(Collections.singletonList(new ByteRange(0, 9)),
+            ByteRange.parse("bytes=100-200,0-9", 100));
+    }
+
+    @Test void parseMalformed() {
+        assertNull(ByteRange.parse("items=0-10", 100));
+        assertNull(ByteRange.parse("bytes=10", 100));
+        assertNull(ByteRange.parse("bytes=10-5", 100));
+        assertNull(ByteRange.parse("bytes=a-5", 100));
+        assertNull(ByteRange.parse("bytes=-", 100));
+        final StringBuilder tooMany = new StringBuilder("bytes=0-0");
+        for (int i = 1; i <= ByteRange.MAX_RANGES; i++) {
+            tooMany.append(',').append(i).append('-').append(i);
+        }
+        assertNull(ByteRange.parse(tooMany, 100));
+    }
+
+}
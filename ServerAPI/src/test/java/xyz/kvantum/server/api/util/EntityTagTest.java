@@ -0,0 +1,77 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class EntityTagTest {
+
+    @Test void format() {
+        assertEquals("\"abc\"", EntityTag.strong("abc").getHeaderValue().toString());
+        assertEquals("W/\"abc\"", EntityTag.weak("abc").getHeaderValue().toString());
+        assertEquals("\"18f-400\"", EntityTag.of(0x18F, 1024).toString());
+        assertEquals("\"5d41402abc4b2a76b9719d911017c592\"",
+            EntityTag.of("hello".getBytes(StandardCharsets.US_ASCII)).toString());
+    }
+
+    @Test void parse() {
+        assertEquals(EntityTag.strong("abc"), EntityTag.parse(" \"abc\" "));
+        assertEquals(EntityTag.weak("abc"), EntityTag.parse("W/\"abc\""));
+        assertNotEquals(EntityTag.strong("abc"), EntityTag.parse("W/\"abc\""));
+        assertNull(EntityTag.parse("abc"));
+        assertNull(EntityTag.parse("\""));
+    }
+
+    @Test void matchesAnyWeak() {
+        final EntityTag tag = EntityTag.strong("abc");
+        assertTrue(tag.matchesAnyWeak("*"));
+        assertTrue(tag.matchesAnyWeak("\"abc\""));
+        assertTrue(tag.matchesAnyWeak("\"xyz\", W/\"abc\""));
+        assertFalse(tag.matchesAnyWeak("\"xyz\", \"abcd\""));
+        assertFalse(tag.matchesAnyWeak("abc"));
+    }
+
+    @Test void matchesStrong() {
+        assertTrue(EntityTag.strong("abc").matchesStrong(EntityTag.strong("abc")));
+        assertFalse(EntityTag.strong("abc").matchesStrong(EntityTag.weak("abc")));
+        assertFalse(EntityTag.weak("abc").matchesStrong(EntityTag.weak("abc")));
+        assertFalse(EntityTag.strong("abc").matchesStrong(null));
+    }
+
+    @Test void httpTimeStamp() {
+        final long time = 784111777000L;
+        final String formatted = TimeUtil.getHTTPTimeStamp(new Date(time));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", formatted);
+        assertEquals(time, TimeUtil.parseHTTPTimeStamp(formatted));
+        assertEquals(-1, TimeUtil.parseHTTPTimeStamp("yesterday"));
+    }
+
+}
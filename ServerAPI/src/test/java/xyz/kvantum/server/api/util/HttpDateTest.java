@@ -0,0 +1,96 @@
+/*
+ *    _  __                     _
+ *    | |/ /__   __ __ _  _ __  | |_  _   _  _ __ ___
+ *    | ' / \ \ / // _` || '_ \ | __|| | | || '_ ` _ \
+ *    | . \  \ V /| (_| || | | || |_ | |_| || | | | | |
+ *    |_|\_\  \_/  \__,_||_| |_| \__| \__,_||_| |_| |_|
+ *
+ *    Copyright (C) 2019 Alexander Söderberg
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package xyz.kvantum.server.api.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HttpDateTest {
+
+    private static final Pattern IMF_FIXDATE = Pattern.compile(
+        "(Mon|Tue|Wed|Thu|Fri|Sat|Sun), [0-3]\\d (Jan|Feb|Mar|Apr|May|Jun|Jul|Aug|Sep|Oct|Nov|Dec) "
+            + "\\d{4} [0-2]\\d:[0-5]\\d:[0-6]\\d GMT");
+
+    private static void assertValid(final String date) {
+        assertTrue(IMF_FIXDATE.matcher(date).matches(), date);
+        assertEquals(date, HttpDate.FORMATTER
+            .format(ZonedDateTime.parse(date, DateTimeFormatter.RFC_1123_DATE_TIME)));
+    }
+
+    @Test void format() {
+        assertEquals("Thu, 01 Jan 1970 00:00:00 GMT", HttpDate.format(0L));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", HttpDate.format(784111777000L));
+        assertEquals(784111777000L, TimeUtil.parseHTTPTimeStamp(HttpDate.format(784111777999L)));
+    }
+
+    @Test void now() {
+        final long before = System.currentTimeMillis() / 1000L * 1000L;
+        final String date = HttpDate.now().toString();
+        final long after = System.currentTimeMillis();
+        assertValid(date);
+        final long parsed = TimeUtil.parseHTTPTimeStamp(date);
+        assertTrue(parsed >= before - 1000L && parsed <= after, date);
+        assertEquals(date, new String(HttpDate.nowBytes(), StandardCharsets.US_ASCII));
+    }
+
+    @Test void concurrent() throws Exception {
+        final int threads = 8;
+        final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(2_500L);
+        final ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            final Collection<Callable<Integer>> tasks = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                final long offset = i * 86_400_123L;
+                tasks.add(() -> {
+                    int checked = 0;
+                    while (System.nanoTime() < deadline) {
+                        assertValid(HttpDate.now().toString());
+                        assertValid(new String(HttpDate.nowBytes(), StandardCharsets.US_ASCII));
+                        assertValid(HttpDate.format(System.currentTimeMillis() + offset));
+                        checked++;
+                    }
+                    return checked;
+                });
+            }
+            for (final Future<Integer> future : executor.invokeAll(tasks)) {
+                assertTrue(future.get() > 0);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+}